@@ -0,0 +1,309 @@
+package cli;
+
+import model.*;
+import logic.*;
+import data.*;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Headless statement run: performance, risk and rebalancing reports for
+ * every portfolio of every user, one file per portfolio.
+ *
+ * Usage: java -cp out cli.BatchReportRunner snapshot-file output-directory [threads] [max-pending]
+ *
+ * Users are read one at a time (from a snapshot file, sequentially) and
+ * handed to a ForkJoinPool. At most max-pending users are queued or being
+ * reported at once; the reader blocks until one finishes, so memory stays
+ * bounded however large the book is. Each portfolio is reported from its
+ * own snapshot, so in-memory books can be reported while they change.
+ */
+public class BatchReportRunner {
+
+    public static final int DEFAULT_MAX_PENDING = 1024;
+    private static final int MAX_ERRORS = 100;
+
+    /**
+     * Source of users for a run.
+     */
+    private interface UserSource {
+        void forEachUser(Consumer<? super User> action) throws IOException;
+    }
+
+    /**
+     * Report timed in the latency figures.
+     */
+    public enum ReportType {
+        PERFORMANCE, RISK, REBALANCING
+    }
+
+    /**
+     * Latencies in microseconds, in log-linear buckets of about 3%
+     * resolution. Recording is lock-free; memory is fixed.
+     */
+    static final class LatencyHistogram {
+        private static final int LINEAR = 64;
+        private static final int PER_OCTAVE = 32;
+        private static final int OCTAVES = 40;
+        private final AtomicLongArray counts = new AtomicLongArray(LINEAR + OCTAVES * PER_OCTAVE);
+        private final LongAdder total = new LongAdder();
+
+        void record(long micros) {
+            counts.incrementAndGet(bucket(Math.max(0, micros)));
+            total.increment();
+        }
+
+        long getCount() { return total.sum(); }
+
+        /**
+         * Upper bound of the bucket holding the given percentile (0-100),
+         * or 0 if nothing was recorded.
+         */
+        long percentile(double percentile) {
+            long count = total.sum();
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= rank) return upperBound(i);
+            }
+            return upperBound(counts.length() - 1);
+        }
+
+        private static int bucket(long value) {
+            if (value < LINEAR) return (int) value;
+            int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+            int index = LINEAR + (shift - 1) * PER_OCTAVE + (int) (value >>> shift) - PER_OCTAVE;
+            return Math.min(index, LINEAR + OCTAVES * PER_OCTAVE - 1);
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < LINEAR) return bucket;
+            int shift = (bucket - LINEAR) / PER_OCTAVE + 1;
+            long mantissa = PER_OCTAVE + (bucket - LINEAR) % PER_OCTAVE;
+            return ((mantissa + 1) << shift) - 1;
+        }
+    }
+
+    /**
+     * Throughput and latency of a run.
+     */
+    public static final class Summary {
+        private final long users;
+        private final long accounts;
+        private final long failures;
+        private final long elapsedNanos;
+        private final LatencyHistogram[] latencies;
+        private final List<String> errors;
+
+        private Summary(long users, long accounts, long failures, long elapsedNanos,
+                        LatencyHistogram[] latencies, List<String> errors) {
+            this.users = users;
+            this.accounts = accounts;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+            this.errors = errors;
+        }
+
+        // Getters
+        public long getUserCount() { return users; }
+        public long getAccountCount() { return accounts; }
+        public long getFailureCount() { return failures; }
+        public long getElapsedNanos() { return elapsedNanos; }
+        public List<String> getErrors() { return Collections.unmodifiableList(errors); }
+
+        public double getAccountsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : accounts * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Latency of one report at a percentile (0-100), in microseconds.
+         */
+        public long getLatencyMicros(ReportType type, double percentile) {
+            return latencies[type.ordinal()].percentile(percentile);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Accounts: %,d (%,d users) in %.1f s, %,.0f accounts/s\n",
+                accounts, users, elapsedNanos / 1e9, getAccountsPerSecond()));
+            for (ReportType type : ReportType.values()) {
+                sb.append(String.format("  %-12s p50 %,d us, p99 %,d us\n", type,
+                    getLatencyMicros(type, 50), getLatencyMicros(type, 99)));
+            }
+            if (failures > 0) {
+                sb.append(String.format("Failures: %,d\n", failures));
+                for (String error : errors) {
+                    sb.append("  ").append(error).append('\n');
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    private final Path outputDirectory;
+    private final int parallelism;
+    private final int maxPending;
+
+    public BatchReportRunner(String outputDirectory, int parallelism, int maxPending) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("Pending users must be at least 1: " + maxPending);
+        }
+        this.outputDirectory = Paths.get(outputDirectory);
+        this.parallelism = parallelism;
+        this.maxPending = maxPending;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java -cp out cli.BatchReportRunner snapshot-file output-directory "
+                + "[threads] [max-pending]");
+            System.exit(2);
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int pending = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MAX_PENDING;
+        try (SnapshotReader reader = new SnapshotReader(args[0])) {
+            Summary summary = new BatchReportRunner(args[1], threads, pending).run(reader);
+            System.out.print(summary);
+            if (summary.getFailureCount() > 0) {
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            System.err.println("Batch report failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Report every user in a snapshot, decoding them as the pool keeps up.
+     */
+    public Summary run(SnapshotReader reader) throws IOException {
+        return run(reader::forEachUser);
+    }
+
+    /**
+     * Report users already in memory.
+     */
+    public Summary run(Collection<User> users) throws IOException {
+        return run(action -> users.forEach(action));
+    }
+
+    private Summary run(UserSource source) throws IOException {
+        Files.createDirectories(outputDirectory);
+        LatencyHistogram[] latencies = new LatencyHistogram[ReportType.values().length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        LongAdder users = new LongAdder();
+        LongAdder accounts = new LongAdder();
+        LongAdder failures = new LongAdder();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        Semaphore pending = new Semaphore(maxPending);
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            source.forEachUser(user -> {
+                pending.acquireUninterruptibly();
+                pool.execute(() -> {
+                    try {
+                        user.forEachPortfolio(portfolio -> {
+                            try {
+                                writeStatement(user, portfolio, latencies);
+                                accounts.increment();
+                            } catch (IOException | RuntimeException e) {
+                                failures.increment();
+                                if (errors.size() < MAX_ERRORS) {
+                                    errors.add(portfolio.getPortfolioId() + ": " + e);
+                                }
+                            }
+                        });
+                        users.increment();
+                    } finally {
+                        pending.release();
+                    }
+                });
+            });
+            // Wait for the last users to finish
+            pending.acquireUninterruptibly(maxPending);
+        } finally {
+            pool.shutdownNow();
+        }
+        return new Summary(users.sum(), accounts.sum(), failures.sum(), System.nanoTime() - start,
+            latencies, new ArrayList<>(errors));
+    }
+
+    /**
+     * Write one portfolio's statement.
+     */
+    private void writeStatement(User user, Portfolio portfolio, LatencyHistogram[] latencies) throws IOException {
+        PortfolioSnapshot snapshot = portfolio.snapshot();
+        RiskProfile profile = user.getRiskProfile();
+
+        long time = System.nanoTime();
+        PortfolioMetrics metrics = PortfolioMetrics.collect(snapshot);
+        String performance = PerformanceAnalyzer.getPerformanceReport(metrics) + "\n"
+            + PerformanceAnalyzer.getAssetPerformanceComparison(metrics);
+        time = recordLatency(latencies, ReportType.PERFORMANCE, time);
+        String risk = RiskCalculator.getRiskReport(snapshot, profile);
+        time = recordLatency(latencies, ReportType.RISK, time);
+        String rebalancing = RebalanceEngine.getRebalancingReport(snapshot, profile);
+        recordLatency(latencies, ReportType.REBALANCING, time);
+
+        String summary = snapshot.getSummary();
+        Path file = outputDirectory.resolve(fileName(user.getUserId(), portfolio.getPortfolioId()));
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(summary);
+            writer.write('\n');
+            writer.write(performance);
+            writer.write('\n');
+            writer.write(risk);
+            writer.write('\n');
+            writer.write(rebalancing);
+        }
+    }
+
+    private static long recordLatency(LatencyHistogram[] latencies, ReportType type, long start) {
+        long now = System.nanoTime();
+        latencies[type.ordinal()].record((now - start) / 1000);
+        return now;
+    }
+
+    /**
+     * File name for a portfolio's statement. Ids can hold any character, so
+     * anything but letters, digits and '-' is escaped as _XXXX (hex), which
+     * keeps names portable and distinct.
+     */
+    static String fileName(String userId, String portfolioId) {
+        return escape(userId) + "." + escape(portfolioId) + ".txt";
+    }
+
+    private static String escape(String id) {
+        StringBuilder sb = new StringBuilder(id.length());
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-') {
+                sb.append(c);
+            } else {
+                sb.append(String.format("_%04X", (int) c));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -5,6 +5,7 @@ import logic.*;
 import data.*;
 import utils.InputUtils;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.*;
 
@@ -13,8 +14,12 @@ import java.util.*;
  */
 public class StrategicWealthManagementSystem {
     
+    private static final String JOURNAL_DIRECTORY = "journal";
+    
     private User currentUser;
     private Portfolio currentPortfolio;
+    private TransactionJournal journal;
+    private CheckpointManager checkpoints;
     private boolean running;
     
     public static void main(String[] args) {
@@ -33,11 +38,14 @@ public class StrategicWealthManagementSystem {
         
         // Initialize demo user with sample data
         initializeDemoUser();
+        openJournal();
         
         while (running) {
             showMainMenu();
+            checkpointIfDue();
         }
         
+        closeJournal();
         System.out.println("\nThank you for using Strategic Wealth Management System!");
     }
     
@@ -62,6 +70,70 @@ public class StrategicWealthManagementSystem {
         currentPortfolio.setCashBalance(5000.0);
     }
     
+    /**
+     * Restore the latest checkpoint and the journal after it, then journal new
+     * transactions. Checkpoints keep the history so it can still be viewed.
+     */
+    private void openJournal() {
+        try {
+            journal = new TransactionJournal(JOURNAL_DIRECTORY);
+            checkpoints = new CheckpointManager(JOURNAL_DIRECTORY, journal, true,
+                CheckpointManager.DEFAULT_INTERVAL_MILLIS, CheckpointManager.DEFAULT_INTERVAL_RECORDS);
+            
+            Map<String, User> users = new HashMap<>();
+            users.put(currentUser.getUserId(), currentUser);
+            long replayed = checkpoints.restore(users);
+            currentUser = users.get(currentUser.getUserId());
+            Portfolio restored = currentUser.getPortfolio(currentPortfolio.getPortfolioId());
+            currentPortfolio = restored != null ? restored : currentUser.getDefaultPortfolio();
+            
+            currentUser.forEachPortfolio(journal::attach);
+            if (checkpoints.getLastCheckpointLsn() > 0 || replayed > 0) {
+                System.out.println("✓ Restored saved state (" + replayed + " journaled transactions replayed)\n");
+            }
+        } catch (IOException e) {
+            System.err.println("Transaction journal unavailable: " + e.getMessage());
+            journal = null;
+            checkpoints = null;
+        }
+    }
+    
+    private void checkpointIfDue() {
+        if (checkpoints == null) return;
+        try {
+            checkpoints.checkpointIfDue(Collections.singletonList(currentUser));
+        } catch (IOException e) {
+            System.err.println("Error writing checkpoint: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Checkpoint straight after a change the journal does not record
+     * (holdings, prices, imported portfolios, the risk profile), so that a
+     * restart never replays journaled transactions without it. Taken before
+     * any transaction that goes with the change is recorded.
+     */
+    private void checkpointUnjournaled() {
+        if (checkpoints == null) return;
+        try {
+            checkpoints.checkpoint(Collections.singletonList(currentUser));
+        } catch (IOException e) {
+            System.err.println("Error writing checkpoint: " + e.getMessage());
+        }
+    }
+    
+    private void closeJournal() {
+        if (journal == null) return;
+        try {
+            // Leaves nothing to replay on the next start
+            checkpoints.checkpoint(Collections.singletonList(currentUser));
+            checkpoints.close();
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Error closing transaction journal: " + e.getMessage());
+        }
+    }
+    
     private void addSampleAssets() {
         // Tech stocks
         currentPortfolio.addAsset(new Asset("AAPL", "Apple Inc.", Asset.AssetType.STOCK, 
@@ -141,7 +213,7 @@ public class StrategicWealthManagementSystem {
     
     private void viewAllAssets() {
         InputUtils.printHeader("ALL ASSETS");
-        Map<String, Asset> assets = currentPortfolio.getAssets();
+        Map<String, Asset> assets = currentPortfolio.getAssetsView();
         
         if (assets.isEmpty()) {
             System.out.println("No assets in portfolio.");
@@ -182,6 +254,7 @@ public class StrategicWealthManagementSystem {
         Asset asset = new Asset(symbol, name, type, quantity, purchasePrice, 
                                purchasePrice, LocalDate.now(), sector);
         currentPortfolio.addAsset(asset);
+        checkpointUnjournaled();
         
         // Record purchase transaction
         Transaction transaction = new Transaction(
@@ -212,6 +285,7 @@ public class StrategicWealthManagementSystem {
             
             double newPrice = InputUtils.readDouble("New price: $", 0.01, Double.MAX_VALUE);
             asset.setCurrentPrice(newPrice);
+            checkpointUnjournaled();
             
             System.out.println("\n✓ Price updated successfully!");
         }
@@ -232,6 +306,7 @@ public class StrategicWealthManagementSystem {
             
             if (confirm) {
                 currentPortfolio.removeAsset(symbol);
+                checkpointUnjournaled();
                 System.out.println("\n✓ Asset removed successfully!");
             } else {
                 System.out.println("\nRemoval cancelled.");
@@ -272,7 +347,7 @@ public class StrategicWealthManagementSystem {
     
     private void viewTransactionHistory() {
         InputUtils.printHeader("TRANSACTION HISTORY");
-        List<Transaction> transactions = currentPortfolio.getTransactionHistory();
+        List<Transaction> transactions = currentPortfolio.getTransactionsView();
         
         if (transactions.isEmpty()) {
             System.out.println("No transactions recorded.");
@@ -289,10 +364,11 @@ public class StrategicWealthManagementSystem {
     
     private void performanceAnalysis() {
         InputUtils.printHeader("PERFORMANCE ANALYSIS");
-        String report = PerformanceAnalyzer.getPerformanceReport(currentPortfolio);
+        PortfolioMetrics metrics = PortfolioMetrics.collect(currentPortfolio.snapshot());
+        String report = PerformanceAnalyzer.getPerformanceReport(metrics);
         System.out.println(report);
         
-        System.out.println("\n" + PerformanceAnalyzer.getAssetPerformanceComparison(currentPortfolio));
+        System.out.println("\n" + PerformanceAnalyzer.getAssetPerformanceComparison(metrics));
         InputUtils.waitForEnter();
     }
     
@@ -368,6 +444,7 @@ public class StrategicWealthManagementSystem {
         
         RiskProfile newProfile = new RiskProfile(tolerance, age, horizon);
         currentUser.setRiskProfile(newProfile);
+        checkpointUnjournaled();
         
         System.out.println("\n✓ Risk profile updated!");
         System.out.println("New profile: " + newProfile);
@@ -380,9 +457,11 @@ public class StrategicWealthManagementSystem {
         System.out.println("2. Export Transactions to CSV");
         System.out.println("3. Export Portfolio Summary");
         System.out.println("4. Import Portfolio from CSV");
+        System.out.println("5. Import Transactions from CSV");
+        System.out.println("6. Load End-of-Day Prices from CSV");
         System.out.println("0. Back to Main Menu");
         
-        int choice = InputUtils.readInt("\nEnter choice: ", 0, 4);
+        int choice = InputUtils.readInt("\nEnter choice: ", 0, 6);
         
         switch (choice) {
             case 1:
@@ -405,10 +484,47 @@ public class StrategicWealthManagementSystem {
                 break;
             case 4:
                 String filename4 = InputUtils.readString("Enter filename to import: ");
-                Portfolio imported = CSVHandler.importPortfolio(filename4, "imported", "Imported Portfolio", currentUser.getUserId());
-                if (imported != null) {
+                Portfolio imported = new Portfolio("imported", "Imported Portfolio", currentUser.getUserId());
+                ImportReport importReport = CSVHandler.importPortfolio(filename4, imported);
+                if (importReport != null) {
                     currentPortfolio = imported;
+                    currentUser.addPortfolio(imported);
+                    if (journal != null) journal.attach(imported);
+                    checkpointUnjournaled();
                     System.out.println("✓ Portfolio imported successfully!");
+                    System.out.println("  " + importReport);
+                    List<ImportReport.RowError> errors = importReport.getErrors();
+                    for (int i = 0; i < Math.min(5, errors.size()); i++) {
+                        System.out.println("  " + errors.get(i));
+                    }
+                }
+                break;
+            case 5:
+                String filename5 = InputUtils.readString("Enter filename to import: ");
+                ImportReport transactionReport = CSVHandler.importTransactions(currentPortfolio, filename5);
+                if (transactionReport != null) {
+                    System.out.println("✓ Transactions imported successfully!");
+                    System.out.println("  " + transactionReport);
+                    List<ImportReport.RowError> errors = transactionReport.getErrors();
+                    for (int i = 0; i < Math.min(5, errors.size()); i++) {
+                        System.out.println("  " + errors.get(i));
+                    }
+                }
+                break;
+            case 6:
+                String filename6 = InputUtils.readString("Enter price file (Symbol,Date,Close): ");
+                PriceLoadReport priceReport = CSVHandler.loadPrices(Collections.singletonList(currentUser), filename6);
+                checkpointUnjournaled();
+                if (priceReport != null) {
+                    System.out.println("✓ Prices loaded successfully!");
+                    System.out.println("  " + priceReport);
+                    List<ImportReport.RowError> errors = priceReport.getErrors();
+                    for (int i = 0; i < Math.min(5, errors.size()); i++) {
+                        System.out.println("  " + errors.get(i));
+                    }
+                    if (priceReport.hasUnpricedHoldings()) {
+                        System.out.println("  Unpriced: " + priceReport.getUnpricedHoldings().keySet());
+                    }
                 }
                 break;
         }
@@ -430,9 +546,11 @@ public class StrategicWealthManagementSystem {
         
         switch (choice) {
             case 1:
-                System.out.println("\n" + currentPortfolio.getSummary());
-                System.out.println(PerformanceAnalyzer.getPerformanceReport(currentPortfolio));
-                System.out.println(RiskCalculator.getRiskReport(currentPortfolio, currentUser.getRiskProfile()));
+                // One snapshot, so all three sections describe the same state
+                PortfolioSnapshot snapshot = currentPortfolio.snapshot();
+                System.out.println("\n" + snapshot.getSummary());
+                System.out.println(PerformanceAnalyzer.getPerformanceReport(snapshot));
+                System.out.println(RiskCalculator.getRiskReport(snapshot, currentUser.getRiskProfile()));
                 break;
             case 2:
                 System.out.println("\n" + PerformanceAnalyzer.getPerformanceReport(currentPortfolio));
@@ -0,0 +1,258 @@
+package data;
+
+import model.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * High-throughput CSV writer for large exports.
+ *
+ * Rows are encoded into a large direct ByteBuffer and written to a
+ * FileChannel. Doubles are formatted to a fixed number of decimals and
+ * dates/timestamps are written digit by digit, without String.format or
+ * per-row garbage. The output is byte-for-byte what the PrintWriter and
+ * String.format("%.Nf") export produced, with the decimal point always
+ * written as '.' regardless of the default locale.
+ */
+public class CSVExportWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_DECIMALS = 9;
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L,
+        10_000_000L, 100_000_000L, 1_000_000_000L
+    };
+    private static final double MAX_FAST_VALUE = 0x1p52;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    // "00" .. "99" for writing two digits at a time
+    private static final byte[] DIGIT_PAIRS = new byte[200];
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGIT_PAIRS[2 * i] = (byte) ('0' + i / 10);
+            DIGIT_PAIRS[2 * i + 1] = (byte) ('0' + i % 10);
+        }
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final Charset charset;
+    private final byte[] lineSeparator;
+    private final byte[] digits = new byte[20];
+
+    public CSVExportWriter(String filename) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.charset = Charset.defaultCharset();
+        this.lineSeparator = System.lineSeparator().getBytes(charset);
+    }
+
+    /**
+     * Write a portfolio row: Symbol,Name,Type,Quantity,Purchase Price,Current Price,Purchase Date,Sector
+     */
+    public CSVExportWriter writeAsset(Asset asset) throws IOException {
+        writeText(asset.getSymbol()).writeSeparator();
+        writeText(asset.getName()).writeSeparator();
+        writeText(String.valueOf(asset.getType())).writeSeparator();
+        writeFixed(asset.getQuantity(), 4).writeSeparator();
+        writeFixed(asset.getPurchasePrice(), 2).writeSeparator();
+        writeFixed(asset.getCurrentPrice(), 2).writeSeparator();
+        writeDate(asset.getPurchaseDate()).writeSeparator();
+        return writeText(asset.getSector()).endRow();
+    }
+
+    /**
+     * Write a transaction row: ID,Type,Asset Symbol,Quantity,Price Per Unit,Total Amount,Timestamp,Notes
+     */
+    public CSVExportWriter writeTransaction(Transaction transaction) throws IOException {
+        writeText(transaction.getId()).writeSeparator();
+        writeText(String.valueOf(transaction.getType())).writeSeparator();
+        writeText(transaction.getAssetSymbol()).writeSeparator();
+        writeFixed(transaction.getQuantity(), 4).writeSeparator();
+        writeFixed(transaction.getPricePerUnit(), 2).writeSeparator();
+        writeFixed(transaction.getTotalAmount(), 2).writeSeparator();
+        writeDateTime(transaction.getTimestamp()).writeSeparator();
+        return writeText(transaction.getNotes()).endRow();
+    }
+
+    public CSVExportWriter writeSeparator() throws IOException {
+        ensureRemaining(1);
+        buffer.put((byte) ',');
+        return this;
+    }
+
+    public CSVExportWriter endRow() throws IOException {
+        return writeBytes(lineSeparator);
+    }
+
+    /**
+     * Write a string as String.valueOf would render it ("null" for null).
+     */
+    public CSVExportWriter writeText(String text) throws IOException {
+        if (text == null) text = "null";
+
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) >= 0x80) {
+                return writeBytes(text.getBytes(charset));
+            }
+        }
+
+        // ASCII fast path, written in buffer-sized pieces
+        int offset = 0;
+        while (offset < length) {
+            if (!buffer.hasRemaining()) flush();
+            int count = Math.min(length - offset, buffer.remaining());
+            for (int i = offset; i < offset + count; i++) {
+                buffer.put((byte) text.charAt(i));
+            }
+            offset += count;
+        }
+        return this;
+    }
+
+    /**
+     * Write a double rounded half-up to the given number of decimals, exactly
+     * as String.format("%.Nf") does. Near-ties and very large values fall back
+     * to String.format itself.
+     */
+    public CSVExportWriter writeFixed(double value, int decimals) throws IOException {
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("Decimals must be between 0 and " + MAX_DECIMALS);
+        }
+
+        double magnitude = Math.abs(value);
+        if (!(magnitude < MAX_FAST_VALUE)) {
+            return writeFixedSlow(value, decimals);
+        }
+
+        // Integer and fraction parts are exact; only the scaling rounds
+        long integerPart = (long) magnitude;
+        double scaled = (magnitude - integerPart) * POWERS_OF_TEN[decimals];
+        long fractionPart = (long) scaled;
+        double remainder = scaled - fractionPart;
+
+        // Formatter rounds the shortest decimal representation half-up, which
+        // can differ from the exact binary value only within an ulp of a tie
+        double tolerance = (Math.ulp(magnitude) + 0x1p-52) * POWERS_OF_TEN[decimals];
+        if (Math.abs(remainder - 0.5) <= tolerance) {
+            return writeFixedSlow(value, decimals);
+        }
+        if (remainder > 0.5) {
+            fractionPart++;
+            if (fractionPart == POWERS_OF_TEN[decimals]) {
+                fractionPart = 0;
+                integerPart++;
+            }
+        }
+
+        ensureRemaining(22 + decimals);
+        if (Double.doubleToRawLongBits(value) < 0) {
+            buffer.put((byte) '-');
+        }
+        writeDigits(integerPart, 1);
+        if (decimals > 0) {
+            buffer.put((byte) '.');
+            writeDigits(fractionPart, decimals);
+        }
+        return this;
+    }
+
+    private CSVExportWriter writeFixedSlow(double value, int decimals) throws IOException {
+        return writeText(String.format(Locale.ROOT, "%." + decimals + "f", value));
+    }
+
+    /**
+     * Write a date as yyyy-MM-dd.
+     */
+    public CSVExportWriter writeDate(LocalDate date) throws IOException {
+        int year = date.getYear();
+        if (year < 1 || year > 9999) {
+            // Let the formatter handle era and sign rules
+            return writeText(date.format(DATE_FORMATTER));
+        }
+
+        ensureRemaining(10);
+        writePair(year / 100);
+        writePair(year % 100);
+        buffer.put((byte) '-');
+        writePair(date.getMonthValue());
+        buffer.put((byte) '-');
+        writePair(date.getDayOfMonth());
+        return this;
+    }
+
+    /**
+     * Write a timestamp as yyyy-MM-dd HH:mm:ss.
+     */
+    public CSVExportWriter writeDateTime(LocalDateTime timestamp) throws IOException {
+        writeDate(timestamp.toLocalDate());
+        ensureRemaining(9);
+        buffer.put((byte) ' ');
+        writePair(timestamp.getHour());
+        buffer.put((byte) ':');
+        writePair(timestamp.getMinute());
+        buffer.put((byte) ':');
+        writePair(timestamp.getSecond());
+        return this;
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Encoding helpers
+    private void writePair(int value) {
+        buffer.put(DIGIT_PAIRS[2 * value]);
+        buffer.put(DIGIT_PAIRS[2 * value + 1]);
+    }
+
+    private void writeDigits(long value, int minDigits) {
+        int count = 0;
+        while (value > 0 || count < minDigits) {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        while (count > 0) {
+            buffer.put(digits[--count]);
+        }
+    }
+
+    private CSVExportWriter writeBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) flush();
+            int count = Math.min(bytes.length - offset, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+        return this;
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush();
+    }
+}
@@ -0,0 +1,224 @@
+package data;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+
+/**
+ * Allocation-free parsing of CSV fields held in a byte buffer.
+ * Fields are addressed as [start, end) ranges of a line buffer.
+ */
+final class CSVFieldParser {
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private CSVFieldParser() {}
+
+    /**
+     * First index at or after start that is not whitespace (as String.trim).
+     */
+    static int trimStart(byte[] line, int start, int end) {
+        while (start < end && (line[start] & 0xFF) <= ' ') start++;
+        return start;
+    }
+
+    /**
+     * End index after dropping trailing whitespace (as String.trim).
+     */
+    static int trimEnd(byte[] line, int start, int end) {
+        while (end > start && (line[end - 1] & 0xFF) <= ' ') end--;
+        return end;
+    }
+
+    static String decode(byte[] line, int start, int end) {
+        return new String(line, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    static boolean matches(byte[] line, int start, int end, byte[] literal) {
+        return Arrays.equals(line, start, end, literal, 0, literal.length);
+    }
+
+    /**
+     * Parse a plain decimal ("-123.45"). Values with up to 15 significant
+     * digits are converted exactly as Double.parseDouble would; anything
+     * else (exponents, long mantissas) falls back to Double.parseDouble.
+     */
+    static double parseDouble(byte[] line, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (line[i] == '-' || line[i] == '+')) {
+            negative = line[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            byte c = line[i];
+            if (c >= '0' && c <= '9') {
+                if (mantissa >= MAX_EXACT_MANTISSA / 10) {
+                    return parseDoubleSlow(line, start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenPoint) scale++;
+                seenDigit = true;
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                return parseDoubleSlow(line, start, end);
+            }
+        }
+
+        if (!seenDigit) {
+            throw new NumberFormatException("Invalid number: '" + decode(line, start, end) + "'");
+        }
+        if (scale >= POWERS_OF_TEN.length) {
+            return parseDoubleSlow(line, start, end);
+        }
+
+        // Both operands are exact doubles, so the division is correctly rounded
+        double value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private static double parseDoubleSlow(byte[] line, int start, int end) {
+        try {
+            return Double.parseDouble(decode(line, start, end));
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Invalid number: '" + decode(line, start, end) + "'");
+        }
+    }
+
+    /**
+     * Parse an ISO yyyy-MM-dd date.
+     */
+    static LocalDate parseDate(byte[] line, int start, int end) {
+        return LocalDate.ofEpochDay(parseEpochDay(line, start, end));
+    }
+
+    /**
+     * Parse an ISO yyyy-MM-dd date to its epoch day without building a LocalDate.
+     */
+    static long parseEpochDay(byte[] line, int start, int end) {
+        if (end - start != 10 || line[start + 4] != '-' || line[start + 7] != '-') {
+            throw new IllegalArgumentException("Invalid date: '" + decode(line, start, end) + "'");
+        }
+        int year = digits(line, start, 4);
+        int month = digits(line, start + 5, 2);
+        int day = digits(line, start + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            throw new IllegalArgumentException("Invalid date: '" + decode(line, start, end) + "'");
+        }
+        return epochDay(year, month, day);
+    }
+
+    /**
+     * Parse a yyyy-MM-dd HH:mm:ss timestamp.
+     */
+    static LocalDateTime parseDateTime(byte[] line, int start, int end) {
+        if (end - start != 19 || line[start + 10] != ' '
+                || line[start + 13] != ':' || line[start + 16] != ':') {
+            throw new IllegalArgumentException("Invalid timestamp: '" + decode(line, start, end) + "'");
+        }
+        int hour = digits(line, start + 11, 2);
+        int minute = digits(line, start + 14, 2);
+        int second = digits(line, start + 17, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            throw new IllegalArgumentException("Invalid timestamp: '" + decode(line, start, end) + "'");
+        }
+        return LocalDateTime.of(parseDate(line, start, start + 10), LocalTime.of(hour, minute, second));
+    }
+
+    /**
+     * Value of count ASCII digits starting at offset, or -1 if any is not a digit.
+     */
+    static int digits(byte[] line, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2: return isLeapYear(year) ? 29 : 28;
+            case 4: case 6: case 9: case 11: return 30;
+            default: return 31;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    // Same arithmetic as LocalDate.toEpochDay
+    private static long epochDay(long year, int month, int day) {
+        long total = 365 * year;
+        if (year >= 0) {
+            total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        } else {
+            total -= year / -4 - year / -100 + year / -400;
+        }
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear((int) year)) total--;
+        }
+        return total - 719528; // days from year 0 to 1970
+    }
+
+    /**
+     * Small byte-keyed intern table so that repeated field values (sectors,
+     * types) decode to one shared String without allocating per row.
+     * Once full, further distinct values are decoded without interning.
+     */
+    static final class Interner {
+        private static final int CAPACITY = 1024;
+        private static final int MAX_KEY_LENGTH = 64;
+
+        private final byte[][] keys = new byte[CAPACITY][];
+        private final String[] values = new String[CAPACITY];
+        private int size;
+
+        String intern(byte[] line, int start, int end) {
+            int length = end - start;
+            if (length > MAX_KEY_LENGTH) {
+                return decode(line, start, end);
+            }
+
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + line[i];
+            }
+
+            int mask = CAPACITY - 1;
+            for (int slot = (hash ^ (hash >>> 16)) & mask; ; slot = (slot + 1) & mask) {
+                byte[] key = keys[slot];
+                if (key == null) {
+                    String value = decode(line, start, end);
+                    if (size < CAPACITY / 2) {
+                        keys[slot] = Arrays.copyOfRange(line, start, end);
+                        values[slot] = value;
+                        size++;
+                    }
+                    return value;
+                }
+                if (Arrays.equals(key, 0, key.length, line, start, end)) {
+                    return values[slot];
+                }
+            }
+        }
+    }
+}
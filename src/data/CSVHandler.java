@@ -20,22 +20,13 @@ public class CSVHandler {
      * Export portfolio to CSV file.
      */
     public static boolean exportPortfolio(Portfolio portfolio, String filename) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
+        try (CSVExportWriter writer = new CSVExportWriter(filename)) {
             // Header
-            writer.println("Symbol,Name,Type,Quantity,Purchase Price,Current Price,Purchase Date,Sector");
+            writer.writeText("Symbol,Name,Type,Quantity,Purchase Price,Current Price,Purchase Date,Sector").endRow();
             
             // Assets
-            for (Asset asset : portfolio.getAssets().values()) {
-                writer.println(String.format("%s,%s,%s,%.4f,%.2f,%.2f,%s,%s",
-                    asset.getSymbol(),
-                    asset.getName(),
-                    asset.getType(),
-                    asset.getQuantity(),
-                    asset.getPurchasePrice(),
-                    asset.getCurrentPrice(),
-                    asset.getPurchaseDate().format(DATE_FORMATTER),
-                    asset.getSector()
-                ));
+            for (Asset asset : portfolio.getAssetsView().values()) {
+                writer.writeAsset(asset);
             }
             
             return true;
@@ -90,26 +81,31 @@ public class CSVHandler {
         }
     }
     
+    /**
+     * Import portfolio rows from CSV into an existing portfolio.
+     * Rows are streamed and bad rows are collected in the report rather
+     * than failing the whole import; returns null only on I/O errors.
+     */
+    public static ImportReport importPortfolio(String filename, Portfolio portfolio) {
+        try {
+            return StreamingCSVImporter.importPortfolio(filename, portfolio);
+        } catch (IOException e) {
+            System.err.println("Error importing portfolio: " + e.getMessage());
+            return null;
+        }
+    }
+    
     /**
      * Export transaction history to CSV.
      */
     public static boolean exportTransactions(Portfolio portfolio, String filename) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
+        try (CSVExportWriter writer = new CSVExportWriter(filename)) {
             // Header
-            writer.println("ID,Type,Asset Symbol,Quantity,Price Per Unit,Total Amount,Timestamp,Notes");
+            writer.writeText("ID,Type,Asset Symbol,Quantity,Price Per Unit,Total Amount,Timestamp,Notes").endRow();
             
             // Transactions
-            for (Transaction transaction : portfolio.getTransactionHistory()) {
-                writer.println(String.format("%s,%s,%s,%.4f,%.2f,%.2f,%s,%s",
-                    transaction.getId(),
-                    transaction.getType(),
-                    transaction.getAssetSymbol(),
-                    transaction.getQuantity(),
-                    transaction.getPricePerUnit(),
-                    transaction.getTotalAmount(),
-                    transaction.getTimestamp().format(DATETIME_FORMATTER),
-                    transaction.getNotes()
-                ));
+            for (Transaction transaction : portfolio.getTransactionsView()) {
+                writer.writeTransaction(transaction);
             }
             
             return true;
@@ -119,6 +115,33 @@ public class CSVHandler {
         }
     }
     
+    /**
+     * Import transaction history from CSV, as written by exportTransactions.
+     * Transactions whose ID is already in the portfolio are skipped, so
+     * overlapping statements can be re-loaded; returns null only on I/O errors.
+     */
+    public static ImportReport importTransactions(Portfolio portfolio, String filename) {
+        try {
+            return StreamingCSVImporter.importTransactions(filename, portfolio);
+        } catch (IOException e) {
+            System.err.println("Error importing transactions: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Load an end-of-day price file (Symbol,Date,Close) into every portfolio
+     * of the given users.
+     */
+    public static PriceLoadReport loadPrices(Collection<User> users, String filename) {
+        try {
+            return PriceFileLoader.loadPrices(filename, users);
+        } catch (IOException e) {
+            System.err.println("Error loading prices: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Generate portfolio summary CSV.
      */
@@ -133,7 +156,7 @@ public class CSVHandler {
             writer.println("Creation Date," + portfolio.getCreationDate().format(DATE_FORMATTER));
             writer.println();
             
-            writer.println("Total Assets," + portfolio.getAssets().size());
+            writer.println("Total Assets," + portfolio.getAssetCount());
             writer.println("Cash Balance,$" + String.format("%.2f", portfolio.getCashBalance()));
             writer.println("Total Value,$" + String.format("%.2f", portfolio.getTotalValue()));
             writer.println("Cost Basis,$" + String.format("%.2f", portfolio.getTotalCostBasis()));
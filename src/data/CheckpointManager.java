@@ -0,0 +1,206 @@
+package data;
+
+import model.*;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic checkpoints of user and portfolio state on top of a
+ * {@link TransactionJournal}.
+ *
+ * A checkpoint is a snapshot tagged with the last journal LSN it reflects.
+ * On startup the latest checkpoint is loaded and only the journal records
+ * after it are replayed, so cold-start time depends on the size of the
+ * checkpoint rather than on the length of the history. After each
+ * checkpoint a background task deletes older checkpoints and the journal
+ * segments the new one covers.
+ *
+ * Without history, checkpoints hold each portfolio's holdings, cash and net
+ * deposits but not its transactions, and compaction discards the journaled
+ * transactions for good.
+ *
+ * Checkpoints are taken on the caller's thread and must not overlap with
+ * transactions being recorded on the portfolios being written.
+ */
+public class CheckpointManager implements Closeable {
+
+    public static final long DEFAULT_INTERVAL_MILLIS = 5 * 60 * 1000;
+    public static final long DEFAULT_INTERVAL_RECORDS = 100_000;
+
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".snap";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final TransactionJournal journal;
+    private final boolean includeHistory;
+    private final long intervalMillis;
+    private final long intervalRecords;
+    private final ExecutorService compactor;
+    private long lastCheckpointLsn;
+    private long lastCheckpointMillis;
+
+    public CheckpointManager(String directory, TransactionJournal journal) {
+        this(directory, journal, false, DEFAULT_INTERVAL_MILLIS, DEFAULT_INTERVAL_RECORDS);
+    }
+
+    public CheckpointManager(String directory, TransactionJournal journal, boolean includeHistory,
+                             long intervalMillis, long intervalRecords) {
+        this.directory = Paths.get(directory);
+        this.journal = journal;
+        this.includeHistory = includeHistory;
+        this.intervalMillis = intervalMillis;
+        this.intervalRecords = intervalRecords;
+        this.lastCheckpointMillis = System.currentTimeMillis();
+        this.compactor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "checkpoint-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.directory.toFile().mkdirs();
+    }
+
+    public long getLastCheckpointLsn() { return lastCheckpointLsn; }
+
+    /**
+     * Load the latest checkpoint into the map (replacing users with the same
+     * ID) and replay the journal records after it. Portfolios named in the
+     * journal but missing from their owner are created; records for users
+     * not in the map are skipped. Returns the number of records applied.
+     *
+     * The journal is moved past the checkpoint's LSN first, so records
+     * appended after a restart are never numbered at or below it.
+     */
+    public long restore(Map<String, User> users) throws IOException {
+        long lsn = 0;
+        Long latest = latestCheckpoint();
+        if (latest != null) {
+            try (SnapshotReader reader = new SnapshotReader(checkpointPath(latest).toString())) {
+                lsn = reader.getCheckpointLsn();
+                reader.forEachUser(user -> users.put(user.getUserId(), user));
+            }
+        }
+        lastCheckpointLsn = lsn;
+        lastCheckpointMillis = System.currentTimeMillis();
+
+        journal.startAfter(lsn);
+        return journal.replay(lsn, (ownerId, portfolioId) -> {
+            User user = users.get(ownerId);
+            if (user == null) return null;
+            Portfolio portfolio = user.getPortfolio(portfolioId);
+            if (portfolio == null) {
+                portfolio = new Portfolio(portfolioId, portfolioId, ownerId);
+                user.addPortfolio(portfolio);
+            }
+            return portfolio;
+        });
+    }
+
+    /**
+     * Take a checkpoint if enough records or time have passed since the last one.
+     */
+    public boolean checkpointIfDue(Collection<User> users) throws IOException {
+        long records = journal.getLastLsn() - lastCheckpointLsn;
+        if (records >= intervalRecords
+                || (records > 0 && System.currentTimeMillis() - lastCheckpointMillis >= intervalMillis)) {
+            checkpoint(users);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Write a checkpoint of the given users at the journal's current LSN and
+     * schedule compaction. Returns the checkpoint LSN.
+     *
+     * The journal is synced first and the checkpoint tagged with the durable
+     * LSN, so in RELAXED mode a crash cannot lose records the checkpoint
+     * claims to cover.
+     */
+    public long checkpoint(Collection<User> users) throws IOException {
+        journal.sync();
+        long lsn = journal.getDurableLsn();
+        Path target = checkpointPath(lsn);
+        Path temp = directory.resolve(target.getFileName() + TEMP_SUFFIX);
+
+        // Written in full and synced before it replaces anything
+        try (SnapshotWriter writer = new SnapshotWriter(temp.toString(), includeHistory)) {
+            writer.setCheckpointLsn(lsn);
+            for (User user : users) {
+                writer.writeUser(user);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        lastCheckpointLsn = lsn;
+        lastCheckpointMillis = System.currentTimeMillis();
+        compactor.execute(() -> compact(lsn));
+        return lsn;
+    }
+
+    private void compact(long lsn) {
+        try {
+            for (long start : checkpointLsns()) {
+                if (start < lsn) {
+                    Files.deleteIfExists(checkpointPath(start));
+                }
+            }
+            journal.deleteSegmentsThrough(lsn);
+        } catch (IOException e) {
+            System.err.println("Error compacting journal: " + e.getMessage());
+        }
+    }
+
+    private Long latestCheckpoint() {
+        List<Long> lsns = checkpointLsns();
+        return lsns.isEmpty() ? null : lsns.get(lsns.size() - 1);
+    }
+
+    private List<Long> checkpointLsns() {
+        List<Long> lsns = new ArrayList<>();
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(CHECKPOINT_PREFIX) && name.endsWith(CHECKPOINT_SUFFIX)) {
+                    try {
+                        lsns.add(Long.parseLong(name.substring(CHECKPOINT_PREFIX.length(),
+                            name.length() - CHECKPOINT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // Not a checkpoint
+                    }
+                }
+            }
+        }
+        Collections.sort(lsns);
+        return lsns;
+    }
+
+    private Path checkpointPath(long lsn) {
+        return directory.resolve(String.format("%s%020d%s", CHECKPOINT_PREFIX, lsn, CHECKPOINT_SUFFIX));
+    }
+
+    /**
+     * Wait for pending compaction; the journal itself is left open.
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for compaction");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package data;
+
+import java.util.*;
+
+/**
+ * Outcome of a bulk import: row counts plus the rows that were rejected.
+ * Rows that were valid but deliberately not applied (such as duplicate
+ * transaction IDs) are counted as skipped.
+ * Bad rows are recorded here instead of aborting the load. Only the
+ * first {@link #MAX_REPORTED_ERRORS} rejected rows are kept in detail.
+ */
+public class ImportReport {
+
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    /**
+     * A rejected input row.
+     */
+    public static class RowError {
+        private final long lineNumber;
+        private final String message;
+
+        public RowError(long lineNumber, String message) {
+            this.lineNumber = lineNumber;
+            this.message = message;
+        }
+
+        public long getLineNumber() { return lineNumber; }
+        public String getMessage() { return message; }
+
+        @Override
+        public String toString() {
+            return String.format("Line %d: %s", lineNumber, message);
+        }
+    }
+
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsSkipped;
+    private long errorCount;
+    private final List<RowError> errors = new ArrayList<>();
+
+    // Getters
+    public long getRowsRead() { return rowsRead; }
+    public long getRowsImported() { return rowsImported; }
+    public long getRowsSkipped() { return rowsSkipped; }
+    public long getErrorCount() { return errorCount; }
+    public boolean hasErrors() { return errorCount > 0; }
+    public List<RowError> getErrors() { return Collections.unmodifiableList(errors); }
+
+    // Recording
+    void rowRead() { rowsRead++; }
+    void rowImported() { rowsImported++; }
+    void rowSkipped() { rowsSkipped++; }
+
+    void rowRejected(long lineNumber, String message) {
+        errorCount++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new RowError(lineNumber, message));
+        }
+    }
+
+    /**
+     * Fold another report into this one (used when merging parallel chunks).
+     * Line numbers in the other report are shifted by lineOffset.
+     */
+    void merge(ImportReport other, long lineOffset) {
+        rowsRead += other.rowsRead;
+        rowsImported += other.rowsImported;
+        rowsSkipped += other.rowsSkipped;
+        errorCount += other.errorCount;
+        for (RowError error : other.errors) {
+            if (errors.size() >= MAX_REPORTED_ERRORS) break;
+            errors.add(new RowError(error.lineNumber + lineOffset, error.message));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Rows read: %d | Imported: %d | Skipped: %d | Rejected: %d",
+            rowsRead, rowsImported, rowsSkipped, errorCount);
+    }
+}
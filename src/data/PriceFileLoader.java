@@ -0,0 +1,134 @@
+package data;
+
+import model.*;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Bulk end-of-day price ingestion.
+ *
+ * Streams a price file (Symbol,Date,Close with a header row) through the
+ * same memory-mapped scanner as {@link StreamingCSVImporter} and applies
+ * each close to every holding of the symbol through a {@link HoldingsIndex}.
+ * If a file has several rows for one symbol, the latest date wins; rows on
+ * the same date are applied in file order.
+ *
+ * The same files can be appended to a {@link PriceHistory} instead.
+ */
+public class PriceFileLoader {
+
+    private static final int PRICE_FIELDS = 3;
+
+    /**
+     * Load prices into every portfolio of the given users.
+     */
+    public static PriceLoadReport loadPrices(String filename, Collection<User> users) throws IOException {
+        return loadPrices(filename, new HoldingsIndex(users));
+    }
+
+    /**
+     * Load prices into the holdings of an existing index, so that repeated
+     * loads over the same book do not re-index it.
+     */
+    public static PriceLoadReport loadPrices(String filename, HoldingsIndex holdings) throws IOException {
+        PriceRowParser parser = new PriceRowParser(holdings, new PriceLoadReport());
+        StreamingCSVImporter.scanFile(filename, parser);
+
+        PriceLoadReport report = parser.priceReport;
+        for (String symbol : holdings.getSymbols()) {
+            if (!parser.priceDays.containsKey(symbol)) {
+                int held = holdings.countHoldings(symbol);
+                if (held > 0) {
+                    report.unpriced(symbol, held);
+                }
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Append every row of a price file to a history. Each symbol's rows must
+     * be in date order and after any prices it already has; rows that are
+     * not are rejected.
+     */
+    public static ImportReport loadHistory(String filename, PriceHistory history) throws IOException {
+        HistoryRowParser parser = new HistoryRowParser(history, new ImportReport());
+        StreamingCSVImporter.scanFile(filename, parser);
+        return parser.report;
+    }
+
+    /**
+     * Parses price rows and applies each one through the holdings index.
+     */
+    static final class PriceRowParser extends StreamingCSVImporter.RowParser {
+        private final HoldingsIndex holdings;
+        private final PriceLoadReport priceReport;
+        // Date of the price applied so far for each symbol in the file
+        private final Map<String, Long> priceDays = new HashMap<>();
+
+        PriceRowParser(HoldingsIndex holdings, PriceLoadReport report) {
+            super(report, PRICE_FIELDS, true);
+            this.holdings = holdings;
+            this.priceReport = report;
+        }
+
+        @Override
+        boolean parseRow(int length) {
+            int fields = splitFields(length);
+            if (fields < PRICE_FIELDS) {
+                throw new IllegalArgumentException("Expected " + PRICE_FIELDS + " fields, found " + fields);
+            }
+            if (isEmpty(0)) {
+                throw new IllegalArgumentException("Missing symbol");
+            }
+
+            long day = CSVFieldParser.parseEpochDay(line, fieldStarts[1], fieldEnds[1]);
+            double close = number(2);
+            if (!(close > 0) || Double.isInfinite(close)) {
+                throw new IllegalArgumentException("Invalid close price: " + text(2));
+            }
+
+            String symbol = text(0);
+            Long applied = priceDays.get(symbol);
+            if (applied != null && applied > day) {
+                return false;
+            }
+            priceDays.put(symbol, day);
+
+            int updated = holdings.setPrice(symbol, close);
+            priceReport.priceApplied(symbol, updated);
+            return updated > 0;
+        }
+    }
+
+    /**
+     * Parses price rows and appends each one to a price history.
+     */
+    static final class HistoryRowParser extends StreamingCSVImporter.RowParser {
+        private final PriceHistory history;
+
+        HistoryRowParser(PriceHistory history, ImportReport report) {
+            super(report, PRICE_FIELDS, true);
+            this.history = history;
+        }
+
+        @Override
+        boolean parseRow(int length) {
+            int fields = splitFields(length);
+            if (fields < PRICE_FIELDS) {
+                throw new IllegalArgumentException("Expected " + PRICE_FIELDS + " fields, found " + fields);
+            }
+            if (isEmpty(0)) {
+                throw new IllegalArgumentException("Missing symbol");
+            }
+
+            long day = CSVFieldParser.parseEpochDay(line, fieldStarts[1], fieldEnds[1]);
+            double close = number(2);
+            if (!(close > 0) || Double.isInfinite(close)) {
+                throw new IllegalArgumentException("Invalid close price: " + text(2));
+            }
+            history.append(text(0), (int) day, close);
+            return true;
+        }
+    }
+}
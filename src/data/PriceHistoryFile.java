@@ -0,0 +1,210 @@
+package data;
+
+import model.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Binary price history file, read back by memory-mapping it.
+ *
+ * <pre>
+ * header     32 bytes: magic, version, symbol count, directory offset, point count
+ * series     for each symbol: epoch days (int32 x n), padding to 8 bytes, closes (float64 x n)
+ * directory  for each symbol: symbol length (uint16), UTF-8 symbol, n (int32), series offset (int64)
+ * </pre>
+ *
+ * Fields are big-endian. Mapped series read the columns straight from the
+ * file, so opening one costs only the directory and the data is paged in
+ * (and shared between processes) by the operating system. The header is
+ * written last, so an incomplete file is rejected.
+ */
+public class PriceHistoryFile {
+
+    static final int MAGIC = 0x53575048; // "SWPH"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    /**
+     * Read-only series over mapped columns.
+     */
+    private static final class MappedSeries extends PriceSeries {
+        private final IntBuffer days;
+        private final DoubleBuffer closes;
+
+        MappedSeries(String symbol, IntBuffer days, DoubleBuffer closes) {
+            super(symbol);
+            this.days = days;
+            this.closes = closes;
+        }
+
+        @Override public int size() { return days.limit(); }
+        @Override public int getEpochDay(int index) { return days.get(index); }
+        @Override public double getClose(int index) { return closes.get(index); }
+
+        @Override
+        public PriceSeries slice(int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, size());
+            IntBuffer daySlice = days.duplicate().position(fromIndex).limit(toIndex).slice();
+            DoubleBuffer closeSlice = closes.duplicate().position(fromIndex).limit(toIndex).slice();
+            return new MappedSeries(getSymbol(), daySlice, closeSlice);
+        }
+
+        @Override
+        public void copyCloses(double[] destination, int position) {
+            // The buffers are never moved, so a duplicate starts at index 0
+            closes.duplicate().get(destination, position, size());
+        }
+    }
+
+    /**
+     * Write every series of a history to a file.
+     */
+    public static void write(PriceHistory history, String filename) throws IOException {
+        List<String> symbols = new ArrayList<>(history.getSymbols());
+        Collections.sort(symbols);
+        long[] offsets = new long[symbols.size()];
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            channel.write(ByteBuffer.allocate(HEADER_SIZE), 0);
+            channel.position(HEADER_SIZE);
+            long position = HEADER_SIZE;
+            long points = 0;
+
+            for (int s = 0; s < symbols.size(); s++) {
+                PriceSeries series = history.getSeries(symbols.get(s));
+                int size = series.size();
+                offsets[s] = position;
+                for (int i = 0; i < size; i++) {
+                    ensureRoom(channel, buffer, 4);
+                    buffer.putInt(series.getEpochDay(i));
+                }
+                int padding = (int) (align(position + 4L * size) - (position + 4L * size));
+                ensureRoom(channel, buffer, padding);
+                buffer.put(new byte[padding]);
+                for (int i = 0; i < size; i++) {
+                    ensureRoom(channel, buffer, 8);
+                    buffer.putDouble(series.getClose(i));
+                }
+                position = align(position + 4L * size) + 8L * size;
+                points += size;
+            }
+
+            long directoryOffset = position;
+            for (int s = 0; s < symbols.size(); s++) {
+                byte[] symbol = symbols.get(s).getBytes(StandardCharsets.UTF_8);
+                if (symbol.length > 0xFFFF) {
+                    throw new IOException("Symbol too long: " + symbols.get(s));
+                }
+                ensureRoom(channel, buffer, 2 + symbol.length + 12);
+                buffer.putShort((short) symbol.length);
+                buffer.put(symbol);
+                buffer.putInt(history.getSeries(symbols.get(s)).size());
+                buffer.putLong(offsets[s]);
+            }
+            flush(channel, buffer);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putShort((short) 0);
+            header.putInt(symbols.size());
+            header.putLong(directoryOffset);
+            header.putLong(points);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Map a price history file. The returned history's series are read-only
+     * views of the file; new symbols can still be appended in memory.
+     */
+    public static PriceHistory map(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Not a price history file: " + filename);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a price history file (or not closed): " + filename);
+            }
+            int version = header.getShort(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported price history version " + version + ": " + filename);
+            }
+            int symbolCount = header.getInt(8);
+            long directoryOffset = header.getLong(12);
+            if (directoryOffset < HEADER_SIZE || directoryOffset > fileSize) {
+                throw new IOException("Corrupt price history directory: " + filename);
+            }
+
+            MappedByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset,
+                fileSize - directoryOffset);
+            List<PriceSeries> series = new ArrayList<>(symbolCount);
+            // Series are mapped in windows of up to 1 GB, each holding whole series
+            MappedByteBuffer window = null;
+            long windowStart = 0;
+            long windowEnd = 0;
+            for (int s = 0; s < symbolCount; s++) {
+                byte[] symbol = new byte[directory.getShort() & 0xFFFF];
+                directory.get(symbol);
+                int size = directory.getInt();
+                long offset = directory.getLong();
+                long closesOffset = align(offset + 4L * size);
+                long end = closesOffset + 8L * size;
+                if (offset < HEADER_SIZE || end > directoryOffset) {
+                    throw new IOException("Corrupt price history series: " + filename);
+                }
+                if (window == null || offset < windowStart || end > windowEnd) {
+                    if (end - offset > WINDOW_SIZE) {
+                        throw new IOException("Price series too large to map: " + new String(symbol, StandardCharsets.UTF_8));
+                    }
+                    windowStart = offset;
+                    windowEnd = Math.min(directoryOffset, offset + WINDOW_SIZE);
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+                }
+                IntBuffer days = slice(window, offset - windowStart, 4 * size).asIntBuffer();
+                DoubleBuffer closes = slice(window, closesOffset - windowStart, 8 * size).asDoubleBuffer();
+                series.add(new MappedSeries(new String(symbol, StandardCharsets.UTF_8), days, closes));
+            }
+            return new PriceHistory(series);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long from, int length) {
+        return buffer.duplicate().position((int) from).limit((int) from + length).slice();
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static void ensureRoom(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,45 @@
+package data;
+
+import java.util.*;
+
+/**
+ * Outcome of an end-of-day price load: the usual row counts, how many
+ * positions each symbol's price was applied to, and the holdings left
+ * without a price.
+ *
+ * Prices for symbols nobody holds, and prices older than one already
+ * applied for the same symbol, are counted as skipped rows.
+ */
+public class PriceLoadReport extends ImportReport {
+
+    private final Map<String, Integer> positionsUpdated = new LinkedHashMap<>();
+    private final Map<String, Integer> unpricedHoldings = new TreeMap<>();
+    private long totalPositionsUpdated;
+    private long totalUnpricedHoldings;
+
+    // Getters
+    /** Positions updated by the price applied for each symbol, in file order. */
+    public Map<String, Integer> getPositionsUpdated() { return Collections.unmodifiableMap(positionsUpdated); }
+    /** Held symbols that had no price in the file, with their holding counts. */
+    public Map<String, Integer> getUnpricedHoldings() { return Collections.unmodifiableMap(unpricedHoldings); }
+    public long getTotalPositionsUpdated() { return totalPositionsUpdated; }
+    public long getTotalUnpricedHoldings() { return totalUnpricedHoldings; }
+    public boolean hasUnpricedHoldings() { return totalUnpricedHoldings > 0; }
+
+    // Recording
+    void priceApplied(String symbol, int positions) {
+        Integer previous = positionsUpdated.put(symbol, positions);
+        totalPositionsUpdated += positions - (previous != null ? previous : 0);
+    }
+
+    void unpriced(String symbol, int holdings) {
+        unpricedHoldings.put(symbol, holdings);
+        totalUnpricedHoldings += holdings;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s | Positions updated: %d | Unpriced holdings: %d (%d symbols)",
+            super.toString(), totalPositionsUpdated, totalUnpricedHoldings, unpricedHoldings.size());
+    }
+}
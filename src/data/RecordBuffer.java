@@ -0,0 +1,95 @@
+package data;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static data.SnapshotFormat.*;
+
+/**
+ * Growable byte array that one binary record is encoded into before it is
+ * written. Encodings are the ones described in {@link SnapshotFormat} and
+ * are read back with {@link RecordInput}.
+ */
+final class RecordBuffer {
+    byte[] data = new byte[4096];
+    int size;
+
+    void reset() {
+        size = 0;
+    }
+
+    void putVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    void putSignedVarLong(long value) {
+        putVarLong(zigZag(value));
+    }
+
+    void putInt(int value) {
+        ensureCapacity(4);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            data[size++] = (byte) (value >>> shift);
+        }
+    }
+
+    void putDouble(double value) {
+        ensureCapacity(8);
+        long bits = Double.doubleToRawLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            data[size++] = (byte) (bits >>> shift);
+        }
+    }
+
+    // Inline UTF-8 string: length + 1 (0 for null), then the bytes
+    void putString(String value) {
+        if (value == null) {
+            putVarLong(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarLong(bytes.length + 1L);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, data, size, bytes.length);
+        size += bytes.length;
+    }
+
+    // Scaled varint when exact at 1/10000, otherwise a tag and the raw double
+    void putAmount(double value) {
+        double scaled = Math.rint(value * AMOUNT_SCALE);
+        if (Math.abs(scaled) < MAX_SCALED_AMOUNT
+                && Double.doubleToRawLongBits((long) scaled / AMOUNT_SCALE) == Double.doubleToRawLongBits(value)) {
+            putVarLong(zigZag((long) scaled) << 1);
+        } else {
+            putVarLong(AMOUNT_RAW);
+            putDouble(value);
+        }
+    }
+
+    /**
+     * Seconds as a delta from previousSecond, with the low bit flagging a
+     * nanosecond part. Returns the timestamp's epoch second for the next delta.
+     */
+    long putTimestamp(LocalDateTime timestamp, long previousSecond) {
+        long second = timestamp.toEpochSecond(ZoneOffset.UTC);
+        int nanos = timestamp.getNano();
+        putVarLong(zigZag(second - previousSecond) << 1 | (nanos != 0 ? 1 : 0));
+        if (nanos != 0) {
+            putVarLong(nanos);
+        }
+        return second;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(size + extra, data.length * 2));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static data.SnapshotFormat.*;
+
+/**
+ * Decodes fields written by {@link RecordBuffer} from a ByteBuffer, using
+ * absolute reads at its own position so the buffer can be shared.
+ */
+final class RecordInput {
+    private ByteBuffer buffer;
+    private int position;
+    private byte[] scratch = new byte[256];
+
+    void reset(ByteBuffer buffer, int position) {
+        this.buffer = buffer;
+        this.position = position;
+    }
+
+    int position() { return position; }
+
+    long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+            shift += 7;
+        }
+    }
+
+    long readSignedVarLong() {
+        return unZigZag(readVarLong());
+    }
+
+    int readInt() {
+        int value = buffer.getInt(position);
+        position += 4;
+        return value;
+    }
+
+    double readDouble() {
+        double value = buffer.getDouble(position);
+        position += 8;
+        return value;
+    }
+
+    double readAmount() {
+        long tagged = readVarLong();
+        if (tagged == AMOUNT_RAW) {
+            return readDouble();
+        }
+        return unZigZag(tagged >>> 1) / AMOUNT_SCALE;
+    }
+
+    LocalDateTime readTimestamp(long previousSecond) {
+        long tagged = readVarLong();
+        long second = previousSecond + unZigZag(tagged >>> 1);
+        int nanos = (tagged & 1) != 0 ? (int) readVarLong() : 0;
+        return LocalDateTime.ofEpochSecond(second, nanos, ZoneOffset.UTC);
+    }
+
+    String readString() {
+        int length = (int) readVarLong() - 1;
+        if (length < 0) return null;
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(position++);
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    void skipString() {
+        int length = (int) readVarLong() - 1;
+        if (length > 0) position += length;
+    }
+}
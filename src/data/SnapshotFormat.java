@@ -0,0 +1,55 @@
+package data;
+
+/**
+ * Layout of the binary snapshot files written by {@link SnapshotWriter}
+ * and read by {@link SnapshotReader}.
+ *
+ * <pre>
+ * header      64 bytes: magic, version, dictionary offset, index offset, user count,
+ *             flags, checkpoint LSN (version 2)
+ * records     for each user: its portfolio records, then the user record
+ * dictionary  string count, (count + 1) byte offsets, UTF-8 string bytes
+ * index       user count, then (user ID ref, record offset, record length) sorted by user ID
+ * </pre>
+ *
+ * Fixed-width fields are big-endian. Inside records, integers are unsigned
+ * LEB128 varints (zig-zag for signed values), repeated strings such as
+ * symbols, names, sectors and notes are dictionary references, and dates
+ * and timestamps are stored as deltas from the previous row.
+ */
+final class SnapshotFormat {
+
+    static final int MAGIC = 0x53574D53; // "SWMS"
+    static final short VERSION = 2;
+    static final short MIN_VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int VERSION_POSITION = 4;
+    static final int DICTIONARY_POSITION = 8;
+    static final int INDEX_POSITION = 16;
+    static final int USER_COUNT_POSITION = 24;
+    static final int FLAGS_POSITION = 28;
+    static final int CHECKPOINT_LSN_POSITION = 32;
+
+    // Portfolio records carry no transaction history
+    static final int FLAG_NO_HISTORY = 1;
+
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    // Amounts that are exact multiples of 1/10000 are stored as scaled varints
+    static final double AMOUNT_SCALE = 10_000.0;
+    static final long MAX_SCALED_AMOUNT = 1L << 52;
+    static final int AMOUNT_RAW = 1; // low tag bit: 8 raw bytes follow
+
+    static final long SECONDS_PER_DAY = 86_400L;
+
+    private SnapshotFormat() {}
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
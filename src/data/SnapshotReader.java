@@ -0,0 +1,319 @@
+package data;
+
+import model.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static data.SnapshotFormat.*;
+
+/**
+ * Read-only access to a snapshot written by {@link SnapshotWriter}.
+ *
+ * The file is memory-mapped. Opening it only maps the header, dictionary
+ * and user index; records are decoded on request, so one user or one
+ * portfolio can be loaded without touching the rest of the file, and
+ * dictionary strings are decoded the first time they are used.
+ * A reader is not thread-safe.
+ */
+public class SnapshotReader implements Closeable {
+
+    private static final int WINDOW_SIZE = 256 * 1024 * 1024;
+    private static final Asset.AssetType[] ASSET_TYPES = Asset.AssetType.values();
+    private static final Transaction.TransactionType[] TRANSACTION_TYPES = Transaction.TransactionType.values();
+    private static final RiskProfile.RiskTolerance[] TOLERANCES = RiskProfile.RiskTolerance.values();
+
+    private final FileChannel channel;
+    private final int version;
+    private final int flags;
+    private final long checkpointLsn;
+    private final long recordsEnd;
+    private final int userCount;
+    private final MappedByteBuffer dictionary;
+    private final int dictionaryBytes;
+    private final String[] strings;
+    private final MappedByteBuffer index;
+
+    // Mapped window over the record section
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    private final RecordInput input = new RecordInput();
+
+    public SnapshotReader(String filename) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a snapshot file: " + filename);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a snapshot file (or not closed properly): " + filename);
+            }
+            this.version = header.getShort(VERSION_POSITION);
+            if (version < MIN_VERSION || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            this.flags = version >= 2 ? header.getInt(FLAGS_POSITION) : 0;
+            this.checkpointLsn = version >= 2 ? header.getLong(CHECKPOINT_LSN_POSITION) : 0;
+
+            long dictionaryOffset = header.getLong(DICTIONARY_POSITION);
+            long indexOffset = header.getLong(INDEX_POSITION);
+            this.userCount = header.getInt(USER_COUNT_POSITION);
+            this.recordsEnd = dictionaryOffset;
+
+            this.dictionary = channel.map(FileChannel.MapMode.READ_ONLY, dictionaryOffset, indexOffset - dictionaryOffset);
+            int dictionarySize = dictionary.getInt(0);
+            this.dictionaryBytes = 4 * (dictionarySize + 2);
+            this.strings = new String[dictionarySize];
+
+            this.index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, size - indexOffset);
+            if (index.getInt(0) != userCount) {
+                throw new IOException("Corrupt snapshot index: " + filename);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Load every user in a snapshot file.
+     */
+    public static List<User> readAll(String filename) throws IOException {
+        try (SnapshotReader reader = new SnapshotReader(filename)) {
+            List<User> users = new ArrayList<>(reader.getUserCount());
+            reader.forEachUser(users::add);
+            return users;
+        }
+    }
+
+    public int getUserCount() { return userCount; }
+
+    /** Journal LSN the snapshot reflects (0 if it was not taken as a checkpoint). */
+    public long getCheckpointLsn() { return checkpointLsn; }
+
+    public boolean hasHistory() { return (flags & FLAG_NO_HISTORY) == 0; }
+
+    /**
+     * Decode every user, in the order they were written so that the file
+     * is read sequentially.
+     */
+    public void forEachUser(Consumer<? super User> action) throws IOException {
+        Integer[] entries = new Integer[userCount];
+        for (int i = 0; i < userCount; i++) {
+            entries[i] = i;
+        }
+        Arrays.sort(entries, Comparator.comparingLong(entry -> index.getLong(entryPosition(entry) + 4)));
+        for (int entry : entries) {
+            action.accept(readUserAt(entry));
+        }
+    }
+
+    /**
+     * Decode one user with all of its portfolios, or return null if absent.
+     */
+    public User readUser(String userId) throws IOException {
+        int entry = findUser(userId);
+        return entry < 0 ? null : readUserAt(entry);
+    }
+
+    /**
+     * Decode a single portfolio without decoding the rest of its owner's
+     * data, or return null if absent.
+     */
+    public Portfolio readPortfolio(String userId, String portfolioId) throws IOException {
+        int entry = findUser(userId);
+        if (entry < 0) return null;
+
+        seekUser(entry);
+        skipUserFields();
+        int portfolios = (int) input.readVarLong();
+        for (int i = 0; i < portfolios; i++) {
+            String id = input.readString();
+            long offset = input.readVarLong();
+            int length = (int) input.readVarLong();
+            if (portfolioId.equals(id)) {
+                return readPortfolioAt(offset, length);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * IDs of all users in the snapshot, in sorted order.
+     */
+    public List<String> getUserIds() {
+        List<String> ids = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            ids.add(string(index.getInt(entryPosition(i))));
+        }
+        return ids;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    // Index lookup (binary search over entries sorted by user ID)
+    private int findUser(String userId) {
+        int low = 0;
+        int high = userCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = string(index.getInt(entryPosition(mid))).compareTo(userId);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static int entryPosition(int entry) {
+        return 4 + entry * INDEX_ENTRY_SIZE;
+    }
+
+    // Record decoding
+    private User readUserAt(int entry) throws IOException {
+        seekUser(entry);
+        String userId = string((int) input.readVarLong());
+        String username = input.readString();
+        String email = input.readString();
+        String fullName = input.readString();
+        LocalDateTime createdAt = input.readTimestamp(0);
+        LocalDateTime lastLoginAt = input.readTimestamp(0);
+        User user = new User(userId, username, email, fullName, createdAt, lastLoginAt);
+        user.setRiskProfile(readRiskProfile());
+
+        int portfolios = (int) input.readVarLong();
+        long[] offsets = new long[portfolios];
+        int[] lengths = new int[portfolios];
+        for (int i = 0; i < portfolios; i++) {
+            input.skipString();
+            offsets[i] = input.readVarLong();
+            lengths[i] = (int) input.readVarLong();
+        }
+        for (int i = 0; i < portfolios; i++) {
+            user.addPortfolio(readPortfolioAt(offsets[i], lengths[i]));
+        }
+        return user;
+    }
+
+    private void skipUserFields() {
+        input.readVarLong();
+        input.skipString();
+        input.skipString();
+        input.skipString();
+        input.readTimestamp(0);
+        input.readTimestamp(0);
+        readRiskProfile();
+    }
+
+    private RiskProfile readRiskProfile() {
+        int tolerance = (int) input.readVarLong();
+        if (tolerance == 0) return null;
+        int age = (int) input.readVarLong();
+        int horizon = (int) input.readVarLong();
+        double annualIncome = input.readDouble();
+        double liquidityNeeds = input.readDouble();
+        return new RiskProfile(TOLERANCES[tolerance - 1], age, horizon, annualIncome, liquidityNeeds);
+    }
+
+    private Portfolio readPortfolioAt(long offset, int length) throws IOException {
+        seek(offset, length);
+        String portfolioId = input.readString();
+        String portfolioName = input.readString();
+        String ownerId = readRef();
+        long creationDay = input.readSignedVarLong();
+        double cashBalance = input.readDouble();
+        double netDeposits = version >= 2 ? input.readDouble() : 0.0;
+        Portfolio portfolio = new Portfolio(portfolioId, portfolioName, ownerId, LocalDate.ofEpochDay(creationDay));
+
+        int assets = (int) input.readVarLong();
+        long day = creationDay;
+        for (int i = 0; i < assets; i++) {
+            String symbol = readRef();
+            String name = readRef();
+            Asset.AssetType type = ASSET_TYPES[(int) input.readVarLong()];
+            String sector = readRef();
+            double quantity = input.readAmount();
+            double purchasePrice = input.readAmount();
+            double currentPrice = input.readAmount();
+            day += input.readSignedVarLong();
+            portfolio.addAsset(new Asset(symbol, name, type, quantity, purchasePrice, currentPrice,
+                                         LocalDate.ofEpochDay(day), sector));
+        }
+
+        int transactions = (int) input.readVarLong();
+        long second = creationDay * SECONDS_PER_DAY;
+        for (int i = 0; i < transactions; i++) {
+            String id = input.readString();
+            Transaction.TransactionType type = TRANSACTION_TYPES[(int) input.readVarLong()];
+            String symbol = readRef();
+            double quantity = input.readAmount();
+            double pricePerUnit = input.readAmount();
+            LocalDateTime timestamp = input.readTimestamp(second);
+            second = timestamp.toEpochSecond(ZoneOffset.UTC);
+            String notes = readRef();
+            portfolio.recordTransaction(new Transaction(id, type, symbol, quantity, pricePerUnit, timestamp, notes));
+        }
+
+        // Cash (and, from version 2, net deposits) are restored as saved, not from the history
+        portfolio.setCashBalance(cashBalance);
+        if (version >= 2) {
+            portfolio.setNetDeposits(netDeposits);
+        }
+        return portfolio;
+    }
+
+    // Field decoders
+    private String readRef() {
+        int ref = (int) input.readVarLong();
+        return ref == 0 ? null : string(ref - 1);
+    }
+
+    private String string(int id) {
+        String value = strings[id];
+        if (value == null) {
+            int start = dictionary.getInt(4 + 4 * id);
+            int end = dictionary.getInt(8 + 4 * id);
+            byte[] bytes = new byte[end - start];
+            dictionary.duplicate().position(dictionaryBytes + start).get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = value;
+        }
+        return value;
+    }
+
+    // Windowed mapping of the record section
+    private void seekUser(int entry) throws IOException {
+        int entryPosition = entryPosition(entry);
+        seek(index.getLong(entryPosition + 4), index.getInt(entryPosition + 12));
+    }
+
+    private void seek(long offset, int length) throws IOException {
+        if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+            long size = Math.max(length, Math.min(WINDOW_SIZE, recordsEnd - offset));
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            windowStart = offset;
+        }
+        input.reset(window, (int) (offset - windowStart));
+    }
+}
@@ -0,0 +1,301 @@
+package data;
+
+import model.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static data.SnapshotFormat.*;
+
+/**
+ * Writes users and their portfolios to a compact binary snapshot.
+ *
+ * Records are streamed to the file as users are written; the string
+ * dictionary, the user index and the header go out on close. Until then
+ * the header is blank, so a snapshot that was never closed is rejected
+ * by {@link SnapshotReader}. See {@link SnapshotFormat} for the layout.
+ */
+public class SnapshotWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Index entry for one user record. */
+    private static class IndexEntry {
+        final String userId;
+        final int userIdRef;
+        final long offset;
+        final int length;
+
+        IndexEntry(String userId, int userIdRef, long offset, int length) {
+            this.userId = userId;
+            this.userIdRef = userIdRef;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final RecordBuffer record = new RecordBuffer();
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, IndexEntry> index = new HashMap<>();
+    private final boolean includeHistory;
+    private long position = HEADER_SIZE;
+    private long checkpointLsn;
+    private boolean closed;
+
+    public SnapshotWriter(String filename) throws IOException {
+        this(filename, true);
+    }
+
+    /**
+     * Open a snapshot file; without history, portfolios are written with
+     * their holdings, cash and net deposits but no transactions.
+     */
+    public SnapshotWriter(String filename, boolean includeHistory) throws IOException {
+        this.includeHistory = includeHistory;
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        channel.write(ByteBuffer.allocate(HEADER_SIZE), 0);
+        channel.position(HEADER_SIZE);
+    }
+
+    /**
+     * Write a snapshot of the given users to a file.
+     */
+    public static void write(String filename, Collection<User> users) throws IOException {
+        try (SnapshotWriter writer = new SnapshotWriter(filename)) {
+            for (User user : users) {
+                writer.writeUser(user);
+            }
+        }
+    }
+
+    /**
+     * Record the journal LSN that this snapshot reflects.
+     */
+    public void setCheckpointLsn(long lsn) {
+        this.checkpointLsn = lsn;
+    }
+
+    /**
+     * Append a user with its risk profile and all of its portfolios.
+     */
+    public void writeUser(User user) throws IOException {
+        if (index.containsKey(user.getUserId())) {
+            throw new IllegalArgumentException("Duplicate user in snapshot: " + user.getUserId());
+        }
+
+        int portfolios = user.getPortfolioCount();
+        String[] portfolioIds = new String[portfolios];
+        long[] offsets = new long[portfolios];
+        int[] lengths = new int[portfolios];
+        int i = 0;
+        for (Portfolio portfolio : user.getPortfoliosView().values()) {
+            portfolioIds[i] = portfolio.getPortfolioId();
+            offsets[i] = position;
+            encodePortfolio(portfolio);
+            lengths[i] = writeRecord();
+            i++;
+        }
+
+        record.reset();
+        int userIdRef = ref(user.getUserId());
+        record.putVarLong(userIdRef);
+        record.putString(user.getUsername());
+        record.putString(user.getEmail());
+        record.putString(user.getFullName());
+        record.putTimestamp(user.getCreatedAt(), 0);
+        record.putTimestamp(user.getLastLoginAt(), 0);
+
+        RiskProfile profile = user.getRiskProfile();
+        if (profile == null) {
+            record.putVarLong(0);
+        } else {
+            record.putVarLong(profile.getTolerance().ordinal() + 1);
+            record.putVarLong(profile.getAge());
+            record.putVarLong(profile.getInvestmentHorizonYears());
+            record.putDouble(profile.getAnnualIncome());
+            record.putDouble(profile.getLiquidityNeeds());
+        }
+
+        record.putVarLong(portfolios);
+        for (i = 0; i < portfolios; i++) {
+            record.putString(portfolioIds[i]);
+            record.putVarLong(offsets[i]);
+            record.putVarLong(lengths[i]);
+        }
+
+        long offset = position;
+        int length = writeRecord();
+        index.put(user.getUserId(), new IndexEntry(user.getUserId(), userIdRef, offset, length));
+    }
+
+    private void encodePortfolio(Portfolio portfolio) {
+        record.reset();
+        record.putString(portfolio.getPortfolioId());
+        record.putString(portfolio.getPortfolioName());
+        putRef(portfolio.getOwnerId());
+        long creationDay = portfolio.getCreationDate().toEpochDay();
+        record.putSignedVarLong(creationDay);
+        record.putDouble(portfolio.getCashBalance());
+        record.putDouble(portfolio.getNetDeposits());
+
+        record.putVarLong(portfolio.getAssetCount());
+        long previousDay = creationDay;
+        for (Asset asset : portfolio.getAssetsView().values()) {
+            putRef(asset.getSymbol());
+            putRef(asset.getName());
+            record.putVarLong(asset.getType().ordinal());
+            putRef(asset.getSector());
+            record.putAmount(asset.getQuantity());
+            record.putAmount(asset.getPurchasePrice());
+            record.putAmount(asset.getCurrentPrice());
+            long day = asset.getPurchaseDate().toEpochDay();
+            record.putSignedVarLong(day - previousDay);
+            previousDay = day;
+        }
+
+        if (!includeHistory) {
+            record.putVarLong(0);
+            return;
+        }
+        record.putVarLong(portfolio.getTransactionCount());
+        long previousSecond = creationDay * SECONDS_PER_DAY;
+        for (Transaction transaction : portfolio.getTransactionsView()) {
+            record.putString(transaction.getId());
+            record.putVarLong(transaction.getType().ordinal());
+            putRef(transaction.getAssetSymbol());
+            record.putAmount(transaction.getQuantity());
+            record.putAmount(transaction.getPricePerUnit());
+            previousSecond = record.putTimestamp(transaction.getTimestamp(), previousSecond);
+            putRef(transaction.getNotes());
+        }
+    }
+
+    // Field encoders
+    private int ref(String value) {
+        Integer id = dictionary.get(value);
+        if (id == null) {
+            id = strings.size();
+            dictionary.put(value, id);
+            strings.add(value);
+        }
+        return id;
+    }
+
+    private void putRef(String value) {
+        record.putVarLong(value == null ? 0 : ref(value) + 1L);
+    }
+
+    // Output
+    private int writeRecord() throws IOException {
+        int length = record.size;
+        if (length > buffer.remaining()) {
+            flush();
+        }
+        if (length > buffer.capacity()) {
+            ByteBuffer large = ByteBuffer.wrap(record.data, 0, length);
+            while (large.hasRemaining()) {
+                channel.write(large);
+            }
+        } else {
+            buffer.put(record.data, 0, length);
+        }
+        position += length;
+        return length;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            if (!buffer.hasRemaining()) flush();
+            int count = Math.min(data.remaining(), buffer.remaining());
+            ByteBuffer slice = data.duplicate();
+            slice.limit(slice.position() + count);
+            buffer.put(slice);
+            data.position(data.position() + count);
+        }
+        position += data.limit();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            List<IndexEntry> entries = new ArrayList<>(index.values());
+            entries.sort(Comparator.comparing(entry -> entry.userId));
+
+            long dictionaryOffset = position;
+            writeDictionary();
+
+            long indexOffset = position;
+            ByteBuffer table = ByteBuffer.allocate(4 + entries.size() * INDEX_ENTRY_SIZE);
+            table.putInt(entries.size());
+            for (IndexEntry entry : entries) {
+                table.putInt(entry.userIdRef);
+                table.putLong(entry.offset);
+                table.putInt(entry.length);
+            }
+            table.flip();
+            writeFully(table);
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(0, MAGIC);
+            header.putShort(VERSION_POSITION, VERSION);
+            header.putLong(DICTIONARY_POSITION, dictionaryOffset);
+            header.putLong(INDEX_POSITION, indexOffset);
+            header.putInt(USER_COUNT_POSITION, entries.size());
+            header.putInt(FLAGS_POSITION, includeHistory ? 0 : FLAG_NO_HISTORY);
+            header.putLong(CHECKPOINT_LSN_POSITION, checkpointLsn);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeDictionary() throws IOException {
+        byte[][] encoded = new byte[strings.size()][];
+        long total = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            total += encoded[i].length;
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot dictionary too large: " + total + " bytes");
+        }
+
+        ByteBuffer table = ByteBuffer.allocate(4 * (encoded.length + 2));
+        table.putInt(encoded.length);
+        int offset = 0;
+        table.putInt(offset);
+        for (byte[] bytes : encoded) {
+            offset += bytes.length;
+            table.putInt(offset);
+        }
+        table.flip();
+        writeFully(table);
+        for (byte[] bytes : encoded) {
+            writeFully(ByteBuffer.wrap(bytes));
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package data;
+
+import model.*;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Streaming, allocation-light CSV import.
+ *
+ * Files are memory-mapped in fixed-size windows and parsed straight from
+ * the mapped bytes with hand-written number and date parsers, so memory
+ * use is bounded by the window size rather than the file size. Each row
+ * is pushed to a consumer as soon as it is parsed; bad rows are recorded
+ * in an {@link ImportReport} and do not abort the load.
+ *
+ * Large files can also be split into line-aligned chunks that are parsed
+ * on a fork-join pool and handed to the consumer in file order, so the
+ * result is the same at any parallelism level.
+ *
+ * Row layouts match {@link CSVHandler#exportPortfolio}:
+ * Symbol,Name,Type,Quantity,Purchase Price,Current Price,Purchase Date[,Sector]
+ * and {@link CSVHandler#exportTransactions}:
+ * ID,Type,Asset Symbol,Quantity,Price Per Unit,Total Amount,Timestamp[,Notes]
+ */
+public class StreamingCSVImporter {
+
+    static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    static final int MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final int ASSET_FIELDS = 8;
+    private static final int REQUIRED_ASSET_FIELDS = 7;
+    private static final int TRANSACTION_FIELDS = 8;
+    private static final int REQUIRED_TRANSACTION_FIELDS = 7;
+
+    /**
+     * Receives one line at a time as a [start, end) range of a buffer.
+     */
+    interface LineHandler {
+        void line(ByteBuffer buffer, int start, int end);
+    }
+
+    /**
+     * Import assets from a CSV file, pushing each parsed asset to the sink.
+     */
+    public static ImportReport importAssets(String filename, Consumer<? super Asset> sink) throws IOException {
+        AssetRowParser parser = new AssetRowParser(sink, new ImportReport(), true);
+        scanFile(filename, parser);
+        return parser.report;
+    }
+
+    /**
+     * Import assets from CSV bytes already in memory (position to limit).
+     */
+    public static ImportReport importAssets(ByteBuffer buffer, Consumer<? super Asset> sink) {
+        AssetRowParser parser = new AssetRowParser(sink, new ImportReport(), true);
+        scanLines(buffer, buffer.position(), buffer.limit(), true, parser);
+        return parser.report;
+    }
+
+    /**
+     * Import assets from a CSV file into an existing portfolio.
+     */
+    public static ImportReport importPortfolio(String filename, Portfolio portfolio) throws IOException {
+        return importAssets(filename, portfolio::addAsset);
+    }
+
+    /**
+     * Import assets from a CSV file using the given number of parser threads.
+     * Chunks are delivered to the sink on the calling thread in file order;
+     * at most two chunks per thread are buffered at any time.
+     */
+    public static ImportReport importAssetsParallel(String filename, int parallelism,
+                                                    Consumer<? super Asset> sink) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+
+        ImportReport report = new ImportReport();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, parallelism * CHUNKS_PER_THREAD);
+            int chunks = bounds.length - 1;
+            Deque<Future<ChunkResult>> inFlight = new ArrayDeque<>();
+            int nextChunk = 0;
+            long linesBefore = 0;
+
+            while (nextChunk < chunks || !inFlight.isEmpty()) {
+                while (nextChunk < chunks && inFlight.size() < parallelism * 2) {
+                    final int chunk = nextChunk++;
+                    inFlight.add(pool.submit(() -> parseChunk(channel, bounds[chunk], bounds[chunk + 1], chunk == 0)));
+                }
+
+                ChunkResult result = await(inFlight.poll());
+                result.assets.forEach(sink);
+                report.merge(result.report, linesBefore);
+                linesBefore += result.lines;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return report;
+    }
+
+    /**
+     * Import assets from a CSV file into an existing portfolio in parallel.
+     */
+    public static ImportReport importPortfolioParallel(String filename, Portfolio portfolio,
+                                                       int parallelism) throws IOException {
+        return importAssetsParallel(filename, parallelism, portfolio::addAsset);
+    }
+
+    /**
+     * Import transactions from a CSV file into a portfolio, skipping any
+     * whose ID is already in its history.
+     */
+    public static ImportReport importTransactions(String filename, Portfolio portfolio) throws IOException {
+        return importTransactions(filename, portfolio, new TransactionIdIndex(portfolio));
+    }
+
+    /**
+     * Import transactions using an existing ID index for the portfolio, so
+     * that several files can be loaded without re-indexing the history.
+     * A bad row is rejected and reported, but a failure to journal a
+     * recorded row stops the import with that IOException.
+     */
+    public static ImportReport importTransactions(String filename, Portfolio portfolio,
+                                                  TransactionIdIndex knownIds) throws IOException {
+        TransactionRowParser parser = new TransactionRowParser(portfolio, knownIds, new ImportReport());
+        try {
+            scanFile(filename, parser);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return parser.report;
+    }
+
+    /**
+     * Assets and report for one chunk of a parallel import.
+     */
+    private static class ChunkResult {
+        final List<Asset> assets = new ArrayList<>();
+        final ImportReport report = new ImportReport();
+        long lines;
+    }
+
+    private static ChunkResult parseChunk(FileChannel channel, long start, long end,
+                                          boolean skipHeader) throws IOException {
+        ChunkResult result = new ChunkResult();
+        int length = (int) (end - start);
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        AssetRowParser parser = new AssetRowParser(result.assets::add, result.report, skipHeader);
+        scanLines(window, 0, length, true, parser);
+        result.lines = parser.lineNumber;
+        return result;
+    }
+
+    /**
+     * Split a file into roughly equal chunks that each start at a line start.
+     * Returns chunk boundaries: chunk i covers [bounds[i], bounds[i + 1]).
+     */
+    static long[] chunkBounds(FileChannel channel, int targetChunks) throws IOException {
+        long size = channel.size();
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(WINDOW_SIZE, (size + targetChunks - 1) / targetChunks));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+        long start = 0;
+        while (start < size) {
+            long end = start + chunkSize >= size ? size : nextLineStart(channel, start + chunkSize, probe);
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IOException("Line too long to map at offset " + start);
+            }
+            bounds.add(end);
+            start = end;
+        }
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+        // Start one byte early so a chunk boundary right after '\n' stays put
+        long offset = position - 1;
+        while (true) {
+            probe.clear();
+            int read = channel.read(probe, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    private static ChunkResult await(Future<ChunkResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Map the file window by window and feed every line to the handler.
+     * A line is never split across windows.
+     */
+    static void scanFile(String filename, LineHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+
+            while (position < size) {
+                int length = (int) Math.min(WINDOW_SIZE, size - position);
+                boolean endOfInput = position + length == size;
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                int consumed = scanLines(window, 0, length, endOfInput, handler);
+                if (consumed == 0) {
+                    throw new IOException("Line longer than " + WINDOW_SIZE + " bytes at offset " + position);
+                }
+                position += consumed;
+            }
+        }
+    }
+
+    /**
+     * Feed each complete line in buffer[from, to) to the handler. Unless the
+     * range ends the input, a trailing partial line is left unconsumed.
+     * Returns the offset just past the last line consumed.
+     */
+    static int scanLines(ByteBuffer buffer, int from, int to, boolean endOfInput, LineHandler handler) {
+        int lineStart = from;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                handler.line(buffer, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        if (endOfInput && lineStart < to) {
+            handler.line(buffer, lineStart, to);
+            lineStart = to;
+        }
+        return lineStart;
+    }
+
+    /**
+     * Base for row parsers: copies each line into a reusable buffer, tracks
+     * line numbers, skips the header and blank lines, and splits fields.
+     */
+    abstract static class RowParser implements LineHandler {
+        final ImportReport report;
+        final int[] fieldStarts;
+        final int[] fieldEnds;
+        byte[] line = new byte[256];
+        long lineNumber;
+        private boolean skipHeader;
+
+        RowParser(ImportReport report, int maxFields, boolean skipHeader) {
+            this.report = report;
+            this.fieldStarts = new int[maxFields];
+            this.fieldEnds = new int[maxFields];
+            this.skipHeader = skipHeader;
+        }
+
+        @Override
+        public void line(ByteBuffer buffer, int start, int end) {
+            lineNumber++;
+            int length = end - start;
+            if (length > 0 && buffer.get(end - 1) == '\r') length--;
+
+            if (skipHeader) {
+                skipHeader = false;
+                return;
+            }
+            if (length == 0) return;
+
+            if (length > line.length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                line[i] = buffer.get(start + i);
+            }
+
+            report.rowRead();
+            try {
+                if (parseRow(length)) {
+                    report.rowImported();
+                } else {
+                    report.rowSkipped();
+                }
+            } catch (UncheckedIOException e) {
+                throw e; // e.g. a journal write failed: not the row's fault
+            } catch (RuntimeException e) {
+                report.rowRejected(lineNumber, e.getMessage());
+            }
+        }
+
+        /**
+         * Split line[0, length) on commas into trimmed fields. Returns the
+         * number of fields found (at most fieldStarts.length); anything
+         * after the last field is ignored.
+         */
+        int splitFields(int length) {
+            int count = 0;
+            int fieldStart = 0;
+            for (int i = 0; i <= length && count < fieldStarts.length; i++) {
+                if (i == length || line[i] == ',') {
+                    int start = CSVFieldParser.trimStart(line, fieldStart, i);
+                    fieldStarts[count] = start;
+                    fieldEnds[count] = CSVFieldParser.trimEnd(line, start, i);
+                    count++;
+                    fieldStart = i + 1;
+                }
+            }
+            return count;
+        }
+
+        boolean isEmpty(int field) {
+            return fieldStarts[field] == fieldEnds[field];
+        }
+
+        /**
+         * Extend the last field to the end of the line, keeping any commas in it.
+         */
+        void extendToEnd(int field, int length) {
+            fieldEnds[field] = CSVFieldParser.trimEnd(line, fieldStarts[field], length);
+        }
+
+        String text(int field) {
+            return CSVFieldParser.decode(line, fieldStarts[field], fieldEnds[field]);
+        }
+
+        double number(int field) {
+            return CSVFieldParser.parseDouble(line, fieldStarts[field], fieldEnds[field]);
+        }
+
+        /**
+         * Parse one data row; return false if the row was deliberately skipped.
+         * Throw to reject it.
+         */
+        abstract boolean parseRow(int length);
+    }
+
+    /**
+     * Parses asset rows and pushes each Asset to a consumer.
+     */
+    static final class AssetRowParser extends RowParser {
+        private static final Asset.AssetType[] ASSET_TYPES = Asset.AssetType.values();
+        private static final byte[][] TYPE_NAMES = new byte[ASSET_TYPES.length][];
+        static {
+            for (Asset.AssetType type : ASSET_TYPES) {
+                TYPE_NAMES[type.ordinal()] = type.name().getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+
+        private final Consumer<? super Asset> sink;
+        private final CSVFieldParser.Interner sectors = new CSVFieldParser.Interner();
+
+        AssetRowParser(Consumer<? super Asset> sink, ImportReport report, boolean skipHeader) {
+            super(report, ASSET_FIELDS, skipHeader);
+            this.sink = sink;
+        }
+
+        @Override
+        boolean parseRow(int length) {
+            int fields = splitFields(length);
+            if (fields < REQUIRED_ASSET_FIELDS) {
+                throw new IllegalArgumentException("Expected at least " + REQUIRED_ASSET_FIELDS
+                    + " fields, found " + fields);
+            }
+
+            Asset.AssetType type = parseType(2);
+            double quantity = number(3);
+            double purchasePrice = number(4);
+            double currentPrice = number(5);
+            LocalDate purchaseDate = CSVFieldParser.parseDate(line, fieldStarts[6], fieldEnds[6]);
+            String sector = fields > 7 && !isEmpty(7)
+                ? sectors.intern(line, fieldStarts[7], fieldEnds[7])
+                : "General";
+
+            sink.accept(new Asset(text(0), text(1), type, quantity, purchasePrice,
+                                  currentPrice, purchaseDate, sector));
+            return true;
+        }
+
+        private Asset.AssetType parseType(int field) {
+            for (int i = 0; i < TYPE_NAMES.length; i++) {
+                if (CSVFieldParser.matches(line, fieldStarts[field], fieldEnds[field], TYPE_NAMES[i])) {
+                    return ASSET_TYPES[i];
+                }
+            }
+            throw new IllegalArgumentException("Unknown asset type: '" + text(field) + "'");
+        }
+    }
+
+    /**
+     * Parses transaction rows and records each new one on a portfolio.
+     */
+    static final class TransactionRowParser extends RowParser {
+        private static final Transaction.TransactionType[] TRANSACTION_TYPES = Transaction.TransactionType.values();
+        private static final byte[][] TYPE_NAMES = new byte[TRANSACTION_TYPES.length][];
+        static {
+            for (Transaction.TransactionType type : TRANSACTION_TYPES) {
+                TYPE_NAMES[type.ordinal()] = type.name().getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+
+        private final Portfolio portfolio;
+        private final TransactionIdIndex knownIds;
+        private final CSVFieldParser.Interner symbols = new CSVFieldParser.Interner();
+
+        TransactionRowParser(Portfolio portfolio, TransactionIdIndex knownIds, ImportReport report) {
+            super(report, TRANSACTION_FIELDS, true);
+            this.portfolio = portfolio;
+            this.knownIds = knownIds;
+        }
+
+        @Override
+        boolean parseRow(int length) {
+            int fields = splitFields(length);
+            if (fields < REQUIRED_TRANSACTION_FIELDS) {
+                throw new IllegalArgumentException("Expected at least " + REQUIRED_TRANSACTION_FIELDS
+                    + " fields, found " + fields);
+            }
+            if (isEmpty(0)) {
+                throw new IllegalArgumentException("Missing transaction ID");
+            }
+
+            // Checked before anything else is parsed, as most rows of an overlapping load are known
+            if (knownIds.contains(line, fieldStarts[0], fieldEnds[0])) {
+                return false;
+            }
+
+            Transaction.TransactionType type = parseType(1);
+            String symbol = symbols.intern(line, fieldStarts[2], fieldEnds[2]);
+            double quantity = number(3);
+            double pricePerUnit = number(4);
+            LocalDateTime timestamp = CSVFieldParser.parseDateTime(line, fieldStarts[6], fieldEnds[6]);
+            String notes = "";
+            if (fields == TRANSACTION_FIELDS) {
+                extendToEnd(7, length);
+                notes = text(7);
+            }
+
+            String id = text(0);
+            portfolio.recordTransaction(new Transaction(id, type, symbol, quantity, pricePerUnit, timestamp, notes));
+            knownIds.add(id, portfolio.getTransactionCount() - 1);
+            return true;
+        }
+
+        private Transaction.TransactionType parseType(int field) {
+            for (int i = 0; i < TYPE_NAMES.length; i++) {
+                if (CSVFieldParser.matches(line, fieldStarts[field], fieldEnds[field], TYPE_NAMES[i])) {
+                    return TRANSACTION_TYPES[i];
+                }
+            }
+            throw new IllegalArgumentException("Unknown transaction type: '" + text(field) + "'");
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package data;
+
+import model.*;
+import java.util.List;
+
+/**
+ * Compact set of the transaction IDs in a portfolio's history, used to
+ * skip transactions that were already loaded.
+ *
+ * Each ID is stored as a 64-bit fingerprint plus its position in the
+ * transaction history, in open-addressed primitive arrays (no per-entry
+ * objects). A fingerprint match is confirmed against the real ID in the
+ * history, so lookups stay exact even if two IDs share a fingerprint.
+ *
+ * The index covers the history as it was when the index was built plus
+ * everything added through {@link #add}; transactions recorded on the
+ * portfolio by other means are not seen.
+ */
+public class TransactionIdIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final List<Transaction> history;
+    private long[] fingerprints; // 0 = empty slot
+    private int[] positions;
+    private int size;
+
+    public TransactionIdIndex(Portfolio portfolio) {
+        this.history = portfolio.getTransactionsView();
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < history.size() * 2) capacity <<= 1;
+        this.fingerprints = new long[capacity];
+        this.positions = new int[capacity];
+
+        for (int i = 0; i < history.size(); i++) {
+            add(history.get(i).getId(), i);
+        }
+    }
+
+    public int size() { return size; }
+
+    public boolean contains(String id) {
+        return id != null && findSlot(fingerprint(id), id) >= 0;
+    }
+
+    /**
+     * Record that the transaction at the given history position has this ID.
+     * Returns false if the ID was already present.
+     */
+    public boolean add(String id, int position) {
+        if (id == null) return false;
+
+        long fingerprint = fingerprint(id);
+        if (findSlot(fingerprint, id) >= 0) return false;
+
+        if ((size + 1) * 2 > fingerprints.length) {
+            resize(fingerprints.length * 2);
+        }
+        insert(fingerprint, position);
+        size++;
+        return true;
+    }
+
+    /**
+     * Check an ID held as UTF-8 bytes, without decoding ASCII IDs.
+     */
+    boolean contains(byte[] line, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (line[i] < 0) {
+                return contains(CSVFieldParser.decode(line, start, end));
+            }
+        }
+
+        long hash = OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ line[i]) * PRIME;
+        }
+        long fingerprint = finish(hash);
+
+        int mask = fingerprints.length - 1;
+        for (int slot = (int) fingerprint & mask; fingerprints[slot] != 0; slot = (slot + 1) & mask) {
+            if (fingerprints[slot] == fingerprint && asciiEquals(history.get(positions[slot]).getId(), line, start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Open addressing with linear probing; equal fingerprints may repeat
+    private int findSlot(long fingerprint, String id) {
+        int mask = fingerprints.length - 1;
+        for (int slot = (int) fingerprint & mask; fingerprints[slot] != 0; slot = (slot + 1) & mask) {
+            if (fingerprints[slot] == fingerprint && id.equals(history.get(positions[slot]).getId())) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(long fingerprint, int position) {
+        int mask = fingerprints.length - 1;
+        int slot = (int) fingerprint & mask;
+        while (fingerprints[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        fingerprints[slot] = fingerprint;
+        positions[slot] = position;
+    }
+
+    private void resize(int capacity) {
+        long[] oldFingerprints = fingerprints;
+        int[] oldPositions = positions;
+        fingerprints = new long[capacity];
+        positions = new int[capacity];
+        for (int i = 0; i < oldFingerprints.length; i++) {
+            if (oldFingerprints[i] != 0) {
+                insert(oldFingerprints[i], oldPositions[i]);
+            }
+        }
+    }
+
+    // 64-bit FNV-1a over UTF-16 code units, then a murmur3 finaliser
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    static long fingerprint(String id) {
+        long hash = OFFSET_BASIS;
+        for (int i = 0; i < id.length(); i++) {
+            hash = (hash ^ id.charAt(i)) * PRIME;
+        }
+        return finish(hash);
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static boolean asciiEquals(String id, byte[] line, int start, int end) {
+        if (id == null || id.length() != end - start) return false;
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) != line[start + i]) return false;
+        }
+        return true;
+    }
+}
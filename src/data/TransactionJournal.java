@@ -0,0 +1,555 @@
+package data;
+
+import model.*;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of recorded transactions.
+ *
+ * Each transaction is written as a binary record with a sequence number
+ * (LSN) and a CRC32 to numbered segment files in a directory. Writers only
+ * copy their record into a shared batch; a background flusher writes the
+ * batch and syncs it once it holds groupCommitSize records or its oldest
+ * record is groupCommitMillis old, so many writers share one fsync. In
+ * DURABLE mode append returns after its batch is synced; in RELAXED mode
+ * it returns at once and at most one batch window is lost on a crash.
+ *
+ * On open, a torn record at the end of the last segment is truncated.
+ * {@link #replay} re-applies the journal to portfolios on startup.
+ *
+ * Segment record layout: int payload length, int CRC32 of payload, long LSN, payload.
+ */
+public class TransactionJournal implements Closeable, TransactionListener {
+
+    public enum Durability { DURABLE, RELAXED }
+
+    public static final int DEFAULT_GROUP_COMMIT_SIZE = 256;
+    public static final long DEFAULT_GROUP_COMMIT_MILLIS = 1;
+
+    static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final int BATCH_BYTES = 4 * 1024 * 1024;
+    private static final int RECORD_HEADER = 16;
+    private static final int MAX_PAYLOAD = BATCH_BYTES - RECORD_HEADER;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final Transaction.TransactionType[] TRANSACTION_TYPES = Transaction.TransactionType.values();
+
+    private final Path directory;
+    private final Durability durability;
+    private final int groupCommitSize;
+    private final long groupCommitNanos;
+    private final ThreadLocal<RecordBuffer> encoders = ThreadLocal.withInitial(RecordBuffer::new);
+
+    // Guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchReady = lock.newCondition();
+    private final Condition batchWritten = lock.newCondition();
+    private ByteBuffer batch = ByteBuffer.allocate(BATCH_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocate(BATCH_BYTES);
+    private int batchRecords;
+    private long batchFirstLsn;
+    private long batchStartNanos;
+    private boolean syncRequested;
+    private boolean rollSegment;
+    private long nextLsn;
+    private long durableLsn;
+    private IOException failure;
+    private boolean closed;
+
+    // Owned by the flusher thread once started
+    private FileChannel segment;
+    private long segmentSize;
+
+    private final Thread flusher;
+    private volatile Thread replayThread;
+
+    public TransactionJournal(String directory) throws IOException {
+        this(directory, Durability.DURABLE, DEFAULT_GROUP_COMMIT_SIZE, DEFAULT_GROUP_COMMIT_MILLIS);
+    }
+
+    public TransactionJournal(String directory, Durability durability,
+                              int groupCommitSize, long groupCommitMillis) throws IOException {
+        if (groupCommitSize < 1 || groupCommitMillis < 0) {
+            throw new IllegalArgumentException("Invalid group commit settings: "
+                + groupCommitSize + " records, " + groupCommitMillis + " ms");
+        }
+        this.directory = Paths.get(directory);
+        this.durability = durability;
+        this.groupCommitSize = groupCommitSize;
+        this.groupCommitNanos = TimeUnit.MILLISECONDS.toNanos(groupCommitMillis);
+
+        this.directory.toFile().mkdirs();
+        recover();
+        this.durableLsn = nextLsn - 1;
+
+        this.flusher = new Thread(this::runFlusher, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public Durability getDurability() { return durability; }
+
+    /** LSN of the last record appended (0 if none). */
+    public long getLastLsn() {
+        lock.lock();
+        try {
+            return nextLsn - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** LSN up to which every record is synced to disk. */
+    public long getDurableLsn() {
+        lock.lock();
+        try {
+            return durableLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number the records appended from now on after the given LSN, if the
+     * journal is not already past it, e.g. when a checkpoint is ahead of
+     * the records that survived a crash. Pending records are flushed first
+     * and the next record starts a new segment, so LSNs stay contiguous
+     * within each segment and are never reused.
+     */
+    public void startAfter(long lsn) throws IOException {
+        lock.lock();
+        try {
+            while (batchRecords > 0) {
+                checkOpen();
+                syncRequested = true;
+                batchReady.signal();
+                batchWritten.awaitUninterruptibly();
+            }
+            checkOpen();
+            if (lsn >= nextLsn) {
+                nextLsn = lsn + 1;
+                rollSegment = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Journal every transaction applied to this portfolio from now on.
+     */
+    public void attach(Portfolio portfolio) {
+        portfolio.addTransactionListener(this);
+    }
+
+    public void detach(Portfolio portfolio) {
+        portfolio.removeTransactionListener(this);
+    }
+
+    // Written once the transaction is applied, so one vetoed by a listener
+    // never reaches the journal. A failed write throws UncheckedIOException
+    // to the recording thread; the transaction is then applied in memory
+    // but not durable.
+    @Override
+    public void transactionApplied(Portfolio portfolio, Transaction transaction) {
+        if (Thread.currentThread() == replayThread) return;
+        try {
+            append(portfolio, transaction);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Append a transaction for the given portfolio and return its LSN.
+     * In DURABLE mode this blocks until the record is synced.
+     */
+    public long append(Portfolio portfolio, Transaction transaction) throws IOException {
+        RecordBuffer record = encoders.get();
+        record.reset();
+        record.putString(portfolio.getOwnerId());
+        record.putString(portfolio.getPortfolioId());
+        record.putString(transaction.getId());
+        record.putVarLong(transaction.getType().ordinal());
+        record.putString(transaction.getAssetSymbol());
+        record.putAmount(transaction.getQuantity());
+        record.putAmount(transaction.getPricePerUnit());
+        record.putTimestamp(transaction.getTimestamp(), 0);
+        record.putString(transaction.getNotes());
+        if (record.size > MAX_PAYLOAD) {
+            throw new IOException("Transaction record too large: " + record.size + " bytes");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record.data, 0, record.size);
+
+        long lsn;
+        lock.lock();
+        try {
+            while (batch.remaining() < RECORD_HEADER + record.size) {
+                checkOpen();
+                syncRequested = true;
+                batchReady.signal();
+                batchWritten.awaitUninterruptibly();
+            }
+            checkOpen();
+
+            lsn = nextLsn++;
+            if (batchRecords == 0) {
+                batchFirstLsn = lsn;
+                batchStartNanos = System.nanoTime();
+            }
+            batch.putInt(record.size).putInt((int) crc.getValue()).putLong(lsn);
+            batch.put(record.data, 0, record.size);
+            batchRecords++;
+            if (batchRecords >= groupCommitSize || batchRecords == 1) {
+                batchReady.signal();
+            }
+
+            if (durability == Durability.DURABLE) {
+                awaitDurable(lsn);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return lsn;
+    }
+
+    /**
+     * Block until everything appended so far is synced to disk.
+     */
+    public void sync() throws IOException {
+        lock.lock();
+        try {
+            long target = nextLsn - 1;
+            if (durableLsn < target) {
+                syncRequested = true;
+                batchReady.signal();
+                awaitDurable(target);
+            }
+            if (failure != null) {
+                throw new IOException("Journal write failed", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Uninterruptible so a writer always learns whether its record was synced
+    private void awaitDurable(long lsn) throws IOException {
+        while (durableLsn < lsn && failure == null) {
+            batchWritten.awaitUninterruptibly();
+        }
+        if (durableLsn < lsn) {
+            throw new IOException("Journal write failed", failure);
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (failure != null) throw new IOException("Journal write failed", failure);
+        if (closed) throw new IOException("Journal is closed");
+    }
+
+    /**
+     * Re-apply every journaled transaction to the portfolio the resolver
+     * returns for its (owner ID, portfolio ID); records for which it
+     * returns null are skipped. Returns the number of transactions applied.
+     */
+    public long replay(BiFunction<String, String, Portfolio> resolver) throws IOException {
+        return replay(0, resolver);
+    }
+
+    /**
+     * Re-apply journaled transactions with an LSN after afterLsn.
+     *
+     * Every LSN after afterLsn up to the last record must be present: a
+     * missing segment, overlapping segments or a bad record anywhere but at
+     * the end of the last segment (a torn write, which opening the journal
+     * truncates) fail the replay rather than apply later records on top of
+     * missing ones. Records before the failure have been applied by then.
+     */
+    public long replay(long afterLsn, BiFunction<String, String, Portfolio> resolver) throws IOException {
+        long applied = 0;
+        RecordInput input = new RecordInput();
+        List<Long> starts = segmentStarts();
+        long next = afterLsn + 1; // lowest LSN not replayed yet
+        boolean first = true;
+        replayThread = Thread.currentThread();
+        try {
+            for (int i = 0; i < starts.size(); i++) {
+                if (i + 1 < starts.size() && starts.get(i + 1) <= afterLsn + 1) {
+                    continue; // every record in this segment is at or before afterLsn
+                }
+                long start = starts.get(i);
+                if (start > next) {
+                    throw new IOException("Journal records " + next + " to " + (start - 1) + " are missing");
+                }
+                if (start < next && !first) {
+                    throw new IOException("Journal segment " + segmentPath(start).getFileName()
+                        + " overlaps the one before it");
+                }
+                first = false;
+                try (FileChannel channel = FileChannel.open(segmentPath(start), StandardOpenOption.READ)) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    int position = 0;
+                    long expectedLsn = start;
+                    while (validRecordAt(buffer, position, expectedLsn)) {
+                        int length = buffer.getInt(position);
+                        if (expectedLsn > afterLsn) {
+                            input.reset(buffer, position + RECORD_HEADER);
+                            Portfolio portfolio = resolver.apply(input.readString(), input.readString());
+                            Transaction transaction = readTransaction(input);
+                            if (portfolio != null) {
+                                portfolio.recordTransaction(transaction);
+                                applied++;
+                            }
+                        }
+                        position += RECORD_HEADER + length;
+                        expectedLsn++;
+                    }
+                    if (position < buffer.limit() && i + 1 < starts.size()) {
+                        throw new IOException("Corrupt journal record " + expectedLsn + " in "
+                            + segmentPath(start).getFileName() + " at offset " + position);
+                    }
+                    next = Math.max(next, expectedLsn);
+                }
+            }
+        } finally {
+            replayThread = null;
+        }
+        return applied;
+    }
+
+    private static Transaction readTransaction(RecordInput input) {
+        String id = input.readString();
+        Transaction.TransactionType type = TRANSACTION_TYPES[(int) input.readVarLong()];
+        String symbol = input.readString();
+        double quantity = input.readAmount();
+        double pricePerUnit = input.readAmount();
+        LocalDateTime timestamp = input.readTimestamp(0);
+        String notes = input.readString();
+        return new Transaction(id, type, symbol, quantity, pricePerUnit, timestamp, notes);
+    }
+
+    private static boolean validRecordAt(ByteBuffer buffer, int position, long expectedLsn) {
+        if (buffer.limit() - position < RECORD_HEADER) return false;
+        int length = buffer.getInt(position);
+        if (length < 0 || length > MAX_PAYLOAD || buffer.limit() - position - RECORD_HEADER < length) {
+            return false;
+        }
+        if (buffer.getLong(position + 8) != expectedLsn) return false;
+
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(position + RECORD_HEADER + length).position(position + RECORD_HEADER);
+        crc.update(payload);
+        return (int) crc.getValue() == buffer.getInt(position + 4);
+    }
+
+    /**
+     * Delete sealed segments whose records all have an LSN at or below
+     * the given one, e.g. once a checkpoint covers them. The segment being
+     * appended to is never deleted. Returns the number of segments removed.
+     */
+    public int deleteSegmentsThrough(long lsn) throws IOException {
+        List<Long> starts = segmentStarts();
+        int deleted = 0;
+        for (int i = 0; i + 1 < starts.size() && starts.get(i + 1) <= lsn + 1; i++) {
+            Files.deleteIfExists(segmentPath(starts.get(i)));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    // Segment files
+    private List<Long> segmentStarts() {
+        List<Long> starts = new ArrayList<>();
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        starts.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // Not a segment
+                    }
+                }
+            }
+        }
+        Collections.sort(starts);
+        return starts;
+    }
+
+    private Path segmentPath(long firstLsn) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Find the end of the last segment, dropping a torn tail, and reopen it for appends.
+     */
+    private void recover() throws IOException {
+        List<Long> starts = segmentStarts();
+        if (starts.isEmpty()) {
+            nextLsn = 1;
+            return;
+        }
+
+        long firstLsn = starts.get(starts.size() - 1);
+        FileChannel channel = FileChannel.open(segmentPath(firstLsn),
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Journal segment too large: " + segmentPath(firstLsn));
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int position = 0;
+            long lsn = firstLsn;
+            while (validRecordAt(buffer, position, lsn)) {
+                position += RECORD_HEADER + buffer.getInt(position);
+                lsn++;
+            }
+            if (position < size) {
+                channel.truncate(position);
+                channel.force(true);
+            }
+            channel.position(position);
+            segment = channel;
+            segmentSize = position;
+            nextLsn = lsn;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Flusher
+    private void runFlusher() {
+        while (true) {
+            ByteBuffer toWrite;
+            long firstLsn;
+            long lastLsn;
+            boolean roll;
+            lock.lock();
+            try {
+                while (!readyToFlush()) {
+                    if (closed && batchRecords == 0) return;
+                    if (batchRecords == 0) {
+                        batchReady.awaitUninterruptibly();
+                    } else {
+                        long waited = System.nanoTime() - batchStartNanos;
+                        try {
+                            batchReady.awaitNanos(groupCommitNanos - waited);
+                        } catch (InterruptedException e) {
+                            // Keep flushing; close() is the only way to stop
+                        }
+                    }
+                }
+                toWrite = batch;
+                batch = spare;
+                spare = toWrite;
+                firstLsn = batchFirstLsn;
+                lastLsn = nextLsn - 1;
+                roll = rollSegment;
+                rollSegment = false;
+                batchRecords = 0;
+                syncRequested = false;
+                batchWritten.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                write(toWrite, firstLsn, roll);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableLsn = lastLsn;
+                }
+                batchWritten.signalAll();
+                if (error != null) return;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean readyToFlush() {
+        if (batchRecords == 0) return false;
+        return closed || syncRequested || batchRecords >= groupCommitSize
+            || System.nanoTime() - batchStartNanos >= groupCommitNanos;
+    }
+
+    private void write(ByteBuffer data, long firstLsn, boolean roll) throws IOException {
+        data.flip();
+        try {
+            if (segment == null || roll || (segmentSize > 0 && segmentSize + data.remaining() > SEGMENT_SIZE)) {
+                if (segment != null) segment.close();
+                segment = FileChannel.open(segmentPath(firstLsn), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+                segmentSize = 0;
+            }
+            segmentSize += data.remaining();
+            while (data.hasRemaining()) {
+                segment.write(data);
+            }
+            segment.force(false);
+        } finally {
+            data.clear();
+        }
+    }
+
+    /**
+     * Sync everything appended so far and stop the flusher.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            batchReady.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing journal");
+        } finally {
+            if (segment != null) segment.close();
+        }
+        if (failure != null) {
+            throw new IOException("Journal write failed", failure);
+        }
+    }
+}
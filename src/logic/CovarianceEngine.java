@@ -0,0 +1,435 @@
+package logic;
+
+import model.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Covariance and correlation of daily log returns over a rolling window
+ * of trading days, for a fixed list of symbols.
+ *
+ * The engine keeps each symbol's returns for the window in a ring of
+ * primitive rows, plus the running sums and cross products of the returns.
+ * A full computation multiplies the return rows in cache-sized tiles on a
+ * fork-join pool; {@link #addReturns} then moves the window one day by
+ * subtracting the oldest day's outer product and adding the new one, which
+ * is O(n^2) instead of O(n^2 * days).
+ *
+ * Days are the trading days on which any of the symbols has a price. A
+ * symbol with no new price on a day has a zero return for it, and a
+ * symbol with no prices at all has zero variance (and zero correlation and
+ * beta against everything). Results are daily; annualize with 252 days.
+ * Not thread-safe.
+ */
+public class CovarianceEngine {
+
+    public static final int TRADING_DAYS = 252;
+
+    static final int TILE = 64;
+    static final int DAY_CHUNK = 256;
+
+    private final String[] symbols;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final int size;
+    private final int window;
+    private final int parallelism;
+
+    // returns[i][slot]; rows are padded to a multiple of 4 with zero rows
+    private final double[][] returns;
+    private final double[] sums;
+    // Upper triangle of the cross products: products[i][j - i] for j >= i
+    private final double[][] products;
+    private final double[] lastCloses;
+    private int days;
+    private int nextSlot;
+
+    /**
+     * Empty engine; days are added with {@link #addCloses} or
+     * {@link #addReturns}.
+     */
+    public CovarianceEngine(List<String> symbols, int window, int parallelism) {
+        if (window < 2) {
+            throw new IllegalArgumentException("Window must be at least 2 days: " + window);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.symbols = symbols.toArray(new String[0]);
+        for (int i = 0; i < this.symbols.length; i++) {
+            if (indexes.put(this.symbols[i], i) != null) {
+                throw new IllegalArgumentException("Duplicate symbol: " + this.symbols[i]);
+            }
+        }
+        this.size = this.symbols.length;
+        this.window = window;
+        this.parallelism = parallelism;
+        int padded = (size + 3) & ~3;
+        this.returns = new double[padded][window];
+        this.sums = new double[size];
+        this.products = new double[size][];
+        for (int i = 0; i < size; i++) {
+            products[i] = new double[size - i];
+        }
+        this.lastCloses = new double[size];
+        Arrays.fill(lastCloses, Double.NaN);
+    }
+
+    /**
+     * Engine over the last {@code window} daily returns up to and
+     * including {@code end}, computed from a price history.
+     */
+    public static CovarianceEngine fromHistory(PriceHistory history, Collection<String> symbols,
+                                               LocalDate end, int window, int parallelism) {
+        CovarianceEngine engine = new CovarianceEngine(new ArrayList<>(symbols), window, parallelism);
+        engine.load(history, (int) end.toEpochDay());
+        return engine;
+    }
+
+    /**
+     * Engine over every symbol held in the given portfolios that has
+     * prices in the history, in symbol order.
+     */
+    public static CovarianceEngine forPortfolios(PriceHistory history, Collection<? extends PortfolioView> portfolios,
+                                                 LocalDate end, int window, int parallelism) {
+        return fromHistory(history, heldSymbols(history, portfolios), end, window, parallelism);
+    }
+
+    /**
+     * Sorted symbols held in the given portfolios that have prices in the
+     * history.
+     */
+    public static List<String> heldSymbols(PriceHistory history, Collection<? extends PortfolioView> portfolios) {
+        Set<String> held = new TreeSet<>();
+        for (PortfolioView portfolio : portfolios) {
+            portfolio.forEachAsset(asset -> {
+                if (history.hasSymbol(asset.getSymbol())) held.add(asset.getSymbol());
+            });
+        }
+        return new ArrayList<>(held);
+    }
+
+    // Getters
+    public int getSymbolCount() { return size; }
+    public List<String> getSymbols() { return Collections.unmodifiableList(Arrays.asList(symbols)); }
+    public int getWindow() { return window; }
+    public int getDayCount() { return days; }
+
+    /**
+     * Position of a symbol in the matrices, or -1 if it is not covered.
+     */
+    public int indexOf(String symbol) {
+        Integer index = indexes.get(symbol);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Add a day of closes, one per symbol in engine order. A NaN (or
+     * non-positive) close means no price that day.
+     */
+    public void addCloses(double[] closes) {
+        checkLength(closes);
+        double[] dayReturns = new double[size];
+        for (int i = 0; i < size; i++) {
+            double close = closes[i];
+            if (close > 0) {
+                double last = lastCloses[i];
+                dayReturns[i] = last > 0 ? Math.log(close / last) : 0.0;
+                lastCloses[i] = close;
+            }
+        }
+        addReturns(dayReturns);
+    }
+
+    /**
+     * Add the closes of every symbol on a date, taken from a history.
+     */
+    public void addCloses(PriceHistory history, LocalDate date) {
+        double[] closes = new double[size];
+        for (int i = 0; i < size; i++) {
+            PriceSeries series = history.getSeries(symbols[i]);
+            int index = series == null ? -1 : series.indexAsOf((int) date.toEpochDay());
+            closes[i] = index >= 0 && series.getEpochDay(index) == date.toEpochDay()
+                ? series.getClose(index) : Double.NaN;
+        }
+        addCloses(closes);
+    }
+
+    /**
+     * Add a day of returns, one per symbol in engine order, dropping the
+     * oldest day once the window is full.
+     */
+    public void addReturns(double[] dayReturns) {
+        checkLength(dayReturns);
+        int slot = nextSlot;
+        boolean full = days == window;
+        double[] old = new double[size];
+        if (full) {
+            for (int i = 0; i < size; i++) {
+                old[i] = returns[i][slot];
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            returns[i][slot] = dayReturns[i];
+            sums[i] += dayReturns[i] - old[i];
+        }
+        // Rank-one updates of the cross products
+        forEachRowBlock(i -> {
+            double[] row = products[i];
+            double ri = dayReturns[i];
+            double oi = old[i];
+            for (int j = i; j < size; j++) {
+                row[j - i] += ri * dayReturns[j] - oi * old[j];
+            }
+        });
+        nextSlot = (slot + 1) % window;
+        if (!full) days++;
+    }
+
+    /**
+     * Recompute the sums and cross products from the stored returns,
+     * discarding rounding drift from rolling updates.
+     */
+    public void recompute() {
+        for (int i = 0; i < size; i++) {
+            double sum = 0.0;
+            for (double r : returns[i]) sum += r;
+            sums[i] = sum;
+        }
+        int tiles = (size + TILE - 1) / TILE;
+        int pairs = tiles * (tiles + 1) / 2;
+        run(() -> IntStream.range(0, pairs).parallel().forEach(pair -> {
+            // Pair number to (row tile, column tile) with row <= column
+            int row = 0;
+            int remaining = pair;
+            while (remaining >= tiles - row) {
+                remaining -= tiles - row;
+                row++;
+            }
+            multiplyTile(row * TILE, (row + remaining) * TILE);
+        }));
+    }
+
+    // Cross products for one tile of rows against one tile of columns,
+    // four by four, over chunks of days that stay in cache
+    private void multiplyTile(int rowStart, int columnStart) {
+        int rowEnd = Math.min(size, rowStart + TILE);
+        int columnEnd = Math.min(size, columnStart + TILE);
+        double[] block = new double[TILE * TILE];
+        for (int dayStart = 0; dayStart < window; dayStart += DAY_CHUNK) {
+            int dayEnd = Math.min(window, dayStart + DAY_CHUNK);
+            for (int i = rowStart; i < rowEnd; i += 4) {
+                double[] a0 = returns[i], a1 = returns[i + 1], a2 = returns[i + 2], a3 = returns[i + 3];
+                for (int j = columnStart; j < columnEnd; j += 4) {
+                    double[] b0 = returns[j], b1 = returns[j + 1], b2 = returns[j + 2], b3 = returns[j + 3];
+                    double s00 = 0, s01 = 0, s02 = 0, s03 = 0, s10 = 0, s11 = 0, s12 = 0, s13 = 0;
+                    double s20 = 0, s21 = 0, s22 = 0, s23 = 0, s30 = 0, s31 = 0, s32 = 0, s33 = 0;
+                    for (int t = dayStart; t < dayEnd; t++) {
+                        double x0 = b0[t], x1 = b1[t], x2 = b2[t], x3 = b3[t];
+                        double v0 = a0[t], v1 = a1[t], v2 = a2[t], v3 = a3[t];
+                        s00 += v0 * x0; s01 += v0 * x1; s02 += v0 * x2; s03 += v0 * x3;
+                        s10 += v1 * x0; s11 += v1 * x1; s12 += v1 * x2; s13 += v1 * x3;
+                        s20 += v2 * x0; s21 += v2 * x1; s22 += v2 * x2; s23 += v2 * x3;
+                        s30 += v3 * x0; s31 += v3 * x1; s32 += v3 * x2; s33 += v3 * x3;
+                    }
+                    int cell = (i - rowStart) * TILE + (j - columnStart);
+                    block[cell] += s00; block[cell + 1] += s01; block[cell + 2] += s02; block[cell + 3] += s03;
+                    cell += TILE;
+                    block[cell] += s10; block[cell + 1] += s11; block[cell + 2] += s12; block[cell + 3] += s13;
+                    cell += TILE;
+                    block[cell] += s20; block[cell + 1] += s21; block[cell + 2] += s22; block[cell + 3] += s23;
+                    cell += TILE;
+                    block[cell] += s30; block[cell + 1] += s31; block[cell + 2] += s32; block[cell + 3] += s33;
+                }
+            }
+        }
+        for (int i = rowStart; i < rowEnd; i++) {
+            for (int j = columnStart; j < columnEnd; j++) {
+                double value = block[(i - rowStart) * TILE + (j - columnStart)];
+                if (j >= i) products[i][j - i] = value;
+            }
+        }
+    }
+
+    /**
+     * Sample covariance of daily returns between two symbols.
+     */
+    public double getCovariance(int i, int j) {
+        if (days < 2) return 0.0;
+        double product = i <= j ? products[i][j - i] : products[j][i - j];
+        return (product - sums[i] * sums[j] / days) / (days - 1);
+    }
+
+    public double getVariance(int i) {
+        return Math.max(0.0, getCovariance(i, i));
+    }
+
+    /**
+     * Annualized volatility of a symbol's returns.
+     */
+    public double getVolatility(int i) {
+        return Math.sqrt(getVariance(i) * TRADING_DAYS);
+    }
+
+    public double getCorrelation(int i, int j) {
+        double denominator = Math.sqrt(getVariance(i) * getVariance(j));
+        if (denominator == 0) return 0.0;
+        return Math.max(-1.0, Math.min(1.0, getCovariance(i, j) / denominator));
+    }
+
+    /**
+     * Full daily covariance matrix, in engine symbol order.
+     */
+    public double[][] getCovarianceMatrix() {
+        double[][] matrix = new double[size][size];
+        forEachRowBlock(i -> {
+            for (int j = 0; j < size; j++) {
+                matrix[i][j] = getCovariance(i, j);
+            }
+        });
+        return matrix;
+    }
+
+    /**
+     * Covariance matrix of a subset of the symbols, scaled to a horizon in
+     * trading days, in the order given.
+     */
+    public double[][] getCovarianceMatrix(int[] subset, int horizonDays) {
+        double[][] matrix = new double[subset.length][subset.length];
+        for (int a = 0; a < subset.length; a++) {
+            for (int b = 0; b < subset.length; b++) {
+                matrix[a][b] = getCovariance(subset[a], subset[b]) * horizonDays;
+            }
+        }
+        return matrix;
+    }
+
+    public double[][] getCorrelationMatrix() {
+        double[][] matrix = new double[size][size];
+        forEachRowBlock(i -> {
+            for (int j = 0; j < size; j++) {
+                matrix[i][j] = i == j && getVariance(i) > 0 ? 1.0 : getCorrelation(i, j);
+            }
+        });
+        return matrix;
+    }
+
+    /**
+     * Beta of a symbol's returns against a benchmark symbol's returns.
+     */
+    public double getBeta(String symbol, String benchmark) {
+        int b = requireIndex(benchmark);
+        double variance = getVariance(b);
+        return variance == 0 ? 0.0 : getCovariance(requireIndex(symbol), b) / variance;
+    }
+
+    /**
+     * Beta of every symbol against a benchmark symbol, in engine order.
+     */
+    public double[] getBetas(String benchmark) {
+        int b = requireIndex(benchmark);
+        double variance = getVariance(b);
+        double[] betas = new double[size];
+        if (variance == 0) return betas;
+        for (int i = 0; i < size; i++) {
+            betas[i] = getCovariance(i, b) / variance;
+        }
+        return betas;
+    }
+
+    // Fill the window from a history: the last window + 1 trading days up
+    // to the end date, then one full multiplication
+    private void load(PriceHistory history, int endDay) {
+        int[] calendar = tradingDays(history, endDay);
+        for (int i = 0; i < size; i++) {
+            PriceSeries series = history.getSeries(symbols[i]);
+            if (series == null || calendar.length == 0) continue;
+            double[] row = returns[i];
+            int p = series.indexAsOf(calendar[0]);
+            double last = p >= 0 ? series.getClose(p) : Double.NaN;
+            int count = series.size();
+            for (int d = 1; d < calendar.length; d++) {
+                if (p + 1 >= count || series.getEpochDay(p + 1) > calendar[d]) continue;
+                // Last price on or before this day
+                while (p + 1 < count && series.getEpochDay(p + 1) <= calendar[d]) p++;
+                double close = series.getClose(p);
+                if (close > 0) {
+                    row[d - 1] = last > 0 ? Math.log(close / last) : 0.0;
+                    last = close;
+                }
+            }
+            lastCloses[i] = last;
+        }
+        days = Math.max(0, calendar.length - 1);
+        nextSlot = days % window;
+        recompute();
+    }
+
+    // The last window + 1 days up to endDay on which any symbol has a price
+    private int[] tradingDays(PriceHistory history, int endDay) {
+        int span = (window + 1) * 2 + 14;
+        int firstDay = endDay - span;
+        for (int attempt = 0; ; attempt++) {
+            BitSet marked = new BitSet(span + 1);
+            for (String symbol : symbols) {
+                PriceSeries s = history.getSeries(symbol);
+                if (s == null) continue;
+                int p = s.indexAsOf(endDay);
+                while (p >= 0 && s.getEpochDay(p) >= firstDay) {
+                    marked.set(s.getEpochDay(p) - firstDay);
+                    p--;
+                }
+            }
+            // Widen the search once if the calendar is sparse
+            if (marked.cardinality() < window + 1 && attempt == 0) {
+                span *= 4;
+                firstDay = endDay - span;
+                continue;
+            }
+            int count = Math.min(window + 1, marked.cardinality());
+            int[] calendar = new int[count];
+            int bit = marked.length();
+            for (int k = count - 1; k >= 0; k--) {
+                bit = marked.previousSetBit(bit - 1);
+                calendar[k] = firstDay + bit;
+            }
+            return calendar;
+        }
+    }
+
+    private interface RowTask {
+        void row(int i);
+    }
+
+    private void forEachRowBlock(RowTask task) {
+        if (parallelism == 1 || size < TILE) {
+            for (int i = 0; i < size; i++) task.row(i);
+            return;
+        }
+        run(() -> IntStream.range(0, size).parallel().forEach(task::row));
+    }
+
+    private void run(Runnable work) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(work).join();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private int requireIndex(String symbol) {
+        int index = indexOf(symbol);
+        if (index < 0) {
+            throw new IllegalArgumentException("Symbol not in covariance engine: " + symbol);
+        }
+        return index;
+    }
+
+    private void checkLength(double[] values) {
+        if (values.length != size) {
+            throw new IllegalArgumentException("Expected " + size + " values, got " + values.length);
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package logic;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Monte Carlo Value-at-Risk and Expected Shortfall for linear portfolios.
+ *
+ * Returns over the horizon are multivariate normal with zero mean and the
+ * given covariance. Each path draws independent standard normals and
+ * correlates them through the Cholesky factor of the covariance.
+ *
+ * Paths are generated in fixed blocks, each with its own SplittableRandom
+ * seeded from the run seed and the block number, and every block writes to
+ * its own slice of the output. A given seed therefore produces the same
+ * paths, and the same estimates, at any parallelism level. The inner loops
+ * allocate nothing.
+ *
+ * For one portfolio, {@link #simulateLosses} folds the exposures into the
+ * Cholesky factor and keeps only the loss per path. For many portfolios
+ * over a few risk factors, {@link #generate} stores the correlated returns
+ * once and {@link #estimate(Scenarios, double[], double[], double[])}
+ * prices each portfolio against them.
+ */
+public class MonteCarloVaR {
+
+    static final int BLOCK_SIZE = 4096;
+    private static final long BLOCK_SEED_STEP = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Correlated return paths over a fixed set of risk factors, stored path
+     * by path.
+     */
+    public static final class Scenarios {
+        private final int paths;
+        private final int factors;
+        private final double[] returns;
+
+        private Scenarios(int paths, int factors, double[] returns) {
+            this.paths = paths;
+            this.factors = factors;
+            this.returns = returns;
+        }
+
+        public int getPathCount() { return paths; }
+        public int getFactorCount() { return factors; }
+
+        public double getReturn(int path, int factor) {
+            return returns[path * factors + factor];
+        }
+    }
+
+    /**
+     * VaR and Expected Shortfall at each requested confidence level, as
+     * positive losses in the units of the exposures.
+     */
+    public static final class Result {
+        private final int paths;
+        private final double[] confidenceLevels;
+        private final double[] valueAtRisk;
+        private final double[] expectedShortfall;
+
+        private Result(int paths, double[] confidenceLevels, double[] valueAtRisk, double[] expectedShortfall) {
+            this.paths = paths;
+            this.confidenceLevels = confidenceLevels;
+            this.valueAtRisk = valueAtRisk;
+            this.expectedShortfall = expectedShortfall;
+        }
+
+        // Getters
+        public int getPathCount() { return paths; }
+        public int getLevelCount() { return confidenceLevels.length; }
+        public double getConfidenceLevel(int level) { return confidenceLevels[level]; }
+        public double getValueAtRisk(int level) { return valueAtRisk[level]; }
+        public double getExpectedShortfall(int level) { return expectedShortfall[level]; }
+
+        public double getValueAtRisk(double confidence) { return valueAtRisk[indexOf(confidence)]; }
+        public double getExpectedShortfall(double confidence) { return expectedShortfall[indexOf(confidence)]; }
+
+        private int indexOf(double confidence) {
+            for (int i = 0; i < confidenceLevels.length; i++) {
+                if (confidenceLevels[i] == confidence) return i;
+            }
+            throw new IllegalArgumentException("Confidence level not estimated: " + confidence);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Monte Carlo VaR (%,d paths)", paths));
+            for (int i = 0; i < confidenceLevels.length; i++) {
+                sb.append(String.format(" | %.1f%%: VaR $%.2f, ES $%.2f",
+                    confidenceLevels[i] * 100.0, valueAtRisk[i], expectedShortfall[i]));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Lower-triangular L with L * L^T equal to the covariance. Positive
+     * semi-definite input is accepted: a factor with no remaining variance
+     * (a cash line, or one fully explained by earlier factors) gets a zero
+     * column.
+     */
+    public static double[][] cholesky(double[][] covariance) {
+        int n = covariance.length;
+        double[][] lower = new double[n][n];
+        for (int j = 0; j < n; j++) {
+            if (covariance[j].length != n) {
+                throw new IllegalArgumentException("Covariance matrix must be square");
+            }
+            double diagonal = covariance[j][j];
+            for (int k = 0; k < j; k++) {
+                diagonal -= lower[j][k] * lower[j][k];
+            }
+            double tolerance = 1e-12 * Math.max(1.0, Math.abs(covariance[j][j]));
+            if (diagonal < -tolerance) {
+                throw new IllegalArgumentException("Covariance matrix is not positive semi-definite");
+            }
+            if (diagonal <= tolerance) {
+                continue;
+            }
+            double pivot = Math.sqrt(diagonal);
+            lower[j][j] = pivot;
+            for (int i = j + 1; i < n; i++) {
+                double sum = covariance[i][j];
+                for (int k = 0; k < j; k++) {
+                    sum -= lower[i][k] * lower[j][k];
+                }
+                lower[i][j] = sum / pivot;
+            }
+        }
+        return lower;
+    }
+
+    /**
+     * Estimate VaR and Expected Shortfall of a portfolio with the given
+     * exposure (value held) in each risk factor.
+     */
+    public static Result estimate(double[][] covariance, double[] exposures, int paths, long seed,
+                                  int parallelism, double... confidenceLevels) {
+        double[] losses = simulateLosses(covariance, exposures, paths, seed, parallelism);
+        return summarize(losses, confidenceLevels);
+    }
+
+    /**
+     * Simulated loss (negative P&L) on each path. Only the loss is kept:
+     * the exposures are folded into the Cholesky factor, so each path costs
+     * one normal draw and one multiply per factor.
+     */
+    public static double[] simulateLosses(double[][] covariance, double[] exposures, int paths, long seed,
+                                          int parallelism) {
+        int n = covariance.length;
+        if (exposures.length != n) {
+            throw new IllegalArgumentException("Expected " + n + " exposures, got " + exposures.length);
+        }
+        checkRun(paths, parallelism);
+
+        // loss = -e . (L z) = -(L^T e) . z
+        double[][] lower = cholesky(covariance);
+        double[] weights = new double[n];
+        for (int k = 0; k < n; k++) {
+            double sum = 0.0;
+            for (int i = k; i < n; i++) {
+                sum += lower[i][k] * exposures[i];
+            }
+            weights[k] = -sum;
+        }
+
+        double[] losses = new double[paths];
+        runBlocks(paths, seed, parallelism, (from, to, normal) -> {
+            for (int p = from; p < to; p++) {
+                double loss = 0.0;
+                for (int k = 0; k < n; k++) {
+                    loss += weights[k] * normal.next();
+                }
+                losses[p] = loss;
+            }
+        });
+        return losses;
+    }
+
+    /**
+     * Generate correlated return paths for a set of risk factors, to be
+     * shared by every portfolio exposed to those factors.
+     */
+    public static Scenarios generate(double[][] covariance, int paths, long seed, int parallelism) {
+        int n = covariance.length;
+        checkRun(paths, parallelism);
+        if ((long) paths * n > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many paths to store for " + n + " factors: " + paths);
+        }
+
+        double[][] lower = cholesky(covariance);
+        double[] returns = new double[paths * n];
+        runBlocks(paths, seed, parallelism, (from, to, normal) -> {
+            double[] normals = new double[n];
+            for (int p = from; p < to; p++) {
+                for (int k = 0; k < n; k++) {
+                    normals[k] = normal.next();
+                }
+                int row = p * n;
+                for (int i = 0; i < n; i++) {
+                    double[] li = lower[i];
+                    double r = 0.0;
+                    for (int k = 0; k <= i; k++) {
+                        r += li[k] * normals[k];
+                    }
+                    returns[row + i] = r;
+                }
+            }
+        });
+        return new Scenarios(paths, n, returns);
+    }
+
+    /**
+     * Estimate a portfolio against stored scenarios. The losses array is
+     * used as scratch space if it is at least as long as the path count, so
+     * a batch can reuse one array per thread; pass null to allocate one.
+     */
+    public static Result estimate(Scenarios scenarios, double[] exposures, double[] confidenceLevels,
+                                  double[] losses) {
+        int n = scenarios.factors;
+        if (exposures.length != n) {
+            throw new IllegalArgumentException("Expected " + n + " exposures, got " + exposures.length);
+        }
+        int paths = scenarios.paths;
+        if (losses == null || losses.length < paths) {
+            losses = new double[paths];
+        }
+        double[] returns = scenarios.returns;
+        for (int p = 0, row = 0; p < paths; p++, row += n) {
+            double pnl = 0.0;
+            for (int i = 0; i < n; i++) {
+                pnl += exposures[i] * returns[row + i];
+            }
+            losses[p] = -pnl;
+        }
+        return summarize(losses, paths, confidenceLevels);
+    }
+
+    /**
+     * Estimate many portfolios against the same scenarios on a fork-join
+     * pool. Results are in the order of the exposure rows.
+     */
+    public static Result[] estimateAll(Scenarios scenarios, double[][] exposures, double[] confidenceLevels,
+                                       int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        Result[] results = new Result[exposures.length];
+        ThreadLocal<double[]> buffers = ThreadLocal.withInitial(() -> new double[scenarios.paths]);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, exposures.length).parallel().forEach(i ->
+                results[i] = estimate(scenarios, exposures[i], confidenceLevels, buffers.get()))).join();
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * VaR and Expected Shortfall of a set of simulated losses. The array is
+     * reordered.
+     */
+    public static Result summarize(double[] losses, double... confidenceLevels) {
+        return summarize(losses, losses.length, confidenceLevels);
+    }
+
+    private static Result summarize(double[] losses, int paths, double[] confidenceLevels) {
+        if (confidenceLevels.length == 0) {
+            throw new IllegalArgumentException("At least one confidence level is required");
+        }
+        int widest = 0;
+        int[] tails = new int[confidenceLevels.length];
+        for (int i = 0; i < confidenceLevels.length; i++) {
+            double confidence = confidenceLevels[i];
+            if (!(confidence > 0.0 && confidence < 1.0)) {
+                throw new IllegalArgumentException("Confidence level must be between 0 and 1: " + confidence);
+            }
+            // Worst (1 - c) share of paths, at least one
+            tails[i] = Math.max(1, (int) Math.ceil((1.0 - confidence) * paths - 1e-9));
+            widest = Math.max(widest, tails[i]);
+        }
+
+        // Only the widest tail needs to be in order
+        int start = paths - widest;
+        int candidates = gatherTail(losses, paths, widest);
+        if (candidates > widest) {
+            select(losses, paths - candidates, paths - 1, start);
+        } else if (candidates < widest) {
+            select(losses, 0, paths - 1, start);
+        }
+        Arrays.sort(losses, start, paths);
+
+        double[] valueAtRisk = new double[confidenceLevels.length];
+        double[] expectedShortfall = new double[confidenceLevels.length];
+        for (int i = 0; i < confidenceLevels.length; i++) {
+            int first = paths - tails[i];
+            double sum = 0.0;
+            for (int p = first; p < paths; p++) {
+                sum += losses[p];
+            }
+            valueAtRisk[i] = losses[first];
+            expectedShortfall[i] = sum / tails[i];
+        }
+        return new Result(paths, confidenceLevels.clone(), valueAtRisk, expectedShortfall);
+    }
+
+    /**
+     * Move every loss above a threshold estimated from a sample to the end
+     * of the array, and return how many were moved. The threshold is set
+     * below the sample's tail quantile so that, almost always, at least the
+     * tail count of losses clear it; the caller falls back to selecting over
+     * the whole array when fewer do.
+     */
+    private static int gatherTail(double[] losses, int paths, int tail) {
+        int stride = 64;
+        int samples = paths / stride;
+        // Too few paths, or a tail too wide, for the sample to pay off
+        if (samples < 1024 || tail > paths / 4) return 0;
+
+        double[] sample = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            sample[i] = losses[i * stride];
+        }
+        Arrays.sort(sample);
+        // Expected tail count in the sample plus a wide margin (about five
+        // standard deviations of the sampled count)
+        double expected = (double) tail / stride;
+        int margin = (int) Math.ceil(5.0 * Math.sqrt(expected) + 8.0);
+        int index = samples - (int) Math.ceil(expected) - margin;
+        if (index <= 0) return 0;
+        double threshold = sample[index];
+
+        int end = paths;
+        for (int i = paths - 1; i >= 0; i--) {
+            if (losses[i] > threshold) {
+                swap(losses, i, --end);
+            }
+        }
+        return paths - end;
+    }
+
+    // Quickselect: afterwards values[k] is in sorted position, with nothing
+    // larger before it and nothing smaller after it
+    private static void select(double[] values, int left, int right, int k) {
+        while (right > left) {
+            int mid = (left + right) >>> 1;
+            // Median of three as pivot
+            if (values[mid] < values[left]) swap(values, mid, left);
+            if (values[right] < values[left]) swap(values, right, left);
+            if (values[right] < values[mid]) swap(values, right, mid);
+            double pivot = values[mid];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    swap(values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double t = values[i];
+        values[i] = values[j];
+        values[j] = t;
+    }
+
+    private interface BlockTask {
+        void run(int from, int to, NormalSource normal);
+    }
+
+    // Standard normals by the Marsaglia polar method, which yields them in
+    // pairs; SplittableRandom only gained nextGaussian in Java 17
+    private static final class NormalSource {
+        private final SplittableRandom random;
+        private double spare;
+        private boolean hasSpare;
+
+        NormalSource(SplittableRandom random) {
+            this.random = random;
+        }
+
+        double next() {
+            if (hasSpare) {
+                hasSpare = false;
+                return spare;
+            }
+            double u;
+            double v;
+            double s;
+            do {
+                u = 2.0 * random.nextDouble() - 1.0;
+                v = 2.0 * random.nextDouble() - 1.0;
+                s = u * u + v * v;
+            } while (s >= 1.0 || s == 0.0);
+            double scale = Math.sqrt(-2.0 * Math.log(s) / s);
+            spare = v * scale;
+            hasSpare = true;
+            return u * scale;
+        }
+    }
+
+    // Run fixed-size blocks of paths on a fork-join pool; the random stream
+    // of a block depends only on the seed and the block number
+    private static void runBlocks(int paths, long seed, int parallelism, BlockTask task) {
+        int blocks = (paths + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new Blocks(0, blocks, paths, seed, task));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static final class Blocks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int first;
+        private final int last;
+        private final int paths;
+        private final long seed;
+        private final BlockTask task;
+
+        Blocks(int first, int last, int paths, long seed, BlockTask task) {
+            this.first = first;
+            this.last = last;
+            this.paths = paths;
+            this.seed = seed;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first > 1) {
+                int mid = (first + last) >>> 1;
+                invokeAll(new Blocks(first, mid, paths, seed, task), new Blocks(mid, last, paths, seed, task));
+                return;
+            }
+            NormalSource normal = new NormalSource(new SplittableRandom(blockSeed(seed, first)));
+            int from = first * BLOCK_SIZE;
+            task.run(from, Math.min(paths, from + BLOCK_SIZE), normal);
+        }
+    }
+
+    // SplittableRandom(seed) walks seed, seed + gamma, ... with a fixed
+    // gamma, so seeds one gamma apart give overlapping streams; scramble
+    // the block number into the seed instead
+    static long blockSeed(long seed, int block) {
+        long z = seed + (block + 1) * BLOCK_SEED_STEP;
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static void checkRun(int paths, int parallelism) {
+        if (paths < 1) {
+            throw new IllegalArgumentException("Path count must be at least 1: " + paths);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+    }
+}
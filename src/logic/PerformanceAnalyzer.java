@@ -13,7 +13,7 @@ public class PerformanceAnalyzer {
     /**
      * Calculate simple return on investment (ROI).
      */
-    public static double calculateROI(Portfolio portfolio) {
+    public static double calculateROI(PortfolioView portfolio) {
         double currentValue = portfolio.getTotalValue();
         double costBasis = portfolio.getTotalCostBasis();
         
@@ -22,16 +22,31 @@ public class PerformanceAnalyzer {
     }
     
     /**
-     * Calculate annualized return.
+     * Calculate annualized return. Portfolios with deposits or withdrawals
+     * use the money-weighted return (XIRR) of those flows, which accounts
+     * for when they happened; others compound the total gain since creation.
      */
-    public static double calculateAnnualizedReturn(Portfolio portfolio) {
-        LocalDate creationDate = portfolio.getCreationDate();
-        LocalDate today = LocalDate.now();
-        long daysSinceCreation = ChronoUnit.DAYS.between(creationDate, today);
-        
+    public static double calculateAnnualizedReturn(PortfolioView portfolio) {
+        long daysSinceCreation = ChronoUnit.DAYS.between(portfolio.getCreationDate(), LocalDate.now());
         if (daysSinceCreation < 1) return 0.0;
+        return annualizedReturn(ReturnEngine.calculate(portfolio), daysSinceCreation,
+            portfolio.getTotalGainLossPercentage());
+    }
+    
+    public static double calculateAnnualizedReturn(PortfolioMetrics metrics) {
+        long daysSinceCreation = metrics.getDaysSinceCreation();
+        if (daysSinceCreation < 1) return 0.0;
+        return annualizedReturn(metrics.getReturns(), daysSinceCreation,
+            metrics.getPortfolio().getTotalGainLossPercentage());
+    }
+    
+    private static double annualizedReturn(ReturnEngine.Returns returns, long daysSinceCreation,
+                                           double gainLossPercentage) {
+        if (!Double.isNaN(returns.getMoneyWeightedReturn()) && returns.getYears() >= 0.01) {
+            return returns.getMoneyWeightedReturn() * 100.0;
+        }
         
-        double totalReturn = portfolio.getTotalGainLossPercentage() / 100.0;
+        double totalReturn = gainLossPercentage / 100.0;
         double years = daysSinceCreation / 365.25;
         
         if (years < 0.01) return totalReturn * 100.0; // Less than a few days
@@ -41,60 +56,80 @@ public class PerformanceAnalyzer {
         return annualizedReturn * 100.0;
     }
     
+    /**
+     * Calculate time-weighted return, annualized over periods of a year or
+     * more (0 if the portfolio has no deposits or withdrawals).
+     */
+    public static double calculateTimeWeightedReturn(PortfolioView portfolio) {
+        return timeWeightedReturn(ReturnEngine.calculate(portfolio));
+    }
+    
+    public static double calculateTimeWeightedReturn(PortfolioMetrics metrics) {
+        return timeWeightedReturn(metrics.getReturns());
+    }
+    
+    private static double timeWeightedReturn(ReturnEngine.Returns returns) {
+        double twr = returns.getAnnualizedTimeWeightedReturn();
+        return Double.isNaN(twr) ? 0.0 : twr * 100.0;
+    }
+    
     /**
      * Calculate portfolio turnover rate (transaction activity).
      */
-    public static double calculateTurnoverRate(Portfolio portfolio) {
-        List<Transaction> transactions = portfolio.getTransactionHistory();
+    public static double calculateTurnoverRate(PortfolioView portfolio) {
         long days = ChronoUnit.DAYS.between(portfolio.getCreationDate(), LocalDate.now());
         
         if (days < 1) return 0.0;
         
-        long buyTransactions = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.BUY)
-            .count();
-        long sellTransactions = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.SELL)
-            .count();
-        
-        double avgValue = portfolio.getTotalValue();
+        long buyTransactions = portfolio.countTransactions(Transaction.TransactionType.BUY);
+        long sellTransactions = portfolio.countTransactions(Transaction.TransactionType.SELL);
+        return turnoverRate(buyTransactions + sellTransactions, days, portfolio.getTotalValue());
+    }
+    
+    public static double calculateTurnoverRate(PortfolioMetrics metrics) {
+        long days = metrics.getDaysSinceCreation();
+        if (days < 1) return 0.0;
+        return turnoverRate(metrics.getTradeCount(), days, metrics.getTotalValue());
+    }
+    
+    private static double turnoverRate(long trades, long days, double avgValue) {
         if (avgValue == 0) return 0.0;
         
         // Transactions per year
-        double transactionsPerYear = ((buyTransactions + sellTransactions) / (days / 365.25));
+        double transactionsPerYear = (trades / (days / 365.25));
         return transactionsPerYear;
     }
     
     /**
      * Calculate total fees paid.
      */
-    public static double calculateTotalFees(Portfolio portfolio) {
-        return portfolio.getTransactionHistory().stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.FEE)
-            .mapToDouble(Transaction::getTotalAmount)
-            .sum();
+    public static double calculateTotalFees(PortfolioView portfolio) {
+        return portfolio.sumTransactionAmounts(Transaction.TransactionType.FEE);
     }
     
     /**
      * Calculate total dividends received.
      */
-    public static double calculateTotalDividends(Portfolio portfolio) {
-        return portfolio.getTransactionHistory().stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.DIVIDEND)
-            .mapToDouble(Transaction::getTotalAmount)
-            .sum();
+    public static double calculateTotalDividends(PortfolioView portfolio) {
+        return portfolio.sumTransactionAmounts(Transaction.TransactionType.DIVIDEND);
     }
     
     /**
      * Calculate yield (dividends / portfolio value).
      */
-    public static double calculateYield(Portfolio portfolio) {
-        double totalValue = portfolio.getTotalValue();
+    public static double calculateYield(PortfolioView portfolio) {
+        long days = ChronoUnit.DAYS.between(portfolio.getCreationDate(), LocalDate.now());
+        return dividendYield(calculateTotalDividends(portfolio), days, portfolio.getTotalValue());
+    }
+    
+    public static double calculateYield(PortfolioMetrics metrics) {
+        return dividendYield(metrics.getTotalDividends(), metrics.getDaysSinceCreation(), metrics.getTotalValue());
+    }
+    
+    private static double dividendYield(double annualDividends, long days, double totalValue) {
         if (totalValue == 0) return 0.0;
         
-        double annualDividends = calculateTotalDividends(portfolio);
         // Annualize if portfolio is less than 1 year old
-        long days = ChronoUnit.DAYS.between(portfolio.getCreationDate(), LocalDate.now());
         if (days < 365) {
             annualDividends = annualDividends * (365.25 / days);
         }
@@ -105,13 +140,21 @@ public class PerformanceAnalyzer {
     /**
      * Get performance summary report.
      */
-    public static String getPerformanceReport(Portfolio portfolio) {
+    public static String getPerformanceReport(PortfolioView portfolio) {
+        return getPerformanceReport(PortfolioMetrics.collect(portfolio));
+    }
+    
+    /**
+     * Performance summary report from metrics already collected.
+     */
+    public static String getPerformanceReport(PortfolioMetrics metrics) {
+        PortfolioView portfolio = metrics.getPortfolio();
         StringBuilder report = new StringBuilder();
         report.append("=== Performance Analysis Report ===\n");
         report.append(String.format("Portfolio: %s\n", portfolio.getPortfolioName()));
         report.append(String.format("Created: %s (", portfolio.getCreationDate()));
         
-        long days = ChronoUnit.DAYS.between(portfolio.getCreationDate(), LocalDate.now());
+        long days = metrics.getDaysSinceCreation();
         if (days < 30) {
             report.append(String.format("%d days ago)\n\n", days));
         } else if (days < 365) {
@@ -121,26 +164,27 @@ public class PerformanceAnalyzer {
         }
         
         report.append("== Value Metrics ==\n");
-        report.append(String.format("Current Value: $%.2f\n", portfolio.getTotalValue()));
+        report.append(String.format("Current Value: $%.2f\n", metrics.getTotalValue()));
         report.append(String.format("Cost Basis: $%.2f\n", portfolio.getTotalCostBasis()));
-        report.append(String.format("Cash Balance: $%.2f\n", portfolio.getCashBalance()));
+        report.append(String.format("Cash Balance: $%.2f\n", metrics.getCashBalance()));
         report.append(String.format("Total Gain/Loss: $%.2f (%.2f%%)\n\n", 
             portfolio.getTotalGainLoss(), portfolio.getTotalGainLossPercentage()));
         
         report.append("== Return Metrics ==\n");
         report.append(String.format("ROI: %.2f%%\n", calculateROI(portfolio)));
-        report.append(String.format("Annualized Return: %.2f%%\n", calculateAnnualizedReturn(portfolio)));
-        report.append(String.format("Yield: %.2f%%\n\n", calculateYield(portfolio)));
+        report.append(String.format("Annualized Return: %.2f%%\n", calculateAnnualizedReturn(metrics)));
+        report.append(String.format("Time-Weighted Return: %.2f%%\n", calculateTimeWeightedReturn(metrics)));
+        report.append(String.format("Yield: %.2f%%\n\n", calculateYield(metrics)));
         
         report.append("== Income & Expenses ==\n");
-        report.append(String.format("Total Dividends: $%.2f\n", calculateTotalDividends(portfolio)));
-        report.append(String.format("Total Fees: $%.2f\n", calculateTotalFees(portfolio)));
+        report.append(String.format("Total Dividends: $%.2f\n", metrics.getTotalDividends()));
+        report.append(String.format("Total Fees: $%.2f\n", metrics.getTotalFees()));
         report.append(String.format("Net Income: $%.2f\n\n", 
-            calculateTotalDividends(portfolio) - calculateTotalFees(portfolio)));
+            metrics.getTotalDividends() - metrics.getTotalFees()));
         
         report.append("== Activity ==\n");
-        report.append(String.format("Total Transactions: %d\n", portfolio.getTransactionHistory().size()));
-        report.append(String.format("Turnover Rate: %.2f trades/year\n", calculateTurnoverRate(portfolio)));
+        report.append(String.format("Total Transactions: %d\n", metrics.getTransactionCount()));
+        report.append(String.format("Turnover Rate: %.2f trades/year\n", calculateTurnoverRate(metrics)));
         
         return report.toString();
     }
@@ -148,11 +192,18 @@ public class PerformanceAnalyzer {
     /**
      * Get asset performance comparison.
      */
-    public static String getAssetPerformanceComparison(Portfolio portfolio) {
+    public static String getAssetPerformanceComparison(PortfolioView portfolio) {
+        return assetPerformanceComparison(portfolio.getTopPerformers(5), portfolio.getBottomPerformers(5));
+    }
+    
+    public static String getAssetPerformanceComparison(PortfolioMetrics metrics) {
+        return assetPerformanceComparison(metrics.getTopPerformers(5), metrics.getBottomPerformers(5));
+    }
+    
+    private static String assetPerformanceComparison(List<Asset> topPerformers, List<Asset> bottomPerformers) {
         StringBuilder report = new StringBuilder();
         report.append("=== Asset Performance Comparison ===\n\n");
         
-        List<Asset> topPerformers = portfolio.getTopPerformers(5);
         report.append("Top 5 Performers:\n");
         for (int i = 0; i < topPerformers.size(); i++) {
             Asset asset = topPerformers.get(i);
@@ -162,7 +213,6 @@ public class PerformanceAnalyzer {
         
         report.append("\n");
         
-        List<Asset> bottomPerformers = portfolio.getBottomPerformers(5);
         report.append("Bottom 5 Performers:\n");
         for (int i = 0; i < bottomPerformers.size(); i++) {
             Asset asset = bottomPerformers.get(i);
@@ -0,0 +1,190 @@
+package logic;
+
+import model.*;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Report inputs for one portfolio, gathered in one pass over its
+ * transactions and one over its assets.
+ *
+ * The transaction pass counts and totals each transaction type and feeds
+ * the same transactions to the {@link ReturnEngine} replay; the asset pass
+ * totals market value by asset type and sector. Reports read everything
+ * from here, so a report over a million transactions scans them once.
+ * Collect from a snapshot when the portfolio is being changed.
+ */
+public final class PortfolioMetrics {
+
+    private static final Transaction.TransactionType[] TRANSACTION_TYPES = Transaction.TransactionType.values();
+    private static final Asset.AssetType[] ASSET_TYPES = Asset.AssetType.values();
+
+    private final PortfolioView portfolio;
+    private final LocalDate asOf;
+    private final double totalValue;
+    private final double cashBalance;
+
+    // By TransactionType ordinal
+    private final int[] transactionCounts = new int[TRANSACTION_TYPES.length];
+    private final double[] transactionAmounts = new double[TRANSACTION_TYPES.length];
+    private ReturnEngine.Returns returns;
+
+    // By AssetType ordinal
+    private final int[] typeHoldings = new int[ASSET_TYPES.length];
+    private final double[] typeValues = new double[ASSET_TYPES.length];
+    private final Map<String, Double> sectorValues = new HashMap<>();
+    private final List<Asset> assets;
+    private Asset[] byPerformance;
+
+    private PortfolioMetrics(PortfolioView portfolio) {
+        this.portfolio = portfolio;
+        this.asOf = LocalDate.now();
+        this.totalValue = portfolio.getTotalValue();
+        this.cashBalance = portfolio.getCashBalance();
+        this.assets = new ArrayList<>(portfolio.getAssetCount());
+    }
+
+    /**
+     * Scan a portfolio's transactions and assets.
+     */
+    public static PortfolioMetrics collect(PortfolioView portfolio) {
+        PortfolioMetrics metrics = new PortfolioMetrics(portfolio);
+
+        ReturnEngine.Replay replay = new ReturnEngine.Replay(null, (int) metrics.asOf.toEpochDay());
+        boolean inOrder = true;
+        List<Transaction> transactions = portfolio.getTransactionsView();
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            int type = transaction.getType().ordinal();
+            metrics.transactionCounts[type]++;
+            metrics.transactionAmounts[type] += transaction.getTotalAmount();
+            inOrder = inOrder && replay.add(transaction);
+        }
+        // A history that does not explain the holdings needs a seeded second pass
+        List<Transaction> opening = inOrder ? replay.opening(portfolio, true) : null;
+        metrics.returns = opening != null && opening.isEmpty()
+            ? replay.finish(portfolio.getPortfolioId(), metrics.totalValue, ReturnEngine.DEFAULT_GUESS)
+            : ReturnEngine.calculate(portfolio);
+
+        portfolio.forEachAsset(asset -> {
+            metrics.assets.add(asset);
+            double value = asset.getCurrentValue();
+            int type = asset.getType().ordinal();
+            metrics.typeHoldings[type]++;
+            metrics.typeValues[type] += value;
+            metrics.sectorValues.merge(asset.getSector(), value, Double::sum);
+        });
+        return metrics;
+    }
+
+    // Getters
+    public PortfolioView getPortfolio() { return portfolio; }
+    public LocalDate getAsOf() { return asOf; }
+    public double getTotalValue() { return totalValue; }
+    public double getCashBalance() { return cashBalance; }
+    public ReturnEngine.Returns getReturns() { return returns; }
+    public int getAssetCount() { return assets.size(); }
+
+    public long getDaysSinceCreation() {
+        return ChronoUnit.DAYS.between(portfolio.getCreationDate(), asOf);
+    }
+
+    // Transactions
+    public int getTransactionCount(Transaction.TransactionType type) {
+        return transactionCounts[type.ordinal()];
+    }
+
+    public double getTransactionAmount(Transaction.TransactionType type) {
+        return transactionAmounts[type.ordinal()];
+    }
+
+    public int getTransactionCount() {
+        int total = 0;
+        for (int count : transactionCounts) total += count;
+        return total;
+    }
+
+    public double getTotalDividends() { return getTransactionAmount(Transaction.TransactionType.DIVIDEND); }
+    public double getTotalFees() { return getTransactionAmount(Transaction.TransactionType.FEE); }
+
+    public double getNetDeposits() {
+        return getTransactionAmount(Transaction.TransactionType.DEPOSIT)
+            - getTransactionAmount(Transaction.TransactionType.WITHDRAWAL);
+    }
+
+    // Turnover inputs
+    public int getTradeCount() {
+        return getTransactionCount(Transaction.TransactionType.BUY) + getTransactionCount(Transaction.TransactionType.SELL);
+    }
+
+    public double getTradedValue() {
+        return getTransactionAmount(Transaction.TransactionType.BUY) + getTransactionAmount(Transaction.TransactionType.SELL);
+    }
+
+    // Holdings
+    /**
+     * Market value of the holdings of a type, not counting the cash balance.
+     */
+    public double getTypeValue(Asset.AssetType type) {
+        return typeValues[type.ordinal()];
+    }
+
+    public Map<String, Double> getSectorValues() {
+        return Collections.unmodifiableMap(sectorValues);
+    }
+
+    /**
+     * Percentage of total value in each asset type held, cash included, as
+     * in {@link PortfolioView#getAssetAllocation()}.
+     */
+    public Map<Asset.AssetType, Double> getAssetAllocation() {
+        Map<Asset.AssetType, Double> allocation = new HashMap<>();
+        if (totalValue == 0) return allocation;
+        for (Asset.AssetType type : ASSET_TYPES) {
+            if (typeHoldings[type.ordinal()] > 0) {
+                allocation.put(type, typeValues[type.ordinal()]);
+            }
+        }
+        if (cashBalance > 0) {
+            allocation.put(Asset.AssetType.CASH, cashBalance);
+        }
+        allocation.replaceAll((type, value) -> value / totalValue * 100.0);
+        return allocation;
+    }
+
+    /**
+     * Percentage of total value in each sector, as in
+     * {@link PortfolioView#getSectorAllocation()}.
+     */
+    public Map<String, Double> getSectorAllocation() {
+        Map<String, Double> allocation = new HashMap<>();
+        if (totalValue == 0) return allocation;
+        sectorValues.forEach((sector, value) -> allocation.put(sector, value / totalValue * 100.0));
+        return allocation;
+    }
+
+    public List<Asset> getTopPerformers(int count) {
+        Asset[] sorted = byPerformance();
+        return Arrays.asList(sorted).subList(0, Math.min(count, sorted.length));
+    }
+
+    public List<Asset> getBottomPerformers(int count) {
+        Asset[] sorted = byPerformance();
+        List<Asset> bottom = new ArrayList<>();
+        for (int i = sorted.length - 1; i >= Math.max(0, sorted.length - count); i--) {
+            bottom.add(sorted[i]);
+        }
+        return bottom;
+    }
+
+    // Assets by gain percentage, best first; sorted once, on first use
+    private Asset[] byPerformance() {
+        if (byPerformance == null) {
+            Asset[] sorted = assets.toArray(new Asset[0]);
+            Arrays.sort(sorted, (a, b) -> Double.compare(b.getGainLossPercentage(), a.getGainLossPercentage()));
+            byPerformance = sorted;
+        }
+        return byPerformance;
+    }
+}
@@ -1,20 +1,47 @@
 package logic;
 
 import model.*;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * Provides portfolio rebalancing recommendations.
+ *
+ * Results are cached per portfolio against the portfolio's and the risk
+ * profile's versions, so repeated queries on an account that has not
+ * changed return the previous result without rescanning it. A snapshot
+ * shares the cache entry of the portfolio it was taken from.
  */
 public class RebalanceEngine {
     
+    /** Drift from target, in percentage points, that calls for a trade. */
+    public static final double DRIFT_BAND = 5.0;
+    
+    // Loss and holding period that make a holding worth harvesting
+    private static final double HARVEST_LOSS_PERCENT = 5.0;
+    private static final int HARVEST_HOLDING_DAYS = 30;
+    
+    private static final int ASSET_TYPE_COUNT = Asset.AssetType.values().length;
+    
+    // Asset types with a target allocation
+    private static final Asset.AssetType[] TARGET_TYPES = {
+        Asset.AssetType.STOCK, Asset.AssetType.ETF, Asset.AssetType.MUTUAL_FUND,
+        Asset.AssetType.BOND, Asset.AssetType.CASH
+    };
+    
+    // Latest result for each portfolio; entries go when the portfolio does
+    private static final Map<Portfolio, Rebalance> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+    
+    // Immutable, since cached recommendations are shared between callers
     public static class RebalanceRecommendation {
-        public String assetSymbol;
-        public String action; // "BUY", "SELL", "HOLD"
-        public double currentAllocation;
-        public double targetAllocation;
-        public double dollarAmount;
-        public String reason;
+        public final String assetSymbol;
+        public final String action; // "BUY", "SELL", "HOLD"
+        public final double currentAllocation;
+        public final double targetAllocation;
+        public final double dollarAmount;
+        public final String reason;
         
         public RebalanceRecommendation(String assetSymbol, String action, 
                                       double currentAllocation, double targetAllocation,
@@ -36,37 +63,105 @@ public class RebalanceEngine {
     }
     
     /**
-     * Generate rebalancing recommendations based on risk profile.
+     * Recommendations and priority for one version of a portfolio and risk
+     * profile, with the report once one is asked for.
+     */
+    private static final class Rebalance {
+        final long portfolioVersion;
+        final RiskProfile profile;
+        final long profileVersion;
+        final List<RebalanceRecommendation> recommendations;
+        final String priority;
+        // The tax-loss section depends on holding periods, so the report
+        // is only reused on the day it was written
+        final String report;
+        final long reportDay;
+        
+        Rebalance(long portfolioVersion, RiskProfile profile, long profileVersion,
+                  List<RebalanceRecommendation> recommendations, String report, long reportDay) {
+            this.portfolioVersion = portfolioVersion;
+            this.profile = profile;
+            this.profileVersion = profileVersion;
+            this.recommendations = recommendations;
+            this.priority = priority(recommendations);
+            this.report = report;
+            this.reportDay = reportDay;
+        }
+        
+        boolean matches(long portfolioVersion, RiskProfile profile, long profileVersion) {
+            return this.portfolioVersion == portfolioVersion && this.profile == profile
+                && this.profileVersion == profileVersion;
+        }
+        
+        Rebalance withReport(String report, long day) {
+            return new Rebalance(portfolioVersion, profile, profileVersion, recommendations, report, day);
+        }
+    }
+    
+    /**
+     * Generate rebalancing recommendations based on risk profile. The list
+     * is read-only.
      */
     public static List<RebalanceRecommendation> getRebalanceRecommendations(
-            Portfolio portfolio, RiskProfile riskProfile) {
+            PortfolioView portfolio, RiskProfile riskProfile) {
+        return rebalance(portfolio, riskProfile).recommendations;
+    }
+    
+    // Cached result for the portfolio's current state, computed on a miss
+    private static Rebalance rebalance(PortfolioView portfolio, RiskProfile riskProfile) {
+        Portfolio source = source(portfolio);
+        long portfolioVersion = portfolio.getVersion();
+        long profileVersion = riskProfile.getVersion();
+        if (source != null) {
+            Rebalance cached = CACHE.get(source);
+            if (cached != null && cached.matches(portfolioVersion, riskProfile, profileVersion)) {
+                return cached;
+            }
+        }
         
+        Rebalance computed = new Rebalance(portfolioVersion, riskProfile, profileVersion,
+            Collections.unmodifiableList(recommend(portfolio, riskProfile)), null, 0);
+        // A live portfolio changed while being read is not cached
+        if (source != null && portfolio.getVersion() == portfolioVersion) {
+            CACHE.put(source, computed);
+        }
+        return computed;
+    }
+    
+    private static Portfolio source(PortfolioView portfolio) {
+        if (portfolio instanceof Portfolio) return (Portfolio) portfolio;
+        if (portfolio instanceof PortfolioSnapshot) return ((PortfolioSnapshot) portfolio).getSource();
+        return null;
+    }
+    
+    // Target percentage of total value for a type; the percentages include a 5% cash buffer
+    static double targetAllocation(Asset.AssetType type, RiskProfile riskProfile) {
+        double stockTarget = riskProfile.getRecommendedStockAllocation() * 100;
+        switch (type) {
+            case STOCK: return stockTarget * 0.6;
+            case ETF: return stockTarget * 0.3;
+            case MUTUAL_FUND: return stockTarget * 0.1;
+            case BOND: return riskProfile.getRecommendedBondAllocation() * 100;
+            case CASH: return 5.0; // 5% cash buffer
+            default: return 0.0;
+        }
+    }
+    
+    private static List<RebalanceRecommendation> recommend(PortfolioView portfolio, RiskProfile riskProfile) {
         List<RebalanceRecommendation> recommendations = new ArrayList<>();
         
         // Get current allocation
         Map<Asset.AssetType, Double> currentAllocation = portfolio.getAssetAllocation();
-        
-        // Calculate target allocation based on risk profile
-        Map<Asset.AssetType, Double> targetAllocation = new HashMap<>();
-        double stockTarget = riskProfile.getRecommendedStockAllocation() * 100;
-        double bondTarget = riskProfile.getRecommendedBondAllocation() * 100;
-        
-        targetAllocation.put(Asset.AssetType.STOCK, stockTarget * 0.6);
-        targetAllocation.put(Asset.AssetType.ETF, stockTarget * 0.3);
-        targetAllocation.put(Asset.AssetType.MUTUAL_FUND, stockTarget * 0.1);
-        targetAllocation.put(Asset.AssetType.BOND, bondTarget);
-        targetAllocation.put(Asset.AssetType.CASH, 5.0); // 5% cash buffer
-        
         double portfolioValue = portfolio.getTotalValue();
         
         // Compare current vs target and generate recommendations
-        for (Asset.AssetType type : targetAllocation.keySet()) {
-            double target = targetAllocation.get(type);
+        for (Asset.AssetType type : TARGET_TYPES) {
+            double target = targetAllocation(type, riskProfile);
             double current = currentAllocation.getOrDefault(type, 0.0);
             double difference = current - target;
             
             // Only recommend if difference > 5%
-            if (Math.abs(difference) > 5.0) {
+            if (Math.abs(difference) > DRIFT_BAND) {
                 double dollarDifference = (difference / 100.0) * portfolioValue;
                 
                 String action = difference > 0 ? "SELL" : "BUY";
@@ -91,17 +186,18 @@ public class RebalanceEngine {
     /**
      * Check if portfolio needs rebalancing.
      */
-    public static boolean needsRebalancing(Portfolio portfolio, RiskProfile riskProfile) {
-        List<RebalanceRecommendation> recommendations = getRebalanceRecommendations(portfolio, riskProfile);
-        return !recommendations.isEmpty();
+    public static boolean needsRebalancing(PortfolioView portfolio, RiskProfile riskProfile) {
+        return !rebalance(portfolio, riskProfile).recommendations.isEmpty();
     }
     
     /**
      * Get rebalancing priority level.
      */
-    public static String getRebalancingPriority(Portfolio portfolio, RiskProfile riskProfile) {
-        List<RebalanceRecommendation> recommendations = getRebalanceRecommendations(portfolio, riskProfile);
-        
+    public static String getRebalancingPriority(PortfolioView portfolio, RiskProfile riskProfile) {
+        return rebalance(portfolio, riskProfile).priority;
+    }
+    
+    private static String priority(List<RebalanceRecommendation> recommendations) {
         if (recommendations.isEmpty()) {
             return "LOW - Portfolio is well balanced";
         }
@@ -119,15 +215,193 @@ public class RebalanceEngine {
         }
     }
     
+    /**
+     * An account found by {@link #scanDrift}.
+     */
+    public static final class AccountDrift {
+        private final String userId;
+        private final String portfolioId;
+        private final double totalValue;
+        private final double dollarDrift;
+        private final double maxDrift;
+        private final Asset.AssetType mostDrifted;
+        
+        private AccountDrift(String userId, String portfolioId, double totalValue, double dollarDrift,
+                             double maxDrift, Asset.AssetType mostDrifted) {
+            this.userId = userId;
+            this.portfolioId = portfolioId;
+            this.totalValue = totalValue;
+            this.dollarDrift = dollarDrift;
+            this.maxDrift = maxDrift;
+            this.mostDrifted = mostDrifted;
+        }
+        
+        // Getters
+        public String getUserId() { return userId; }
+        public String getPortfolioId() { return portfolioId; }
+        public double getTotalValue() { return totalValue; }
+        /** Dollars to trade to bring every drifted type back to target. */
+        public double getDollarDrift() { return dollarDrift; }
+        /** Largest drift of one type, in percentage points. */
+        public double getMaxDrift() { return maxDrift; }
+        public Asset.AssetType getMostDrifted() { return mostDrifted; }
+        
+        @Override
+        public String toString() {
+            return String.format("%s/%s: $%.2f to trade (%s off by %.1f%%)",
+                userId, portfolioId, dollarDrift, mostDrifted, maxDrift);
+        }
+    }
+    
+    /**
+     * Result of a drift scan: how many accounts were scanned and drifted,
+     * and the most drifted of them.
+     */
+    public static final class DriftScan {
+        private final long accountsScanned;
+        private final long accountsDrifted;
+        private final List<AccountDrift> top;
+        
+        private DriftScan(long accountsScanned, long accountsDrifted, List<AccountDrift> top) {
+            this.accountsScanned = accountsScanned;
+            this.accountsDrifted = accountsDrifted;
+            this.top = top;
+        }
+        
+        // Getters
+        public long getAccountsScanned() { return accountsScanned; }
+        public long getAccountsDrifted() { return accountsDrifted; }
+        /** Largest dollar drift first. */
+        public List<AccountDrift> getTopAccounts() { return Collections.unmodifiableList(top); }
+    }
+    
+    // Largest dollar drift first; ties in id order so results are repeatable
+    private static final Comparator<AccountDrift> BY_DRIFT =
+        Comparator.comparingDouble(AccountDrift::getDollarDrift).reversed()
+            .thenComparing(AccountDrift::getUserId)
+            .thenComparing(AccountDrift::getPortfolioId);
+    
+    /**
+     * Accumulates one part of a drift scan: counts, plus a heap of the best
+     * accounts so far with the lowest-ranked at its head.
+     */
+    private static final class DriftCollector {
+        private final double threshold;
+        private final int limit;
+        private final PriorityQueue<AccountDrift> heap = new PriorityQueue<>(BY_DRIFT.reversed());
+        private final double[] values = new double[ASSET_TYPE_COUNT];
+        private final double[] targets = new double[TARGET_TYPES.length];
+        private long scanned;
+        private long drifted;
+        
+        DriftCollector(double threshold, int limit) {
+            this.threshold = threshold;
+            this.limit = limit;
+        }
+        
+        void scan(User user) {
+            RiskProfile profile = user.getRiskProfile();
+            for (int i = 0; i < TARGET_TYPES.length; i++) {
+                targets[i] = targetAllocation(TARGET_TYPES[i], profile);
+            }
+            for (Portfolio portfolio : user.getPortfoliosView().values()) {
+                scan(user.getUserId(), portfolio);
+            }
+        }
+        
+        // Same allocation and drift as getRebalanceRecommendations, from
+        // the running totals
+        private void scan(String userId, Portfolio portfolio) {
+            scanned++;
+            double totalValue = portfolio.getTotalValue();
+            portfolio.copyTypeValues(values);
+            double cash = portfolio.getCashBalance();
+            if (cash > 0) {
+                values[Asset.AssetType.CASH.ordinal()] = cash;
+            }
+            
+            double dollarDrift = 0.0;
+            double maxDrift = 0.0;
+            int mostDrifted = -1;
+            for (int i = 0; i < TARGET_TYPES.length; i++) {
+                double current = totalValue == 0 ? 0.0 : values[TARGET_TYPES[i].ordinal()] / totalValue * 100.0;
+                double drift = Math.abs(current - targets[i]);
+                if (drift > threshold) {
+                    dollarDrift += drift / 100.0 * Math.abs(totalValue);
+                    if (drift > maxDrift) {
+                        maxDrift = drift;
+                        mostDrifted = i;
+                    }
+                }
+            }
+            if (mostDrifted < 0) return;
+            drifted++;
+            
+            // Skip accounts that cannot make the list before allocating
+            if (heap.size() == limit && dollarDrift < heap.peek().dollarDrift) return;
+            offer(new AccountDrift(userId, portfolio.getPortfolioId(), totalValue, dollarDrift,
+                maxDrift, TARGET_TYPES[mostDrifted]));
+        }
+        
+        private void offer(AccountDrift account) {
+            if (heap.size() < limit) {
+                heap.add(account);
+            } else if (BY_DRIFT.compare(account, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(account);
+            }
+        }
+        
+        void merge(DriftCollector other) {
+            scanned += other.scanned;
+            drifted += other.drifted;
+            for (AccountDrift account : other.heap) {
+                offer(account);
+            }
+        }
+    }
+    
+    /**
+     * Scan every portfolio of every user for drift from its owner's target
+     * allocation. Accounts with a type more than threshold percentage points
+     * off target are counted, and the limit accounts with the largest dollar
+     * drift are returned; no recommendations are built. Portfolios are read
+     * from their running totals, so each costs the same however many
+     * holdings it has.
+     */
+    public static DriftScan scanDrift(Collection<User> users, double threshold, int limit, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1: " + limit);
+        }
+        User[] all = users.toArray(new User[0]);
+        DriftCollector result;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            result = pool.submit(() -> IntStream.range(0, all.length).parallel().collect(
+                () -> new DriftCollector(threshold, limit),
+                (collector, i) -> collector.scan(all[i]),
+                DriftCollector::merge)).join();
+        } finally {
+            pool.shutdownNow();
+        }
+        List<AccountDrift> top = new ArrayList<>(result.heap);
+        top.sort(BY_DRIFT);
+        return new DriftScan(result.scanned, result.drifted, top);
+    }
+    
     /**
      * Generate tax-loss harvesting opportunities.
      */
-    public static List<Asset> getTaxLossHarvestingOpportunities(Portfolio portfolio) {
+    public static List<Asset> getTaxLossHarvestingOpportunities(PortfolioView portfolio) {
         List<Asset> opportunities = new ArrayList<>();
         
-        for (Asset asset : portfolio.getAssets().values()) {
+        for (Asset asset : portfolio.getAssetsView().values()) {
             // Look for assets with losses > 5% and held for > 30 days
-            if (asset.getGainLossPercentage() < -5.0 && asset.getHoldingPeriodDays() > 30) {
+            if (asset.getGainLossPercentage() < -HARVEST_LOSS_PERCENT
+                    && asset.getHoldingPeriodDays() > HARVEST_HOLDING_DAYS) {
                 opportunities.add(asset);
             }
         }
@@ -138,19 +412,55 @@ public class RebalanceEngine {
         return opportunities;
     }
     
+    /**
+     * Tax lots worth harvesting, by the same rule as
+     * {@link #getTaxLossHarvestingOpportunities(PortfolioView)} (more than
+     * 5% below cost, held more than 30 days) but per lot, from the ledger's
+     * loss index rather than a scan of every holding.
+     */
+    public static List<TaxLotLedger.HarvestCandidate> getTaxLossHarvestingOpportunities(TaxLotLedger ledger) {
+        return ledger.getHarvestCandidates(HARVEST_LOSS_PERCENT, HARVEST_HOLDING_DAYS, LocalDate.now());
+    }
+    
+    /**
+     * Tax-loss harvesting opportunities in one of a user's portfolios,
+     * leaving out symbols bought in any of the user's portfolios in the
+     * last 30 days: selling those at a loss would be a wash sale.
+     */
+    public static List<Asset> getTaxLossHarvestingOpportunities(User user, PortfolioView portfolio) {
+        Set<String> restricted = WashSaleDetector.getRestrictedSymbols(user, LocalDate.now());
+        List<Asset> opportunities = getTaxLossHarvestingOpportunities(portfolio);
+        opportunities.removeIf(asset -> restricted.contains(asset.getSymbol()));
+        return opportunities;
+    }
+    
     /**
      * Get full rebalancing report.
      */
-    public static String getRebalancingReport(Portfolio portfolio, RiskProfile riskProfile) {
+    public static String getRebalancingReport(PortfolioView portfolio, RiskProfile riskProfile) {
+        Rebalance rebalance = rebalance(portfolio, riskProfile);
+        long today = LocalDate.now().toEpochDay();
+        if (rebalance.report != null && rebalance.reportDay == today) {
+            return rebalance.report;
+        }
+        
+        String report = writeReport(portfolio, riskProfile, rebalance);
+        Portfolio source = source(portfolio);
+        if (source != null) {
+            CACHE.replace(source, rebalance, rebalance.withReport(report, today));
+        }
+        return report;
+    }
+    
+    private static String writeReport(PortfolioView portfolio, RiskProfile riskProfile, Rebalance rebalance) {
         StringBuilder report = new StringBuilder();
         report.append("=== Portfolio Rebalancing Report ===\n");
         report.append(String.format("Portfolio: %s\n", portfolio.getPortfolioName()));
         report.append(String.format("Risk Profile: %s\n\n", riskProfile.getTolerance()));
         
-        String priority = getRebalancingPriority(portfolio, riskProfile);
-        report.append(String.format("Rebalancing Priority: %s\n\n", priority));
+        report.append(String.format("Rebalancing Priority: %s\n\n", rebalance.priority));
         
-        List<RebalanceRecommendation> recommendations = getRebalanceRecommendations(portfolio, riskProfile);
+        List<RebalanceRecommendation> recommendations = rebalance.recommendations;
         
         if (recommendations.isEmpty()) {
             report.append("✓ Portfolio is well balanced. No rebalancing needed.\n");
@@ -0,0 +1,500 @@
+package logic;
+
+import model.*;
+import java.util.*;
+
+/**
+ * Rebalancing as an optimization over individual holdings.
+ *
+ * Chooses a new value for every holding so that each targeted asset type
+ * reaches its target, every holding stays within its limits and the cash
+ * balance stays at or above the buffer, at the least cost. Trading d
+ * dollars of a holding worth v costs
+ *
+ *     rate * |d| + d * d / (2 * (v + a))
+ *
+ * that is, the transaction cost plus a turnover penalty that spreads a
+ * type's trades over its holdings roughly in proportion to their size
+ * (a is the average holding, so an empty holding can still be bought).
+ * Targets are shares of what is left to invest after the cash buffer,
+ * holdings of untargeted types (which are not traded) and the cost of the
+ * trades themselves.
+ *
+ * Each holding belongs to one type, so the problem splits into one budget
+ * constraint per type and is solved in its dual. At a multiplier mu on a
+ * type's budget each holding's best value is a clamped, soft-thresholded
+ * function of mu, and the type's total is nondecreasing and piecewise
+ * linear in mu. Its root is found by Newton steps on the active slope,
+ * safeguarded by bisection; each step is one pass over the type's
+ * holdings, and no matrix is ever formed. A plan keeps its multipliers,
+ * and passing it back warm-starts the next solve, which after small price
+ * moves usually takes one or two passes per type.
+ */
+public class RebalanceOptimizer {
+
+    private static final Asset.AssetType[] ASSET_TYPES = Asset.AssetType.values();
+    // A type's total must match its target to within this share of it (or a millionth of a dollar)
+    private static final double TOLERANCE = 1e-10;
+    private static final int MAX_PASSES = 200;
+    // Cost estimate rounds: targets depend on the cost of the trades that meet them
+    private static final int MAX_COST_ROUNDS = 5;
+    private static final double COST_TOLERANCE = 0.01;
+
+    /**
+     * Costs, limits and targets for an optimization. Limits are shares of
+     * the portfolio's total value; rates are costs per dollar traded.
+     */
+    public static final class Constraints {
+        public static final double DEFAULT_COST_RATE = 0.001;
+        public static final double DEFAULT_CASH_BUFFER = 0.05;
+
+        private final double costRate;
+        private final double cashBuffer;
+        private double minWeight = 0.0;
+        private double maxWeight = 1.0;
+        private final Map<String, double[]> limits = new HashMap<>();
+        private final Map<String, Double> costRates = new HashMap<>();
+        private final Map<Asset.AssetType, Double> targets = new EnumMap<>(Asset.AssetType.class);
+
+        public Constraints() {
+            this(DEFAULT_COST_RATE, DEFAULT_CASH_BUFFER);
+        }
+
+        public Constraints(double costRate, double cashBuffer) {
+            checkRate(costRate);
+            if (!(cashBuffer >= 0 && cashBuffer < 1)) {
+                throw new IllegalArgumentException("Cash buffer must be in [0, 1): " + cashBuffer);
+            }
+            this.costRate = costRate;
+            this.cashBuffer = cashBuffer;
+        }
+
+        /**
+         * Limits for holdings without limits of their own.
+         */
+        public void setDefaultLimits(double minWeight, double maxWeight) {
+            checkLimits(minWeight, maxWeight);
+            this.minWeight = minWeight;
+            this.maxWeight = maxWeight;
+        }
+
+        public void setLimits(String symbol, double minWeight, double maxWeight) {
+            checkLimits(minWeight, maxWeight);
+            limits.put(symbol, new double[] { minWeight, maxWeight });
+        }
+
+        public void setCostRate(String symbol, double rate) {
+            checkRate(rate);
+            costRates.put(symbol, rate);
+        }
+
+        /**
+         * Target share of the investable value for a type. Once any target
+         * is set, the targets replace the risk profile's: types without one
+         * are held as they are.
+         */
+        public void setTarget(Asset.AssetType type, double weight) {
+            if (!(weight >= 0 && weight <= 1)) {
+                throw new IllegalArgumentException("Target weight must be in [0, 1]: " + weight);
+            }
+            targets.put(type, weight);
+            double total = 0.0;
+            for (double target : targets.values()) total += target;
+            if (total > 1 + 1e-9) {
+                targets.remove(type);
+                throw new IllegalArgumentException("Target weights add up to more than 1: " + total);
+            }
+        }
+
+        // Getters
+        public double getCostRate() { return costRate; }
+        public double getCashBuffer() { return cashBuffer; }
+
+        double costRate(String symbol) {
+            return costRates.getOrDefault(symbol, costRate);
+        }
+
+        double minWeight(String symbol) {
+            double[] limit = limits.get(symbol);
+            return limit == null ? minWeight : limit[0];
+        }
+
+        double maxWeight(String symbol) {
+            double[] limit = limits.get(symbol);
+            return limit == null ? maxWeight : limit[1];
+        }
+
+        // Target share of the investable value by type ordinal, NaN for untargeted types
+        double[] targetWeights(RiskProfile riskProfile) {
+            double[] weights = new double[ASSET_TYPES.length];
+            Arrays.fill(weights, Double.NaN);
+            if (targets.isEmpty()) {
+                // The profile's split, without its cash share
+                for (Asset.AssetType type : new Asset.AssetType[] {
+                        Asset.AssetType.STOCK, Asset.AssetType.ETF, Asset.AssetType.MUTUAL_FUND,
+                        Asset.AssetType.BOND }) {
+                    weights[type.ordinal()] = RebalanceEngine.targetAllocation(type, riskProfile) / 100.0;
+                }
+            } else {
+                targets.forEach((type, weight) -> weights[type.ordinal()] = weight);
+            }
+            return weights;
+        }
+
+        private static void checkRate(double rate) {
+            if (!(rate >= 0 && rate < 1)) {
+                throw new IllegalArgumentException("Cost rate must be in [0, 1): " + rate);
+            }
+        }
+
+        private static void checkLimits(double minWeight, double maxWeight) {
+            if (!(minWeight >= 0 && minWeight <= maxWeight && maxWeight <= 1)) {
+                throw new IllegalArgumentException("Limits must satisfy 0 <= min <= max <= 1: "
+                    + minWeight + ", " + maxWeight);
+            }
+        }
+    }
+
+    /**
+     * One trade of a plan.
+     */
+    public static final class Order {
+        private final String symbol;
+        private final Transaction.TransactionType type;
+        private final double quantity;
+        private final double price;
+        private final double value;
+        private final double cost;
+
+        private Order(String symbol, Transaction.TransactionType type, double quantity, double price,
+                      double value, double cost) {
+            this.symbol = symbol;
+            this.type = type;
+            this.quantity = quantity;
+            this.price = price;
+            this.value = value;
+            this.cost = cost;
+        }
+
+        // Getters
+        public String getSymbol() { return symbol; }
+        /** BUY or SELL. */
+        public Transaction.TransactionType getType() { return type; }
+        public double getQuantity() { return quantity; }
+        public double getPrice() { return price; }
+        public double getValue() { return value; }
+        public double getCost() { return cost; }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s: %.4f @ $%.2f = $%.2f (cost $%.2f)",
+                type, symbol, quantity, price, value, cost);
+        }
+    }
+
+    /**
+     * Orders that rebalance one portfolio, with the allocation they reach.
+     */
+    public static final class Plan {
+        private final String portfolioId;
+        private final Holdings holdings;
+        private final double[] targets;
+        private final double[] allocated;
+        private final double[] multipliers;
+        private final double turnover;
+        private final double cost;
+        private final double cashAfter;
+        private final int passes;
+        // Built on first use, so re-solves that only need the figures skip it
+        private volatile List<Order> orders;
+
+        private Plan(String portfolioId, Holdings holdings, double[] targets, double[] allocated,
+                     double[] multipliers, double turnover, double cost, double cashAfter, int passes) {
+            this.portfolioId = portfolioId;
+            this.holdings = holdings;
+            this.targets = targets;
+            this.allocated = allocated;
+            this.multipliers = multipliers;
+            this.turnover = turnover;
+            this.cost = cost;
+            this.cashAfter = cashAfter;
+            this.passes = passes;
+        }
+
+        // Getters
+        public String getPortfolioId() { return portfolioId; }
+        /** Largest trade first. */
+        public List<Order> getOrders() {
+            List<Order> built = orders;
+            if (built == null) {
+                built = Collections.unmodifiableList(buildOrders(holdings));
+                orders = built;
+            }
+            return built;
+        }
+
+        /** Dollars bought and sold. */
+        public double getTurnover() { return turnover; }
+        public double getTransactionCost() { return cost; }
+        /** Cash balance once the orders and their costs are settled. */
+        public double getCashAfter() { return cashAfter; }
+        /** Passes over holdings the solver took, for all types and cost rounds. */
+        public int getPasses() { return passes; }
+
+        public boolean isTargeted(Asset.AssetType type) {
+            return !Double.isNaN(targets[type.ordinal()]);
+        }
+
+        /**
+         * Target value of a type, or 0 for a type that is not traded.
+         */
+        public double getTargetValue(Asset.AssetType type) {
+            return isTargeted(type) ? targets[type.ordinal()] : 0.0;
+        }
+
+        /**
+         * Value a type holds after the orders. Differs from the target when
+         * the type has no holdings to trade or its limits do not allow it.
+         */
+        public double getAllocatedValue(Asset.AssetType type) {
+            return allocated[type.ordinal()];
+        }
+
+        /**
+         * Whether every targeted type reaches its target.
+         */
+        public boolean isOnTarget() {
+            for (int t = 0; t < targets.length; t++) {
+                if (!Double.isNaN(targets[t]) && Math.abs(allocated[t] - targets[t]) > tolerance(targets[t])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Traded holdings, grouped by type ordinal: holdings of type t are
+     * [groupStart[t], groupStart[t + 1]).
+     */
+    private static final class Holdings {
+        final Asset[] assets;
+        final double[] prices;
+        final double[] values;
+        final double[] scales;
+        final double[] rates;
+        final double[] lower;
+        final double[] upper;
+        final double[] solution;
+        final int[] groupStart = new int[ASSET_TYPES.length + 1];
+        double fixedValue;
+        double totalValue;
+
+        Holdings(int count) {
+            assets = new Asset[count];
+            prices = new double[count];
+            values = new double[count];
+            scales = new double[count];
+            rates = new double[count];
+            lower = new double[count];
+            upper = new double[count];
+            solution = new double[count];
+        }
+    }
+
+    /**
+     * Plan with default constraints, solved from scratch.
+     */
+    public static Plan optimize(PortfolioView portfolio, RiskProfile riskProfile) {
+        return optimize(portfolio, riskProfile, new Constraints(), null);
+    }
+
+    /**
+     * Plan the trades that rebalance a portfolio. A previous plan for the
+     * same portfolio, if given, is the solver's starting point.
+     */
+    public static Plan optimize(PortfolioView portfolio, RiskProfile riskProfile, Constraints constraints,
+                                Plan previous) {
+        double[] weights = constraints.targetWeights(riskProfile);
+        Holdings holdings = collect(portfolio, constraints, weights);
+        double cash = portfolio.getCashBalance();
+        holdings.totalValue += cash;
+
+        double[] multipliers = previous != null ? previous.multipliers.clone() : new double[ASSET_TYPES.length];
+        double[] targets = new double[ASSET_TYPES.length];
+        double cost = previous != null ? previous.cost : 0.0;
+        int[] passes = new int[1];
+        for (int round = 0; round < MAX_COST_ROUNDS; round++) {
+            double investable = Math.max(0.0,
+                holdings.totalValue * (1 - constraints.getCashBuffer()) - holdings.fixedValue - cost);
+            for (int t = 0; t < ASSET_TYPES.length; t++) {
+                targets[t] = weights[t] * investable;
+                if (!Double.isNaN(targets[t])) {
+                    multipliers[t] = solveType(holdings, holdings.groupStart[t], holdings.groupStart[t + 1],
+                        targets[t], multipliers[t], passes);
+                }
+            }
+            double solvedCost = 0.0;
+            for (int i = 0; i < holdings.assets.length; i++) {
+                solvedCost += holdings.rates[i] * Math.abs(holdings.solution[i] - holdings.values[i]);
+            }
+            boolean settled = Math.abs(solvedCost - cost) <= COST_TOLERANCE;
+            cost = solvedCost;
+            if (settled) break;
+        }
+        return plan(portfolio.getPortfolioId(), holdings, cash, targets, multipliers, passes[0]);
+    }
+
+    // Traded holdings with their bounds, cost rates and penalty scales
+    private static Holdings collect(PortfolioView portfolio, Constraints constraints, double[] weights) {
+        int[] counts = new int[ASSET_TYPES.length];
+        List<Asset> traded = new ArrayList<>(portfolio.getAssetCount());
+        double[] fixed = new double[1];
+        double[] total = new double[1];
+        portfolio.forEachAsset(asset -> {
+            double value = asset.getCurrentValue();
+            total[0] += value;
+            // Untargeted types, and holdings without a price, stay as they are
+            if (Double.isNaN(weights[asset.getType().ordinal()]) || !(asset.getCurrentPrice() > 0)) {
+                fixed[0] += value;
+            } else {
+                traded.add(asset);
+                counts[asset.getType().ordinal()]++;
+            }
+        });
+
+        Holdings holdings = new Holdings(traded.size());
+        holdings.fixedValue = fixed[0];
+        holdings.totalValue = total[0];
+        for (int t = 0; t < ASSET_TYPES.length; t++) {
+            holdings.groupStart[t + 1] = holdings.groupStart[t] + counts[t];
+        }
+        int[] next = Arrays.copyOf(holdings.groupStart, ASSET_TYPES.length);
+        for (Asset asset : traded) {
+            holdings.assets[next[asset.getType().ordinal()]++] = asset;
+        }
+
+        double totalValue = total[0] + portfolio.getCashBalance();
+        double average = traded.isEmpty() ? 0.0 : Math.max(0.0, totalValue) / traded.size();
+        for (int i = 0; i < holdings.assets.length; i++) {
+            Asset asset = holdings.assets[i];
+            String symbol = asset.getSymbol();
+            double value = asset.getCurrentValue();
+            holdings.prices[i] = asset.getCurrentPrice();
+            holdings.values[i] = value;
+            holdings.scales[i] = Math.max(value + average, 1.0);
+            holdings.rates[i] = constraints.costRate(symbol);
+            holdings.lower[i] = constraints.minWeight(symbol) * Math.max(0.0, totalValue);
+            holdings.upper[i] = constraints.maxWeight(symbol) * Math.max(0.0, totalValue);
+        }
+        return holdings;
+    }
+
+    /**
+     * Values for one type's holdings, [from, to), that add up to the target
+     * at least cost, written to the solution. Returns the multiplier on the
+     * type's budget; a type whose limits cannot reach the target is set to
+     * the nearest bound and keeps its starting multiplier.
+     */
+    private static double solveType(Holdings h, int from, int to, double target, double mu, int[] passes) {
+        double lowest = 0.0;
+        double highest = 0.0;
+        for (int i = from; i < to; i++) {
+            lowest += h.lower[i];
+            highest += h.upper[i];
+        }
+        if (target <= lowest || target >= highest) {
+            double[] bound = target <= lowest ? h.lower : h.upper;
+            System.arraycopy(bound, from, h.solution, from, to - from);
+            return mu;
+        }
+
+        double maxRate = 0.0;
+        for (int i = from; i < to; i++) maxRate = Math.max(maxRate, h.rates[i]);
+        double step = 1.0 + maxRate;
+        double tolerance = tolerance(target);
+        // Bracket on mu: the total is below target at low, above it at high
+        double low = Double.NEGATIVE_INFINITY;
+        double high = Double.POSITIVE_INFINITY;
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            passes[0]++;
+            double sum = 0.0;
+            double slope = 0.0;
+            for (int i = from; i < to; i++) {
+                double excess = Math.abs(mu) - h.rates[i];
+                double x = h.values[i];
+                if (excess > 0) {
+                    x += Math.copySign(excess, mu) * h.scales[i];
+                }
+                if (x <= h.lower[i]) {
+                    x = h.lower[i];
+                } else if (x >= h.upper[i]) {
+                    x = h.upper[i];
+                } else if (excess > 0) {
+                    slope += h.scales[i];
+                }
+                h.solution[i] = x;
+                sum += x;
+            }
+            double gap = sum - target;
+            if (Math.abs(gap) <= tolerance) break;
+            if (gap < 0) {
+                low = mu;
+            } else {
+                high = mu;
+            }
+
+            double next = slope > 0 ? mu - gap / slope : Double.NaN;
+            if (!(next > low && next < high)) {
+                if (low == Double.NEGATIVE_INFINITY) {
+                    next = Math.min(mu, 0.0) - step;
+                    step *= 2;
+                } else if (high == Double.POSITIVE_INFINITY) {
+                    next = Math.max(mu, 0.0) + step;
+                    step *= 2;
+                } else {
+                    next = 0.5 * (low + high);
+                }
+            }
+            mu = next;
+        }
+        return mu;
+    }
+
+    private static double tolerance(double target) {
+        return Math.max(1e-6, TOLERANCE * Math.abs(target));
+    }
+
+    private static Plan plan(String portfolioId, Holdings h, double cash, double[] targets, double[] multipliers,
+                             int passes) {
+        double[] allocated = new double[ASSET_TYPES.length];
+        double turnover = 0.0;
+        double cost = 0.0;
+        double cashAfter = cash;
+        for (int t = 0; t < ASSET_TYPES.length; t++) {
+            for (int i = h.groupStart[t]; i < h.groupStart[t + 1]; i++) {
+                double trade = h.solution[i] - h.values[i];
+                double tradeCost = h.rates[i] * Math.abs(trade);
+                allocated[t] += h.solution[i];
+                turnover += Math.abs(trade);
+                cost += tradeCost;
+                cashAfter -= trade + tradeCost;
+            }
+        }
+        return new Plan(portfolioId, h, targets, allocated, multipliers, turnover, cost, cashAfter, passes);
+    }
+
+    private static List<Order> buildOrders(Holdings h) {
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < h.assets.length; i++) {
+            double trade = h.solution[i] - h.values[i];
+            if (trade == 0) continue;
+            double value = Math.abs(trade);
+            orders.add(new Order(h.assets[i].getSymbol(),
+                trade > 0 ? Transaction.TransactionType.BUY : Transaction.TransactionType.SELL,
+                value / h.prices[i], h.prices[i], value, h.rates[i] * value));
+        }
+        orders.sort((a, b) -> Double.compare(b.value, a.value));
+        return orders;
+    }
+}
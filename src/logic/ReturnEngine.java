@@ -0,0 +1,628 @@
+package logic;
+
+import model.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Time-weighted and money-weighted returns from a portfolio's transactions.
+ *
+ * One pass over the transactions, in time order, replays cash and holdings
+ * and collects the external cash flows (deposits and withdrawals), netted
+ * by day. At each flow day the replayed portfolio is valued just before the
+ * flows, which splits the time-weighted return into sub-periods that are
+ * chain-linked. The money-weighted return is the XIRR of the same flows
+ * plus the ending value.
+ *
+ * Holdings are valued at their close in a {@link PriceHistory} when one is
+ * given, and otherwise at their last trade price. Cash and holdings that the
+ * history does not account for, such as assets added directly or a cash
+ * balance that was set, are seeded as an opening deposit and purchase on the
+ * holding's purchase date, so they are not counted as gains. When returns
+ * end at the live portfolio's value and it holds less than its history
+ * says, no opening position explains it and the returns are NaN. Returns
+ * priced from a history end at the replayed value instead, which the
+ * history explains by construction.
+ *
+ * Returns are fractions (0.05 is 5%); the money-weighted return is annual.
+ */
+public class ReturnEngine {
+
+    static final double DEFAULT_GUESS = 0.1;
+    private static final double DAYS_PER_YEAR = 365.0;
+    private static final double TOLERANCE = 1e-12;
+    private static final double MATCH_TOLERANCE = 1e-9;
+    private static final Comparator<Transaction> BY_TIME = Comparator.comparing(Transaction::getTimestamp);
+    private static final int MAX_NEWTON_ITERATIONS = 50;
+    private static final int MAX_BRENT_ITERATIONS = 200;
+    // Bounds on log(1 + rate) for the bracketing search, about -99.99% to +2,200,000%
+    private static final double MIN_LOG_RATE = -10.0;
+    private static final double MAX_LOG_RATE = 10.0;
+
+    /**
+     * Returns of one portfolio over its flow history.
+     */
+    public static final class Returns {
+        private final String portfolioId;
+        private final LocalDate startDate;
+        private final LocalDate endDate;
+        private final int flowCount;
+        private final double endingValue;
+        private final double timeWeightedReturn;
+        private final double moneyWeightedReturn;
+        private final int solverIterations;
+
+        private Returns(String portfolioId, LocalDate startDate, LocalDate endDate, int flowCount,
+                        double endingValue, double timeWeightedReturn, double moneyWeightedReturn,
+                        int solverIterations) {
+            this.portfolioId = portfolioId;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.flowCount = flowCount;
+            this.endingValue = endingValue;
+            this.timeWeightedReturn = timeWeightedReturn;
+            this.moneyWeightedReturn = moneyWeightedReturn;
+            this.solverIterations = solverIterations;
+        }
+
+        // Getters
+        public String getPortfolioId() { return portfolioId; }
+        public LocalDate getStartDate() { return startDate; }
+        public LocalDate getEndDate() { return endDate; }
+        public int getFlowCount() { return flowCount; }
+        public double getEndingValue() { return endingValue; }
+        public int getSolverIterations() { return solverIterations; }
+
+        /**
+         * Cumulative time-weighted return from the first flow, or NaN if
+         * the portfolio has no external flows or its history does not
+         * account for its holdings.
+         */
+        public double getTimeWeightedReturn() { return timeWeightedReturn; }
+
+        /**
+         * Annual money-weighted return (XIRR), or NaN if there is none.
+         */
+        public double getMoneyWeightedReturn() { return moneyWeightedReturn; }
+
+        public double getYears() {
+            return startDate == null ? 0.0 : (endDate.toEpochDay() - startDate.toEpochDay()) / 365.25;
+        }
+
+        /**
+         * Time-weighted return per year. Periods shorter than a year are
+         * not annualized.
+         */
+        public double getAnnualizedTimeWeightedReturn() {
+            double years = getYears();
+            if (years < 1.0) return timeWeightedReturn;
+            return Math.pow(1 + timeWeightedReturn, 1.0 / years) - 1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d flows, TWR %.2f%%, MWR %.2f%%", portfolioId, flowCount,
+                timeWeightedReturn * 100, moneyWeightedReturn * 100);
+        }
+    }
+
+    /**
+     * Replayed holding of one symbol. Valuations come in date order, so the
+     * position in the price series only moves forward.
+     */
+    private static final class Holding {
+        final PriceSeries series;
+        double quantity;
+        // Over the whole history, beyond the end day too
+        double net;
+        double lastPrice;
+        int cursor = -1;
+
+        Holding(PriceSeries series) {
+            this.series = series;
+        }
+
+        double price(int epochDay) {
+            if (series == null) return lastPrice;
+            int size = series.size();
+            if (cursor + 1 < size && series.getEpochDay(cursor + 1) <= epochDay) {
+                // Gallop ahead, then binary search the last step
+                int low = cursor + 1;
+                int step = 1;
+                while (low + step < size && series.getEpochDay(low + step) <= epochDay) {
+                    low += step;
+                    step <<= 1;
+                }
+                int high = Math.min(size - 1, low + step - 1);
+                while (low < high) {
+                    int mid = (low + high + 1) >>> 1;
+                    if (series.getEpochDay(mid) <= epochDay) {
+                        low = mid;
+                    } else {
+                        high = mid - 1;
+                    }
+                }
+                cursor = low;
+            }
+            return cursor < 0 ? lastPrice : series.getClose(cursor);
+        }
+    }
+
+    /**
+     * Returns up to today, ending at the portfolio's current value, with
+     * holdings between flows valued at their last trade price.
+     */
+    public static Returns calculate(PortfolioView portfolio) {
+        return replay(portfolio, null, (int) LocalDate.now().toEpochDay(), portfolio.getTotalValue(), DEFAULT_GUESS);
+    }
+
+    /**
+     * Returns up to the end of a date, with every valuation (the ending one
+     * included) priced from the history as of its day. The XIRR solver
+     * starts from the previous result, such as the one for the day before,
+     * when it has one.
+     */
+    public static Returns calculate(PortfolioView portfolio, PriceHistory prices, LocalDate asOf, Returns previous) {
+        double guess = previous != null && Double.isFinite(previous.moneyWeightedReturn)
+            ? previous.moneyWeightedReturn : DEFAULT_GUESS;
+        return replay(portfolio, prices, (int) asOf.toEpochDay(), Double.NaN, guess);
+    }
+
+    /**
+     * Returns of many portfolios as of a date, computed in parallel and
+     * keyed by portfolio id in the order given. Previous results, keyed the
+     * same way, warm-start the solver; the map may be empty.
+     */
+    public static Map<String, Returns> calculateAll(Collection<? extends PortfolioView> portfolios,
+                                                    PriceHistory prices, LocalDate asOf,
+                                                    Map<String, Returns> previous, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        List<PortfolioView> list = new ArrayList<>(portfolios);
+        Returns[] results = new Returns[list.size()];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, results.length).parallel().forEach(i -> {
+                PortfolioView portfolio = list.get(i);
+                results[i] = calculate(portfolio, prices, asOf, previous.get(portfolio.getPortfolioId()));
+            })).join();
+        } finally {
+            pool.shutdownNow();
+        }
+        Map<String, Returns> byId = new LinkedHashMap<>();
+        for (Returns returns : results) {
+            byId.put(returns.getPortfolioId(), returns);
+        }
+        return byId;
+    }
+
+    private static Returns replay(PortfolioView portfolio, PriceHistory prices, int endDay, double endValue,
+                                  double guess) {
+        List<Transaction> transactions = portfolio.getTransactionsView();
+        Replay replay = new Replay(prices, endDay);
+        if (!replay.addAll(transactions)) {
+            // Out of time order: replay a sorted copy instead
+            transactions = new ArrayList<>(transactions);
+            transactions.sort(BY_TIME);
+            replay = new Replay(prices, endDay);
+            replay.addAll(transactions);
+        }
+
+        List<Transaction> opening = replay.opening(portfolio, !Double.isNaN(endValue));
+        if (opening == null) {
+            return replay.unexplained(portfolio.getPortfolioId(), endValue);
+        }
+        if (!opening.isEmpty()) {
+            replay = new Replay(prices, endDay);
+            replay.addAll(merge(transactions, opening));
+        }
+        return replay.finish(portfolio.getPortfolioId(), endValue, guess);
+    }
+
+    // Two lists in time order merged into one; ties keep the first list's first
+    private static List<Transaction> merge(List<Transaction> first, List<Transaction> second) {
+        List<Transaction> merged = new ArrayList<>(first.size() + second.size());
+        int i = 0;
+        int j = 0;
+        while (i < first.size() || j < second.size()) {
+            if (j == second.size() || (i < first.size()
+                    && !first.get(i).getTimestamp().isAfter(second.get(j).getTimestamp()))) {
+                merged.add(first.get(i++));
+            } else {
+                merged.add(second.get(j++));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Replay of one portfolio's transactions, fed one at a time in time
+     * order, so that other single-pass scans can drive it.
+     */
+    static final class Replay {
+        private final PriceHistory prices;
+        private final int endDay;
+        private final Map<String, Holding> holdings = new HashMap<>();
+        private final List<Holding> held = new ArrayList<>();
+        private LocalDateTime firstTime;
+        private LocalDateTime lastTime;
+        private double cash;
+        // Over the whole history, beyond the end day too
+        private double netCash;
+        // Holdings at last trade price, kept incrementally when there is no history
+        private double marked;
+
+        private int[] flowDays = new int[16];
+        private double[] flowAmounts = new double[16];
+        private int flowCount;
+        private int events;
+        private double growth = 1.0;
+        private double afterFlows;
+
+        Replay(PriceHistory prices, int endDay) {
+            this.prices = prices;
+            this.endDay = endDay;
+        }
+
+        /**
+         * Apply the next transaction. Returns false, applying nothing, if it
+         * is earlier than the one before.
+         */
+        boolean add(Transaction transaction) {
+            LocalDateTime time = transaction.getTimestamp();
+            if (lastTime != null && time.isBefore(lastTime)) return false;
+            if (firstTime == null) firstTime = time;
+            lastTime = time;
+            double amount = transaction.getTotalAmount();
+            double change = cashChange(transaction.getType(), amount);
+            netCash += change;
+            Holding holding = null;
+            double quantity = 0.0;
+            if (transaction.getType() == Transaction.TransactionType.BUY
+                    || transaction.getType() == Transaction.TransactionType.SELL) {
+                holding = holding(transaction.getAssetSymbol());
+                quantity = transaction.getType() == Transaction.TransactionType.BUY
+                    ? transaction.getQuantity() : -transaction.getQuantity();
+                holding.net += quantity;
+            }
+            int day = (int) time.toLocalDate().toEpochDay();
+            if (day > endDay) return true;
+            switch (transaction.getType()) {
+                case DEPOSIT:
+                case WITHDRAWAL:
+                    if (flowCount == 0 || flowDays[flowCount - 1] != day) {
+                        double before = cash + (prices == null ? marked : value(held, day));
+                        if (flowCount > 0) {
+                            afterFlows -= flowAmounts[flowCount - 1];
+                            if (afterFlows > 0) growth *= before / afterFlows;
+                        }
+                        afterFlows = before;
+                        if (flowCount == flowDays.length) {
+                            flowDays = Arrays.copyOf(flowDays, flowCount * 2);
+                            flowAmounts = Arrays.copyOf(flowAmounts, flowCount * 2);
+                        }
+                        flowDays[flowCount] = day;
+                        flowAmounts[flowCount] = 0.0;
+                        flowCount++;
+                    }
+                    // Investor's side: money in is negative
+                    flowAmounts[flowCount - 1] -= change;
+                    events++;
+                    break;
+                case BUY:
+                case SELL:
+                    marked -= holding.quantity * holding.lastPrice;
+                    holding.quantity += quantity;
+                    holding.lastPrice = transaction.getPricePerUnit();
+                    marked += holding.quantity * holding.lastPrice;
+                    break;
+                default:
+                    break;
+            }
+            cash += change;
+            return true;
+        }
+
+        /**
+         * Apply transactions in order. Returns false, stopping there, at
+         * the first one earlier than the one before.
+         */
+        boolean addAll(List<Transaction> transactions) {
+            for (int i = 0; i < transactions.size(); i++) {
+                if (!add(transactions.get(i))) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Deposits and purchases, in time order, that account for the live
+         * portfolio's cash and holdings beyond what the replayed history
+         * explains. Each unexplained holding is bought at its purchase price
+         * on its purchase date with a deposit of the same amount, and
+         * unexplained cash is deposited on the earliest day of the history.
+         * Empty when the history explains the portfolio. When the portfolio
+         * holds less of a symbol, or less cash, than the history says, no
+         * opening position explains it: strictly that gives null, and
+         * otherwise only the excess is seeded.
+         */
+        List<Transaction> opening(PortfolioView portfolio, boolean strict) {
+            List<Transaction> opening = new ArrayList<>();
+            LocalDate first = portfolio.getCreationDate();
+            if (firstTime != null && firstTime.toLocalDate().isBefore(first)) {
+                first = firstTime.toLocalDate();
+            }
+            int found = 0;
+            for (Asset asset : portfolio.getAssetsView().values()) {
+                Holding holding = holdings.get(asset.getSymbol());
+                double unexplained = asset.getQuantity() - (holding == null ? 0.0 : holding.net);
+                if (holding != null) found++;
+                if (matches(unexplained, asset.getQuantity())) continue;
+                if (unexplained < 0) {
+                    if (strict) return null;
+                    continue;
+                }
+                LocalDate date = asset.getPurchaseDate();
+                if (date.isBefore(first)) first = date;
+                LocalDateTime time = date.atStartOfDay();
+                double price = asset.getPurchasePrice();
+                opening.add(new Transaction("opening-cash-" + asset.getSymbol(), Transaction.TransactionType.DEPOSIT,
+                    "CASH", 1, unexplained * price, time, "Opening position"));
+                opening.add(new Transaction("opening-" + asset.getSymbol(), Transaction.TransactionType.BUY,
+                    asset.getSymbol(), unexplained, price, time, "Opening position"));
+            }
+            // Symbols the history holds but the portfolio no longer does
+            if (strict && found < holdings.size()) {
+                for (Map.Entry<String, Holding> entry : holdings.entrySet()) {
+                    if (!portfolio.hasAsset(entry.getKey()) && !matches(entry.getValue().net, 0.0)) return null;
+                }
+            }
+            double cashUnexplained = portfolio.getCashBalance() - netCash;
+            if (!matches(cashUnexplained, portfolio.getCashBalance())) {
+                if (cashUnexplained < 0 && strict) return null;
+                if (cashUnexplained > 0) {
+                    opening.add(new Transaction("opening-cash", Transaction.TransactionType.DEPOSIT,
+                        "CASH", 1, cashUnexplained, first.atStartOfDay(), "Opening cash"));
+                }
+            }
+            opening.sort(BY_TIME);
+            return opening;
+        }
+
+        /**
+         * Returns for a portfolio whose history does not explain it.
+         */
+        Returns unexplained(String portfolioId, double endValue) {
+            return new Returns(portfolioId, null, LocalDate.ofEpochDay(endDay), 0, endValue,
+                Double.NaN, Double.NaN, 0);
+        }
+
+        /**
+         * Returns at the end day. A NaN ending value means the replayed
+         * portfolio's own value.
+         */
+        Returns finish(String portfolioId, double endValue, double guess) {
+            if (Double.isNaN(endValue)) {
+                endValue = cash + (prices == null ? marked : value(held, endDay));
+            }
+            LocalDate endDate = LocalDate.ofEpochDay(endDay);
+            if (flowCount == 0) {
+                return new Returns(portfolioId, null, endDate, 0, endValue, Double.NaN, Double.NaN, 0);
+            }
+            double linked = growth;
+            double after = afterFlows - flowAmounts[flowCount - 1];
+            if (after > 0) linked *= endValue / after;
+
+            // The ending value is a final inflow to the investor
+            int count = flowCount;
+            int[] days = Arrays.copyOf(flowDays, count + 1);
+            double[] amounts = Arrays.copyOf(flowAmounts, count + 1);
+            if (days[count - 1] == endDay) {
+                amounts[count - 1] += endValue;
+            } else {
+                days[count] = endDay;
+                amounts[count] = endValue;
+                count++;
+            }
+            double[] solution = solve(days, amounts, count, guess);
+            return new Returns(portfolioId, LocalDate.ofEpochDay(days[0]), endDate, events,
+                endValue, linked - 1, solution[0], (int) solution[1]);
+        }
+
+        private Holding holding(String symbol) {
+            Holding holding = holdings.get(symbol);
+            if (holding == null) {
+                holding = new Holding(prices == null ? null : prices.getSeries(symbol));
+                holdings.put(symbol, holding);
+                held.add(holding);
+            }
+            return holding;
+        }
+    }
+
+    // Change in cash, as Portfolio.recordTransaction applies it
+    private static double cashChange(Transaction.TransactionType type, double amount) {
+        switch (type) {
+            case SELL:
+            case DIVIDEND:
+            case DEPOSIT:
+                return amount;
+            case BUY:
+            case WITHDRAWAL:
+            case FEE:
+                return -amount;
+            default:
+                return 0.0;
+        }
+    }
+
+    // Whether a replayed difference is only rounding in a value of this size
+    private static boolean matches(double difference, double scale) {
+        return Math.abs(difference) <= MATCH_TOLERANCE * Math.max(1.0, Math.abs(scale));
+    }
+
+    /**
+     * Annual rate at which the dated amounts have a net present value of
+     * zero, or NaN if there is none. Days must be in increasing order.
+     */
+    public static double xirr(int[] epochDays, double[] amounts, int count, double guess) {
+        return solve(epochDays, amounts, count, guess)[0];
+    }
+
+    /**
+     * XIRR and the number of function evaluations it took. Works in
+     * s = log(1 + rate), in which the value of the flows at the last day,
+     * sum(a * exp(s * t)), is smooth for any s: Newton from the guess, and
+     * Brent's method over a bracket if Newton leaves it or stalls.
+     */
+    private static double[] solve(int[] epochDays, double[] amounts, int count, double guess) {
+        if (count < 2) return new double[] { Double.NaN, 0 };
+        boolean positive = false;
+        boolean negative = false;
+        double[] years = new double[count];
+        int last = epochDays[count - 1];
+        for (int i = 0; i < count; i++) {
+            years[i] = (last - epochDays[i]) / DAYS_PER_YEAR;
+            positive |= amounts[i] > 0;
+            negative |= amounts[i] < 0;
+        }
+        if (!positive || !negative) return new double[] { Double.NaN, 0 };
+
+        double[] fx = new double[2];
+        double s = guess > -1 ? Math.log1p(guess) : 0.0;
+        int evaluations = 0;
+        for (int i = 0; i < MAX_NEWTON_ITERATIONS; i++) {
+            futureValue(years, amounts, count, s, fx);
+            evaluations++;
+            if (fx[0] == 0.0) return new double[] { Math.expm1(s), evaluations };
+            double step = fx[0] / fx[1];
+            if (!Double.isFinite(step)) break;
+            s -= step;
+            if (!(s > MIN_LOG_RATE && s < MAX_LOG_RATE)) break;
+            if (Math.abs(step) < TOLERANCE * (1 + Math.abs(s))) {
+                return new double[] { Math.expm1(s), evaluations };
+            }
+        }
+
+        // Widen a bracket around the guess until the value changes sign
+        double center = guess > -1 ? Math.max(MIN_LOG_RATE, Math.min(MAX_LOG_RATE, Math.log1p(guess))) : 0.0;
+        double width = 0.05;
+        double a = Math.max(MIN_LOG_RATE, center - width);
+        double b = Math.min(MAX_LOG_RATE, center + width);
+        double fa = futureValue(years, amounts, count, a, fx);
+        double fb = futureValue(years, amounts, count, b, fx);
+        evaluations += 2;
+        while (fa * fb > 0) {
+            if (a <= MIN_LOG_RATE && b >= MAX_LOG_RATE) return new double[] { Double.NaN, evaluations };
+            width *= 2;
+            if (a > MIN_LOG_RATE) {
+                a = Math.max(MIN_LOG_RATE, center - width);
+                fa = futureValue(years, amounts, count, a, fx);
+                evaluations++;
+            }
+            if (b < MAX_LOG_RATE) {
+                b = Math.min(MAX_LOG_RATE, center + width);
+                fb = futureValue(years, amounts, count, b, fx);
+                evaluations++;
+            }
+        }
+        double[] root = brent(years, amounts, count, a, b, fa, fb, fx);
+        return new double[] { Math.expm1(root[0]), evaluations + root[1] };
+    }
+
+    /**
+     * Brent's method on [a, b], where f(a) and f(b) differ in sign. Returns
+     * the root and the number of evaluations.
+     */
+    private static double[] brent(double[] years, double[] amounts, int count, double a, double b,
+                                  double fa, double fb, double[] fx) {
+        double c = a;
+        double fc = fa;
+        double d = b - a;
+        double e = d;
+        int evaluations = 0;
+        for (int i = 0; i < MAX_BRENT_ITERATIONS; i++) {
+            if (fb * fc > 0) {
+                c = a;
+                fc = fa;
+                d = b - a;
+                e = d;
+            }
+            if (Math.abs(fc) < Math.abs(fb)) {
+                a = b;
+                b = c;
+                c = a;
+                fa = fb;
+                fb = fc;
+                fc = fa;
+            }
+            double tolerance = 2 * Math.ulp(b) + 0.5 * TOLERANCE;
+            double middle = 0.5 * (c - b);
+            if (Math.abs(middle) <= tolerance || fb == 0) break;
+            if (Math.abs(e) >= tolerance && Math.abs(fa) > Math.abs(fb)) {
+                // Inverse quadratic interpolation, or secant when only two points differ
+                double p;
+                double q;
+                double r;
+                double t = fb / fa;
+                if (a == c) {
+                    p = 2 * middle * t;
+                    q = 1 - t;
+                } else {
+                    q = fa / fc;
+                    r = fb / fc;
+                    p = t * (2 * middle * q * (q - r) - (b - a) * (r - 1));
+                    q = (q - 1) * (r - 1) * (t - 1);
+                }
+                if (p > 0) q = -q;
+                else p = -p;
+                if (2 * p < Math.min(3 * middle * q - Math.abs(tolerance * q), Math.abs(e * q))) {
+                    e = d;
+                    d = p / q;
+                } else {
+                    d = middle;
+                    e = d;
+                }
+            } else {
+                d = middle;
+                e = d;
+            }
+            a = b;
+            fa = fb;
+            b += Math.abs(d) > tolerance ? d : Math.copySign(tolerance, middle);
+            fb = futureValue(years, amounts, count, b, fx);
+            evaluations++;
+        }
+        return new double[] { b, evaluations };
+    }
+
+    /**
+     * Value of the flows at the last day and its derivative in s, in one
+     * loop. Stores both in fx and returns the value.
+     */
+    private static double futureValue(double[] years, double[] amounts, int count, double s, double[] fx) {
+        double value = 0.0;
+        double slope = 0.0;
+        for (int i = 0; i < count; i++) {
+            double term = amounts[i] * Math.exp(s * years[i]);
+            value += term;
+            slope += term * years[i];
+        }
+        fx[0] = value;
+        fx[1] = slope;
+        return value;
+    }
+
+    private static double value(List<Holding> held, int epochDay) {
+        double total = 0.0;
+        for (Holding holding : held) {
+            if (holding.quantity != 0) {
+                total += holding.quantity * holding.price(epochDay);
+            }
+        }
+        return total;
+    }
+}
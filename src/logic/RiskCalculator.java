@@ -8,36 +8,158 @@ import java.util.*;
  */
 public class RiskCalculator {
     
+    public static final int DEFAULT_VAR_PATHS = 1_000_000;
+    private static final int TRADING_DAYS = 252;
+    
+    private static final Asset.AssetType[] ASSET_TYPES = Asset.AssetType.values();
+    
+    // Annual volatility assumptions by asset type (CASH is riskless)
+    private static final double[] TYPE_VOLATILITY = new double[ASSET_TYPES.length];
+    // Correlation assumptions by asset type
+    private static final double[][] TYPE_CORRELATION = new double[ASSET_TYPES.length][ASSET_TYPES.length];
+    static {
+        setVolatility(Asset.AssetType.STOCK, 0.18);
+        setVolatility(Asset.AssetType.ETF, 0.16);
+        setVolatility(Asset.AssetType.MUTUAL_FUND, 0.15);
+        setVolatility(Asset.AssetType.BOND, 0.05);
+        setVolatility(Asset.AssetType.REAL_ESTATE, 0.14);
+        setVolatility(Asset.AssetType.COMMODITY, 0.22);
+        setVolatility(Asset.AssetType.CASH, 0.0);
+        
+        for (int i = 0; i < ASSET_TYPES.length; i++) {
+            TYPE_CORRELATION[i][i] = 1.0;
+        }
+        setCorrelation(Asset.AssetType.STOCK, Asset.AssetType.ETF, 0.90);
+        setCorrelation(Asset.AssetType.STOCK, Asset.AssetType.MUTUAL_FUND, 0.85);
+        setCorrelation(Asset.AssetType.ETF, Asset.AssetType.MUTUAL_FUND, 0.90);
+        setCorrelation(Asset.AssetType.STOCK, Asset.AssetType.BOND, -0.10);
+        setCorrelation(Asset.AssetType.ETF, Asset.AssetType.BOND, -0.05);
+        setCorrelation(Asset.AssetType.MUTUAL_FUND, Asset.AssetType.BOND, 0.05);
+        setCorrelation(Asset.AssetType.STOCK, Asset.AssetType.REAL_ESTATE, 0.60);
+        setCorrelation(Asset.AssetType.ETF, Asset.AssetType.REAL_ESTATE, 0.60);
+        setCorrelation(Asset.AssetType.MUTUAL_FUND, Asset.AssetType.REAL_ESTATE, 0.55);
+        setCorrelation(Asset.AssetType.BOND, Asset.AssetType.REAL_ESTATE, 0.20);
+        setCorrelation(Asset.AssetType.STOCK, Asset.AssetType.COMMODITY, 0.30);
+        setCorrelation(Asset.AssetType.ETF, Asset.AssetType.COMMODITY, 0.30);
+        setCorrelation(Asset.AssetType.MUTUAL_FUND, Asset.AssetType.COMMODITY, 0.25);
+        setCorrelation(Asset.AssetType.BOND, Asset.AssetType.COMMODITY, 0.0);
+        setCorrelation(Asset.AssetType.REAL_ESTATE, Asset.AssetType.COMMODITY, 0.20);
+    }
+    
+    private static void setVolatility(Asset.AssetType type, double volatility) {
+        TYPE_VOLATILITY[type.ordinal()] = volatility;
+    }
+    
+    private static void setCorrelation(Asset.AssetType a, Asset.AssetType b, double correlation) {
+        TYPE_CORRELATION[a.ordinal()][b.ordinal()] = correlation;
+        TYPE_CORRELATION[b.ordinal()][a.ordinal()] = correlation;
+    }
+    
     /**
      * Calculate portfolio beta (systematic risk).
      * Simplified calculation based on asset type weights.
      */
-    public static double calculatePortfolioBeta(Portfolio portfolio) {
+    public static double calculatePortfolioBeta(PortfolioView portfolio) {
         Map<Asset.AssetType, Double> allocation = portfolio.getAssetAllocation();
         double beta = 0.0;
         
-        // Simplified beta estimates by asset type
-        Map<Asset.AssetType, Double> typeBetas = new HashMap<>();
-        typeBetas.put(Asset.AssetType.STOCK, 1.0);
-        typeBetas.put(Asset.AssetType.ETF, 0.9);
-        typeBetas.put(Asset.AssetType.MUTUAL_FUND, 0.85);
-        typeBetas.put(Asset.AssetType.BOND, 0.3);
-        typeBetas.put(Asset.AssetType.REAL_ESTATE, 0.7);
-        typeBetas.put(Asset.AssetType.COMMODITY, 1.2);
-        typeBetas.put(Asset.AssetType.CASH, 0.0);
-        
         for (Map.Entry<Asset.AssetType, Double> entry : allocation.entrySet()) {
-            double typeBeta = typeBetas.getOrDefault(entry.getKey(), 0.8);
-            beta += (entry.getValue() / 100.0) * typeBeta;
+            beta += (entry.getValue() / 100.0) * typeBeta(entry.getKey());
         }
         
         return beta;
     }
     
+    // Simplified beta estimates by asset type
+    private static double typeBeta(Asset.AssetType type) {
+        switch (type) {
+            case STOCK: return 1.0;
+            case ETF: return 0.9;
+            case MUTUAL_FUND: return 0.85;
+            case BOND: return 0.3;
+            case REAL_ESTATE: return 0.7;
+            case COMMODITY: return 1.2;
+            case CASH: return 0.0;
+            default: return 0.8;
+        }
+    }
+    
+    /**
+     * Portfolio beta from measured return covariances: each holding's beta
+     * against the benchmark symbol, weighted by value. Holdings the engine
+     * does not cover use the asset-type estimate; cash has beta 0.
+     */
+    public static double calculatePortfolioBeta(PortfolioView portfolio, CovarianceEngine covariance,
+                                                String benchmark) {
+        double totalValue = portfolio.getTotalValue();
+        if (totalValue == 0) return 0.0;
+        double[] betas = covariance.getBetas(benchmark);
+        double[] weighted = new double[1];
+        portfolio.forEachAsset(asset -> {
+            int index = covariance.indexOf(asset.getSymbol());
+            double beta = index >= 0 ? betas[index] : typeBeta(asset.getType());
+            weighted[0] += asset.getCurrentValue() * beta;
+        });
+        return weighted[0] / totalValue;
+    }
+    
+    /**
+     * Diversification ratio: the value-weighted average volatility of the
+     * holdings the engine covers over the volatility of those holdings
+     * together. 1.0 means no diversification benefit; higher is better.
+     */
+    public static double calculateDiversificationRatio(PortfolioView portfolio, CovarianceEngine covariance) {
+        int[] indexes = coveredHoldings(portfolio, covariance);
+        double[] values = coveredValues(portfolio, covariance, indexes);
+        double weightedVolatility = 0.0;
+        double variance = 0.0;
+        for (int a = 0; a < indexes.length; a++) {
+            weightedVolatility += values[a] * Math.sqrt(covariance.getVariance(indexes[a]));
+            for (int b = 0; b < indexes.length; b++) {
+                variance += values[a] * values[b] * covariance.getCovariance(indexes[a], indexes[b]);
+            }
+        }
+        if (variance <= 0) return 1.0;
+        return weightedVolatility / Math.sqrt(variance);
+    }
+    
+    /**
+     * Monte Carlo VaR and Expected Shortfall of the holdings the engine
+     * covers, using their measured covariance over a horizon in trading
+     * days. Holdings it does not cover are left out.
+     */
+    public static MonteCarloVaR.Result calculateValueAtRisk(PortfolioView portfolio, CovarianceEngine covariance,
+                                                            int horizonDays, int paths, long seed, int parallelism,
+                                                            double... confidenceLevels) {
+        int[] indexes = coveredHoldings(portfolio, covariance);
+        double[] values = coveredValues(portfolio, covariance, indexes);
+        return MonteCarloVaR.estimate(covariance.getCovarianceMatrix(indexes, horizonDays), values,
+            paths, seed, parallelism, confidenceLevels);
+    }
+    
+    // Engine indexes of the holdings it covers, in engine order
+    private static int[] coveredHoldings(PortfolioView portfolio, CovarianceEngine covariance) {
+        List<Integer> covered = new ArrayList<>();
+        portfolio.forEachAsset(asset -> {
+            int index = covariance.indexOf(asset.getSymbol());
+            if (index >= 0) covered.add(index);
+        });
+        return covered.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+    
+    private static double[] coveredValues(PortfolioView portfolio, CovarianceEngine covariance, int[] indexes) {
+        List<String> symbols = covariance.getSymbols();
+        double[] values = new double[indexes.length];
+        for (int a = 0; a < indexes.length; a++) {
+            values[a] = portfolio.getAsset(symbols.get(indexes[a])).getCurrentValue();
+        }
+        return values;
+    }
+    
     /**
      * Calculate portfolio volatility score (0-10 scale).
      */
-    public static int calculateVolatilityScore(Portfolio portfolio) {
+    public static int calculateVolatilityScore(PortfolioView portfolio) {
         double beta = calculatePortfolioBeta(portfolio);
         
         // Convert beta to 0-10 scale
@@ -50,7 +172,7 @@ public class RiskCalculator {
      * Calculate diversification score (0-10 scale).
      * Higher score = better diversification.
      */
-    public static int calculateDiversificationScore(Portfolio portfolio) {
+    public static int calculateDiversificationScore(PortfolioView portfolio) {
         Map<Asset.AssetType, Double> allocation = portfolio.getAssetAllocation();
         Map<String, Double> sectorAllocation = portfolio.getSectorAllocation();
         
@@ -81,7 +203,7 @@ public class RiskCalculator {
      * Calculate overall portfolio risk score (0-10 scale).
      * 0 = very low risk, 10 = very high risk.
      */
-    public static int calculateOverallRiskScore(Portfolio portfolio) {
+    public static int calculateOverallRiskScore(PortfolioView portfolio) {
         int volatilityScore = calculateVolatilityScore(portfolio);
         int diversificationScore = calculateDiversificationScore(portfolio);
         
@@ -94,7 +216,7 @@ public class RiskCalculator {
     /**
      * Assess risk alignment between portfolio and user's risk profile.
      */
-    public static String assessRiskAlignment(Portfolio portfolio, RiskProfile riskProfile) {
+    public static String assessRiskAlignment(PortfolioView portfolio, RiskProfile riskProfile) {
         int portfolioRisk = calculateOverallRiskScore(portfolio);
         int targetRisk = riskProfile.getRiskScore();
         
@@ -123,10 +245,90 @@ public class RiskCalculator {
         return (portfolioReturn - riskFreeRate) / volatility;
     }
     
+    /**
+     * Sharpe Ratio using the portfolio's volatility under the asset-type
+     * risk model rather than an estimate from beta.
+     */
+    public static double calculateSharpeRatio(PortfolioView portfolio, double portfolioReturn) {
+        double riskFreeRate = 0.02;
+        double volatility = calculatePortfolioVolatility(portfolio);
+        
+        if (volatility == 0) return 0.0;
+        return (portfolioReturn - riskFreeRate) / volatility;
+    }
+    
+    /**
+     * Covariance of asset-type returns over a horizon in trading days,
+     * indexed by AssetType ordinal.
+     */
+    public static double[][] getAssetTypeCovariance(int horizonDays) {
+        double scale = (double) horizonDays / TRADING_DAYS;
+        int n = ASSET_TYPES.length;
+        double[][] covariance = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                covariance[i][j] = TYPE_CORRELATION[i][j] * TYPE_VOLATILITY[i] * TYPE_VOLATILITY[j] * scale;
+            }
+        }
+        return covariance;
+    }
+    
+    /**
+     * Value held in each asset type (cash included), indexed by AssetType
+     * ordinal; the exposures for the asset-type risk model.
+     */
+    public static double[] getAssetTypeExposures(PortfolioView portfolio) {
+        double[] exposures = new double[ASSET_TYPES.length];
+        double totalValue = portfolio.getTotalValue();
+        for (Map.Entry<Asset.AssetType, Double> entry : portfolio.getAssetAllocation().entrySet()) {
+            exposures[entry.getKey().ordinal()] = entry.getValue() / 100.0 * totalValue;
+        }
+        return exposures;
+    }
+    
+    /**
+     * Annualized volatility of the portfolio's value under the asset-type
+     * risk model (0 for an empty portfolio).
+     */
+    public static double calculatePortfolioVolatility(PortfolioView portfolio) {
+        double totalValue = portfolio.getTotalValue();
+        if (totalValue <= 0) return 0.0;
+        double[] exposures = getAssetTypeExposures(portfolio);
+        double[][] covariance = getAssetTypeCovariance(TRADING_DAYS);
+        double variance = 0.0;
+        for (int i = 0; i < exposures.length; i++) {
+            for (int j = 0; j < exposures.length; j++) {
+                variance += exposures[i] * covariance[i][j] * exposures[j];
+            }
+        }
+        return Math.sqrt(variance) / totalValue;
+    }
+    
+    /**
+     * Monte Carlo Value-at-Risk and Expected Shortfall over a horizon in
+     * trading days, using the asset-type risk model. The same seed gives the
+     * same result at any parallelism.
+     */
+    public static MonteCarloVaR.Result calculateValueAtRisk(PortfolioView portfolio, int horizonDays,
+                                                            int paths, long seed, int parallelism,
+                                                            double... confidenceLevels) {
+        return MonteCarloVaR.estimate(getAssetTypeCovariance(horizonDays), getAssetTypeExposures(portfolio),
+            paths, seed, parallelism, confidenceLevels);
+    }
+    
+    /**
+     * One-day VaR and Expected Shortfall at 95% and 99% from
+     * {@link #DEFAULT_VAR_PATHS} paths on all available cores.
+     */
+    public static MonteCarloVaR.Result calculateValueAtRisk(PortfolioView portfolio, long seed) {
+        return calculateValueAtRisk(portfolio, 1, DEFAULT_VAR_PATHS, seed,
+            Runtime.getRuntime().availableProcessors(), 0.95, 0.99);
+    }
+    
     /**
      * Get risk report for portfolio.
      */
-    public static String getRiskReport(Portfolio portfolio, RiskProfile riskProfile) {
+    public static String getRiskReport(PortfolioView portfolio, RiskProfile riskProfile) {
         StringBuilder report = new StringBuilder();
         report.append("=== Risk Analysis Report ===\n");
         report.append(String.format("Portfolio: %s\n\n", portfolio.getPortfolioName()));
@@ -0,0 +1,398 @@
+package logic;
+
+import model.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Detects wash sales across all the portfolios of a user.
+ *
+ * A sale at a loss is a wash sale when the same symbol is bought within
+ * 30 days before or after it in any of the user's portfolios. The loss is
+ * disallowed in proportion to the shares replaced. Each purchase replaces
+ * at most its own quantity, earliest sales first, and never replaces the
+ * shares it supplied to the sale itself.
+ *
+ * Purchases and losing sales are indexed per symbol and sorted by day.
+ * Each portfolio's history is already in time order, so the sort only
+ * merges one run per portfolio. The two indexes are then joined with a
+ * window that slides forward: a purchase that is used up or falls behind
+ * the window is not looked at again, so detection is linear in the
+ * number of transactions.
+ *
+ * A sale's loss comes from the portfolio's TaxLotLedger when one is given
+ * and it recorded the sale. Otherwise it comes from replaying the
+ * portfolio's purchases as FIFO lots, and shares held before the history
+ * starts cost the holding's purchase price.
+ */
+public class WashSaleDetector {
+
+    /** Days before and after a loss sale in which a purchase replaces it. */
+    public static final int WINDOW_DAYS = 30;
+
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Purchase made within the window of a wash sale.
+     */
+    public static final class Replacement {
+        private final String portfolioId;
+        private final String transactionId;
+        private final LocalDate date;
+        private final double quantity;
+
+        private Replacement(String portfolioId, String transactionId, LocalDate date, double quantity) {
+            this.portfolioId = portfolioId;
+            this.transactionId = transactionId;
+            this.date = date;
+            this.quantity = quantity;
+        }
+
+        // Getters
+        public String getPortfolioId() { return portfolioId; }
+        public String getTransactionId() { return transactionId; }
+        public LocalDate getDate() { return date; }
+        public double getQuantity() { return quantity; }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s on %s: %.2f shares", portfolioId, transactionId, date, quantity);
+        }
+    }
+
+    /**
+     * Sale at a loss with the purchases that replaced it.
+     */
+    public static final class WashSale {
+        private final String userId;
+        private final String portfolioId;
+        private final String transactionId;
+        private final String symbol;
+        private final LocalDate date;
+        private final double quantity;
+        private final double loss;
+        private final double replacedQuantity;
+        private final List<Replacement> replacements;
+
+        private WashSale(String userId, Sale sale, double replacedQuantity, List<Replacement> replacements) {
+            this.userId = userId;
+            this.portfolioId = sale.portfolioId;
+            this.transactionId = sale.transaction.getId();
+            this.symbol = sale.transaction.getAssetSymbol();
+            this.date = sale.transaction.getTimestamp().toLocalDate();
+            this.quantity = sale.transaction.getQuantity();
+            this.loss = sale.loss;
+            this.replacedQuantity = replacedQuantity;
+            this.replacements = replacements;
+        }
+
+        // Getters
+        public String getUserId() { return userId; }
+        public String getPortfolioId() { return portfolioId; }
+        public String getTransactionId() { return transactionId; }
+        public String getSymbol() { return symbol; }
+        public LocalDate getDate() { return date; }
+        public double getQuantity() { return quantity; }
+        public double getLoss() { return loss; }
+        public double getReplacedQuantity() { return replacedQuantity; }
+        public List<Replacement> getReplacements() { return Collections.unmodifiableList(replacements); }
+
+        /**
+         * Part of the loss that cannot be claimed.
+         */
+        public double getDisallowedLoss() {
+            return quantity == 0 ? 0.0 : loss * Math.min(1.0, replacedQuantity / quantity);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s on %s: %.2f of %.2f shares replaced, $%.2f of $%.2f loss disallowed",
+                portfolioId, transactionId, symbol, date, replacedQuantity, quantity, getDisallowedLoss(), loss);
+        }
+    }
+
+    // A purchase: a FIFO lot while it is held, a replacement while unmatched
+    private static final class Purchase {
+        final String portfolioId;
+        final Transaction transaction;
+        final long day;
+        double held;
+        double unmatched;
+
+        Purchase(String portfolioId, Transaction transaction, long day) {
+            this.portfolioId = portfolioId;
+            this.transaction = transaction;
+            this.day = day;
+            this.held = transaction.getQuantity();
+            this.unmatched = transaction.getQuantity();
+        }
+    }
+
+    // A sale at a loss, with the purchases whose shares it sold
+    private static final class Sale {
+        final String portfolioId;
+        final Transaction transaction;
+        final long day;
+        final double loss;
+        final Map<Purchase, Double> relieved;
+
+        Sale(String portfolioId, Transaction transaction, long day, double loss, Map<Purchase, Double> relieved) {
+            this.portfolioId = portfolioId;
+            this.transaction = transaction;
+            this.day = day;
+            this.loss = loss;
+            this.relieved = relieved;
+        }
+
+        double relieved(Purchase purchase) {
+            Double quantity = relieved.get(purchase);
+            return quantity == null ? 0.0 : quantity;
+        }
+    }
+
+    // Purchases and losing sales of one symbol, across the user's portfolios
+    private static final class SymbolIndex {
+        final List<Purchase> purchases = new ArrayList<>();
+        final List<Sale> sales = new ArrayList<>();
+    }
+
+    private static final Comparator<Purchase> PURCHASES_BY_DAY = Comparator.comparingLong(p -> p.day);
+    private static final Comparator<Sale> SALES_BY_DAY = Comparator.comparingLong(s -> s.day);
+    private static final Comparator<WashSale> BY_DATE =
+        Comparator.comparing(WashSale::getDate).thenComparing(WashSale::getSymbol);
+
+    /**
+     * Wash sales in a user's portfolios, by sale date, with losses from
+     * FIFO lots replayed from each portfolio's history.
+     */
+    public static List<WashSale> detect(User user) {
+        return detect(user, Collections.emptyList());
+    }
+
+    /**
+     * Wash sales in a user's portfolios, by sale date. Sales recorded by
+     * one of the ledgers take their loss and sold lots from it; ledgers
+     * for other users' portfolios are ignored.
+     */
+    public static List<WashSale> detect(User user, Collection<TaxLotLedger> ledgers) {
+        return detect(user, byPortfolio(ledgers));
+    }
+
+    /**
+     * Wash sales of many users, by user id, for users who have any. Each
+     * user is detected on its own, so the work spreads over the pool.
+     */
+    public static Map<String, List<WashSale>> detectAll(Collection<User> users, Collection<TaxLotLedger> ledgers,
+                                                        int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        User[] all = users.toArray(new User[0]);
+        Map<Portfolio, TaxLotLedger> byPortfolio = byPortfolio(ledgers);
+        // Pre-sized, so each task only sets its own slot
+        List<List<WashSale>> results = new ArrayList<>(Collections.nCopies(all.length, null));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, all.length).parallel()
+                .forEach(i -> results.set(i, detect(all[i], byPortfolio)))).join();
+        } finally {
+            pool.shutdownNow();
+        }
+        Map<String, List<WashSale>> washSales = new LinkedHashMap<>();
+        for (int i = 0; i < all.length; i++) {
+            if (!results.get(i).isEmpty()) {
+                washSales.put(all[i].getUserId(), results.get(i));
+            }
+        }
+        return washSales;
+    }
+
+    /**
+     * Symbols bought in any of the user's portfolios in the 30 days up to
+     * the given date. Selling one of them at a loss on that date would be
+     * a wash sale already; purchases after the sale are caught by
+     * {@link #detect(User)}. Histories are read backwards and only as far
+     * as the window reaches.
+     */
+    public static Set<String> getRestrictedSymbols(User user, LocalDate asOf) {
+        long last = asOf.toEpochDay();
+        long first = last - WINDOW_DAYS;
+        Set<String> symbols = new HashSet<>();
+        user.forEachPortfolio(portfolio -> {
+            List<Transaction> transactions = portfolio.getTransactionsView();
+            for (int i = transactions.size() - 1; i >= 0; i--) {
+                Transaction transaction = transactions.get(i);
+                long day = transaction.getTimestamp().toLocalDate().toEpochDay();
+                if (day < first) break;
+                if (day <= last && transaction.getType() == Transaction.TransactionType.BUY) {
+                    symbols.add(transaction.getAssetSymbol());
+                }
+            }
+        });
+        return symbols;
+    }
+
+    private static Map<Portfolio, TaxLotLedger> byPortfolio(Collection<TaxLotLedger> ledgers) {
+        Map<Portfolio, TaxLotLedger> byPortfolio = new IdentityHashMap<>();
+        for (TaxLotLedger ledger : ledgers) {
+            byPortfolio.put(ledger.getPortfolio(), ledger);
+        }
+        return byPortfolio;
+    }
+
+    private static List<WashSale> detect(User user, Map<Portfolio, TaxLotLedger> ledgers) {
+        Map<String, SymbolIndex> symbols = new HashMap<>();
+        user.forEachPortfolio(portfolio -> index(portfolio, ledgers.get(portfolio), symbols));
+
+        List<WashSale> washSales = new ArrayList<>();
+        for (SymbolIndex index : symbols.values()) {
+            if (!index.sales.isEmpty() && !index.purchases.isEmpty()) {
+                join(user.getUserId(), index, washSales);
+            }
+        }
+        washSales.sort(BY_DATE);
+        return washSales;
+    }
+
+    /**
+     * Add a portfolio's purchases and losing sales to the symbol indexes.
+     */
+    private static void index(Portfolio portfolio, TaxLotLedger ledger, Map<String, SymbolIndex> symbols) {
+        String portfolioId = portfolio.getPortfolioId();
+        List<Transaction> transactions = inTimeOrder(portfolio.getTransactionsView());
+
+        // Disposals by sale, and purchases by id to resolve their lots
+        Map<String, List<TaxLotLedger.Disposal>> disposals = new HashMap<>();
+        Map<String, Purchase> purchasesById = new HashMap<>();
+        if (ledger != null) {
+            for (TaxLotLedger.Disposal disposal : ledger.getDisposals()) {
+                disposals.computeIfAbsent(disposal.getTransactionId(), id -> new ArrayList<>(1)).add(disposal);
+            }
+        }
+
+        Map<String, ArrayDeque<Purchase>> lots = new HashMap<>();
+        for (Transaction transaction : transactions) {
+            Transaction.TransactionType type = transaction.getType();
+            if (type != Transaction.TransactionType.BUY && type != Transaction.TransactionType.SELL) continue;
+            String symbol = transaction.getAssetSymbol();
+            long day = transaction.getTimestamp().toLocalDate().toEpochDay();
+            ArrayDeque<Purchase> held = lots.computeIfAbsent(symbol, s -> new ArrayDeque<>());
+
+            if (type == Transaction.TransactionType.BUY) {
+                Purchase purchase = new Purchase(portfolioId, transaction, day);
+                held.addLast(purchase);
+                if (ledger != null) {
+                    purchasesById.put(transaction.getId(), purchase);
+                }
+                symbols.computeIfAbsent(symbol, s -> new SymbolIndex()).purchases.add(purchase);
+                continue;
+            }
+
+            // Relieve the replayed lots either way, so they stay in step
+            Map<Purchase, Double> relieved = new IdentityHashMap<>();
+            double cost = relieve(portfolio, transaction, held, relieved);
+            List<TaxLotLedger.Disposal> sold = disposals.get(transaction.getId());
+            if (sold != null) {
+                relieved.clear();
+                cost = 0.0;
+                for (TaxLotLedger.Disposal disposal : sold) {
+                    cost += disposal.getCostBasis();
+                    Purchase purchase = purchasesById.get(disposal.getPurchaseTransactionId());
+                    if (purchase != null) {
+                        relieved.merge(purchase, disposal.getQuantity(), Double::sum);
+                    }
+                }
+            }
+            double loss = cost - transaction.getTotalAmount();
+            if (loss > EPSILON) {
+                symbols.computeIfAbsent(symbol, s -> new SymbolIndex()).sales
+                    .add(new Sale(portfolioId, transaction, day, loss, relieved));
+            }
+        }
+    }
+
+    /**
+     * Take a sale's shares from the oldest lots and return their cost.
+     * Shares beyond the replayed lots cost the holding's purchase price,
+     * or the sale price if the holding is gone.
+     */
+    private static double relieve(Portfolio portfolio, Transaction sale, ArrayDeque<Purchase> held,
+                                  Map<Purchase, Double> relieved) {
+        double remaining = sale.getQuantity();
+        double cost = 0.0;
+        while (remaining > EPSILON && !held.isEmpty()) {
+            Purchase lot = held.peekFirst();
+            double quantity = Math.min(lot.held, remaining);
+            lot.held -= quantity;
+            remaining -= quantity;
+            cost += quantity * lot.transaction.getPricePerUnit();
+            relieved.merge(lot, quantity, Double::sum);
+            if (lot.held <= EPSILON) {
+                held.pollFirst();
+            }
+        }
+        if (remaining > EPSILON) {
+            Asset asset = portfolio.getAsset(sale.getAssetSymbol());
+            cost += remaining * (asset != null ? asset.getPurchasePrice() : sale.getPricePerUnit());
+        }
+        return cost;
+    }
+
+    /**
+     * Match each losing sale of a symbol, earliest first, to the earliest
+     * unmatched purchases within its window.
+     */
+    private static void join(String userId, SymbolIndex index, List<WashSale> washSales) {
+        List<Purchase> purchases = index.purchases;
+        List<Sale> sales = index.sales;
+        purchases.sort(PURCHASES_BY_DAY);
+        sales.sort(SALES_BY_DAY);
+
+        int first = 0;
+        for (Sale sale : sales) {
+            // Purchases behind the window or used up are done with
+            while (first < purchases.size()
+                    && (purchases.get(first).day < sale.day - WINDOW_DAYS
+                        || purchases.get(first).unmatched <= EPSILON)) {
+                first++;
+            }
+
+            double needed = sale.transaction.getQuantity();
+            List<Replacement> replacements = null;
+            for (int i = first; i < purchases.size() && needed > EPSILON; i++) {
+                Purchase purchase = purchases.get(i);
+                if (purchase.day > sale.day + WINDOW_DAYS) break;
+                double available = purchase.unmatched - sale.relieved(purchase);
+                if (available <= EPSILON) continue;
+                double quantity = Math.min(available, needed);
+                purchase.unmatched -= quantity;
+                needed -= quantity;
+                if (replacements == null) {
+                    replacements = new ArrayList<>(1);
+                }
+                replacements.add(new Replacement(purchase.portfolioId, purchase.transaction.getId(),
+                    purchase.transaction.getTimestamp().toLocalDate(), quantity));
+            }
+            if (replacements != null) {
+                washSales.add(new WashSale(userId, sale, sale.transaction.getQuantity() - Math.max(0.0, needed),
+                    replacements));
+            }
+        }
+    }
+
+    // A history as recorded if already in time order, else a sorted copy
+    private static List<Transaction> inTimeOrder(List<Transaction> transactions) {
+        int size = transactions.size();
+        List<Transaction> recorded = transactions.subList(0, size);
+        for (int i = 1; i < size; i++) {
+            if (recorded.get(i).getTimestamp().isBefore(recorded.get(i - 1).getTimestamp())) {
+                List<Transaction> sorted = new ArrayList<>(recorded);
+                sorted.sort(Comparator.comparing(Transaction::getTimestamp));
+                return sorted;
+            }
+        }
+        return recorded;
+    }
+}
@@ -0,0 +1,62 @@
+package model;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only list that any number of threads can read without locking
+ * while others append.
+ *
+ * Elements are stored in fixed-size chunks that never move, so growth
+ * never copies elements. Appends are serialized by a lock and publish the
+ * new element by writing the volatile size after it, so a reader sees every
+ * element below the size it read.
+ */
+final class AppendOnlyLog<E> extends AbstractList<E> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private volatile Object[][] chunks = new Object[8][];
+    private volatile int size;
+
+    void append(E element) {
+        appendLock.lock();
+        try {
+            int index = size;
+            int chunk = index >>> CHUNK_SHIFT;
+            Object[][] current = chunks;
+            if (chunk == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            if (current[chunk] == null) {
+                current[chunk] = new Object[CHUNK_SIZE];
+            }
+            current[chunk][index & CHUNK_MASK] = element;
+            chunks = current;
+            size = index + 1;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return (E) chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
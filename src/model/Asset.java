@@ -6,6 +6,12 @@ import java.time.LocalDate;
 /**
  * Represents a financial asset in a portfolio.
  * Supports stocks, bonds, mutual funds, ETFs, and cash.
+ * 
+ * An asset is one lot (quantity, purchase price, purchase date) of an
+ * {@link Instrument}, which holds the symbol's name, type, sector and
+ * current price. Assets created from plain values get a private
+ * instrument; assets created through an {@link InstrumentRegistry} share
+ * the registry's instrument with every other holder of the symbol.
  */
 public class Asset implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -14,61 +20,116 @@ public class Asset implements Serializable {
         STOCK, BOND, MUTUAL_FUND, ETF, CASH, REAL_ESTATE, COMMODITY
     }
     
-    private String symbol;
-    private String name;
-    private AssetType type;
+    private Instrument instrument;
     private double quantity;
     private double purchasePrice;
-    private double currentPrice;
     private LocalDate purchaseDate;
-    private String sector;
+    
+    // The one portfolio whose running totals include this asset; notified on
+    // changes. Set and cleared by the portfolio as the asset is added and removed.
+    Portfolio owner;
+    
+    // What this asset last contributed to its owner's totals, and the price
+    // it was valued at
+    double indexedValue;
+    double indexedPrice;
+    String indexedSector;
+    int indexedVersion;
+    
+    // Snapshot round in which the owner last marked this asset for copying
+    int markedRound;
     
     public Asset(String symbol, String name, AssetType type, double quantity, 
                  double purchasePrice, LocalDate purchaseDate) {
-        this.symbol = symbol;
-        this.name = name;
-        this.type = type;
-        this.quantity = quantity;
-        this.purchasePrice = purchasePrice;
-        this.currentPrice = purchasePrice;
-        this.purchaseDate = purchaseDate;
-        this.sector = "General";
+        this(symbol, name, type, quantity, purchasePrice, purchasePrice, purchaseDate, "General");
     }
     
     public Asset(String symbol, String name, AssetType type, double quantity, 
                  double purchasePrice, double currentPrice, LocalDate purchaseDate, String sector) {
-        this.symbol = symbol;
-        this.name = name;
-        this.type = type;
+        this(new Instrument(-1, symbol, name, type, sector, currentPrice), quantity, purchasePrice, purchaseDate);
+    }
+    
+    public Asset(Instrument instrument, double quantity, double purchasePrice, LocalDate purchaseDate) {
+        this.instrument = instrument;
         this.quantity = quantity;
         this.purchasePrice = purchasePrice;
-        this.currentPrice = currentPrice;
         this.purchaseDate = purchaseDate;
-        this.sector = sector;
+    }
+    
+    // For subclasses that keep their own storage and override the getters
+    Asset() {
     }
     
     // Getters
-    public String getSymbol() { return symbol; }
-    public String getName() { return name; }
-    public AssetType getType() { return type; }
+    public Instrument getInstrument() { return instrument; }
+    public String getSymbol() { return instrument.getSymbol(); }
+    public String getName() { return instrument.getName(); }
+    public AssetType getType() { return instrument.getType(); }
     public double getQuantity() { return quantity; }
     public double getPurchasePrice() { return purchasePrice; }
-    public double getCurrentPrice() { return currentPrice; }
+    public double getCurrentPrice() { return instrument.getCurrentPrice(); }
     public LocalDate getPurchaseDate() { return purchaseDate; }
-    public String getSector() { return sector; }
+    public String getSector() { return instrument.getSector(); }
     
-    // Setters
-    public void setQuantity(double quantity) { this.quantity = quantity; }
-    public void setCurrentPrice(double currentPrice) { this.currentPrice = currentPrice; }
-    public void setSector(String sector) { this.sector = sector; }
+    // Setters (keep the owning portfolio's running totals in step). Price and
+    // sector belong to the instrument: for a shared one they change for every
+    // holder, whose portfolios catch up when next read.
+    public void setQuantity(double quantity) {
+        Portfolio portfolio = owner;
+        if (portfolio != null) {
+            portfolio.updateAsset(this, () -> this.quantity = quantity);
+        } else {
+            this.quantity = quantity;
+        }
+    }
+    
+    public void setCurrentPrice(double currentPrice) {
+        if (isShared()) {
+            instrument.setCurrentPrice(currentPrice);
+            return;
+        }
+        Portfolio portfolio = owner;
+        if (portfolio != null) {
+            portfolio.repriceAsset(this, currentPrice);
+        } else {
+            instrument.setCurrentPrice(currentPrice);
+        }
+    }
+    
+    public void setSector(String sector) {
+        if (isShared()) {
+            instrument.setSector(sector);
+            return;
+        }
+        Portfolio portfolio = owner;
+        if (portfolio != null) {
+            portfolio.updateAsset(this, () -> instrument.setSector(sector));
+        } else {
+            instrument.setSector(sector);
+        }
+    }
+    
+    // True for a row view of a ColumnarPositionStore, which cannot be held
+    boolean isStoreView() {
+        return false;
+    }
+    
+    boolean isShared() {
+        return instrument != null && instrument.isShared();
+    }
+    
+    // True if the instrument changed since this asset was last indexed
+    boolean isStale() {
+        return instrument != null && instrument.getVersion() != indexedVersion;
+    }
     
-    // Calculated values
+    // Calculated values (go through the getters so views can override storage)
     public double getCostBasis() {
-        return quantity * purchasePrice;
+        return getQuantity() * getPurchasePrice();
     }
     
     public double getCurrentValue() {
-        return quantity * currentPrice;
+        return getQuantity() * getCurrentPrice();
     }
     
     public double getGainLoss() {
@@ -81,13 +142,13 @@ public class Asset implements Serializable {
     }
     
     public int getHoldingPeriodDays() {
-        return (int) java.time.temporal.ChronoUnit.DAYS.between(purchaseDate, LocalDate.now());
+        return (int) java.time.temporal.ChronoUnit.DAYS.between(getPurchaseDate(), LocalDate.now());
     }
     
     @Override
     public String toString() {
         return String.format("%s (%s) - %s: %.2f units @ $%.2f | Current: $%.2f | Gain/Loss: $%.2f (%.2f%%)",
-            symbol, name, type, quantity, purchasePrice, currentPrice, 
+            getSymbol(), getName(), getType(), getQuantity(), getPurchasePrice(), getCurrentPrice(), 
             getGainLoss(), getGainLossPercentage());
     }
 }
@@ -0,0 +1,384 @@
+package model;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Columnar (struct-of-arrays) position store for very large books.
+ *
+ * Each position is a row across parallel primitive columns (quantity,
+ * purchase price, current price, purchase epoch-day, type ordinal and
+ * sector id) instead of an Asset object in a HashMap, so valuation and
+ * allocation are tight loops over arrays. Rows are exposed through
+ * Asset-compatible views that read and write the columns directly.
+ *
+ * Removing a position moves the last row into its slot, so a view or row
+ * number is only valid until the next removal.
+ *
+ * The store is a read-side copy for analytics, built with
+ * {@link #fromPortfolio}, not a backend for Portfolio: later changes to
+ * the portfolio do not reach it, and changes to it do not reach the
+ * portfolio. Its views have no Instrument and belong to no portfolio, so
+ * Portfolio and HoldingsIndex refuse them.
+ */
+public class ColumnarPositionStore implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final Asset.AssetType[] ASSET_TYPES = Asset.AssetType.values();
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private String[] symbols;
+    private String[] names;
+    private double[] quantities;
+    private double[] purchasePrices;
+    private double[] currentPrices;
+    private int[] purchaseEpochDays;
+    private byte[] typeOrdinals;
+    private int[] sectorIds;
+
+    // Sector dictionary: id -> name and name -> id
+    private List<String> sectorNames;
+    private Map<String, Integer> sectorIdsByName;
+
+    // Open-addressing symbol index: slot -> row + 1 (0 = empty slot)
+    private int[] symbolIndex;
+
+    private double cashBalance;
+
+    public ColumnarPositionStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ColumnarPositionStore(int expectedPositions) {
+        int capacity = Math.max(INITIAL_CAPACITY, expectedPositions);
+        this.symbols = new String[capacity];
+        this.names = new String[capacity];
+        this.quantities = new double[capacity];
+        this.purchasePrices = new double[capacity];
+        this.currentPrices = new double[capacity];
+        this.purchaseEpochDays = new int[capacity];
+        this.typeOrdinals = new byte[capacity];
+        this.sectorIds = new int[capacity];
+        this.sectorNames = new ArrayList<>();
+        this.sectorIdsByName = new HashMap<>();
+        this.symbolIndex = new int[tableSizeFor(capacity)];
+    }
+
+    /**
+     * Build a columnar copy of a portfolio's holdings and cash balance.
+     */
+    public static ColumnarPositionStore fromPortfolio(Portfolio portfolio) {
+        ColumnarPositionStore store = new ColumnarPositionStore(portfolio.getAssetCount());
+        portfolio.forEachAsset(store::addAsset);
+        store.setCashBalance(portfolio.getCashBalance());
+        return store;
+    }
+
+    // Getters
+    public int size() { return size; }
+    public double getCashBalance() { return cashBalance; }
+
+    // Setters
+    public void setCashBalance(double balance) { this.cashBalance = balance; }
+
+    // Position operations
+    public int addAsset(Asset asset) {
+        return addPosition(asset.getSymbol(), asset.getName(), asset.getType(), asset.getQuantity(),
+            asset.getPurchasePrice(), asset.getCurrentPrice(), asset.getPurchaseDate(), asset.getSector());
+    }
+
+    /**
+     * Add a position, replacing any existing position with the same symbol.
+     * Returns the row the position was stored in.
+     */
+    public int addPosition(String symbol, String name, Asset.AssetType type, double quantity,
+                           double purchasePrice, double currentPrice, LocalDate purchaseDate, String sector) {
+        int row = indexOf(symbol);
+        if (row < 0) {
+            ensureCapacity(size + 1);
+            row = size++;
+            insertIndex(symbol, row);
+        }
+        symbols[row] = symbol;
+        names[row] = name;
+        quantities[row] = quantity;
+        purchasePrices[row] = purchasePrice;
+        currentPrices[row] = currentPrice;
+        purchaseEpochDays[row] = (int) purchaseDate.toEpochDay();
+        typeOrdinals[row] = (byte) type.ordinal();
+        sectorIds[row] = sectorId(sector);
+        return row;
+    }
+
+    public void removePosition(String symbol) {
+        int slot = findSlot(symbol);
+        if (slot < 0) return;
+
+        int row = symbolIndex[slot] - 1;
+        deleteSlot(slot);
+
+        int last = --size;
+        if (row != last) {
+            symbols[row] = symbols[last];
+            names[row] = names[last];
+            quantities[row] = quantities[last];
+            purchasePrices[row] = purchasePrices[last];
+            currentPrices[row] = currentPrices[last];
+            purchaseEpochDays[row] = purchaseEpochDays[last];
+            typeOrdinals[row] = typeOrdinals[last];
+            sectorIds[row] = sectorIds[last];
+            symbolIndex[findSlot(symbols[row])] = row + 1;
+        }
+        symbols[last] = null;
+        names[last] = null;
+    }
+
+    public int indexOf(String symbol) {
+        int slot = findSlot(symbol);
+        return slot < 0 ? -1 : symbolIndex[slot] - 1;
+    }
+
+    public boolean hasPosition(String symbol) {
+        return findSlot(symbol) >= 0;
+    }
+
+    public Asset getAsset(String symbol) {
+        int row = indexOf(symbol);
+        return row < 0 ? null : view(row);
+    }
+
+    /**
+     * Asset-compatible view of a row; reads and writes go to the columns.
+     */
+    public Asset view(int row) {
+        Objects.checkIndex(row, size);
+        return new PositionView(this, row);
+    }
+
+    /**
+     * Visit every position through a single reusable view (flyweight).
+     * The view is repositioned for each row and must not be retained.
+     */
+    public void forEachAsset(Consumer<? super Asset> action) {
+        PositionView cursor = new PositionView(this, 0);
+        for (int row = 0; row < size; row++) {
+            cursor.row = row;
+            action.accept(cursor);
+        }
+    }
+
+    // Column access by row
+    public String getSymbol(int row) { return symbols[row]; }
+    public double getQuantity(int row) { return quantities[row]; }
+    public double getPurchasePrice(int row) { return purchasePrices[row]; }
+    public double getCurrentPrice(int row) { return currentPrices[row]; }
+    public int getPurchaseEpochDay(int row) { return purchaseEpochDays[row]; }
+    public Asset.AssetType getType(int row) { return ASSET_TYPES[typeOrdinals[row]]; }
+    public String getSector(int row) { return sectorNames.get(sectorIds[row]); }
+
+    public void setQuantity(int row, double quantity) { quantities[row] = quantity; }
+    public void setCurrentPrice(int row, double price) { currentPrices[row] = price; }
+    public void setSector(int row, String sector) { sectorIds[row] = sectorId(sector); }
+
+    // Portfolio calculations
+    public double getTotalValue() {
+        double total = cashBalance;
+        for (int row = 0; row < size; row++) {
+            total += quantities[row] * currentPrices[row];
+        }
+        return total;
+    }
+
+    public double getTotalCostBasis() {
+        double total = 0.0;
+        for (int row = 0; row < size; row++) {
+            total += quantities[row] * purchasePrices[row];
+        }
+        return total;
+    }
+
+    /**
+     * Asset allocation by type, as in {@link Portfolio#getAssetAllocation()}.
+     */
+    public Map<Asset.AssetType, Double> getAssetAllocation() {
+        Map<Asset.AssetType, Double> allocation = new HashMap<>();
+        double totalValue = getTotalValue();
+
+        if (totalValue == 0) return allocation;
+
+        double[] typeValues = new double[ASSET_TYPES.length];
+        int[] typeHoldings = new int[ASSET_TYPES.length];
+        for (int row = 0; row < size; row++) {
+            int type = typeOrdinals[row];
+            typeValues[type] += quantities[row] * currentPrices[row];
+            typeHoldings[type]++;
+        }
+
+        for (Asset.AssetType type : ASSET_TYPES) {
+            if (typeHoldings[type.ordinal()] > 0) {
+                allocation.put(type, typeValues[type.ordinal()]);
+            }
+        }
+
+        // Add cash
+        if (cashBalance > 0) {
+            allocation.put(Asset.AssetType.CASH, cashBalance);
+        }
+
+        // Convert to percentages
+        for (Asset.AssetType type : allocation.keySet()) {
+            allocation.put(type, (allocation.get(type) / totalValue) * 100.0);
+        }
+
+        return allocation;
+    }
+
+    /**
+     * Sector allocation, as in {@link Portfolio#getSectorAllocation()}.
+     */
+    public Map<String, Double> getSectorAllocation() {
+        Map<String, Double> allocation = new HashMap<>();
+        double totalValue = getTotalValue();
+
+        if (totalValue == 0) return allocation;
+
+        double[] sectorValues = new double[sectorNames.size()];
+        boolean[] held = new boolean[sectorNames.size()];
+        for (int row = 0; row < size; row++) {
+            int sector = sectorIds[row];
+            sectorValues[sector] += quantities[row] * currentPrices[row];
+            held[sector] = true;
+        }
+
+        for (int sector = 0; sector < sectorValues.length; sector++) {
+            if (held[sector]) {
+                allocation.put(sectorNames.get(sector), (sectorValues[sector] / totalValue) * 100.0);
+            }
+        }
+
+        return allocation;
+    }
+
+    // Sector dictionary
+    private int sectorId(String sector) {
+        Integer id = sectorIdsByName.get(sector);
+        if (id == null) {
+            id = sectorNames.size();
+            sectorNames.add(sector);
+            sectorIdsByName.put(sector, id);
+        }
+        return id;
+    }
+
+    // Column growth
+    private void ensureCapacity(int required) {
+        if (required > symbols.length) {
+            int capacity = Math.max(required, symbols.length * 2);
+            symbols = Arrays.copyOf(symbols, capacity);
+            names = Arrays.copyOf(names, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            purchasePrices = Arrays.copyOf(purchasePrices, capacity);
+            currentPrices = Arrays.copyOf(currentPrices, capacity);
+            purchaseEpochDays = Arrays.copyOf(purchaseEpochDays, capacity);
+            typeOrdinals = Arrays.copyOf(typeOrdinals, capacity);
+            sectorIds = Arrays.copyOf(sectorIds, capacity);
+        }
+        if (required * 2 > symbolIndex.length) {
+            rehash(tableSizeFor(required));
+        }
+    }
+
+    // Symbol index (linear probing)
+    private static int tableSizeFor(int positions) {
+        int n = Integer.highestOneBit(Math.max(positions, INITIAL_CAPACITY) - 1) << 2;
+        return Math.max(n, INITIAL_CAPACITY);
+    }
+
+    private static int hash(String symbol) {
+        int h = symbol.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private int findSlot(String symbol) {
+        int mask = symbolIndex.length - 1;
+        for (int slot = hash(symbol) & mask; symbolIndex[slot] != 0; slot = (slot + 1) & mask) {
+            if (symbols[symbolIndex[slot] - 1].equals(symbol)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insertIndex(String symbol, int row) {
+        int mask = symbolIndex.length - 1;
+        int slot = hash(symbol) & mask;
+        while (symbolIndex[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        symbolIndex[slot] = row + 1;
+    }
+
+    private void deleteSlot(int slot) {
+        // Backward-shift deletion keeps every probe chain unbroken
+        int mask = symbolIndex.length - 1;
+        int hole = slot;
+        for (int i = (slot + 1) & mask; symbolIndex[i] != 0; i = (i + 1) & mask) {
+            int home = hash(symbols[symbolIndex[i] - 1]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                symbolIndex[hole] = symbolIndex[i];
+                hole = i;
+            }
+        }
+        symbolIndex[hole] = 0;
+    }
+
+    private void rehash(int tableSize) {
+        symbolIndex = new int[tableSize];
+        for (int row = 0; row < size; row++) {
+            insertIndex(symbols[row], row);
+        }
+    }
+
+    /**
+     * Asset view over one row of the store.
+     */
+    private static class PositionView extends Asset {
+        private static final long serialVersionUID = 1L;
+
+        private final ColumnarPositionStore store;
+        private int row;
+
+        PositionView(ColumnarPositionStore store, int row) {
+            super();
+            this.store = store;
+            this.row = row;
+        }
+
+        @Override public String getSymbol() { return store.symbols[row]; }
+        @Override public String getName() { return store.names[row]; }
+        @Override public AssetType getType() { return ASSET_TYPES[store.typeOrdinals[row]]; }
+        @Override public double getQuantity() { return store.quantities[row]; }
+        @Override public double getPurchasePrice() { return store.purchasePrices[row]; }
+        @Override public double getCurrentPrice() { return store.currentPrices[row]; }
+        @Override public LocalDate getPurchaseDate() { return LocalDate.ofEpochDay(store.purchaseEpochDays[row]); }
+        @Override public String getSector() { return store.sectorNames.get(store.sectorIds[row]); }
+
+        @Override
+        public int getHoldingPeriodDays() {
+            return (int) (LocalDate.now().toEpochDay() - store.purchaseEpochDays[row]);
+        }
+
+        // Never owned by a portfolio, so setters write the columns directly
+        @Override public void setQuantity(double quantity) { store.quantities[row] = quantity; }
+        @Override public void setCurrentPrice(double currentPrice) { store.currentPrices[row] = currentPrice; }
+        @Override public void setSector(String sector) { store.sectorIds[row] = store.sectorId(sector); }
+
+        @Override
+        boolean isStoreView() {
+            return true;
+        }
+    }
+}
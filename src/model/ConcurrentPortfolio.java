@@ -0,0 +1,221 @@
+package model;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Portfolio that price-feed, trade-booking and reporting threads can use
+ * at the same time.
+ *
+ * The state is the same as {@link Portfolio}'s, kept in thread-safe
+ * storage: assets live in a ConcurrentHashMap, the running totals are
+ * adders, and cash and net deposits are updated by compare-and-set.
+ * Every change to an asset (adding, removing, or an Asset setter) runs
+ * under one of a fixed set of locks striped by symbol, so writers on
+ * different symbols rarely contend, and readers sum the totals without
+ * locking, so valuation getters never wait for a writer. Each asset change
+ * is seen by a reader completely or not at all, but a reader racing
+ * several writers may see some of their changes and not others.
+ *
+ * Transactions go to an append-only log that is read without locking; the
+ * entry and its cash change are applied under a stripe. Listeners are
+ * notified on the recording thread, as in {@link Portfolio}: they may veto
+ * before the stripe is taken, and hear that the transaction was applied
+ * once it has been released, so a slow listener such as a journal waiting
+ * for its sync never holds a stripe.
+ *
+ * {@link #snapshot()} briefly holds every stripe, so it sees all of each
+ * asset change, transaction or setter call or none of it. Prices written
+ * to shared instruments through an {@link InstrumentRegistry} take no
+ * stripe: the snapshot includes those the portfolio has brought into its
+ * totals when the capture starts, and later ones wait for the next read.
+ * Either way its holdings, totals, allocations and version describe the
+ * same state.
+ */
+public class ConcurrentPortfolio extends Portfolio {
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantLock[] stripes;
+
+    // Writers on different stripes mark holdings for the next snapshot in turn
+    private final Object snapshotLock = new Object();
+
+    public ConcurrentPortfolio(String portfolioId, String portfolioName, String ownerId) {
+        this(portfolioId, portfolioName, ownerId, DEFAULT_STRIPES);
+    }
+
+    public ConcurrentPortfolio(String portfolioId, String portfolioName, String ownerId, int stripes) {
+        super(portfolioId, portfolioName, ownerId, new PortfolioState.Concurrent());
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripe count must be at least 1: " + stripes);
+        }
+        int count = Integer.highestOneBit(stripes);
+        if (count < stripes) count <<= 1;
+        this.stripes = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    // Setters (under a stripe, so a snapshot sees the value with its version)
+    @Override
+    public void setPortfolioName(String name) {
+        stripes[0].lock();
+        try {
+            super.setPortfolioName(name);
+        } finally {
+            stripes[0].unlock();
+        }
+    }
+
+    @Override
+    public void setCashBalance(double balance) {
+        stripes[0].lock();
+        try {
+            super.setCashBalance(balance);
+        } finally {
+            stripes[0].unlock();
+        }
+    }
+
+    @Override
+    public void setNetDeposits(double netDeposits) {
+        stripes[0].lock();
+        try {
+            super.setNetDeposits(netDeposits);
+        } finally {
+            stripes[0].unlock();
+        }
+    }
+
+    // Asset operations
+    @Override
+    public void addAsset(Asset asset) {
+        ReentrantLock lock = stripe(asset.getSymbol());
+        lock.lock();
+        try {
+            super.addAsset(asset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAsset(String symbol) {
+        ReentrantLock lock = stripe(symbol);
+        lock.lock();
+        try {
+            super.removeAsset(symbol);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Under a stripe so a snapshot sees the entry and its cash together
+    @Override
+    void applyTransaction(Transaction transaction) {
+        ReentrantLock lock = stripe(transaction.getId());
+        lock.lock();
+        try {
+            super.applyTransaction(transaction);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Asset changes run under the symbol's stripe; an asset removed from
+    // this portfolio in the meantime is changed without touching the totals
+    @Override
+    void updateAsset(Asset asset, Runnable change) {
+        ReentrantLock lock = stripe(asset.getSymbol());
+        lock.lock();
+        try {
+            if (asset.owner == this) {
+                super.updateAsset(asset, change);
+            } else {
+                change.run();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    void repriceAsset(Asset asset, double price) {
+        ReentrantLock lock = stripe(asset.getSymbol());
+        lock.lock();
+        try {
+            if (asset.owner == this) {
+                super.repriceAsset(asset, price);
+            } else {
+                asset.getInstrument().setCurrentPrice(price);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    void trackAsset(Asset asset) {
+        synchronized (snapshotLock) {
+            super.trackAsset(asset);
+        }
+    }
+
+    @Override
+    void untrackAsset(String symbol) {
+        synchronized (snapshotLock) {
+            super.untrackAsset(symbol);
+        }
+    }
+
+    /**
+     * Snapshot taken while holding every stripe, so no asset change,
+     * transaction or setter call is half-applied in it, and the refresh of
+     * repriced holdings it starts with cannot skip a stripe. Writers wait
+     * only for the capture.
+     */
+    @Override
+    public PortfolioSnapshot snapshot() {
+        for (ReentrantLock lock : stripes) {
+            lock.lock();
+        }
+        try {
+            synchronized (snapshotLock) {
+                return super.snapshot();
+            }
+        } finally {
+            for (ReentrantLock lock : stripes) {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Bring stale holdings up to date. Stripes held by a writer are skipped
+    // rather than waited for, and picked up again on a later read.
+    @Override
+    void refreshInstruments() {
+        if (!clearStale()) return;
+        boolean complete = true;
+        for (Asset asset : getAssetsView().values()) {
+            if (!asset.isStale()) continue;
+            ReentrantLock lock = stripe(asset.getSymbol());
+            if (!lock.tryLock()) {
+                complete = false;
+                continue;
+            }
+            try {
+                if (asset.owner == this) refreshAsset(asset);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (!complete) markStale();
+    }
+
+    private ReentrantLock stripe(String symbol) {
+        int hash = symbol.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+}
@@ -0,0 +1,367 @@
+package model;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Hash array mapped trie: a map whose versions share structure.
+ *
+ * {@link #freeze()} returns an immutable version in O(1). Until the next
+ * freeze, the trie updates the nodes it created itself in place; nodes that
+ * a frozen version can see are copied on their first update instead (only
+ * the path from the root to the changed entry, at most seven nodes). So a
+ * run of updates between freezes costs about what a HashMap would, and the
+ * frozen versions never change.
+ *
+ * Keys and values must not be null. Not thread-safe for writers; frozen
+ * versions can be read from any thread once safely published.
+ */
+final class HashTrie<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int MAX_SHIFT = 30;
+
+    private Node root;
+    private int size;
+    // Nodes created under this token may be updated in place; null when frozen
+    private Object edit;
+    private boolean added;
+    private boolean removed;
+
+    HashTrie() {
+        this.edit = new Object();
+    }
+
+    private HashTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        return root == null ? null : (V) root.find(0, hash(key), key);
+    }
+
+    void put(K key, V value) {
+        Objects.requireNonNull(value);
+        checkEditable();
+        added = false;
+        int hash = hash(key);
+        root = root == null
+            ? new BitmapNode(edit, 0, new Object[0]).put(this, 0, hash, key, value)
+            : root.put(this, 0, hash, key, value);
+        if (added) size++;
+    }
+
+    void remove(Object key) {
+        checkEditable();
+        if (root == null) return;
+        removed = false;
+        root = root.remove(this, 0, hash(key), key);
+        if (removed) size--;
+    }
+
+    /**
+     * Immutable version of the current contents. Later updates to this trie
+     * copy any node the returned version shares.
+     */
+    HashTrie<K, V> freeze() {
+        checkEditable();
+        edit = new Object();
+        return new HashTrie<>(root, size);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    /**
+     * Read-only Map view of this trie.
+     */
+    Map<K, V> asMap() {
+        return new AbstractMap<K, V>() {
+            @Override public int size() { return size; }
+            @Override public V get(Object key) { return HashTrie.this.get(key); }
+            @Override public boolean containsKey(Object key) { return HashTrie.this.get(key) != null; }
+
+            @Override
+            public Set<Map.Entry<K, V>> entrySet() {
+                return new AbstractSet<Map.Entry<K, V>>() {
+                    @Override public int size() { return size; }
+                    @Override public Iterator<Map.Entry<K, V>> iterator() { return new EntryIterator(); }
+                };
+            }
+        };
+    }
+
+    private void checkEditable() {
+        if (edit == null) {
+            throw new UnsupportedOperationException("Frozen trie");
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private abstract static class Node {
+        final Object edit;
+
+        Node(Object edit) {
+            this.edit = edit;
+        }
+
+        abstract Object find(int shift, int hash, Object key);
+        abstract Node put(HashTrie<?, ?> trie, int shift, int hash, Object key, Object value);
+        abstract Node remove(HashTrie<?, ?> trie, int shift, int hash, Object key);
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    /**
+     * Up to 32 slots selected by five bits of the hash. Slot pairs are
+     * (key, value) for an entry or (null, child node) for a subtree.
+     */
+    private static final class BitmapNode extends Node {
+        int bitmap;
+        Object[] array;
+
+        BitmapNode(Object edit, int bitmap, Object[] array) {
+            super(edit);
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) return null;
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[index];
+            if (k == null) return ((Node) array[index + 1]).find(shift + BITS, hash, key);
+            return key.equals(k) ? array[index + 1] : null;
+        }
+
+        @Override
+        Node put(HashTrie<?, ?> trie, int shift, int hash, Object key, Object value) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+
+            if ((bitmap & bit) == 0) {
+                Object[] grown = new Object[array.length + 2];
+                System.arraycopy(array, 0, grown, 0, index);
+                grown[index] = key;
+                grown[index + 1] = value;
+                System.arraycopy(array, index, grown, index + 2, array.length - index);
+                trie.added = true;
+                BitmapNode node = editable(trie);
+                node.bitmap = bitmap | bit;
+                node.array = grown;
+                return node;
+            }
+
+            Object k = array[index];
+            Object v = array[index + 1];
+            if (k == null) {
+                Node child = ((Node) v).put(trie, shift + BITS, hash, key, value);
+                return child == v ? this : editable(trie).set(index + 1, child);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : editable(trie).set(index + 1, value);
+            }
+            trie.added = true;
+            Node child = split(trie.edit, shift + BITS, k, v, HashTrie.hash(k), key, value, hash);
+            BitmapNode node = editable(trie);
+            node.array[index] = null;
+            node.array[index + 1] = child;
+            return node;
+        }
+
+        @Override
+        Node remove(HashTrie<?, ?> trie, int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) return this;
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+
+            Object k = array[index];
+            if (k == null) {
+                Node child = (Node) array[index + 1];
+                Node updated = child.remove(trie, shift + BITS, hash, key);
+                if (updated == child) return this;
+                if (updated != null) return editable(trie).set(index + 1, updated);
+            } else if (!key.equals(k)) {
+                return this;
+            } else {
+                trie.removed = true;
+            }
+
+            if (bitmap == bit) return null;
+            Object[] shrunk = new Object[array.length - 2];
+            System.arraycopy(array, 0, shrunk, 0, index);
+            System.arraycopy(array, index + 2, shrunk, index, array.length - index - 2);
+            BitmapNode node = editable(trie);
+            node.bitmap = bitmap ^ bit;
+            node.array = shrunk;
+            return node;
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+
+        private BitmapNode editable(HashTrie<?, ?> trie) {
+            return edit == trie.edit ? this : new BitmapNode(trie.edit, bitmap, array.clone());
+        }
+
+        private BitmapNode set(int index, Object value) {
+            array[index] = value;
+            return this;
+        }
+    }
+
+    /**
+     * Entries whose hashes are equal in every bit.
+     */
+    private static final class CollisionNode extends Node {
+        final Object[] array;
+
+        CollisionNode(Object edit, Object[] array) {
+            super(edit);
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) return array[i + 1];
+            }
+            return null;
+        }
+
+        @Override
+        Node put(HashTrie<?, ?> trie, int shift, int hash, Object key, Object value) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    if (array[i + 1] == value) return this;
+                    Object[] copy = array.clone();
+                    copy[i + 1] = value;
+                    return new CollisionNode(trie.edit, copy);
+                }
+            }
+            Object[] grown = Arrays.copyOf(array, array.length + 2);
+            grown[array.length] = key;
+            grown[array.length + 1] = value;
+            trie.added = true;
+            return new CollisionNode(trie.edit, grown);
+        }
+
+        @Override
+        Node remove(HashTrie<?, ?> trie, int shift, int hash, Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    trie.removed = true;
+                    if (array.length == 2) return null;
+                    Object[] shrunk = new Object[array.length - 2];
+                    System.arraycopy(array, 0, shrunk, 0, i);
+                    System.arraycopy(array, i + 2, shrunk, i, array.length - i - 2);
+                    return new CollisionNode(trie.edit, shrunk);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+
+    // Subtree holding two entries that collided at the level above
+    private static Node split(Object edit, int shift, Object key1, Object value1, int hash1,
+                              Object key2, Object value2, int hash2) {
+        if (shift > MAX_SHIFT) {
+            return new CollisionNode(edit, new Object[] { key1, value1, key2, value2 });
+        }
+        int fragment1 = (hash1 >>> shift) & MASK;
+        int fragment2 = (hash2 >>> shift) & MASK;
+        if (fragment1 == fragment2) {
+            Node child = split(edit, shift + BITS, key1, value1, hash1, key2, value2, hash2);
+            return new BitmapNode(edit, 1 << fragment1, new Object[] { null, child });
+        }
+        Object[] array = fragment1 < fragment2
+            ? new Object[] { key1, value1, key2, value2 }
+            : new Object[] { key2, value2, key1, value1 };
+        return new BitmapNode(edit, (1 << fragment1) | (1 << fragment2), array);
+    }
+
+    /**
+     * Depth-first walk over the entries using an explicit stack.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private final Object[][] arrays = new Object[8][];
+        private final int[] positions = new int[8];
+        private int depth = -1;
+        private Map.Entry<K, V> next;
+
+        EntryIterator() {
+            if (root != null) push(root);
+            advance();
+        }
+
+        private void push(Node node) {
+            depth++;
+            arrays[depth] = node instanceof BitmapNode ? ((BitmapNode) node).array : ((CollisionNode) node).array;
+            positions[depth] = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                Object[] array = arrays[depth];
+                int position = positions[depth];
+                if (position >= array.length) {
+                    depth--;
+                    continue;
+                }
+                positions[depth] = position + 2;
+                if (array[position] == null) {
+                    push((Node) array[position + 1]);
+                } else {
+                    next = new AbstractMap.SimpleImmutableEntry<>((K) array[position], (V) array[position + 1]);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) throw new NoSuchElementException();
+            Map.Entry<K, V> entry = next;
+            advance();
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package model;
+
+import java.util.*;
+
+/**
+ * Reverse index from symbol to every holding of it across a set of
+ * portfolios, so a price can be applied to all holders without scanning
+ * every portfolio.
+ *
+ * The index reflects the holdings present when they were added. Holdings
+ * later removed from (or replaced in) their portfolio are skipped when
+ * prices are applied; holdings added afterwards must be added here too.
+ */
+public class HoldingsIndex {
+
+    private final Map<String, List<Asset>> bySymbol = new HashMap<>();
+    private int holdingCount;
+
+    public HoldingsIndex() {
+    }
+
+    public HoldingsIndex(Collection<User> users) {
+        for (User user : users) {
+            user.forEachPortfolio(this::addPortfolio);
+        }
+    }
+
+    public void addPortfolio(Portfolio portfolio) {
+        portfolio.forEachAsset(this::add);
+    }
+
+    public void add(Asset asset) {
+        Portfolio.checkHoldable(asset);
+        bySymbol.computeIfAbsent(asset.getSymbol(), s -> new ArrayList<>(4)).add(asset);
+        holdingCount++;
+    }
+
+    // Getters
+    public int getHoldingCount() { return holdingCount; }
+    public int getSymbolCount() { return bySymbol.size(); }
+    public Set<String> getSymbols() { return Collections.unmodifiableSet(bySymbol.keySet()); }
+
+    /**
+     * Holdings of a symbol that are still in a portfolio.
+     */
+    public List<Asset> getHoldings(String symbol) {
+        List<Asset> holdings = bySymbol.get(symbol);
+        if (holdings == null) return Collections.emptyList();
+        List<Asset> held = new ArrayList<>(holdings.size());
+        for (Asset asset : holdings) {
+            if (asset.owner != null) held.add(asset);
+        }
+        return held;
+    }
+
+    /**
+     * Number of holdings of a symbol that are still in a portfolio.
+     */
+    public int countHoldings(String symbol) {
+        List<Asset> holdings = bySymbol.get(symbol);
+        if (holdings == null) return 0;
+        int count = 0;
+        for (Asset asset : holdings) {
+            if (asset.owner != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Set the current price of every holding of a symbol. Returns the number
+     * of holdings updated.
+     *
+     * Prices are written straight to the holdings' instruments and each
+     * owning portfolio revalues them in one pass the next time its totals
+     * are read, instead of once per price.
+     */
+    public int setPrice(String symbol, double price) {
+        List<Asset> holdings = bySymbol.get(symbol);
+        if (holdings == null) return 0;
+        int updated = 0;
+        for (Asset asset : holdings) {
+            Portfolio owner = asset.owner;
+            if (owner == null) continue;
+            Instrument instrument = asset.getInstrument();
+            if (instrument != null) {
+                instrument.setCurrentPrice(price);
+                if (!instrument.isShared()) owner.markStale();
+            } else {
+                asset.setCurrentPrice(price);
+            }
+            updated++;
+        }
+        return updated;
+    }
+}
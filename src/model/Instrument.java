@@ -0,0 +1,104 @@
+package model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Reference data and live price for one symbol: name, type, sector and
+ * current price.
+ *
+ * Instruments registered in an {@link InstrumentRegistry} are shared by
+ * every Asset that holds the symbol, so a single price write is seen by
+ * all of them. A shared instrument knows the portfolios that hold it and
+ * flags each of them on every write, so only those portfolios refresh
+ * their running totals the next time they are read. An Asset built from plain values
+ * gets its own private instrument and behaves exactly as before.
+ *
+ * Prices and sectors may be written from any thread: writes to one
+ * instrument are serialized, and readers see the latest without locking.
+ */
+public class Instrument implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int id; // registry id, or -1 for a private instrument
+    private final String symbol;
+    private final Asset.AssetType type;
+    private volatile String name;
+    private volatile String sector;
+    private volatile double currentPrice;
+    private volatile int version;
+
+    // Portfolios holding a shared instrument, guarded by this; not
+    // serialized, holders register again when the asset is added
+    private transient Portfolio[] holders;
+    private transient int holderCount;
+
+    Instrument(int id, String symbol, String name, Asset.AssetType type, String sector, double currentPrice) {
+        this.id = id;
+        this.symbol = symbol;
+        this.name = name;
+        this.type = type;
+        this.sector = sector;
+        this.currentPrice = currentPrice;
+    }
+
+    // Getters
+    public int getId() { return id; }
+    public String getSymbol() { return symbol; }
+    public String getName() { return name; }
+    public Asset.AssetType getType() { return type; }
+    public String getSector() { return sector; }
+    public double getCurrentPrice() { return currentPrice; }
+    public boolean isShared() { return id >= 0; }
+
+    // Setters (visible to every holder of a shared instrument)
+    public void setName(String name) { this.name = name; }
+
+    // Writing the price it already has changes nothing and flags no one
+    public synchronized void setCurrentPrice(double currentPrice) {
+        if (Double.compare(currentPrice, this.currentPrice) == 0) return;
+        this.currentPrice = currentPrice;
+        changed();
+    }
+
+    public synchronized void setSector(String sector) {
+        this.sector = sector;
+        changed();
+    }
+
+    // Change tracking for lazily refreshed portfolio totals. The version is
+    // bumped after the new value is written, so a holder that reads the
+    // version before the value never indexes a value newer than the version.
+    int getVersion() { return version; }
+
+    synchronized void addHolder(Portfolio portfolio) {
+        if (holders == null) {
+            holders = new Portfolio[4];
+        } else if (holderCount == holders.length) {
+            holders = Arrays.copyOf(holders, holderCount * 2);
+        }
+        holders[holderCount++] = portfolio;
+    }
+
+    synchronized void removeHolder(Portfolio portfolio) {
+        for (int i = 0; i < holderCount; i++) {
+            if (holders[i] == portfolio) {
+                holders[i] = holders[--holderCount];
+                holders[holderCount] = null;
+                return;
+            }
+        }
+    }
+
+    private void changed() {
+        version++;
+        for (int i = 0; i < holderCount; i++) {
+            holders[i].markStale();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s) - %s | %s | $%.2f", symbol, name, type, sector, currentPrice);
+    }
+}
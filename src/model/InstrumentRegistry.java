@@ -0,0 +1,90 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Instrument master: one shared {@link Instrument} per symbol, each with a
+ * dense integer id in registration order.
+ *
+ * Holdings created through the registry point at the shared instrument,
+ * so updating a symbol's price here is a single write however many
+ * portfolios hold it.
+ */
+public class InstrumentRegistry {
+
+    private final Map<String, Instrument> bySymbol = new HashMap<>();
+    private final List<Instrument> byId = new ArrayList<>();
+
+    /**
+     * Register a symbol, or return the existing instrument unchanged if the
+     * symbol is already known.
+     */
+    public Instrument register(String symbol, String name, Asset.AssetType type,
+                               String sector, double currentPrice) {
+        Instrument instrument = bySymbol.get(symbol);
+        if (instrument == null) {
+            instrument = new Instrument(byId.size(), symbol, name, type, sector, currentPrice);
+            bySymbol.put(symbol, instrument);
+            byId.add(instrument);
+        }
+        return instrument;
+    }
+
+    /**
+     * Shared instrument for an asset's symbol, registered from the asset's
+     * reference data if the symbol is new.
+     */
+    public Instrument intern(Asset asset) {
+        return register(asset.getSymbol(), asset.getName(), asset.getType(),
+                        asset.getSector(), asset.getCurrentPrice());
+    }
+
+    public Instrument get(String symbol) {
+        return bySymbol.get(symbol);
+    }
+
+    public Instrument get(int id) {
+        return byId.get(id);
+    }
+
+    public boolean contains(String symbol) {
+        return bySymbol.containsKey(symbol);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public Collection<Instrument> getInstruments() {
+        return Collections.unmodifiableList(byId);
+    }
+
+    /**
+     * Set the price of a registered symbol. Returns false if it is unknown.
+     */
+    public boolean updatePrice(String symbol, double price) {
+        Instrument instrument = bySymbol.get(symbol);
+        if (instrument == null) return false;
+        instrument.setCurrentPrice(price);
+        return true;
+    }
+
+    /**
+     * Create a holding (one lot) of a registered symbol.
+     */
+    public Asset newHolding(String symbol, double quantity, double purchasePrice, LocalDate purchaseDate) {
+        Instrument instrument = bySymbol.get(symbol);
+        if (instrument == null) {
+            throw new IllegalArgumentException("Unknown instrument: " + symbol);
+        }
+        return new Asset(instrument, quantity, purchasePrice, purchaseDate);
+    }
+
+    /**
+     * Copy of an asset that holds the same lot through the shared instrument.
+     */
+    public Asset share(Asset asset) {
+        return new Asset(intern(asset), asset.getQuantity(), asset.getPurchasePrice(), asset.getPurchaseDate());
+    }
+}
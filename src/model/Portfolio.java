@@ -3,29 +3,66 @@ package model;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
 
 /**
  * Represents an investment portfolio with multiple assets.
+ * 
+ * Valuation totals (market value, cost basis, net deposits and the
+ * per-type and per-sector sums) are kept as running aggregates that are
+ * adjusted whenever an asset or transaction changes, so the valuation
+ * getters do not rescan the holdings or the transaction history.
+ * An asset reports its changes to the one portfolio holding it; adding an
+ * asset that another portfolio holds is rejected.
+ *
+ * {@link #snapshot()} captures an immutable view of the portfolio without
+ * copying its holdings or history, for reports that must see one state.
  */
-public class Portfolio implements Serializable {
+public class Portfolio implements PortfolioView, Serializable {
     private static final long serialVersionUID = 1L;
     
     private String portfolioId;
     private String portfolioName;
     private String ownerId;
     private LocalDate creationDate;
-    private Map<String, Asset> assets; // symbol -> Asset
-    private List<Transaction> transactionHistory;
-    private double cashBalance;
+    private final PortfolioState state; // holdings, cash and running totals
+    private final Map<String, Asset> assets; // symbol -> Asset, the state's map
+    private final AppendOnlyLog<Transaction> transactionHistory;
+    private final Map<String, Asset> assetsView;
+    private final List<Transaction> transactionsView;
+    
+    // Set, from any thread, when an instrument of a holding changed after
+    // the holding was indexed
+    private transient volatile boolean stale;
+    
+    // Immutable copies of the holdings as of the last snapshot, kept once the
+    // first one is taken, and the symbols changed since. Snapshots are
+    // numbered so that a holding already marked in this round is not marked again.
+    private transient HashTrie<String, Asset> frozenAssets;
+    private transient Set<String> unfrozen;
+    private transient int snapshotRound;
     
     public Portfolio(String portfolioId, String portfolioName, String ownerId) {
+        this(portfolioId, portfolioName, ownerId, new PortfolioState.Serial());
+    }
+    
+    public Portfolio(String portfolioId, String portfolioName, String ownerId, LocalDate creationDate) {
+        this(portfolioId, portfolioName, ownerId);
+        this.creationDate = creationDate;
+    }
+    
+    // For subclasses that keep the same state in thread-safe storage
+    Portfolio(String portfolioId, String portfolioName, String ownerId, PortfolioState state) {
         this.portfolioId = portfolioId;
         this.portfolioName = portfolioName;
         this.ownerId = ownerId;
         this.creationDate = LocalDate.now();
-        this.assets = new HashMap<>();
-        this.transactionHistory = new ArrayList<>();
-        this.cashBalance = 0.0;
+        this.state = state;
+        this.assets = state.assets;
+        this.transactionHistory = new AppendOnlyLog<>();
+        this.assetsView = Collections.unmodifiableMap(assets);
+        this.transactionsView = Collections.unmodifiableList(transactionHistory);
     }
     
     // Getters
@@ -35,19 +72,146 @@ public class Portfolio implements Serializable {
     public LocalDate getCreationDate() { return creationDate; }
     public Map<String, Asset> getAssets() { return new HashMap<>(assets); }
     public List<Transaction> getTransactionHistory() { return new ArrayList<>(transactionHistory); }
-    public double getCashBalance() { return cashBalance; }
+    public double getCashBalance() { return state.cashBalance(); }
+    public double getNetDeposits() { return state.netDeposits(); }
+    
+    // Read-only views (no copy; reflect later changes to the portfolio)
+    public Map<String, Asset> getAssetsView() { return assetsView; }
+    public List<Transaction> getTransactionsView() { return transactionsView; }
+    public int getAssetCount() { return assets.size(); }
+    public int getTransactionCount() { return transactionHistory.size(); }
+    
+    /**
+     * Modification count, bumped after every change to the holdings, cash,
+     * transactions or name (lazily repriced holdings are brought up to date
+     * first). Reads that return the same version saw the same state, so
+     * results derived from it can be cached against the version.
+     */
+    public long getVersion() {
+        refreshInstruments();
+        return currentVersion();
+    }
+    
+    // The version as it stands, without bringing holdings up to date
+    long currentVersion() {
+        return state.version();
+    }
+    
+    void bumpVersion() {
+        state.bumpVersion();
+    }
+    
+    public void forEachAsset(Consumer<? super Asset> action) {
+        for (Asset asset : assets.values()) {
+            action.accept(asset);
+        }
+    }
+    
+    // Transaction loops read the size once, so they see the entries
+    // present when they start even while others are appended
+    public void forEachTransaction(Consumer<? super Transaction> action) {
+        int count = transactionHistory.size();
+        for (int i = 0; i < count; i++) {
+            action.accept(transactionHistory.get(i));
+        }
+    }
+    
+    // Folds over the collections without materialising intermediate lists
+    public double sumAssets(ToDoubleFunction<? super Asset> function) {
+        double total = 0.0;
+        for (Asset asset : assets.values()) {
+            total += function.applyAsDouble(asset);
+        }
+        return total;
+    }
+    
+    public double sumTransactionAmounts(Transaction.TransactionType type) {
+        double total = 0.0;
+        int count = transactionHistory.size();
+        for (int i = 0; i < count; i++) {
+            Transaction t = transactionHistory.get(i);
+            if (t.getType() == type) {
+                total += t.getTotalAmount();
+            }
+        }
+        return total;
+    }
+    
+    public int countTransactions(Transaction.TransactionType type) {
+        int matches = 0;
+        int count = transactionHistory.size();
+        for (int i = 0; i < count; i++) {
+            if (transactionHistory.get(i).getType() == type) {
+                matches++;
+            }
+        }
+        return matches;
+    }
     
     // Setters
-    public void setPortfolioName(String name) { this.portfolioName = name; }
-    public void setCashBalance(double balance) { this.cashBalance = balance; }
+    public void setPortfolioName(String name) {
+        this.portfolioName = name;
+        bumpVersion();
+    }
+    public void setCashBalance(double balance) {
+        state.setCashBalance(balance);
+        bumpVersion();
+    }
+    public void setNetDeposits(double netDeposits) {
+        state.setNetDeposits(netDeposits);
+        bumpVersion();
+    }
     
     // Asset operations
     public void addAsset(Asset asset) {
-        assets.put(asset.getSymbol(), asset);
+        checkHoldable(asset);
+        checkUnowned(asset);
+        Asset previous = assets.put(asset.getSymbol(), asset);
+        if (previous != null) {
+            unindexAsset(previous);
+            release(previous);
+        }
+        hold(asset);
+        indexAsset(asset);
+    }
+    
+    // Store views have no instrument and their storage moves with the store,
+    // so the totals and holder indexes could not track them
+    static void checkHoldable(Asset asset) {
+        if (asset.isStoreView()) {
+            throw new IllegalArgumentException("Position store views cannot be held: " + asset.getSymbol());
+        }
+    }
+    
+    // An asset feeds one portfolio's totals; moving it would leave them stale
+    void checkUnowned(Asset asset) {
+        Portfolio owner = asset.owner;
+        if (owner != null && owner != this) {
+            throw new IllegalArgumentException("Asset " + asset.getSymbol()
+                + " is already held by portfolio " + owner.getPortfolioId());
+        }
+    }
+    
+    // Take ownership of an asset, hearing about changes to its shared
+    // instrument from now on, or give it up
+    void hold(Asset asset) {
+        asset.owner = this;
+        asset.markedRound = 0;
+        if (asset.isShared()) asset.getInstrument().addHolder(this);
+    }
+    
+    void release(Asset asset) {
+        asset.owner = null;
+        if (asset.isShared()) asset.getInstrument().removeHolder(this);
     }
     
     public void removeAsset(String symbol) {
-        assets.remove(symbol);
+        Asset removed = assets.remove(symbol);
+        if (removed != null) {
+            unindexAsset(removed);
+            untrackAsset(symbol);
+            release(removed);
+        }
     }
     
     public Asset getAsset(String symbol) {
@@ -58,44 +222,207 @@ public class Portfolio implements Serializable {
         return assets.containsKey(symbol);
     }
     
-    // Transaction operations
+    // Transaction operations. Listeners may veto before anything changes;
+    // they hear about the transaction again once it has been applied.
     public void recordTransaction(Transaction transaction) {
-        transactionHistory.add(transaction);
+        for (TransactionListener listener : state.listeners()) {
+            listener.transactionRecorded(this, transaction);
+        }
+        applyTransaction(transaction);
+        for (TransactionListener listener : state.listeners()) {
+            listener.transactionApplied(this, transaction);
+        }
+    }
+    
+    // Append the entry and update cash based on the transaction type
+    void applyTransaction(Transaction transaction) {
+        transactionHistory.append(transaction);
         
-        // Update cash balance based on transaction type
+        double amount = transaction.getTotalAmount();
         switch (transaction.getType()) {
             case BUY:
-                cashBalance -= transaction.getTotalAmount();
+            case FEE:
+                state.addCash(-amount);
                 break;
             case SELL:
             case DIVIDEND:
-                cashBalance += transaction.getTotalAmount();
+                state.addCash(amount);
                 break;
             case DEPOSIT:
-                cashBalance += transaction.getTotalAmount();
+                state.addCash(amount);
+                state.addNetDeposits(amount);
                 break;
             case WITHDRAWAL:
-            case FEE:
-                cashBalance -= transaction.getTotalAmount();
+                state.addCash(-amount);
+                state.addNetDeposits(-amount);
                 break;
         }
+        bumpVersion();
     }
     
-    // Portfolio calculations
-    public double getTotalValue() {
-        double total = cashBalance;
-        for (Asset asset : assets.values()) {
-            total += asset.getCurrentValue();
+    public void addTransactionListener(TransactionListener listener) {
+        state.addListener(listener);
+    }
+    
+    public void removeTransactionListener(TransactionListener listener) {
+        state.removeListener(listener);
+    }
+    
+    // Apply a change to one of this portfolio's assets, keeping the totals in step
+    void updateAsset(Asset asset, Runnable change) {
+        unindexAsset(asset);
+        change.run();
+        indexAsset(asset);
+    }
+    
+    void repriceAsset(Asset asset, double price) {
+        asset.getInstrument().setCurrentPrice(price);
+        revalueAsset(asset);
+    }
+    
+    // Running aggregate maintenance. The instrument version is read before
+    // the price, so a price write in between leaves the asset stale rather
+    // than missed; the price is read once, so the snapshot copy of the asset
+    // matches what it added to the totals.
+    void indexAsset(Asset asset) {
+        if (asset.getInstrument() != null) {
+            asset.indexedVersion = asset.getInstrument().getVersion();
         }
-        return total;
+        double price = asset.getCurrentPrice();
+        double value = asset.getQuantity() * price;
+        String sectorName = asset.getSector();
+        asset.indexedPrice = price;
+        asset.indexedValue = value;
+        asset.indexedSector = sectorName;
+        state.add(asset);
+        trackAsset(asset);
+        bumpVersion();
     }
     
-    public double getTotalCostBasis() {
-        double total = 0.0;
+    void unindexAsset(Asset asset) {
+        // Remove what was added, which for a shared instrument may predate
+        // its current price or sector
+        state.remove(asset);
+        bumpVersion();
+    }
+    
+    // Price-only change: move the asset's value without touching its
+    // holding counts or sector membership
+    void revalueAsset(Asset asset) {
+        if (asset.getInstrument() != null) {
+            asset.indexedVersion = asset.getInstrument().getVersion();
+        }
+        double price = asset.getCurrentPrice();
+        double value = asset.getQuantity() * price;
+        double delta = value - asset.indexedValue;
+        asset.indexedPrice = price;
+        asset.indexedValue = value;
+        state.revalue(asset, delta);
+        trackAsset(asset);
+        bumpVersion();
+    }
+    
+    // Mark a holding whose indexed state, which is what the running totals
+    // hold, changed since the last snapshot; the next one copies it
+    void trackAsset(Asset asset) {
+        if (frozenAssets != null && asset.markedRound != snapshotRound) {
+            asset.markedRound = snapshotRound;
+            unfrozen.add(asset.getSymbol());
+        }
+    }
+    
+    void untrackAsset(String symbol) {
+        if (frozenAssets != null) {
+            unfrozen.add(symbol);
+        }
+    }
+    
+    // Bring the snapshot copies up to date, copying only marked holdings
+    private void freezeChanges() {
+        if (frozenAssets == null) {
+            frozenAssets = new HashTrie<>();
+            unfrozen = new HashSet<>();
+            for (Asset asset : getAssetsView().values()) {
+                frozenAssets.put(asset.getSymbol(), PortfolioSnapshot.freeze(asset));
+            }
+        } else {
+            for (String symbol : unfrozen) {
+                Asset asset = getAsset(symbol);
+                if (asset != null) {
+                    frozenAssets.put(symbol, PortfolioSnapshot.freeze(asset));
+                } else {
+                    frozenAssets.remove(symbol);
+                }
+            }
+            unfrozen.clear();
+        }
+        snapshotRound++;
+    }
+    
+    /**
+     * Immutable view of the portfolio as it is now. Holdings and history are
+     * shared with the portfolio rather than copied, so this is cheap enough
+     * to call for every report. Each snapshot makes an immutable copy only
+     * of the holdings changed since the one before.
+     */
+    public PortfolioSnapshot snapshot() {
+        // Bring lazily repriced holdings up to date once, then read the
+        // running totals as they stand: a price written to a shared
+        // instrument from here on waits for the next refresh, so every
+        // figure below describes the same state
+        refreshInstruments();
+        freezeChanges();
+        double cash = getCashBalance();
+        double totalValue = cash + getHoldingsValue();
+        return new PortfolioSnapshot(this, currentVersion(), cash, getNetDeposits(), totalValue,
+            getTotalCostBasis(), getAssetAllocation(totalValue, cash), getSectorAllocation(totalValue),
+            frozenAssets.freeze(), getTransactionsView().subList(0, getTransactionCount()));
+    }
+    
+    // A holding was repriced through its instrument; revalue on next read
+    void markStale() {
+        stale = true;
+    }
+    
+    // Clear the flag before the holdings are read, so a write racing the
+    // refresh sets it again. Returns whether it was set.
+    boolean clearStale() {
+        if (!stale) return false;
+        stale = false;
+        return true;
+    }
+    
+    // Re-index holdings whose instrument changed since they were indexed
+    void refreshInstruments() {
+        if (!clearStale()) return;
         for (Asset asset : assets.values()) {
-            total += asset.getCostBasis();
+            refreshAsset(asset);
         }
-        return total;
+    }
+    
+    void refreshAsset(Asset asset) {
+        if (!asset.isStale()) return;
+        if (asset.getSector().equals(asset.indexedSector)) {
+            revalueAsset(asset);
+        } else {
+            unindexAsset(asset);
+            indexAsset(asset);
+        }
+    }
+    
+    // Portfolio calculations
+    public double getTotalValue() {
+        refreshInstruments();
+        return state.cashBalance() + state.marketValue();
+    }
+    
+    // Market value of the holdings as last indexed, without refreshing
+    double getHoldingsValue() {
+        return state.marketValue();
+    }
+    
+    public double getTotalCostBasis() {
+        return state.costBasis();
     }
     
     public double getTotalGainLoss() {
@@ -109,32 +436,26 @@ public class Portfolio implements Serializable {
     }
     
     private double getInitialCashDeposit() {
-        double total = 0.0;
-        for (Transaction t : transactionHistory) {
-            if (t.getType() == Transaction.TransactionType.DEPOSIT) {
-                total += t.getTotalAmount();
-            } else if (t.getType() == Transaction.TransactionType.WITHDRAWAL) {
-                total -= t.getTotalAmount();
-            }
-        }
-        return total;
+        return getNetDeposits();
     }
     
     // Asset allocation
     public Map<Asset.AssetType, Double> getAssetAllocation() {
-        Map<Asset.AssetType, Double> allocation = new HashMap<>();
         double totalValue = getTotalValue();
+        return getAssetAllocation(totalValue, getCashBalance());
+    }
+    
+    // Allocation against a total value and cash balance already read
+    Map<Asset.AssetType, Double> getAssetAllocation(double totalValue, double cash) {
+        Map<Asset.AssetType, Double> allocation = new HashMap<>();
         
         if (totalValue == 0) return allocation;
         
-        for (Asset asset : assets.values()) {
-            double currentAllocation = allocation.getOrDefault(asset.getType(), 0.0);
-            allocation.put(asset.getType(), currentAllocation + asset.getCurrentValue());
-        }
+        state.putTypeValues(allocation);
         
         // Add cash
-        if (cashBalance > 0) {
-            allocation.put(Asset.AssetType.CASH, cashBalance);
+        if (cash > 0) {
+            allocation.put(Asset.AssetType.CASH, cash);
         }
         
         // Convert to percentages
@@ -145,17 +466,26 @@ public class Portfolio implements Serializable {
         return allocation;
     }
     
+    /**
+     * Market value of the holdings of each asset type, indexed by ordinal
+     * and not counting the cash balance, written into values. Reads the
+     * running totals without allocating, for scans over many portfolios.
+     */
+    public void copyTypeValues(double[] values) {
+        refreshInstruments();
+        state.copyTypeValues(values);
+    }
+    
     public Map<String, Double> getSectorAllocation() {
+        return getSectorAllocation(getTotalValue());
+    }
+    
+    Map<String, Double> getSectorAllocation(double totalValue) {
         Map<String, Double> allocation = new HashMap<>();
-        double totalValue = getTotalValue();
         
         if (totalValue == 0) return allocation;
         
-        for (Asset asset : assets.values()) {
-            String sector = asset.getSector();
-            double currentAllocation = allocation.getOrDefault(sector, 0.0);
-            allocation.put(sector, currentAllocation + asset.getCurrentValue());
-        }
+        state.putSectorValues(allocation);
         
         // Convert to percentages
         for (String sector : allocation.keySet()) {
@@ -167,26 +497,30 @@ public class Portfolio implements Serializable {
     
     // Top performers
     public List<Asset> getTopPerformers(int count) {
-        List<Asset> sorted = new ArrayList<>(assets.values());
+        List<Asset> sorted = new ArrayList<>(getAssetsView().values());
         sorted.sort((a, b) -> Double.compare(b.getGainLossPercentage(), a.getGainLossPercentage()));
         return sorted.subList(0, Math.min(count, sorted.size()));
     }
     
     public List<Asset> getBottomPerformers(int count) {
-        List<Asset> sorted = new ArrayList<>(assets.values());
+        List<Asset> sorted = new ArrayList<>(getAssetsView().values());
         sorted.sort((a, b) -> Double.compare(a.getGainLossPercentage(), b.getGainLossPercentage()));
         return sorted.subList(0, Math.min(count, sorted.size()));
     }
     
     // Portfolio summary
     public String getSummary() {
+        return summarize(this);
+    }
+    
+    static String summarize(PortfolioView portfolio) {
         StringBuilder sb = new StringBuilder();
-        sb.append("=== Portfolio Summary: ").append(portfolioName).append(" ===\n");
-        sb.append(String.format("Total Assets: %d | Cash: $%.2f\n", assets.size(), cashBalance));
-        sb.append(String.format("Total Value: $%.2f | Cost Basis: $%.2f\n", getTotalValue(), getTotalCostBasis()));
-        sb.append(String.format("Gain/Loss: $%.2f (%.2f%%)\n", getTotalGainLoss(), getTotalGainLossPercentage()));
+        sb.append("=== Portfolio Summary: ").append(portfolio.getPortfolioName()).append(" ===\n");
+        sb.append(String.format("Total Assets: %d | Cash: $%.2f\n", portfolio.getAssetCount(), portfolio.getCashBalance()));
+        sb.append(String.format("Total Value: $%.2f | Cost Basis: $%.2f\n", portfolio.getTotalValue(), portfolio.getTotalCostBasis()));
+        sb.append(String.format("Gain/Loss: $%.2f (%.2f%%)\n", portfolio.getTotalGainLoss(), portfolio.getTotalGainLossPercentage()));
         sb.append("\nAsset Allocation:\n");
-        getAssetAllocation().forEach((type, pct) -> 
+        portfolio.getAssetAllocation().forEach((type, pct) -> 
             sb.append(String.format("  %s: %.2f%%\n", type, pct)));
         return sb.toString();
     }
@@ -194,6 +528,6 @@ public class Portfolio implements Serializable {
     @Override
     public String toString() {
         return String.format("Portfolio: %s | Assets: %d | Total Value: $%.2f | Gain/Loss: %.2f%%",
-            portfolioName, assets.size(), getTotalValue(), getTotalGainLossPercentage());
+            portfolioName, getAssetCount(), getTotalValue(), getTotalGainLossPercentage());
     }
 }
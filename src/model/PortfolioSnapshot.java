@@ -0,0 +1,204 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Immutable view of a portfolio at one point in time, from
+ * {@link Portfolio#snapshot()}.
+ *
+ * Holdings are a frozen version of a persistent map that shares its
+ * structure with the portfolio's later versions, and the history is the
+ * prefix of the portfolio's append-only transaction log, so taking a
+ * snapshot copies neither. Totals and allocations are captured when the
+ * snapshot is taken. A snapshot can be read from any thread while the
+ * portfolio keeps changing; its assets reject setters.
+ */
+public final class PortfolioSnapshot implements PortfolioView {
+
+    /**
+     * Read-only copy of an asset's state, at the price and sector it was
+     * last indexed with, so it agrees with the totals it was counted in.
+     */
+    private static final class FrozenAsset extends Asset {
+        private static final long serialVersionUID = 1L;
+
+        FrozenAsset(Asset asset) {
+            super(new FrozenInstrument(asset), asset.getQuantity(), asset.getPurchasePrice(),
+                  asset.getPurchaseDate());
+        }
+
+        @Override public void setQuantity(double quantity) { throw readOnly(); }
+        @Override public void setCurrentPrice(double currentPrice) { throw readOnly(); }
+        @Override public void setSector(String sector) { throw readOnly(); }
+    }
+
+    /**
+     * The instrument of a frozen asset, which can be handed out as it is
+     * because it rejects setters too.
+     */
+    private static final class FrozenInstrument extends Instrument {
+        private static final long serialVersionUID = 1L;
+
+        FrozenInstrument(Asset asset) {
+            super(-1, asset.getSymbol(), asset.getName(), asset.getType(), asset.indexedSector, asset.indexedPrice);
+        }
+
+        @Override public void setName(String name) { throw readOnly(); }
+        @Override public void setCurrentPrice(double currentPrice) { throw readOnly(); }
+        @Override public void setSector(String sector) { throw readOnly(); }
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Snapshot assets are read-only");
+    }
+
+    private final Portfolio source;
+    private final long version;
+    private final String portfolioId;
+    private final String portfolioName;
+    private final String ownerId;
+    private final LocalDate creationDate;
+    private final double cashBalance;
+    private final double netDeposits;
+    private final double totalValue;
+    private final double totalCostBasis;
+    private final double totalGainLoss;
+    private final double totalGainLossPercentage;
+    private final Map<Asset.AssetType, Double> assetAllocation;
+    private final Map<String, Double> sectorAllocation;
+    private final HashTrie<String, Asset> assets;
+    private final Map<String, Asset> assetsView;
+    private final List<Transaction> transactions;
+
+    // Everything that can change is read by the portfolio in one pass and
+    // passed in; only the identity is read here
+    PortfolioSnapshot(Portfolio portfolio, long version, double cashBalance, double netDeposits,
+                      double totalValue, double totalCostBasis, Map<Asset.AssetType, Double> assetAllocation,
+                      Map<String, Double> sectorAllocation, HashTrie<String, Asset> assets,
+                      List<Transaction> transactions) {
+        this.source = portfolio;
+        this.version = version;
+        this.portfolioId = portfolio.getPortfolioId();
+        this.portfolioName = portfolio.getPortfolioName();
+        this.ownerId = portfolio.getOwnerId();
+        this.creationDate = portfolio.getCreationDate();
+        this.cashBalance = cashBalance;
+        this.netDeposits = netDeposits;
+        this.totalValue = totalValue;
+        this.totalCostBasis = totalCostBasis;
+        // As in Portfolio: gain over cost basis plus net deposits
+        double initialValue = totalCostBasis + netDeposits;
+        this.totalGainLoss = totalValue - initialValue;
+        this.totalGainLossPercentage = initialValue == 0 ? 0.0 : totalGainLoss / initialValue * 100.0;
+        this.assetAllocation = assetAllocation;
+        this.sectorAllocation = sectorAllocation;
+        this.assets = assets;
+        this.assetsView = assets.asMap();
+        this.transactions = transactions;
+    }
+
+    static Asset freeze(Asset asset) {
+        return new FrozenAsset(asset);
+    }
+
+    // Identity
+    @Override public String getPortfolioId() { return portfolioId; }
+    @Override public String getPortfolioName() { return portfolioName; }
+    @Override public String getOwnerId() { return ownerId; }
+    @Override public LocalDate getCreationDate() { return creationDate; }
+    @Override public long getVersion() { return version; }
+
+    /**
+     * The portfolio this snapshot was taken from. With {@link #getVersion()}
+     * it identifies the state the snapshot holds.
+     */
+    public Portfolio getSource() { return source; }
+
+    // Holdings and history
+    @Override public double getCashBalance() { return cashBalance; }
+    @Override public double getNetDeposits() { return netDeposits; }
+    @Override public Map<String, Asset> getAssetsView() { return assetsView; }
+    @Override public List<Transaction> getTransactionsView() { return transactions; }
+    @Override public int getAssetCount() { return assets.size(); }
+    @Override public int getTransactionCount() { return transactions.size(); }
+    @Override public Asset getAsset(String symbol) { return assets.get(symbol); }
+    @Override public boolean hasAsset(String symbol) { return assets.get(symbol) != null; }
+
+    @Override
+    public void forEachAsset(Consumer<? super Asset> action) {
+        assets.forEach((symbol, asset) -> action.accept(asset));
+    }
+
+    @Override
+    public void forEachTransaction(Consumer<? super Transaction> action) {
+        for (int i = 0; i < transactions.size(); i++) {
+            action.accept(transactions.get(i));
+        }
+    }
+
+    @Override
+    public double sumAssets(ToDoubleFunction<? super Asset> function) {
+        double[] total = new double[1];
+        assets.forEach((symbol, asset) -> total[0] += function.applyAsDouble(asset));
+        return total[0];
+    }
+
+    @Override
+    public double sumTransactionAmounts(Transaction.TransactionType type) {
+        double total = 0.0;
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction t = transactions.get(i);
+            if (t.getType() == type) {
+                total += t.getTotalAmount();
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int countTransactions(Transaction.TransactionType type) {
+        int count = 0;
+        for (int i = 0; i < transactions.size(); i++) {
+            if (transactions.get(i).getType() == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Valuation (as captured)
+    @Override public double getTotalValue() { return totalValue; }
+    @Override public double getTotalCostBasis() { return totalCostBasis; }
+    @Override public double getTotalGainLoss() { return totalGainLoss; }
+    @Override public double getTotalGainLossPercentage() { return totalGainLossPercentage; }
+    @Override public Map<Asset.AssetType, Double> getAssetAllocation() { return new HashMap<>(assetAllocation); }
+    @Override public Map<String, Double> getSectorAllocation() { return new HashMap<>(sectorAllocation); }
+
+    @Override
+    public List<Asset> getTopPerformers(int count) {
+        List<Asset> sorted = new ArrayList<>(assetsView.values());
+        sorted.sort((a, b) -> Double.compare(b.getGainLossPercentage(), a.getGainLossPercentage()));
+        return sorted.subList(0, Math.min(count, sorted.size()));
+    }
+
+    @Override
+    public List<Asset> getBottomPerformers(int count) {
+        List<Asset> sorted = new ArrayList<>(assetsView.values());
+        sorted.sort((a, b) -> Double.compare(a.getGainLossPercentage(), b.getGainLossPercentage()));
+        return sorted.subList(0, Math.min(count, sorted.size()));
+    }
+
+    @Override
+    public String getSummary() {
+        return Portfolio.summarize(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Snapshot of %s | Assets: %d | Total Value: $%.2f | Gain/Loss: %.2f%%",
+            portfolioName, assets.size(), totalValue, totalGainLossPercentage);
+    }
+}
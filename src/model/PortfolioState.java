@@ -0,0 +1,338 @@
+package model;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Storage behind a {@link Portfolio}: the holdings, cash, net deposits,
+ * version, listeners and the running totals of the indexed holdings.
+ *
+ * {@link Serial} keeps plain fields for a portfolio used from one thread
+ * at a time. {@link Concurrent} keeps a ConcurrentHashMap, adders and
+ * compare-and-set fields that {@link ConcurrentPortfolio} updates under its
+ * stripe locks and reads without locking. The portfolio decides what a
+ * change is and in what order it happens; the state only stores it.
+ */
+abstract class PortfolioState implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final Asset.AssetType[] ASSET_TYPES = Asset.AssetType.values();
+
+    final Map<String, Asset> assets; // symbol -> Asset
+
+    PortfolioState(Map<String, Asset> assets) {
+        this.assets = assets;
+    }
+
+    // Cash, net deposits and version
+    abstract double cashBalance();
+    abstract void setCashBalance(double balance);
+    abstract void addCash(double delta);
+    abstract double netDeposits();
+    abstract void setNetDeposits(double netDeposits);
+    abstract void addNetDeposits(double delta);
+    abstract long version();
+    abstract void bumpVersion();
+
+    // Listeners, notified on the recording thread
+    abstract List<TransactionListener> listeners();
+    abstract void addListener(TransactionListener listener);
+    abstract void removeListener(TransactionListener listener);
+
+    // Running totals: add or remove what an asset was indexed with, or move
+    // its value by a price-only change
+    abstract void add(Asset asset);
+    abstract void remove(Asset asset);
+    abstract void revalue(Asset asset, double delta);
+    abstract double marketValue();
+    abstract double costBasis();
+
+    // Market value of each asset type and sector held
+    abstract void putTypeValues(Map<Asset.AssetType, Double> values);
+    abstract void copyTypeValues(double[] values);
+    abstract void putSectorValues(Map<String, Double> values);
+
+    /**
+     * Plain fields, for one thread at a time.
+     */
+    static final class Serial extends PortfolioState {
+        private static final long serialVersionUID = 1L;
+
+        /** Running value and holding count for one sector. */
+        private static class SectorTotal implements Serializable {
+            private static final long serialVersionUID = 1L;
+            double value;
+            int holdings;
+        }
+
+        private double cashBalance;
+        private double netDeposits;
+        private transient volatile long version;
+        // Not serialized; listeners are re-attached by whoever loads the portfolio
+        private transient List<TransactionListener> listeners;
+
+        private int indexedHoldings;
+        private double marketValue;
+        private double costBasis;
+        private final double[] typeValues = new double[ASSET_TYPES.length];
+        private final int[] typeHoldings = new int[ASSET_TYPES.length];
+        private final Map<String, SectorTotal> sectorTotals = new HashMap<>();
+
+        Serial() {
+            super(new HashMap<>());
+        }
+
+        @Override double cashBalance() { return cashBalance; }
+        @Override void setCashBalance(double balance) { cashBalance = balance; }
+        @Override void addCash(double delta) { cashBalance += delta; }
+        @Override double netDeposits() { return netDeposits; }
+        @Override void setNetDeposits(double netDeposits) { this.netDeposits = netDeposits; }
+        @Override void addNetDeposits(double delta) { netDeposits += delta; }
+        @Override long version() { return version; }
+        @Override void bumpVersion() { version++; }
+
+        @Override
+        List<TransactionListener> listeners() {
+            return listeners != null ? listeners : Collections.emptyList();
+        }
+
+        @Override
+        void addListener(TransactionListener listener) {
+            if (listeners == null) {
+                listeners = new ArrayList<>();
+            }
+            listeners.add(listener);
+        }
+
+        @Override
+        void removeListener(TransactionListener listener) {
+            if (listeners != null) {
+                listeners.remove(listener);
+            }
+        }
+
+        @Override
+        void add(Asset asset) {
+            double value = asset.indexedValue;
+            indexedHoldings++;
+            marketValue += value;
+            costBasis += asset.getCostBasis();
+
+            int type = asset.getType().ordinal();
+            typeValues[type] += value;
+            typeHoldings[type]++;
+
+            SectorTotal sector = sectorTotals.computeIfAbsent(asset.indexedSector, s -> new SectorTotal());
+            sector.value += value;
+            sector.holdings++;
+        }
+
+        // Reset a bucket to exact zero once it is empty so rounding error
+        // from repeated adjustments cannot accumulate
+        @Override
+        void remove(Asset asset) {
+            double value = asset.indexedValue;
+            if (--indexedHoldings == 0) {
+                marketValue = 0.0;
+                costBasis = 0.0;
+            } else {
+                marketValue -= value;
+                costBasis -= asset.getCostBasis();
+            }
+
+            int type = asset.getType().ordinal();
+            if (--typeHoldings[type] == 0) {
+                typeValues[type] = 0.0;
+            } else {
+                typeValues[type] -= value;
+            }
+
+            SectorTotal sector = sectorTotals.get(asset.indexedSector);
+            if (--sector.holdings == 0) {
+                sectorTotals.remove(asset.indexedSector);
+            } else {
+                sector.value -= value;
+            }
+        }
+
+        @Override
+        void revalue(Asset asset, double delta) {
+            marketValue += delta;
+            typeValues[asset.getType().ordinal()] += delta;
+            sectorTotals.get(asset.indexedSector).value += delta;
+        }
+
+        @Override double marketValue() { return marketValue; }
+        @Override double costBasis() { return costBasis; }
+
+        @Override
+        void putTypeValues(Map<Asset.AssetType, Double> values) {
+            for (Asset.AssetType type : ASSET_TYPES) {
+                if (typeHoldings[type.ordinal()] > 0) {
+                    values.put(type, typeValues[type.ordinal()]);
+                }
+            }
+        }
+
+        @Override
+        void copyTypeValues(double[] values) {
+            Arrays.fill(values, 0.0);
+            for (int i = 0; i < ASSET_TYPES.length; i++) {
+                if (typeHoldings[i] > 0) {
+                    values[i] = typeValues[i];
+                }
+            }
+        }
+
+        @Override
+        void putSectorValues(Map<String, Double> values) {
+            for (Map.Entry<String, SectorTotal> entry : sectorTotals.entrySet()) {
+                values.put(entry.getKey(), entry.getValue().value);
+            }
+        }
+    }
+
+    /**
+     * Fields that writers on different stripes can update at the same time
+     * and readers can sum without locking.
+     */
+    static final class Concurrent extends PortfolioState {
+        private static final long serialVersionUID = 1L;
+
+        private static final VarHandle CASH_BALANCE;
+        private static final VarHandle NET_DEPOSITS;
+        private static final VarHandle VERSION;
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                CASH_BALANCE = lookup.findVarHandle(Concurrent.class, "cashBalance", double.class);
+                NET_DEPOSITS = lookup.findVarHandle(Concurrent.class, "netDeposits", double.class);
+                VERSION = lookup.findVarHandle(Concurrent.class, "version", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        /** Running value and holding count for one sector. */
+        private static class SectorTotal implements Serializable {
+            private static final long serialVersionUID = 1L;
+            final DoubleAdder value = new DoubleAdder();
+            final LongAdder holdings = new LongAdder();
+        }
+
+        private volatile double cashBalance;
+        private volatile double netDeposits;
+        private transient volatile long version;
+        private final List<TransactionListener> listeners = new CopyOnWriteArrayList<>();
+
+        private final DoubleAdder marketValue = new DoubleAdder();
+        private final DoubleAdder costBasis = new DoubleAdder();
+        private final DoubleAdder[] typeValues = new DoubleAdder[ASSET_TYPES.length];
+        private final LongAdder[] typeHoldings = new LongAdder[ASSET_TYPES.length];
+        private final ConcurrentHashMap<String, SectorTotal> sectorTotals = new ConcurrentHashMap<>();
+
+        Concurrent() {
+            super(new ConcurrentHashMap<>());
+            for (int i = 0; i < ASSET_TYPES.length; i++) {
+                typeValues[i] = new DoubleAdder();
+                typeHoldings[i] = new LongAdder();
+            }
+        }
+
+        @Override double cashBalance() { return cashBalance; }
+        @Override void setCashBalance(double balance) { cashBalance = balance; }
+        @Override void addCash(double delta) { add(CASH_BALANCE, delta); }
+        @Override double netDeposits() { return netDeposits; }
+        @Override void setNetDeposits(double netDeposits) { this.netDeposits = netDeposits; }
+        @Override void addNetDeposits(double delta) { add(NET_DEPOSITS, delta); }
+        @Override long version() { return version; }
+        @Override void bumpVersion() { VERSION.getAndAdd(this, 1L); }
+
+        private void add(VarHandle field, double delta) {
+            double current;
+            do {
+                current = (double) field.getVolatile(this);
+            } while (!field.compareAndSet(this, current, current + delta));
+        }
+
+        @Override List<TransactionListener> listeners() { return listeners; }
+        @Override void addListener(TransactionListener listener) { listeners.add(listener); }
+        @Override void removeListener(TransactionListener listener) { listeners.remove(listener); }
+
+        @Override
+        void add(Asset asset) {
+            double value = asset.indexedValue;
+            marketValue.add(value);
+            costBasis.add(asset.getCostBasis());
+
+            int type = asset.getType().ordinal();
+            typeValues[type].add(value);
+            typeHoldings[type].increment();
+
+            SectorTotal sector = sectorTotals.computeIfAbsent(asset.indexedSector, s -> new SectorTotal());
+            sector.value.add(value);
+            sector.holdings.increment();
+        }
+
+        // Emptied sectors are left in place (and skipped when read) so a
+        // concurrent add to the same sector never loses its update
+        @Override
+        void remove(Asset asset) {
+            double value = asset.indexedValue;
+            marketValue.add(-value);
+            costBasis.add(-asset.getCostBasis());
+
+            int type = asset.getType().ordinal();
+            typeValues[type].add(-value);
+            typeHoldings[type].decrement();
+
+            SectorTotal sector = sectorTotals.get(asset.indexedSector);
+            sector.value.add(-value);
+            sector.holdings.decrement();
+        }
+
+        @Override
+        void revalue(Asset asset, double delta) {
+            marketValue.add(delta);
+            typeValues[asset.getType().ordinal()].add(delta);
+            sectorTotals.get(asset.indexedSector).value.add(delta);
+        }
+
+        @Override double marketValue() { return marketValue.sum(); }
+        @Override double costBasis() { return costBasis.sum(); }
+
+        @Override
+        void putTypeValues(Map<Asset.AssetType, Double> values) {
+            for (Asset.AssetType type : ASSET_TYPES) {
+                if (typeHoldings[type.ordinal()].sum() > 0) {
+                    values.put(type, typeValues[type.ordinal()].sum());
+                }
+            }
+        }
+
+        @Override
+        void copyTypeValues(double[] values) {
+            Arrays.fill(values, 0.0);
+            for (int i = 0; i < ASSET_TYPES.length; i++) {
+                if (typeHoldings[i].sum() > 0) {
+                    values[i] = typeValues[i].sum();
+                }
+            }
+        }
+
+        @Override
+        void putSectorValues(Map<String, Double> values) {
+            for (Map.Entry<String, SectorTotal> entry : sectorTotals.entrySet()) {
+                if (entry.getValue().holdings.sum() > 0) {
+                    values.put(entry.getKey(), entry.getValue().value.sum());
+                }
+            }
+        }
+    }
+}
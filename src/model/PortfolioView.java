@@ -0,0 +1,53 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Read-only side of a portfolio, implemented by the live {@link Portfolio}
+ * and by its immutable {@link PortfolioSnapshot}s. Analytics take this type
+ * so a report can run against a snapshot and see one consistent state.
+ */
+public interface PortfolioView {
+
+    // Identity
+    String getPortfolioId();
+    String getPortfolioName();
+    String getOwnerId();
+    LocalDate getCreationDate();
+
+    /**
+     * Modification count of the portfolio: its current version, or for a
+     * snapshot the version it was taken at.
+     */
+    long getVersion();
+
+    // Holdings and history
+    double getCashBalance();
+    double getNetDeposits();
+    Map<String, Asset> getAssetsView();
+    List<Transaction> getTransactionsView();
+    int getAssetCount();
+    int getTransactionCount();
+    Asset getAsset(String symbol);
+    boolean hasAsset(String symbol);
+    void forEachAsset(Consumer<? super Asset> action);
+    void forEachTransaction(Consumer<? super Transaction> action);
+    double sumAssets(ToDoubleFunction<? super Asset> function);
+    double sumTransactionAmounts(Transaction.TransactionType type);
+    int countTransactions(Transaction.TransactionType type);
+
+    // Valuation
+    double getTotalValue();
+    double getTotalCostBasis();
+    double getTotalGainLoss();
+    double getTotalGainLossPercentage();
+    Map<Asset.AssetType, Double> getAssetAllocation();
+    Map<String, Double> getSectorAllocation();
+    List<Asset> getTopPerformers(int count);
+    List<Asset> getBottomPerformers(int count);
+    String getSummary();
+}
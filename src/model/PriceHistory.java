@@ -0,0 +1,198 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Daily price history for a set of symbols.
+ *
+ * Each symbol's series is a pair of primitive columns, an int[] of epoch
+ * days and a double[] of closes (12 bytes a point, so 20 years of daily
+ * closes for 10,000 symbols is about 600 MB after {@link #trimToSize()}).
+ * Appends grow the columns geometrically; windows are views over them.
+ *
+ * A history can also wrap read-only series, such as those mapped from a
+ * file by data.PriceHistoryFile. Not thread-safe for writers.
+ */
+public class PriceHistory {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * In-memory series; slices share the columns and cannot be appended to.
+     */
+    private static final class ArraySeries extends PriceSeries {
+        private int[] days;
+        private double[] closes;
+        private final int offset;
+        private int size;
+        private final boolean appendable;
+
+        ArraySeries(String symbol, int capacity) {
+            this(symbol, new int[capacity], new double[capacity], 0, 0, true);
+        }
+
+        ArraySeries(String symbol, int[] days, double[] closes, int offset, int size, boolean appendable) {
+            super(symbol);
+            this.days = days;
+            this.closes = closes;
+            this.offset = offset;
+            this.size = size;
+            this.appendable = appendable;
+        }
+
+        @Override public int size() { return size; }
+
+        @Override
+        public int getEpochDay(int index) {
+            Objects.checkIndex(index, size);
+            return days[offset + index];
+        }
+
+        @Override
+        public double getClose(int index) {
+            Objects.checkIndex(index, size);
+            return closes[offset + index];
+        }
+
+        @Override
+        public PriceSeries slice(int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, size);
+            return new ArraySeries(getSymbol(), days, closes, offset + fromIndex, toIndex - fromIndex, false);
+        }
+
+        @Override
+        public void append(int epochDay, double close) {
+            if (!appendable) {
+                super.append(epochDay, close);
+            }
+            if (size > 0) {
+                int last = days[size - 1];
+                if (epochDay == last) {
+                    closes[size - 1] = close;
+                    return;
+                }
+                if (epochDay < last) {
+                    throw new IllegalArgumentException(String.format("%s: price for %s is before the last one (%s)",
+                        getSymbol(), LocalDate.ofEpochDay(epochDay), LocalDate.ofEpochDay(last)));
+                }
+            }
+            if (size == days.length) {
+                int capacity = Math.max(INITIAL_CAPACITY, size + (size >> 1));
+                days = Arrays.copyOf(days, capacity);
+                closes = Arrays.copyOf(closes, capacity);
+            }
+            days[size] = epochDay;
+            closes[size] = close;
+            size++;
+        }
+
+        @Override
+        public double closeAsOf(LocalDate date) {
+            // Direct search over the columns, skipping the accessor checks
+            int target = (int) date.toEpochDay();
+            int low = offset;
+            int high = offset + size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (days[mid] <= target) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high < offset ? Double.NaN : closes[high];
+        }
+
+        @Override
+        public void copyCloses(double[] destination, int position) {
+            System.arraycopy(closes, offset, destination, position, size);
+        }
+
+        void trimToSize() {
+            if (days.length != size) {
+                days = Arrays.copyOf(days, size);
+                closes = Arrays.copyOf(closes, size);
+            }
+        }
+    }
+
+    private final Map<String, PriceSeries> series = new HashMap<>();
+    private long pointCount;
+
+    public PriceHistory() {
+    }
+
+    /**
+     * History over existing series, keyed by symbol. Read-only series stay
+     * read-only; new symbols can still be appended.
+     */
+    public PriceHistory(Collection<? extends PriceSeries> existing) {
+        for (PriceSeries s : existing) {
+            if (series.put(s.getSymbol(), s) != null) {
+                throw new IllegalArgumentException("Duplicate price series: " + s.getSymbol());
+            }
+            pointCount += s.size();
+        }
+    }
+
+    /**
+     * Record the close of a symbol on a date. Dates must not go backwards;
+     * a second close for the latest date replaces the first.
+     */
+    public void append(String symbol, LocalDate date, double close) {
+        append(symbol, (int) date.toEpochDay(), close);
+    }
+
+    public void append(String symbol, int epochDay, double close) {
+        PriceSeries s = series.computeIfAbsent(symbol, k -> new ArraySeries(k, INITIAL_CAPACITY));
+        int before = s.size();
+        s.append(epochDay, close);
+        pointCount += s.size() - before;
+    }
+
+    // Getters
+    public int getSymbolCount() { return series.size(); }
+    public long getPointCount() { return pointCount; }
+    public Set<String> getSymbols() { return Collections.unmodifiableSet(series.keySet()); }
+    public boolean hasSymbol(String symbol) { return series.containsKey(symbol); }
+
+    /**
+     * Full series for a symbol, or null if it has no prices.
+     */
+    public PriceSeries getSeries(String symbol) {
+        return series.get(symbol);
+    }
+
+    /**
+     * Prices of a symbol from one date to another, inclusive, as a view.
+     * Empty if the symbol has no prices in the window.
+     */
+    public PriceSeries getWindow(String symbol, LocalDate from, LocalDate to) {
+        PriceSeries s = series.get(symbol);
+        if (s == null) {
+            return new ArraySeries(symbol, new int[0], new double[0], 0, 0, false);
+        }
+        return s.slice(from, to);
+    }
+
+    /**
+     * Close of a symbol on a date or the last date before it with a price,
+     * or NaN if there is none.
+     */
+    public double getCloseAsOf(String symbol, LocalDate date) {
+        PriceSeries s = series.get(symbol);
+        return s == null ? Double.NaN : s.closeAsOf(date);
+    }
+
+    /**
+     * Release the spare capacity left by appends.
+     */
+    public void trimToSize() {
+        for (PriceSeries s : series.values()) {
+            if (s instanceof ArraySeries) {
+                ((ArraySeries) s).trimToSize();
+            }
+        }
+    }
+}
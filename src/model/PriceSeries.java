@@ -0,0 +1,110 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * Daily closing prices of one symbol, in increasing date order.
+ *
+ * Dates are epoch days (days since 1970-01-01). Index-based access reads
+ * the underlying columns directly; {@link #slice} returns a view over the
+ * same storage rather than a copy, and as-of lookups are binary searches.
+ *
+ * Series held in memory by a {@link PriceHistory} can be appended to;
+ * slices and series read from a file are read-only.
+ */
+public abstract class PriceSeries {
+
+    private final String symbol;
+
+    protected PriceSeries(String symbol) {
+        this.symbol = symbol;
+    }
+
+    // Getters
+    public String getSymbol() { return symbol; }
+    public abstract int size();
+    public abstract int getEpochDay(int index);
+    public abstract double getClose(int index);
+
+    public boolean isEmpty() { return size() == 0; }
+    public LocalDate getDate(int index) { return LocalDate.ofEpochDay(getEpochDay(index)); }
+
+    /**
+     * View of the points in [fromIndex, toIndex), sharing this series'
+     * storage.
+     */
+    public abstract PriceSeries slice(int fromIndex, int toIndex);
+
+    /**
+     * Record a close for a day after the last one; a close for the last
+     * day replaces it (and is seen by slices that include that day).
+     */
+    public void append(int epochDay, double close) {
+        throw new UnsupportedOperationException("Read-only price series: " + symbol);
+    }
+
+    public void append(LocalDate date, double close) {
+        append((int) date.toEpochDay(), close);
+    }
+
+    /**
+     * Index of the last point on or before the given day, or -1 if the
+     * series starts after it.
+     */
+    public int indexAsOf(int epochDay) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (getEpochDay(mid) <= epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Close on the given date, or on the last date before it with a price
+     * (NaN if there is none).
+     */
+    public double closeAsOf(LocalDate date) {
+        int index = indexAsOf((int) date.toEpochDay());
+        return index < 0 ? Double.NaN : getClose(index);
+    }
+
+    /**
+     * View of the points dated from {@code from} to {@code to}, inclusive.
+     */
+    public PriceSeries slice(LocalDate from, LocalDate to) {
+        int fromIndex = indexAsOf((int) from.toEpochDay() - 1) + 1;
+        int toIndex = Math.max(fromIndex, indexAsOf((int) to.toEpochDay()) + 1);
+        return slice(fromIndex, toIndex);
+    }
+
+    /**
+     * Copy the closes into an array, starting at the given position.
+     */
+    public void copyCloses(double[] destination, int position) {
+        int size = size();
+        for (int i = 0; i < size; i++) {
+            destination[position + i] = getClose(i);
+        }
+    }
+
+    public double[] toCloseArray() {
+        double[] closes = new double[size()];
+        copyCloses(closes, 0);
+        return closes;
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return String.format("%s: no prices", symbol);
+        }
+        return String.format("%s: %d prices, %s to %s, last $%.2f", symbol, size(),
+            getDate(0), getDate(size() - 1), getClose(size() - 1));
+    }
+}
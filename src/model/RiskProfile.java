@@ -18,6 +18,7 @@ public class RiskProfile implements Serializable {
     private double annualIncome;
     private double liquidityNeeds;
     private int riskScore; // 1-10 scale
+    private transient volatile long version; // bumped by every setter
     
     public RiskProfile(RiskTolerance tolerance, int age, int investmentHorizonYears) {
         this.tolerance = tolerance;
@@ -70,22 +71,32 @@ public class RiskProfile implements Serializable {
     public double getAnnualIncome() { return annualIncome; }
     public double getLiquidityNeeds() { return liquidityNeeds; }
     public int getRiskScore() { return riskScore; }
+    public long getVersion() { return version; }
     
     // Setters
     public void setTolerance(RiskTolerance tolerance) { 
         this.tolerance = tolerance;
         this.riskScore = calculateRiskScore();
+        version++;
     }
     public void setAge(int age) { 
         this.age = age;
         this.riskScore = calculateRiskScore();
+        version++;
     }
     public void setInvestmentHorizonYears(int years) { 
         this.investmentHorizonYears = years;
         this.riskScore = calculateRiskScore();
+        version++;
+    }
+    public void setAnnualIncome(double income) {
+        this.annualIncome = income;
+        version++;
+    }
+    public void setLiquidityNeeds(double needs) {
+        this.liquidityNeeds = needs;
+        version++;
     }
-    public void setAnnualIncome(double income) { this.annualIncome = income; }
-    public void setLiquidityNeeds(double needs) { this.liquidityNeeds = needs; }
     
     // Recommended asset allocation based on risk profile
     public double getRecommendedStockAllocation() {
@@ -0,0 +1,488 @@
+package model;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Tax lots of one portfolio: the quantity, unit cost and acquisition date
+ * of each purchase, relieved on sales first-in first-out, last-in
+ * first-out, highest cost first or by specific lot.
+ *
+ * The ledger listens to its portfolio: every BUY opens a lot and every
+ * SELL relieves lots before the portfolio records it. A sale of more than
+ * the open lots hold is vetoed. The portfolio's assets when the ledger is
+ * created become its opening lots.
+ *
+ * Each symbol's open lots are kept in acquisition order and in a treap
+ * ordered by unit cost, where every node also holds the earliest
+ * acquisition day below it. All lots of a symbol share its price, so
+ * ordering by cost is ordering by unrealized loss whatever the price is:
+ * price changes need no re-indexing. The lots past a loss threshold and
+ * held longer than a given time are found in O((k + 1) log n) per symbol,
+ * without visiting lots that do not qualify.
+ */
+public class TaxLotLedger implements TransactionListener {
+
+    public enum ReliefMethod {
+        FIFO, LIFO, HIFO, SPECIFIC
+    }
+
+    // Remaining quantities at or below this count as closed
+    private static final double QUANTITY_EPSILON = 1e-9;
+
+    /**
+     * One open lot. The quantity goes down as the lot is relieved.
+     */
+    public static final class TaxLot {
+        private final long id;
+        private final String symbol;
+        private final String purchaseTransactionId;
+        private final double unitCost;
+        private final LocalDate acquired;
+        private final long day;
+        private volatile double quantity;
+
+        // Cost treap links, ordered by (unitCost, id)
+        private final long priority;
+        private TaxLot left;
+        private TaxLot right;
+        private long minDay;
+
+        private TaxLot(long id, String symbol, String purchaseTransactionId, double quantity, double unitCost,
+                       LocalDate acquired) {
+            this.id = id;
+            this.symbol = symbol;
+            this.purchaseTransactionId = purchaseTransactionId;
+            this.quantity = quantity;
+            this.unitCost = unitCost;
+            this.acquired = acquired;
+            this.day = acquired.toEpochDay();
+            this.priority = mix(id);
+            this.minDay = day;
+        }
+
+        // Getters
+        public long getId() { return id; }
+        public String getSymbol() { return symbol; }
+        /** The BUY that opened the lot, or null for an opening lot. */
+        public String getPurchaseTransactionId() { return purchaseTransactionId; }
+        public double getQuantity() { return quantity; }
+        public double getUnitCost() { return unitCost; }
+        public LocalDate getAcquired() { return acquired; }
+        public double getCostBasis() { return quantity * unitCost; }
+
+        public double getUnrealizedGain(double price) {
+            return quantity * (price - unitCost);
+        }
+
+        public long getHoldingPeriodDays(LocalDate asOf) {
+            return ChronoUnit.DAYS.between(acquired, asOf);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Lot %d: %s %.4f @ $%.2f acquired %s", id, symbol, quantity, unitCost, acquired);
+        }
+    }
+
+    /**
+     * Quantity of one lot relieved by a sale.
+     */
+    public static final class Disposal {
+        private final long lotId;
+        private final String symbol;
+        private final String transactionId;
+        private final String purchaseTransactionId;
+        private final double quantity;
+        private final double unitCost;
+        private final double unitProceeds;
+        private final LocalDate acquired;
+        private final LocalDate disposed;
+
+        private Disposal(TaxLot lot, double quantity, Transaction sale) {
+            this.lotId = lot.id;
+            this.symbol = lot.symbol;
+            this.transactionId = sale.getId();
+            this.purchaseTransactionId = lot.purchaseTransactionId;
+            this.quantity = quantity;
+            this.unitCost = lot.unitCost;
+            this.unitProceeds = sale.getPricePerUnit();
+            this.acquired = lot.acquired;
+            this.disposed = sale.getTimestamp().toLocalDate();
+        }
+
+        // Getters
+        public long getLotId() { return lotId; }
+        public String getSymbol() { return symbol; }
+        public String getTransactionId() { return transactionId; }
+        /** The BUY that opened the lot, or null for an opening lot. */
+        public String getPurchaseTransactionId() { return purchaseTransactionId; }
+        public double getQuantity() { return quantity; }
+        public double getUnitCost() { return unitCost; }
+        public double getUnitProceeds() { return unitProceeds; }
+        public LocalDate getAcquired() { return acquired; }
+        public LocalDate getDisposed() { return disposed; }
+        public double getCostBasis() { return quantity * unitCost; }
+        public double getProceeds() { return quantity * unitProceeds; }
+        public double getGain() { return getProceeds() - getCostBasis(); }
+
+        /** Held more than a year. */
+        public boolean isLongTerm() {
+            return disposed.isAfter(acquired.plusYears(1));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s lot %d: %.4f sold %s @ $%.2f (cost $%.2f) = %s$%.2f",
+                symbol, lotId, quantity, disposed, unitProceeds, unitCost,
+                getGain() < 0 ? "-" : "+", Math.abs(getGain()));
+        }
+    }
+
+    /**
+     * A lot worth harvesting, at the price it was found at.
+     */
+    public static final class HarvestCandidate {
+        private final TaxLot lot;
+        private final double price;
+
+        private HarvestCandidate(TaxLot lot, double price) {
+            this.lot = lot;
+            this.price = price;
+        }
+
+        // Getters
+        public TaxLot getLot() { return lot; }
+        public double getPrice() { return price; }
+        /** Loss in dollars, as a positive amount. */
+        public double getUnrealizedLoss() { return -lot.getUnrealizedGain(price); }
+        public double getLossPercentage() { return (lot.unitCost - price) / lot.unitCost * 100.0; }
+
+        @Override
+        public String toString() {
+            return String.format("%s: Loss of $%.2f (%.2f%%) on %.4f units acquired %s",
+                lot.symbol, getUnrealizedLoss(), getLossPercentage(), lot.quantity, lot.acquired);
+        }
+    }
+
+    // Open lots of one symbol
+    private static final class SymbolLots {
+        final TreeSet<TaxLot> byAcquisition = new TreeSet<>(BY_ACQUISITION);
+        TaxLot byCost;
+        double quantity;
+    }
+
+    private static final Comparator<TaxLot> BY_ACQUISITION =
+        Comparator.<TaxLot>comparingLong(lot -> lot.day).thenComparingLong(lot -> lot.id);
+
+    private final Portfolio portfolio;
+    private final Map<String, SymbolLots> symbols = new HashMap<>();
+    private final Map<Long, TaxLot> lots = new HashMap<>();
+    private final Map<String, long[]> designations = new HashMap<>();
+    private final List<Disposal> disposals = new ArrayList<>();
+    private ReliefMethod reliefMethod;
+    private long nextLotId = 1;
+
+    /**
+     * Ledger for a portfolio, opened with a lot for each of its assets and
+     * attached to it.
+     */
+    public TaxLotLedger(Portfolio portfolio, ReliefMethod reliefMethod) {
+        this.portfolio = portfolio;
+        this.reliefMethod = reliefMethod;
+        portfolio.forEachAsset(asset -> {
+            if (asset.getQuantity() > QUANTITY_EPSILON) {
+                openLot(asset.getSymbol(), null, asset.getQuantity(), asset.getPurchasePrice(),
+                    asset.getPurchaseDate());
+            }
+        });
+        portfolio.addTransactionListener(this);
+    }
+
+    /**
+     * Stop following the portfolio's transactions.
+     */
+    public void detach() {
+        portfolio.removeTransactionListener(this);
+    }
+
+    // Getters
+    public Portfolio getPortfolio() { return portfolio; }
+    public synchronized ReliefMethod getReliefMethod() { return reliefMethod; }
+    public synchronized int getLotCount() { return lots.size(); }
+    public synchronized TaxLot getLot(long id) { return lots.get(id); }
+
+    public synchronized void setReliefMethod(ReliefMethod reliefMethod) {
+        this.reliefMethod = reliefMethod;
+    }
+
+    /**
+     * Open lots of a symbol, earliest first.
+     */
+    public synchronized List<TaxLot> getLots(String symbol) {
+        SymbolLots open = symbols.get(symbol);
+        return open == null ? new ArrayList<>() : new ArrayList<>(open.byAcquisition);
+    }
+
+    public synchronized double getQuantity(String symbol) {
+        SymbolLots open = symbols.get(symbol);
+        return open == null ? 0.0 : open.quantity;
+    }
+
+    public synchronized List<Disposal> getDisposals() {
+        return new ArrayList<>(disposals);
+    }
+
+    public synchronized double getRealizedGain() {
+        double total = 0.0;
+        for (Disposal disposal : disposals) total += disposal.getGain();
+        return total;
+    }
+
+    /**
+     * Lots to relieve, in order, when the SELL with this id is recorded.
+     * Designated lots are used whatever the relief method.
+     */
+    public synchronized void designate(String transactionId, long... lotIds) {
+        designations.put(transactionId, lotIds.clone());
+    }
+
+    // Transaction handling
+    @Override
+    public synchronized void transactionRecorded(Portfolio portfolio, Transaction transaction) {
+        if (transaction.getQuantity() <= 0) return;
+        switch (transaction.getType()) {
+            case BUY:
+                openLot(transaction.getAssetSymbol(), transaction.getId(), transaction.getQuantity(),
+                    transaction.getPricePerUnit(), transaction.getTimestamp().toLocalDate());
+                break;
+            case SELL:
+                relieve(transaction);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private TaxLot openLot(String symbol, String purchaseTransactionId, double quantity, double unitCost,
+                           LocalDate acquired) {
+        TaxLot lot = new TaxLot(nextLotId++, symbol, purchaseTransactionId, quantity, unitCost, acquired);
+        SymbolLots open = symbols.computeIfAbsent(symbol, s -> new SymbolLots());
+        open.byAcquisition.add(lot);
+        open.byCost = insert(open.byCost, lot);
+        open.quantity += quantity;
+        lots.put(lot.id, lot);
+        return lot;
+    }
+
+    // Check the sale can be covered before relieving anything, so a veto leaves the lots as they were
+    private void relieve(Transaction sale) {
+        String symbol = sale.getAssetSymbol();
+        double remaining = sale.getQuantity();
+        SymbolLots open = symbols.get(symbol);
+        long[] designated = designations.get(sale.getId());
+
+        if (designated != null) {
+            double available = 0.0;
+            Set<Long> seen = new HashSet<>();
+            for (long id : designated) {
+                TaxLot lot = lots.get(id);
+                if (lot == null || !lot.symbol.equals(symbol)) {
+                    throw new IllegalArgumentException("Lot " + id + " is not an open lot of " + symbol);
+                }
+                if (!seen.add(id)) {
+                    throw new IllegalArgumentException("Lot " + id + " is designated twice for sale " + sale.getId());
+                }
+                available += lot.quantity;
+            }
+            if (available < remaining - QUANTITY_EPSILON) {
+                throw new IllegalArgumentException(String.format(
+                    "Designated lots hold %.4f of %s, sale %s is for %.4f", available, symbol, sale.getId(), remaining));
+            }
+            designations.remove(sale.getId());
+            for (long id : designated) {
+                if (remaining <= QUANTITY_EPSILON) break;
+                remaining -= relieve(open, lots.get(id), remaining, sale);
+            }
+            return;
+        }
+
+        if (reliefMethod == ReliefMethod.SPECIFIC) {
+            throw new IllegalArgumentException("No lots designated for sale " + sale.getId());
+        }
+        double held = open == null ? 0.0 : open.quantity;
+        if (held < remaining - QUANTITY_EPSILON) {
+            throw new IllegalArgumentException(String.format(
+                "Open lots hold %.4f of %s, sale %s is for %.4f", held, symbol, sale.getId(), remaining));
+        }
+        while (remaining > QUANTITY_EPSILON && !open.byAcquisition.isEmpty()) {
+            TaxLot lot;
+            switch (reliefMethod) {
+                case LIFO: lot = open.byAcquisition.last(); break;
+                case HIFO: lot = highest(open.byCost); break;
+                default: lot = open.byAcquisition.first(); break;
+            }
+            remaining -= relieve(open, lot, remaining, sale);
+        }
+    }
+
+    // Relieve up to quantity from one lot, closing it if emptied; returns the quantity relieved
+    private double relieve(SymbolLots open, TaxLot lot, double quantity, Transaction sale) {
+        double taken = Math.min(quantity, lot.quantity);
+        disposals.add(new Disposal(lot, taken, sale));
+        lot.quantity -= taken;
+        open.quantity -= taken;
+        if (lot.quantity <= QUANTITY_EPSILON) {
+            open.byAcquisition.remove(lot);
+            open.byCost = remove(open.byCost, lot);
+            lots.remove(lot.id);
+            if (open.byAcquisition.isEmpty()) {
+                symbols.remove(lot.symbol);
+            }
+        }
+        return taken;
+    }
+
+    // Loss harvesting
+    /**
+     * Open lots at more than minLossPercent below cost and held more than
+     * minHoldingDays, priced at the portfolio's current prices, largest
+     * loss first. Symbols the portfolio no longer holds are skipped.
+     */
+    public synchronized List<HarvestCandidate> getHarvestCandidates(double minLossPercent, int minHoldingDays,
+                                                                    LocalDate asOf) {
+        if (!(minLossPercent >= 0 && minLossPercent < 100)) {
+            throw new IllegalArgumentException("Loss threshold must be in [0, 100): " + minLossPercent);
+        }
+        long latestDay = asOf.toEpochDay() - minHoldingDays - 1;
+        List<HarvestCandidate> candidates = new ArrayList<>();
+        for (Map.Entry<String, SymbolLots> entry : symbols.entrySet()) {
+            Asset asset = portfolio.getAsset(entry.getKey());
+            if (asset == null) continue;
+            double price = asset.getCurrentPrice();
+            // Loss above the threshold means a unit cost above this
+            double minCost = price / (1 - minLossPercent / 100.0);
+            collect(entry.getValue().byCost, minCost, latestDay, price, candidates);
+        }
+        candidates.sort((a, b) -> Double.compare(b.getUnrealizedLoss(), a.getUnrealizedLoss()));
+        return candidates;
+    }
+
+    // Lots below node with cost above minCost and acquired on or before latestDay
+    private static void collect(TaxLot node, double minCost, long latestDay, double price,
+                                List<HarvestCandidate> out) {
+        while (node != null && node.minDay <= latestDay) {
+            if (node.unitCost > minCost) {
+                collect(node.left, minCost, latestDay, price, out);
+                if (node.day <= latestDay) {
+                    out.add(new HarvestCandidate(node, price));
+                }
+                collectAll(node.right, latestDay, price, out);
+                return;
+            }
+            node = node.right;
+        }
+    }
+
+    // Every lot below node acquired on or before latestDay
+    private static void collectAll(TaxLot node, long latestDay, double price, List<HarvestCandidate> out) {
+        if (node == null || node.minDay > latestDay) return;
+        collectAll(node.left, latestDay, price, out);
+        if (node.day <= latestDay) {
+            out.add(new HarvestCandidate(node, price));
+        }
+        collectAll(node.right, latestDay, price, out);
+    }
+
+    // Cost treap: binary search tree on (unitCost, id), heap on priority
+    private static boolean before(TaxLot a, TaxLot b) {
+        int byCost = Double.compare(a.unitCost, b.unitCost);
+        return byCost < 0 || (byCost == 0 && a.id < b.id);
+    }
+
+    private static TaxLot insert(TaxLot root, TaxLot lot) {
+        if (root == null) return lot;
+        if (lot.priority > root.priority) {
+            TaxLot[] parts = split(root, lot);
+            lot.left = parts[0];
+            lot.right = parts[1];
+            update(lot);
+            return lot;
+        }
+        if (before(lot, root)) {
+            root.left = insert(root.left, lot);
+        } else {
+            root.right = insert(root.right, lot);
+        }
+        update(root);
+        return root;
+    }
+
+    private static TaxLot remove(TaxLot root, TaxLot lot) {
+        if (root == null) return null;
+        if (root == lot) {
+            TaxLot merged = merge(root.left, root.right);
+            lot.left = lot.right = null;
+            return merged;
+        }
+        if (before(lot, root)) {
+            root.left = remove(root.left, lot);
+        } else {
+            root.right = remove(root.right, lot);
+        }
+        update(root);
+        return root;
+    }
+
+    // Lots ordered before key, and the rest
+    private static TaxLot[] split(TaxLot root, TaxLot key) {
+        if (root == null) return new TaxLot[2];
+        if (before(root, key)) {
+            TaxLot[] parts = split(root.right, key);
+            root.right = parts[0];
+            update(root);
+            parts[0] = root;
+            return parts;
+        }
+        TaxLot[] parts = split(root.left, key);
+        root.left = parts[1];
+        update(root);
+        parts[1] = root;
+        return parts;
+    }
+
+    // Every lot in a is ordered before every lot in b
+    private static TaxLot merge(TaxLot a, TaxLot b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+
+    private static TaxLot highest(TaxLot root) {
+        while (root.right != null) root = root.right;
+        return root;
+    }
+
+    private static void update(TaxLot node) {
+        long minDay = node.day;
+        if (node.left != null) minDay = Math.min(minDay, node.left.minDay);
+        if (node.right != null) minDay = Math.min(minDay, node.right.minDay);
+        node.minDay = minDay;
+    }
+
+    // Treap priority from the lot id: well spread, and repeatable from run to run
+    private static long mix(long id) {
+        long z = id * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,18 @@
+package model;
+
+/**
+ * Notified when a transaction is recorded on a portfolio.
+ *
+ * {@link #transactionRecorded} is called before the portfolio applies the
+ * transaction; throwing an unchecked exception vetoes it. Once every
+ * listener has accepted it and the portfolio has applied it,
+ * {@link #transactionApplied} is called, so a listener that must only see
+ * transactions that took effect (such as a journal) never sees a vetoed one.
+ */
+public interface TransactionListener {
+    default void transactionRecorded(Portfolio portfolio, Transaction transaction) {
+    }
+
+    default void transactionApplied(Portfolio portfolio, Transaction transaction) {
+    }
+}
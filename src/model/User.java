@@ -3,6 +3,7 @@ package model;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Represents a user of the wealth management system.
@@ -16,6 +17,7 @@ public class User implements Serializable {
     private String fullName;
     private RiskProfile riskProfile;
     private Map<String, Portfolio> portfolios; // portfolioId -> Portfolio
+    private Map<String, Portfolio> portfoliosView;
     private LocalDateTime createdAt;
     private LocalDateTime lastLoginAt;
     
@@ -25,12 +27,20 @@ public class User implements Serializable {
         this.email = email;
         this.fullName = fullName;
         this.portfolios = new HashMap<>();
+        this.portfoliosView = Collections.unmodifiableMap(portfolios);
         this.createdAt = LocalDateTime.now();
         this.lastLoginAt = LocalDateTime.now();
         // Default risk profile
         this.riskProfile = new RiskProfile(RiskProfile.RiskTolerance.BALANCED, 30, 10);
     }
     
+    public User(String userId, String username, String email, String fullName,
+                LocalDateTime createdAt, LocalDateTime lastLoginAt) {
+        this(userId, username, email, fullName);
+        this.createdAt = createdAt;
+        this.lastLoginAt = lastLoginAt;
+    }
+    
     // Getters
     public String getUserId() { return userId; }
     public String getUsername() { return username; }
@@ -41,6 +51,16 @@ public class User implements Serializable {
     public LocalDateTime getCreatedAt() { return createdAt; }
     public LocalDateTime getLastLoginAt() { return lastLoginAt; }
     
+    // Read-only view (no copy; reflects later changes)
+    public Map<String, Portfolio> getPortfoliosView() { return portfoliosView; }
+    public int getPortfolioCount() { return portfolios.size(); }
+    
+    public void forEachPortfolio(Consumer<? super Portfolio> action) {
+        for (Portfolio portfolio : portfolios.values()) {
+            action.accept(portfolio);
+        }
+    }
+    
     // Setters
     public void setEmail(String email) { this.email = email; }
     public void setFullName(String fullName) { this.fullName = fullName; }
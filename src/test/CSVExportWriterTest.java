@@ -0,0 +1,196 @@
+package test;
+
+import data.CSVHandler;
+import model.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Byte-for-byte check of the CSVHandler exports, which write through
+ * CSVExportWriter, against the PrintWriter and String.format export they
+ * replaced. Covers negative values, values that round up to the next
+ * power of ten, ties, non-finite values, non-ASCII text, output larger
+ * than the writer's buffer, and a default locale with a decimal comma.
+ *
+ * Usage: java -cp out test.CSVExportWriterTest
+ */
+public class CSVExportWriterTest {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final double[] EDGE_VALUES = {
+        0.0, -0.0, 0.004, -0.004, 0.005, -0.005, 0.015, 1.005, -1.005, 2.675,
+        9.995, 9.9999, -9.9999, 99.995, -99.995, 999.99999, 9999.99995, 0.99995, -0.99995,
+        0.00005, 123456.785, 1e15 + 0.5, 4503599627370495.5, 1e17, -1e20, Double.MAX_VALUE,
+        Double.MIN_VALUE, -Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+    };
+
+    private static final String[] NAMES = {
+        "Société Générale", "日本電信電話", "Nestlé S.A.", "Ünïcödé ✓ €", "😀 Emoji Holdings", "Plain ASCII"
+    };
+
+    private static boolean failed;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("╔═══════════════════════════════════════════════════╗");
+        System.out.println("║  CSV EXPORT WRITER - BYTE-FOR-BYTE TEST          ║");
+        System.out.println("╚═══════════════════════════════════════════════════╝\n");
+
+        Portfolio portfolio = buildPortfolio(new Random(11));
+        Path directory = Files.createTempDirectory("csv-export-test");
+        Locale locale = Locale.getDefault();
+        try {
+            compare(portfolio, directory, "default locale");
+            Locale.setDefault(Locale.GERMANY);
+            compare(portfolio, directory, "decimal-comma default locale");
+        } finally {
+            Locale.setDefault(locale);
+            for (File file : directory.toFile().listFiles()) file.delete();
+            Files.delete(directory);
+        }
+
+        if (failed) {
+            System.out.println("\n✗ CSV EXPORT WRITER TEST FAILED");
+            System.exit(1);
+        }
+        System.out.println("\n✓ ALL CHECKS PASSED");
+    }
+
+    private static void compare(Portfolio portfolio, Path directory, String label) throws IOException {
+        System.out.println("Exports with the " + label);
+        String assets = directory.resolve("assets.csv").toString();
+        String transactions = directory.resolve("transactions.csv").toString();
+        String expectedAssets = directory.resolve("assets-expected.csv").toString();
+        String expectedTransactions = directory.resolve("transactions-expected.csv").toString();
+
+        check(CSVHandler.exportPortfolio(portfolio, assets), "portfolio export succeeds");
+        check(CSVHandler.exportTransactions(portfolio, transactions), "transaction export succeeds");
+        referencePortfolio(portfolio, expectedAssets);
+        referenceTransactions(portfolio, expectedTransactions);
+
+        byte[] transactionBytes = Files.readAllBytes(Path.of(transactions));
+        check(transactionBytes.length > 1 << 20, "the transaction export is larger than the 1 MB buffer");
+        checkSame(Files.readAllBytes(Path.of(assets)), Files.readAllBytes(Path.of(expectedAssets)),
+            portfolio.getAssetCount() + " asset rows match");
+        checkSame(transactionBytes, Files.readAllBytes(Path.of(expectedTransactions)),
+            portfolio.getTransactionCount() + " transaction rows match");
+        System.out.println();
+    }
+
+    // Every edge value in every numeric column, then random values of many magnitudes
+    private static Portfolio buildPortfolio(Random random) {
+        Portfolio portfolio = new Portfolio("CSV", "Export", "U");
+        Asset.AssetType[] types = Asset.AssetType.values();
+        LocalDate date = LocalDate.of(2024, 2, 29);
+        int id = 0;
+        for (int i = 0; i < EDGE_VALUES.length; i++) {
+            double value = EDGE_VALUES[i];
+            String name = NAMES[i % NAMES.length];
+            portfolio.addAsset(new Asset("E" + i, name, types[i % types.length], value, value, -value,
+                date.minusDays(i), i % 2 == 0 ? "Énergie" : "General"));
+            portfolio.recordTransaction(new Transaction("T" + id++, Transaction.TransactionType.BUY, "E" + i,
+                value, 1.0, date.atTime(9, 5, 7), name));
+            portfolio.recordTransaction(new Transaction("T" + id++, Transaction.TransactionType.SELL, "E" + i,
+                1.0, value, date.atTime(23, 59, 59), i % 3 == 0 ? null : "Edge"));
+        }
+        // A row of text longer than the buffer must be split across flushes
+        StringBuilder longName = new StringBuilder();
+        while (longName.length() < (1 << 20) + 7) longName.append("Ä€日");
+        portfolio.addAsset(new Asset("LONG", longName.toString(), Asset.AssetType.STOCK, 1, 1, 1, date, "General"));
+
+        for (int i = 0; i < 2_000; i++) {
+            portfolio.addAsset(new Asset("R" + i, NAMES[random.nextInt(NAMES.length)], types[i % types.length],
+                randomValue(random), randomValue(random), randomValue(random),
+                date.minusDays(random.nextInt(40_000)), "General"));
+        }
+        for (int i = 0; i < 15_000; i++) {
+            LocalDateTime timestamp = LocalDateTime.of(1990 + random.nextInt(40), 1 + random.nextInt(12),
+                1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60));
+            portfolio.recordTransaction(new Transaction("T" + id++, Transaction.TransactionType.values()[i % 4],
+                "R" + random.nextInt(2_000), randomValue(random), randomValue(random), timestamp,
+                NAMES[random.nextInt(NAMES.length)]));
+        }
+        return portfolio;
+    }
+
+    // Signed values from 1e-6 to 1e16, some on exact cent and half-cent ties
+    private static double randomValue(Random random) {
+        double value;
+        switch (random.nextInt(4)) {
+            case 0: value = random.nextInt(1_000_000) / 100.0; break;
+            case 1: value = (random.nextInt(1_000_000) + 0.5) / 100.0; break;
+            case 2: value = (random.nextInt(100_000) * 10 + 9.9999) / 10.0; break;
+            default: value = Math.pow(10, random.nextDouble() * 22 - 6);
+        }
+        return random.nextBoolean() ? -value : value;
+    }
+
+    // The export as written before CSVExportWriter, with '.' decimals
+    private static void referencePortfolio(Portfolio portfolio, String filename) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
+            writer.println("Symbol,Name,Type,Quantity,Purchase Price,Current Price,Purchase Date,Sector");
+            for (Asset asset : portfolio.getAssetsView().values()) {
+                writer.println(String.format(Locale.ROOT, "%s,%s,%s,%.4f,%.2f,%.2f,%s,%s",
+                    asset.getSymbol(),
+                    asset.getName(),
+                    asset.getType(),
+                    asset.getQuantity(),
+                    asset.getPurchasePrice(),
+                    asset.getCurrentPrice(),
+                    asset.getPurchaseDate().format(DATE_FORMATTER),
+                    asset.getSector()
+                ));
+            }
+        }
+    }
+
+    private static void referenceTransactions(Portfolio portfolio, String filename) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
+            writer.println("ID,Type,Asset Symbol,Quantity,Price Per Unit,Total Amount,Timestamp,Notes");
+            for (Transaction transaction : portfolio.getTransactionsView()) {
+                writer.println(String.format(Locale.ROOT, "%s,%s,%s,%.4f,%.2f,%.2f,%s,%s",
+                    transaction.getId(),
+                    transaction.getType(),
+                    transaction.getAssetSymbol(),
+                    transaction.getQuantity(),
+                    transaction.getPricePerUnit(),
+                    transaction.getTotalAmount(),
+                    transaction.getTimestamp().format(DATETIME_FORMATTER),
+                    transaction.getNotes()
+                ));
+            }
+        }
+    }
+
+    private static void checkSame(byte[] actual, byte[] expected, String description) {
+        int mismatch = Arrays.mismatch(actual, expected);
+        if (mismatch < 0) {
+            check(true, description);
+            return;
+        }
+        check(false, description + " (first difference at byte " + mismatch + ")");
+        int from = Math.max(0, mismatch - 40);
+        System.out.println("    expected: " + excerpt(expected, from));
+        System.out.println("    actual:   " + excerpt(actual, from));
+    }
+
+    private static String excerpt(byte[] bytes, int from) {
+        int to = Math.min(bytes.length, from + 80);
+        return new String(bytes, from, to - from).replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static void check(boolean condition, String description) {
+        if (condition) {
+            System.out.println("  ✓ " + description);
+        } else {
+            System.out.println("  ✗ " + description);
+            failed = true;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package test;
+
+import model.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress test for ConcurrentPortfolio: price-feed, trade-booking and
+ * reporting threads share one portfolio, then its running totals, cash and
+ * transaction log are checked against a full recomputation. Snapshot
+ * threads check that every snapshot is internally consistent.
+ *
+ * Usage: java -cp out test.ConcurrencyStressTest [seconds]
+ */
+public class ConcurrencyStressTest {
+
+    private static final int PRIVATE_ASSETS = 256;
+    private static final int SHARED_ASSETS = 64;
+    private static final int TRADERS = 3;
+    private static final String[] SECTORS = { "Technology", "Healthcare", "Financials", "Energy" };
+
+    private static final AtomicBoolean failed = new AtomicBoolean();
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+
+        System.out.println("╔═══════════════════════════════════════════════════╗");
+        System.out.println("║  CONCURRENT PORTFOLIO - STRESS TEST              ║");
+        System.out.println("╚═══════════════════════════════════════════════════╝\n");
+
+        ConcurrentPortfolio portfolio = new ConcurrentPortfolio("stress", "Stress", "tester", 16);
+        InstrumentRegistry registry = new InstrumentRegistry();
+        Asset.AssetType[] types = Asset.AssetType.values();
+        for (int i = 0; i < PRIVATE_ASSETS; i++) {
+            portfolio.addAsset(newAsset(i));
+        }
+        for (int i = 0; i < SHARED_ASSETS; i++) {
+            registry.register("SH" + i, "Shared " + i, types[i % types.length], SECTORS[i % SECTORS.length], 50.0);
+            portfolio.addAsset(registry.newHolding("SH" + i, 10, 40.0, LocalDate.now().minusDays(i)));
+        }
+        portfolio.recordTransaction(new Transaction("T-init", Transaction.TransactionType.DEPOSIT,
+            "CASH", 1, 1_000_000, "Initial deposit"));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong recorded = new AtomicLong(1);
+        AtomicLong expectedCash = new AtomicLong(1_000_000);
+        AtomicLong expectedDeposits = new AtomicLong(1_000_000);
+        AtomicLong reads = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+
+        // Price feeds: private assets through their setters, shared ones through the registry
+        for (int t = 0; t < 3; t++) {
+            threads.add(worker("price-" + t, running, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                double price = 1 + random.nextInt(1000);
+                if (random.nextInt(4) == 0) {
+                    registry.updatePrice("SH" + random.nextInt(SHARED_ASSETS), price);
+                } else {
+                    Asset asset = portfolio.getAsset("SYM" + random.nextInt(PRIVATE_ASSETS));
+                    if (asset != null) asset.setCurrentPrice(price);
+                }
+            }));
+        }
+
+        // Trade booking: whole-dollar amounts, so the expected cash is exact in any order
+        for (int t = 0; t < TRADERS; t++) {
+            final int id = t;
+            AtomicLong sequence = new AtomicLong();
+            threads.add(worker("trade-" + t, running, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int amount = 1 + random.nextInt(100);
+                int symbol = random.nextInt(PRIVATE_ASSETS);
+                String txId = "T" + id + "-" + sequence.incrementAndGet();
+                switch (random.nextInt(5)) {
+                    case 0:
+                        portfolio.recordTransaction(new Transaction(txId, Transaction.TransactionType.DEPOSIT,
+                            "CASH", 1, amount, "Deposit"));
+                        expectedCash.addAndGet(amount);
+                        expectedDeposits.addAndGet(amount);
+                        break;
+                    case 1:
+                        portfolio.recordTransaction(new Transaction(txId, Transaction.TransactionType.BUY,
+                            "SYM" + symbol, 1, amount, "Buy"));
+                        expectedCash.addAndGet(-amount);
+                        break;
+                    case 2:
+                        portfolio.recordTransaction(new Transaction(txId, Transaction.TransactionType.DIVIDEND,
+                            "SYM" + symbol, 1, amount, "Dividend"));
+                        expectedCash.addAndGet(amount);
+                        break;
+                    case 3: {
+                        Asset asset = portfolio.getAsset("SYM" + symbol);
+                        if (asset != null) asset.setQuantity(1 + random.nextInt(500));
+                        return;
+                    }
+                    default:
+                        // Replace the holding while price feeds may be writing to the old one
+                        portfolio.removeAsset("SYM" + symbol);
+                        portfolio.addAsset(newAsset(symbol));
+                        return;
+                }
+                recorded.incrementAndGet();
+            }));
+        }
+
+        // Reporting: valuation and allocation reads must never fail or go non-finite
+        for (int t = 0; t < 2; t++) {
+            threads.add(worker("report-" + t, running, () -> {
+                double total = portfolio.getTotalValue();
+                check(Double.isFinite(total), "total value is finite");
+                for (double pct : portfolio.getAssetAllocation().values()) {
+                    check(Double.isFinite(pct), "asset allocation is finite");
+                }
+                for (double pct : portfolio.getSectorAllocation().values()) {
+                    check(Double.isFinite(pct), "sector allocation is finite");
+                }
+                int count = portfolio.getTransactionCount();
+                check(portfolio.getTransactionsView().get(count - 1) != null, "logged transaction is visible");
+                reads.incrementAndGet();
+            }));
+        }
+
+        // Snapshots: totals, holdings, cash and history must agree with each other.
+        // Each trader may be between removing a holding and adding it back.
+        AtomicLong snapshots = new AtomicLong();
+        threads.add(worker("snapshot", running, () -> {
+            PortfolioSnapshot snapshot = portfolio.snapshot();
+            check(snapshot.getAssetCount() <= PRIVATE_ASSETS + SHARED_ASSETS
+                && snapshot.getAssetCount() >= PRIVATE_ASSETS + SHARED_ASSETS - TRADERS, "snapshot holds the assets");
+            double value = snapshot.sumAssets(Asset::getCurrentValue);
+            check(close(snapshot.getTotalValue(), value + snapshot.getCashBalance()), "snapshot total matches its holdings");
+            double cash = 0.0;
+            for (Transaction t : snapshot.getTransactionsView()) {
+                switch (t.getType()) {
+                    case BUY: cash -= t.getTotalAmount(); break;
+                    case DEPOSIT: case DIVIDEND: cash += t.getTotalAmount(); break;
+                    default: break;
+                }
+            }
+            check(snapshot.getCashBalance() == cash, "snapshot cash matches its history");
+            snapshots.incrementAndGet();
+        }));
+
+        System.out.println("✓ Running " + threads.size() + " threads for " + seconds + " s");
+        for (Thread thread : threads) thread.start();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread thread : threads) thread.join();
+
+        System.out.println("  Transactions: " + portfolio.getTransactionCount() + " | Reads: " + reads.get()
+            + " | Snapshots: " + snapshots.get());
+        check(portfolio.getTransactionCount() == recorded.get(), "transaction log holds every transaction");
+        check(portfolio.getCashBalance() == expectedCash.get(), "cash balance matches bookings");
+        check(portfolio.getNetDeposits() == expectedDeposits.get(), "net deposits match bookings");
+        check(portfolio.getAssetCount() == PRIVATE_ASSETS + SHARED_ASSETS, "asset count unchanged");
+
+        // Running totals against a full recomputation
+        double marketValue = portfolio.sumAssets(Asset::getCurrentValue);
+        double costBasis = portfolio.sumAssets(Asset::getCostBasis);
+        Map<String, Double> sectors = new HashMap<>();
+        Map<Asset.AssetType, Double> assetTypes = new HashMap<>();
+        portfolio.forEachAsset(a -> {
+            sectors.merge(a.getSector(), a.getCurrentValue(), Double::sum);
+            assetTypes.merge(a.getType(), a.getCurrentValue(), Double::sum);
+        });
+        double total = portfolio.getTotalValue();
+        check(close(total, marketValue + portfolio.getCashBalance()), "total value matches holdings");
+        check(close(portfolio.getTotalCostBasis(), costBasis), "cost basis matches holdings");
+        Map<String, Double> sectorAllocation = portfolio.getSectorAllocation();
+        check(sectorAllocation.size() == sectors.size(), "sector count matches holdings");
+        for (Map.Entry<String, Double> entry : sectors.entrySet()) {
+            check(close(sectorAllocation.get(entry.getKey()), entry.getValue() / total * 100.0),
+                "sector " + entry.getKey() + " matches holdings");
+        }
+        Map<Asset.AssetType, Double> typeAllocation = portfolio.getAssetAllocation();
+        for (Map.Entry<Asset.AssetType, Double> entry : assetTypes.entrySet()) {
+            if (entry.getKey() == Asset.AssetType.CASH) continue;
+            check(close(typeAllocation.get(entry.getKey()), entry.getValue() / total * 100.0),
+                "type " + entry.getKey() + " matches holdings");
+        }
+
+        if (failed.get()) {
+            System.out.println("\n✗ STRESS TEST FAILED");
+            System.exit(1);
+        }
+        System.out.println("\n✓ ALL CHECKS PASSED");
+    }
+
+    private static Asset newAsset(int i) {
+        Asset.AssetType[] types = Asset.AssetType.values();
+        return new Asset("SYM" + i, "Instrument " + i, types[i % types.length], 100, 20.0, 25.0,
+            LocalDate.now().minusDays(i), SECTORS[i % SECTORS.length]);
+    }
+
+    private static Thread worker(String name, AtomicBoolean running, Runnable step) {
+        return new Thread(() -> {
+            try {
+                while (running.get()) {
+                    step.run();
+                }
+            } catch (RuntimeException e) {
+                System.out.println("✗ " + name + " failed: " + e);
+                failed.set(true);
+            }
+        }, name);
+    }
+
+    private static boolean close(double actual, double expected) {
+        return Math.abs(actual - expected) <= 1e-8 * Math.max(1.0, Math.abs(expected));
+    }
+
+    private static void check(boolean condition, String description) {
+        if (condition) {
+            if (Thread.currentThread().getName().equals("main")) {
+                System.out.println("  ✓ " + description);
+            }
+        } else {
+            if (failed.compareAndSet(false, true) || Thread.currentThread().getName().equals("main")) {
+                System.out.println("✗ " + description);
+            }
+            failed.set(true);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package test;
+
+import logic.CovarianceEngine;
+import model.PriceHistory;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Checks CovarianceEngine against a naive two-pass O(n^2 * days)
+ * covariance of the same returns: after a full tiled computation, after
+ * rolling the window day by day, from closes with missing prices, and
+ * from a price history. Sizes straddle the engine's 4-wide kernel, its
+ * tiles and its day chunks, and every result must be identical at any
+ * parallelism.
+ *
+ * Usage: java -cp out test.CovarianceEngineTest
+ */
+public class CovarianceEngineTest {
+
+    private static boolean failed;
+
+    public static void main(String[] args) {
+        System.out.println("╔═══════════════════════════════════════════════════╗");
+        System.out.println("║  COVARIANCE ENGINE - CORRECTNESS TEST            ║");
+        System.out.println("╚═══════════════════════════════════════════════════╝\n");
+
+        checkFullComputation();
+        checkRollingWindow();
+        checkCloses();
+        checkHistory();
+        checkDerivedMeasures();
+        checkInvalidInput();
+
+        if (failed) {
+            System.out.println("\n✗ COVARIANCE ENGINE TEST FAILED");
+            System.exit(1);
+        }
+        System.out.println("\n✓ ALL CHECKS PASSED");
+    }
+
+    // One recompute over a full window, for awkward sizes
+    private static void checkFullComputation() {
+        System.out.println("Full computation against the naive reference");
+        Random random = new Random(1);
+        int[][] shapes = { { 1, 2 }, { 3, 10 }, { 5, 257 }, { 64, 300 }, { 130, 520 } };
+        for (int[] shape : shapes) {
+            int n = shape[0];
+            int window = shape[1];
+            double[][] returns = randomReturns(n, window, random);
+            CovarianceEngine serial = engine(n, window, 1);
+            CovarianceEngine parallel = engine(n, window, 4);
+            for (int t = 0; t < window; t++) {
+                double[] day = column(returns, t);
+                serial.addReturns(day);
+                parallel.addReturns(day);
+            }
+            serial.recompute();
+            parallel.recompute();
+            double[][] expected = naiveCovariance(returns, 0, window);
+            check(matches(serial.getCovarianceMatrix(), expected, 1e-9),
+                String.format("%d symbols x %d days matches", n, window));
+            check(Arrays.deepEquals(serial.getCovarianceMatrix(), parallel.getCovarianceMatrix()),
+                String.format("%d symbols x %d days is identical at 1 and 4 threads", n, window));
+        }
+        System.out.println();
+    }
+
+    // Rank-one updates while the window fills and after it wraps
+    private static void checkRollingWindow() {
+        System.out.println("Rolling window");
+        Random random = new Random(2);
+        int n = 70;
+        int window = 120;
+        int total = 500;
+        double[][] returns = randomReturns(n, total, random);
+        CovarianceEngine engine = engine(n, window, 2);
+
+        boolean partial = true;
+        boolean rolled = true;
+        for (int t = 0; t < total; t++) {
+            engine.addReturns(column(returns, t));
+            int days = Math.min(t + 1, window);
+            if (days < 2) continue;
+            boolean same = matches(engine.getCovarianceMatrix(), naiveCovariance(returns, t + 1 - days, t + 1), 1e-8);
+            if (t + 1 < window) partial &= same; else rolled &= same;
+        }
+        check(engine.getDayCount() == window, "the day count stops at the window");
+        check(partial, "every day before the window fills matches");
+        check(rolled, "every day after the window wraps matches");
+
+        engine.recompute();
+        check(matches(engine.getCovarianceMatrix(), naiveCovariance(returns, total - window, total), 1e-9),
+            "recompute from the ring buffer matches");
+        System.out.println();
+    }
+
+    // Log returns from closes, where a missing close is a zero return
+    private static void checkCloses() {
+        System.out.println("Closes with missing prices");
+        Random random = new Random(3);
+        int n = 9;
+        int total = 200;
+        int window = 150;
+        double[][] closes = new double[n][total];
+        for (int i = 0; i < n; i++) {
+            double close = 20 + 10 * i;
+            for (int t = 0; t < total; t++) {
+                close *= Math.exp(0.0005 * i + 0.015 * random.nextGaussian());
+                boolean missing = i == 0 || (i == 1 && t < 40) || random.nextInt(10) == 0;
+                closes[i][t] = missing ? (t % 2 == 0 ? Double.NaN : 0.0) : close;
+            }
+        }
+
+        CovarianceEngine engine = engine(n, window, 1);
+        for (int t = 0; t < total; t++) engine.addCloses(column(closes, t));
+
+        double[][] returns = new double[n][total];
+        for (int i = 0; i < n; i++) {
+            double last = Double.NaN;
+            for (int t = 0; t < total; t++) {
+                double close = closes[i][t];
+                if (close > 0) {
+                    returns[i][t] = last > 0 ? Math.log(close / last) : 0.0;
+                    last = close;
+                }
+            }
+        }
+        check(matches(engine.getCovarianceMatrix(), naiveCovariance(returns, total - window, total), 1e-8),
+            "returns carry the last close across gaps");
+        check(engine.getVariance(0) == 0.0 && engine.getCorrelation(0, 3) == 0.0,
+            "a symbol that never trades has zero variance and correlation");
+        System.out.println();
+    }
+
+    // The calendar is the days any symbol traded; the window ends on the given date
+    private static void checkHistory() {
+        System.out.println("From a price history");
+        Random random = new Random(4);
+        List<String> symbols = Arrays.asList("AAA", "BBB", "CCC", "DDD", "EEE", "NONE");
+        LocalDate first = LocalDate.of(2022, 1, 3);
+        LocalDate end = LocalDate.of(2023, 12, 29);
+        PriceHistory history = new PriceHistory();
+        for (int i = 0; i < 5; i++) {
+            double close = 50 + i;
+            for (LocalDate date = first; !date.isAfter(end.plusDays(10)); date = date.plusDays(1)) {
+                if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) continue;
+                if (date.getDayOfYear() == 100) continue; // a holiday for everyone
+                close *= Math.exp(0.02 * random.nextGaussian());
+                if (i == 3 && random.nextInt(5) == 0) continue;
+                if (i == 4 && date.isBefore(LocalDate.of(2023, 9, 1))) continue;
+                history.append(symbols.get(i), date, close);
+            }
+        }
+
+        int window = 200;
+        CovarianceEngine serial = CovarianceEngine.fromHistory(history, symbols, end, window, 1);
+        CovarianceEngine parallel = CovarianceEngine.fromHistory(history, symbols, end, window, 3);
+
+        // Naive: the last window + 1 trading days up to the end date
+        TreeSet<LocalDate> tradingDays = new TreeSet<>();
+        for (LocalDate date = first; !date.isAfter(end); date = date.plusDays(1)) {
+            for (String symbol : symbols) {
+                if (history.hasSymbol(symbol) && tradedOn(history, symbol, date)) tradingDays.add(date);
+            }
+        }
+        List<LocalDate> calendar = new ArrayList<>(tradingDays).subList(tradingDays.size() - window - 1, tradingDays.size());
+        double[][] returns = new double[symbols.size()][window];
+        for (int i = 0; i < symbols.size(); i++) {
+            if (!history.hasSymbol(symbols.get(i))) continue;
+            double last = history.getCloseAsOf(symbols.get(i), calendar.get(0));
+            for (int d = 1; d < calendar.size(); d++) {
+                if (!tradedOn(history, symbols.get(i), calendar.get(d))) continue;
+                double close = history.getCloseAsOf(symbols.get(i), calendar.get(d));
+                returns[i][d - 1] = last > 0 ? Math.log(close / last) : 0.0;
+                last = close;
+            }
+        }
+
+        check(serial.getDayCount() == window, "the window is full");
+        check(matches(serial.getCovarianceMatrix(), naiveCovariance(returns, 0, window), 1e-9),
+            "gaps, late listings, holidays and an unknown symbol match");
+        check(Arrays.deepEquals(serial.getCovarianceMatrix(), parallel.getCovarianceMatrix()),
+            "the result is identical at 1 and 3 threads");
+        check(serial.indexOf("NONE") == 5 && serial.getVariance(5) == 0.0, "a symbol with no prices has zero variance");
+        System.out.println();
+    }
+
+    // Correlation, beta and horizon-scaled subsets follow from the covariance
+    private static void checkDerivedMeasures() {
+        System.out.println("Correlation, beta and subsets");
+        Random random = new Random(5);
+        int n = 12;
+        int window = 90;
+        double[][] returns = randomReturns(n, window, random);
+        for (int t = 0; t < window; t++) returns[n - 1][t] = 0.0;
+        CovarianceEngine engine = engine(n, window, 1);
+        for (int t = 0; t < window; t++) engine.addReturns(column(returns, t));
+        double[][] covariance = naiveCovariance(returns, 0, window);
+
+        double[][] correlation = engine.getCorrelationMatrix();
+        boolean correlations = true;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double denominator = Math.sqrt(covariance[i][i] * covariance[j][j]);
+                double expected = i == j && covariance[i][i] > 0 ? 1.0
+                    : denominator == 0 ? 0.0 : covariance[i][j] / denominator;
+                correlations &= Math.abs(correlation[i][j] - expected) <= 1e-9 && Math.abs(correlation[i][j]) <= 1.0;
+            }
+        }
+        check(correlations, "correlations match, with a unit diagonal and zeros for the flat symbol");
+
+        double[] betas = engine.getBetas("S0");
+        boolean beta = Math.abs(betas[0] - 1.0) < 1e-12 && betas[n - 1] == 0.0;
+        for (int i = 0; i < n; i++) {
+            beta &= Math.abs(betas[i] - covariance[i][0] / covariance[0][0]) <= 1e-9 * Math.max(1, Math.abs(betas[i]))
+                && betas[i] == engine.getBeta("S" + i, "S0");
+        }
+        check(beta, "betas against S0 match cov(i, S0) / var(S0)");
+        check(engine.getBeta("S3", "S" + (n - 1)) == 0.0, "beta against a flat benchmark is 0");
+
+        int[] subset = { 7, 2, 9 };
+        double[][] scaled = engine.getCovarianceMatrix(subset, 10);
+        boolean subsets = true;
+        for (int a = 0; a < subset.length; a++) {
+            for (int b = 0; b < subset.length; b++) {
+                subsets &= scaled[a][b] == engine.getCovariance(subset[a], subset[b]) * 10;
+            }
+        }
+        check(subsets, "a subset keeps the order given and scales by the horizon");
+        check(Math.abs(engine.getVolatility(4) - Math.sqrt(covariance[4][4] * CovarianceEngine.TRADING_DAYS)) < 1e-9,
+            "volatility is annualized over 252 days");
+        System.out.println();
+    }
+
+    private static void checkInvalidInput() {
+        System.out.println("Invalid input");
+        check(rejects(() -> new CovarianceEngine(Arrays.asList("A", "B", "A"), 10, 1)), "duplicate symbols are rejected");
+        check(rejects(() -> new CovarianceEngine(Arrays.asList("A"), 1, 1)), "a window under 2 days is rejected");
+        check(rejects(() -> engine(3, 10, 1).addReturns(new double[2])), "a day with the wrong width is rejected");
+        check(rejects(() -> engine(3, 10, 1).getBeta("S1", "MISSING")), "an unknown benchmark is rejected");
+        CovarianceEngine single = engine(2, 10, 1);
+        single.addReturns(new double[] { 0.01, 0.02 });
+        check(single.getCovariance(0, 1) == 0.0, "one day has no covariance");
+        System.out.println();
+    }
+
+    // Daily returns with varied drift and volatility, some with a large mean
+    private static double[][] randomReturns(int n, int days, Random random) {
+        double[][] returns = new double[n][days];
+        for (int i = 0; i < n; i++) {
+            double drift = i % 5 == 4 ? 0.05 : 0.001 * (i % 3);
+            double volatility = i % 5 == 4 ? 0.001 : 0.005 + 0.003 * (i % 7);
+            for (int t = 0; t < days; t++) {
+                double common = random.nextGaussian();
+                returns[i][t] = drift + volatility * (0.6 * common + 0.8 * random.nextGaussian());
+            }
+        }
+        return returns;
+    }
+
+    // Two-pass sample covariance of returns[*][from, to)
+    private static double[][] naiveCovariance(double[][] returns, int from, int to) {
+        int n = returns.length;
+        int days = to - from;
+        double[] means = new double[n];
+        for (int i = 0; i < n; i++) {
+            double sum = 0.0;
+            for (int t = from; t < to; t++) sum += returns[i][t];
+            means[i] = sum / days;
+        }
+        double[][] covariance = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double sum = 0.0;
+                for (int t = from; t < to; t++) sum += (returns[i][t] - means[i]) * (returns[j][t] - means[j]);
+                covariance[i][j] = sum / (days - 1);
+            }
+        }
+        return covariance;
+    }
+
+    // Each entry within a tolerance relative to the two standard deviations
+    private static boolean matches(double[][] actual, double[][] expected, double tolerance) {
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j < expected.length; j++) {
+                double scale = Math.sqrt(expected[i][i] * expected[j][j]);
+                if (!(Math.abs(actual[i][j] - expected[i][j]) <= tolerance * scale + 1e-18)) return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean tradedOn(PriceHistory history, String symbol, LocalDate date) {
+        return history.getWindow(symbol, date, date).size() == 1;
+    }
+
+    private static CovarianceEngine engine(int n, int window, int parallelism) {
+        List<String> symbols = new ArrayList<>();
+        for (int i = 0; i < n; i++) symbols.add("S" + i);
+        return new CovarianceEngine(symbols, window, parallelism);
+    }
+
+    private static double[] column(double[][] rows, int t) {
+        double[] column = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) column[i] = rows[i][t];
+        return column;
+    }
+
+    private static boolean rejects(Runnable action) {
+        try {
+            action.run();
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    private static void check(boolean condition, String description) {
+        if (condition) {
+            System.out.println("  ✓ " + description);
+        } else {
+            System.out.println("  ✗ " + description);
+            failed = true;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package test;
+
+import logic.MonteCarloVaR;
+import logic.RiskCalculator;
+import model.*;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Correctness checks for MonteCarloVaR: a given seed gives bit-identical
+ * paths and estimates at every parallelism level, the tail statistics
+ * match a full sort, the Cholesky factor reproduces its covariance, and
+ * estimates converge to the closed-form VaR and Expected Shortfall of a
+ * normal portfolio.
+ *
+ * Usage: java -cp out test.MonteCarloVaRTest
+ */
+public class MonteCarloVaRTest {
+
+    private static final int[] PARALLELISM = { 1, 2, 3, 8 };
+
+    // Standard normal quantiles and tail means at 95% and 99%
+    private static final double Z95 = 1.6448536269514722;
+    private static final double Z99 = 2.3263478740408408;
+    private static final double ES95 = 2.0627128075074257;
+    private static final double ES99 = 2.6652142203458076;
+
+    private static boolean failed;
+
+    public static void main(String[] args) {
+        System.out.println("╔═══════════════════════════════════════════════════╗");
+        System.out.println("║  MONTE CARLO VAR - CORRECTNESS TEST              ║");
+        System.out.println("╚═══════════════════════════════════════════════════╝\n");
+
+        checkDeterminism();
+        checkSharedScenarios();
+        checkTailStatistics();
+        checkCholesky();
+        checkConvergence();
+
+        if (failed) {
+            System.out.println("\n✗ MONTE CARLO VAR TEST FAILED");
+            System.exit(1);
+        }
+        System.out.println("\n✓ ALL CHECKS PASSED");
+    }
+
+    // The same seed at every parallelism level, including a partial last block
+    private static void checkDeterminism() {
+        System.out.println("Same seed, same result at any parallelism");
+        double[][] covariance = RiskCalculator.getAssetTypeCovariance(1);
+        double[] exposures = sampleExposures(covariance.length, new Random(1));
+        int paths = 100_003;
+
+        double[] expected = MonteCarloVaR.simulateLosses(covariance, exposures, paths, 42L, 1);
+        for (int parallelism : PARALLELISM) {
+            double[] losses = MonteCarloVaR.simulateLosses(covariance, exposures, paths, 42L, parallelism);
+            check(Arrays.equals(losses, expected), parallelism + " thread(s): every path is identical");
+        }
+        double[] otherSeed = MonteCarloVaR.simulateLosses(covariance, exposures, paths, 43L, 1);
+        check(!Arrays.equals(otherSeed, expected), "another seed gives other paths");
+
+        Portfolio portfolio = samplePortfolio();
+        MonteCarloVaR.Result first = RiskCalculator.calculateValueAtRisk(portfolio, 10, 250_000, 7L, 1, 0.95, 0.99);
+        boolean same = true;
+        for (int parallelism : PARALLELISM) {
+            MonteCarloVaR.Result result = RiskCalculator.calculateValueAtRisk(portfolio, 10, 250_000, 7L,
+                parallelism, 0.95, 0.99);
+            same &= sameResult(result, first);
+        }
+        check(same, "a portfolio's VaR and ES are identical at 1, 2, 3 and 8 threads");
+        check(first.getValueAtRisk(0.99) > first.getValueAtRisk(0.95) && first.getExpectedShortfall(0.99) > first.getValueAtRisk(0.99)
+            && first.getExpectedShortfall(0.95) > first.getValueAtRisk(0.95), "ES exceeds VaR, and 99% exceeds 95%");
+        System.out.println();
+    }
+
+    // Stored scenarios give the same losses as the folded single-portfolio path
+    private static void checkSharedScenarios() {
+        System.out.println("Shared scenarios");
+        double[][] covariance = RiskCalculator.getAssetTypeCovariance(5);
+        int paths = 50_000;
+        MonteCarloVaR.Scenarios expected = MonteCarloVaR.generate(covariance, paths, 99L, 1);
+        boolean same = true;
+        for (int parallelism : PARALLELISM) {
+            MonteCarloVaR.Scenarios scenarios = MonteCarloVaR.generate(covariance, paths, 99L, parallelism);
+            for (int p = 0; same && p < paths; p++) {
+                for (int i = 0; i < covariance.length; i++) {
+                    if (scenarios.getReturn(p, i) != expected.getReturn(p, i)) same = false;
+                }
+            }
+        }
+        check(same, "scenarios are identical at any parallelism");
+
+        Random random = new Random(5);
+        double[][] exposures = new double[40][];
+        for (int a = 0; a < exposures.length; a++) exposures[a] = sampleExposures(covariance.length, random);
+        double[] levels = { 0.95, 0.99 };
+        MonteCarloVaR.Result[] batch = MonteCarloVaR.estimateAll(expected, exposures, levels, 3);
+        boolean matchesSingle = true;
+        boolean matchesFolded = true;
+        for (int a = 0; a < exposures.length; a++) {
+            matchesSingle &= sameResult(batch[a], MonteCarloVaR.estimate(expected, exposures[a], levels, null));
+            MonteCarloVaR.Result folded = MonteCarloVaR.estimate(covariance, exposures[a], paths, 99L, 1, levels);
+            for (int level = 0; level < levels.length; level++) {
+                matchesFolded &= close(batch[a].getValueAtRisk(level), folded.getValueAtRisk(level))
+                    && close(batch[a].getExpectedShortfall(level), folded.getExpectedShortfall(level));
+            }
+        }
+        check(matchesSingle, "a batch gives each portfolio the result it gets alone");
+        check(matchesFolded, "stored scenarios and folded exposures agree to rounding");
+        System.out.println();
+    }
+
+    // Partial selection against a full sort, for small and sampled arrays and ties
+    private static void checkTailStatistics() {
+        System.out.println("Tail statistics");
+        Random random = new Random(11);
+        int[] sizes = { 1, 7, 100, 1_000, 65_536, 200_000, 1_000_000 };
+        boolean exact = true;
+        for (int size : sizes) {
+            double[] losses = new double[size];
+            for (int i = 0; i < size; i++) losses[i] = random.nextGaussian() * 1000;
+            exact &= matchesSort(losses, 0.95, 0.99, 0.999);
+        }
+        check(exact, "VaR and ES match a full sort at every size");
+
+        double[] skewed = new double[300_000];
+        for (int i = 0; i < skewed.length; i++) skewed[i] = Math.exp(random.nextGaussian() * 2);
+        check(matchesSort(skewed, 0.9, 0.99), "a heavy right tail matches a full sort");
+
+        double[] ties = new double[200_000];
+        for (int i = 0; i < ties.length; i++) ties[i] = random.nextInt(20);
+        check(matchesSort(ties, 0.95, 0.99), "many ties match a full sort");
+
+        double[] rising = new double[150_000];
+        for (int i = 0; i < rising.length; i++) rising[i] = i;
+        check(matchesSort(rising, 0.5, 0.99, 0.999),
+            "sorted input and a tail wider than a quarter match a full sort");
+        System.out.println();
+    }
+
+    // L * L^T reproduces the covariance, with a cash factor giving a zero column
+    private static void checkCholesky() {
+        System.out.println("Cholesky factor");
+        double[][] covariance = RiskCalculator.getAssetTypeCovariance(252);
+        double[][] lower = MonteCarloVaR.cholesky(covariance);
+        boolean reproduces = true;
+        boolean triangular = true;
+        for (int i = 0; i < covariance.length; i++) {
+            for (int j = 0; j < covariance.length; j++) {
+                double sum = 0.0;
+                for (int k = 0; k < covariance.length; k++) sum += lower[i][k] * lower[j][k];
+                reproduces &= Math.abs(sum - covariance[i][j]) < 1e-12;
+                if (j > i) triangular &= lower[i][j] == 0.0;
+            }
+        }
+        check(reproduces && triangular, "L is lower triangular and L * L^T equals the covariance");
+
+        int cash = Asset.AssetType.CASH.ordinal();
+        boolean zero = true;
+        for (double[] row : lower) zero &= row[cash] == 0.0;
+        check(zero, "the cash factor, with no variance, has a zero column");
+
+        boolean rejected = false;
+        try {
+            MonteCarloVaR.cholesky(new double[][] { { 1.0, 2.0 }, { 2.0, 1.0 } });
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        check(rejected, "a matrix that is not positive semi-definite is rejected");
+        System.out.println();
+    }
+
+    // A normal portfolio has closed-form VaR and ES
+    private static void checkConvergence() {
+        System.out.println("Convergence to the normal closed form");
+        double[][] covariance = RiskCalculator.getAssetTypeCovariance(1);
+        double[] exposures = sampleExposures(covariance.length, new Random(3));
+        double variance = 0.0;
+        for (int i = 0; i < exposures.length; i++) {
+            for (int j = 0; j < exposures.length; j++) variance += exposures[i] * covariance[i][j] * exposures[j];
+        }
+        double sigma = Math.sqrt(variance);
+
+        MonteCarloVaR.Result result = MonteCarloVaR.estimate(covariance, exposures, 1_000_000, 2024L, 2, 0.95, 0.99);
+        check(within(result.getValueAtRisk(0.95), Z95 * sigma, 0.01), String.format(
+            "95%% VaR %.0f within 1%% of %.0f", result.getValueAtRisk(0.95), Z95 * sigma));
+        check(within(result.getValueAtRisk(0.99), Z99 * sigma, 0.015), String.format(
+            "99%% VaR %.0f within 1.5%% of %.0f", result.getValueAtRisk(0.99), Z99 * sigma));
+        check(within(result.getExpectedShortfall(0.95), ES95 * sigma, 0.01), String.format(
+            "95%% ES %.0f within 1%% of %.0f", result.getExpectedShortfall(0.95), ES95 * sigma));
+        check(within(result.getExpectedShortfall(0.99), ES99 * sigma, 0.015), String.format(
+            "99%% ES %.0f within 1.5%% of %.0f", result.getExpectedShortfall(0.99), ES99 * sigma));
+
+        MonteCarloVaR.Result ten = MonteCarloVaR.estimate(RiskCalculator.getAssetTypeCovariance(10), exposures,
+            1_000_000, 2024L, 2, 0.99);
+        check(within(ten.getValueAtRisk(0.99), result.getValueAtRisk(0.99) * Math.sqrt(10), 1e-9),
+            "a 10-day horizon scales VaR by sqrt(10) on the same paths");
+        System.out.println();
+    }
+
+    private static boolean matchesSort(double[] losses, double... levels) {
+        double[] sorted = losses.clone();
+        Arrays.sort(sorted);
+        MonteCarloVaR.Result result = MonteCarloVaR.summarize(losses.clone(), levels);
+        for (int level = 0; level < levels.length; level++) {
+            int tail = Math.max(1, (int) Math.ceil((1.0 - levels[level]) * sorted.length - 1e-9));
+            int first = sorted.length - tail;
+            double sum = 0.0;
+            for (int p = first; p < sorted.length; p++) sum += sorted[p];
+            if (result.getValueAtRisk(level) != sorted[first] || result.getExpectedShortfall(level) != sum / tail) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Value held in each asset type, cash included
+    private static double[] sampleExposures(int factors, Random random) {
+        double[] exposures = new double[factors];
+        for (int i = 0; i < factors; i++) exposures[i] = 10_000 + random.nextInt(90_000);
+        return exposures;
+    }
+
+    private static Portfolio samplePortfolio() {
+        Portfolio portfolio = new Portfolio("VAR", "VaR", "U");
+        Random random = new Random(17);
+        Asset.AssetType[] types = Asset.AssetType.values();
+        for (int i = 0; i < 50; i++) {
+            double price = 10 + random.nextInt(500);
+            portfolio.addAsset(new Asset("A" + i, "Asset " + i, types[i % types.length], 1 + random.nextInt(200),
+                price, price * (0.8 + random.nextDouble() * 0.4), LocalDate.of(2020, 1, 1), "General"));
+        }
+        portfolio.setCashBalance(25_000);
+        return portfolio;
+    }
+
+    private static boolean sameResult(MonteCarloVaR.Result a, MonteCarloVaR.Result b) {
+        if (a.getPathCount() != b.getPathCount() || a.getLevelCount() != b.getLevelCount()) return false;
+        for (int level = 0; level < a.getLevelCount(); level++) {
+            if (a.getValueAtRisk(level) != b.getValueAtRisk(level)
+                    || a.getExpectedShortfall(level) != b.getExpectedShortfall(level)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean within(double actual, double expected, double tolerance) {
+        return Math.abs(actual - expected) <= tolerance * Math.abs(expected);
+    }
+
+    private static boolean close(double a, double b) {
+        return within(a, b, 1e-9);
+    }
+
+    private static void check(boolean condition, String description) {
+        if (condition) {
+            System.out.println("  ✓ " + description);
+        } else {
+            System.out.println("  ✗ " + description);
+            failed = true;
+        }
+    }
+}
@@ -0,0 +1,1450 @@
+package test;
+
+import model.*;
+import data.*;
+import logic.*;
+import cli.BatchReportRunner;
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Throughput and footprint benchmarks for large-book code paths.
+ *
+ * Usage: java -cp out test.PerformanceBenchmark [section] [size]
+ * Sections: positions, import, snapshot, journal, checkpoint, instruments, prices,
+ * concurrency, snapshots, var, history, covariance, returns, reports, batch, rebalance,
+ * drift, optimizer, lots, washsale (default: all)
+ */
+public class PerformanceBenchmark {
+
+    private static final String[] SECTORS = {
+        "Technology", "Healthcare", "Financials", "Energy", "Utilities",
+        "Industrials", "Materials", "Real Estate", "Consumer", "Telecom"
+    };
+
+    // Keeps results of timed work alive across threads
+    private static volatile double blackhole;
+
+    public static void main(String[] args) {
+        String section = args.length > 0 ? args[0] : "all";
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+
+        System.out.println("=== Performance Benchmark ===\n");
+
+        if (section.equals("all") || section.equals("positions")) {
+            benchmarkPositionStores(size > 0 ? size : 1_000_000);
+        }
+        if (section.equals("all") || section.equals("import")) {
+            benchmarkParallelImport(size > 0 ? size : 10_000_000);
+        }
+        if (section.equals("all") || section.equals("snapshot")) {
+            benchmarkSnapshot(size > 0 ? size : 100_000);
+        }
+        if (section.equals("all") || section.equals("journal")) {
+            benchmarkJournal(size > 0 ? size : 200_000);
+        }
+        if (section.equals("all") || section.equals("checkpoint")) {
+            benchmarkCheckpoint(size > 0 ? size : 100_000, 20);
+        }
+        if (section.equals("all") || section.equals("instruments")) {
+            benchmarkInstruments(size > 0 ? size : 1_000_000, 5_000);
+        }
+        if (section.equals("all") || section.equals("prices")) {
+            benchmarkPriceLoad(size > 0 ? size : 1_000_000, 50_000);
+        }
+        if (section.equals("all") || section.equals("concurrency")) {
+            benchmarkConcurrency(size > 0 ? size : 32);
+        }
+        if (section.equals("all") || section.equals("snapshots")) {
+            benchmarkSnapshots(size > 0 ? size : 10_000);
+        }
+        if (section.equals("all") || section.equals("var")) {
+            benchmarkValueAtRisk(size > 0 ? size : 1_000_000);
+        }
+        if (section.equals("all") || section.equals("history")) {
+            benchmarkPriceHistory(size > 0 ? size : 10_000, 20);
+        }
+        if (section.equals("all") || section.equals("covariance")) {
+            benchmarkCovariance(size > 0 ? size : 5_000, 1_000);
+        }
+        if (section.equals("all") || section.equals("returns")) {
+            benchmarkReturns(size > 0 ? size : 100_000);
+        }
+        if (section.equals("all") || section.equals("reports")) {
+            benchmarkReports(size > 0 ? size : 1_000_000);
+        }
+        if (section.equals("all") || section.equals("batch")) {
+            benchmarkBatchReports(size > 0 ? size : 20_000);
+        }
+        if (section.equals("all") || section.equals("rebalance")) {
+            benchmarkRebalancePolling(size > 0 ? size : 10_000);
+        }
+        if (section.equals("all") || section.equals("drift")) {
+            benchmarkDriftScan(size > 0 ? size : 200_000);
+        }
+        if (section.equals("all") || section.equals("optimizer")) {
+            benchmarkOptimizer(size > 0 ? size : 5_000);
+        }
+        if (section.equals("all") || section.equals("lots")) {
+            benchmarkTaxLots(size > 0 ? size : 5_000);
+        }
+        if (section.equals("all") || section.equals("washsale")) {
+            benchmarkWashSales(size > 0 ? size : 20_000);
+        }
+    }
+
+    /**
+     * Compare the HashMap-backed Portfolio with the columnar position store.
+     */
+    private static void benchmarkPositionStores(int positions) {
+        System.out.println("== Position stores (" + positions + " positions) ==");
+        LocalDate baseDate = LocalDate.now().minusYears(5);
+
+        long before = usedMemory();
+        Portfolio portfolio = new Portfolio("bench", "Benchmark", "bench");
+        Random random = new Random(42);
+        for (int i = 0; i < positions; i++) {
+            portfolio.addAsset(randomAsset(random, i, baseDate));
+        }
+        long mapBytes = usedMemory() - before;
+
+        before = usedMemory();
+        ColumnarPositionStore store = new ColumnarPositionStore(positions);
+        random = new Random(42);
+        for (int i = 0; i < positions; i++) {
+            store.addAsset(randomAsset(random, i, baseDate));
+        }
+        long columnarBytes = usedMemory() - before;
+
+        System.out.println(String.format("HashMap layout:  %,d bytes (%.1f bytes/position)",
+            mapBytes, (double) mapBytes / positions));
+        System.out.println(String.format("Columnar layout: %,d bytes (%.1f bytes/position)",
+            columnarBytes, (double) columnarBytes / positions));
+
+        int iterations = 20;
+        double sink = 0.0;
+
+        // Full scans over the HashMap layout (the running aggregates are bypassed on purpose)
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += portfolio.sumAssets(Asset::getCurrentValue);
+            Map<String, Double> sectors = new HashMap<>();
+            portfolio.forEachAsset(a -> sectors.merge(a.getSector(), a.getCurrentValue(), Double::sum));
+            sink += sectors.size();
+        }
+        double mapMillis = (System.nanoTime() - start) / 1e6 / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += store.getTotalValue();
+            sink += store.getSectorAllocation().size();
+        }
+        double columnarMillis = (System.nanoTime() - start) / 1e6 / iterations;
+
+        System.out.println(String.format("Valuation + sector scan: HashMap %.2f ms, columnar %.2f ms (%.1fx)",
+            mapMillis, columnarMillis, mapMillis / columnarMillis));
+        System.out.println("(checksum " + (long) sink + ")\n");
+    }
+
+    /**
+     * Parallel CSV import throughput from one thread up to all cores.
+     */
+    private static void benchmarkParallelImport(int rows) {
+        System.out.println("== Parallel CSV import (" + rows + " rows) ==");
+        Path file = null;
+        try {
+            file = Files.createTempFile("swms-import", ".csv");
+            writeSyntheticPortfolio(file, rows);
+            System.out.println(String.format("File size: %,d bytes", Files.size(file)));
+
+            int cores = Runtime.getRuntime().availableProcessors();
+            List<Integer> levels = new ArrayList<>();
+            for (int p = 1; p < cores; p *= 2) levels.add(p);
+            levels.add(cores);
+
+            for (int parallelism : levels) {
+                LongAdder count = new LongAdder();
+                long start = System.nanoTime();
+                ImportReport report = StreamingCSVImporter.importAssetsParallel(
+                    file.toString(), parallelism, asset -> count.increment());
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.println(String.format("Parallelism %2d: %.2f s, %,.0f rows/s (%s)",
+                    parallelism, seconds, report.getRowsImported() / seconds, report));
+            }
+        } catch (IOException e) {
+            System.err.println("Import benchmark failed: " + e.getMessage());
+        } finally {
+            if (file != null) file.toFile().delete();
+        }
+        System.out.println();
+    }
+
+    /**
+     * Binary snapshot load versus re-importing the same rows from CSV.
+     */
+    private static void benchmarkSnapshot(int userCount) {
+        System.out.println("== Binary snapshot (" + userCount + " users) ==");
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("swms-snapshot");
+            String snapshotFile = dir.resolve("users.snap").toString();
+            String assetsFile = dir.resolve("assets.csv").toString();
+            String transactionsFile = dir.resolve("transactions.csv").toString();
+
+            List<User> users = syntheticUsers(userCount, 10, 20);
+            Portfolio combined = new Portfolio("all", "All", "bench");
+            for (User user : users) {
+                user.forEachPortfolio(p -> {
+                    p.forEachAsset(a -> combined.addAsset(new Asset(p.getPortfolioId() + "." + a.getSymbol(),
+                        a.getName(), a.getType(), a.getQuantity(), a.getPurchasePrice(),
+                        a.getCurrentPrice(), a.getPurchaseDate(), a.getSector())));
+                    p.forEachTransaction(combined::recordTransaction);
+                });
+            }
+            CSVHandler.exportPortfolio(combined, assetsFile);
+            CSVHandler.exportTransactions(combined, transactionsFile);
+            long csvBytes = Files.size(Paths.get(assetsFile)) + Files.size(Paths.get(transactionsFile));
+
+            long start = System.nanoTime();
+            SnapshotWriter.write(snapshotFile, users);
+            double writeSeconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Snapshot: %,d bytes (CSV: %,d bytes), written in %.2f s",
+                Files.size(Paths.get(snapshotFile)), csvBytes, writeSeconds));
+            users = null;
+
+            start = System.nanoTime();
+            Portfolio reloaded = new Portfolio("all", "All", "bench");
+            StreamingCSVImporter.importPortfolio(assetsFile, reloaded);
+            StreamingCSVImporter.importTransactions(transactionsFile, reloaded);
+            double csvSeconds = (System.nanoTime() - start) / 1e9;
+            reloaded = null;
+
+            start = System.nanoTime();
+            List<User> loaded = SnapshotReader.readAll(snapshotFile);
+            double snapshotSeconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Full load: CSV %.2f s, snapshot %.2f s (%.1fx), %d users",
+                csvSeconds, snapshotSeconds, csvSeconds / snapshotSeconds, loaded.size()));
+
+            String userId = loaded.get(loaded.size() / 2).getUserId();
+            loaded = null;
+            start = System.nanoTime();
+            Portfolio single;
+            try (SnapshotReader reader = new SnapshotReader(snapshotFile)) {
+                single = reader.readPortfolio(userId, userId + "-P0");
+            }
+            System.out.println(String.format("Open + read one portfolio: %.2f ms (%d assets, %d transactions)",
+                (System.nanoTime() - start) / 1e6, single.getAssetCount(), single.getTransactionCount()));
+        } catch (IOException e) {
+            System.err.println("Snapshot benchmark failed: " + e.getMessage());
+        } finally {
+            if (dir != null) {
+                for (File file : dir.toFile().listFiles()) file.delete();
+                dir.toFile().delete();
+            }
+        }
+        System.out.println();
+    }
+
+    /**
+     * Sustained journal throughput with many concurrent writers, then replay.
+     */
+    private static void benchmarkJournal(int transactions) {
+        System.out.println("== Transaction journal (" + transactions + " transactions) ==");
+        int writers = 64;
+        for (TransactionJournal.Durability durability : TransactionJournal.Durability.values()) {
+            Path dir = null;
+            try {
+                dir = Files.createTempDirectory("swms-journal");
+                Portfolio[] portfolios = new Portfolio[writers];
+                double seconds;
+                try (TransactionJournal journal = new TransactionJournal(dir.toString(), durability,
+                        TransactionJournal.DEFAULT_GROUP_COMMIT_SIZE, TransactionJournal.DEFAULT_GROUP_COMMIT_MILLIS)) {
+                    Thread[] threads = new Thread[writers];
+                    long start = System.nanoTime();
+                    for (int w = 0; w < writers; w++) {
+                        Portfolio portfolio = new Portfolio("P" + w, "Writer " + w, "bench");
+                        journal.attach(portfolio);
+                        portfolios[w] = portfolio;
+                        int count = transactions / writers + (w < transactions % writers ? 1 : 0);
+                        threads[w] = new Thread(() -> {
+                            for (int i = 0; i < count; i++) {
+                                portfolio.recordTransaction(new Transaction(portfolio.getPortfolioId() + "-" + i,
+                                    Transaction.TransactionType.BUY, "SYM" + (i % 500), 10, 101.25, "Benchmark"));
+                            }
+                        });
+                        threads[w].start();
+                    }
+                    for (Thread thread : threads) {
+                        thread.join();
+                    }
+                    journal.sync();
+                    seconds = (System.nanoTime() - start) / 1e9;
+                }
+                System.out.println(String.format("%-8s %,.0f tx/s with %d writers (%.2f s)",
+                    durability, transactions / seconds, writers, seconds));
+
+                long start = System.nanoTime();
+                Map<String, Portfolio> replayed = new HashMap<>();
+                long applied;
+                try (TransactionJournal journal = new TransactionJournal(dir.toString())) {
+                    applied = journal.replay((ownerId, portfolioId) ->
+                        replayed.computeIfAbsent(portfolioId, id -> new Portfolio(id, id, ownerId)));
+                }
+                System.out.println(String.format("         replayed %,d transactions in %.2f s",
+                    applied, (System.nanoTime() - start) / 1e9));
+            } catch (IOException | InterruptedException e) {
+                System.err.println("Journal benchmark failed: " + e.getMessage());
+            } finally {
+                if (dir != null) {
+                    for (File file : dir.toFile().listFiles()) file.delete();
+                    dir.toFile().delete();
+                }
+            }
+        }
+        System.out.println();
+    }
+
+    /**
+     * Cold start from a checkpoint plus journal tail versus replaying the whole journal.
+     */
+    private static void benchmarkCheckpoint(int accounts, int historyPerAccount) {
+        System.out.println("== Checkpoint + journal (" + accounts + " accounts, "
+            + historyPerAccount + " transactions each) ==");
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("swms-checkpoint");
+            String directory = dir.toString();
+
+            try (TransactionJournal journal = new TransactionJournal(directory,
+                    TransactionJournal.Durability.RELAXED, 4096, 10);
+                 CheckpointManager checkpoints = new CheckpointManager(directory, journal)) {
+                List<User> users = syntheticUsers(accounts, 10, 0);
+                recordHistory(users, journal, 0, historyPerAccount);
+                journal.sync();
+                long journalBytes = directorySize(dir, "journal-");
+
+                long start = System.nanoTime();
+                long lsn = checkpoints.checkpoint(users);
+                System.out.println(String.format("Checkpoint at LSN %,d: %,d bytes in %.2f s (journal %,d bytes)",
+                    lsn, directorySize(dir, "checkpoint-"), (System.nanoTime() - start) / 1e9, journalBytes));
+
+                // A little activity after the checkpoint
+                recordHistory(users, journal, historyPerAccount, 1);
+                journal.sync();
+            }
+            System.out.println(String.format("Journal after compaction: %,d bytes", directorySize(dir, "journal-")));
+
+            long start = System.nanoTime();
+            Map<String, User> restored = new HashMap<>();
+            long replayed;
+            try (TransactionJournal journal = new TransactionJournal(directory);
+                 CheckpointManager checkpoints = new CheckpointManager(directory, journal)) {
+                replayed = checkpoints.restore(restored);
+            }
+            double checkpointSeconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Cold start from checkpoint: %.2f s (%d users, %,d records replayed)",
+                checkpointSeconds, restored.size(), replayed));
+            restored = null;
+
+            // Baseline: rebuild from holdings and re-apply every transaction
+            Path full = Files.createTempDirectory("swms-journal");
+            try {
+                try (TransactionJournal journal = new TransactionJournal(full.toString(),
+                        TransactionJournal.Durability.RELAXED, 4096, 10)) {
+                    recordHistory(syntheticUsers(accounts, 10, 0), journal, 0, historyPerAccount + 1);
+                }
+                start = System.nanoTime();
+                Map<String, Portfolio> portfolios = new HashMap<>();
+                for (User user : syntheticUsers(accounts, 10, 0)) {
+                    user.forEachPortfolio(p -> portfolios.put(p.getPortfolioId(), p));
+                }
+                try (TransactionJournal journal = new TransactionJournal(full.toString())) {
+                    replayed = journal.replay((ownerId, portfolioId) -> portfolios.get(portfolioId));
+                }
+                double replaySeconds = (System.nanoTime() - start) / 1e9;
+                System.out.println(String.format("Cold start replaying full journal: %.2f s (%,d records)",
+                    replaySeconds, replayed));
+            } finally {
+                for (File file : full.toFile().listFiles()) file.delete();
+                full.toFile().delete();
+            }
+        } catch (IOException e) {
+            System.err.println("Checkpoint benchmark failed: " + e.getMessage());
+        } finally {
+            if (dir != null) {
+                for (File file : dir.toFile().listFiles()) file.delete();
+                dir.toFile().delete();
+            }
+        }
+        System.out.println();
+    }
+
+    /**
+     * Per-holding copies of reference data versus holdings of shared
+     * registry instruments: heap per holding and the cost of a price update
+     * to every instrument.
+     */
+    private static void benchmarkInstruments(int holdings, int instruments) {
+        System.out.println("== Instruments (" + holdings + " holdings, " + instruments + " instruments) ==");
+        int perPortfolio = 100;
+        int portfolioCount = (holdings + perPortfolio - 1) / perPortfolio;
+        LocalDate baseDate = LocalDate.now().minusYears(5);
+        Asset.AssetType[] types = Asset.AssetType.values();
+
+        // Reference data as a loader would see it: fresh strings on every row
+        long before = usedMemory();
+        List<Portfolio> copied = new ArrayList<>(portfolioCount);
+        Random random = new Random(42);
+        for (int p = 0, n = 0; p < portfolioCount; p++) {
+            Portfolio portfolio = new Portfolio("P" + p, "Portfolio " + p, "bench");
+            for (int i = 0; i < perPortfolio && n < holdings; i++, n++) {
+                int id = (p * perPortfolio + i * 37) % instruments;
+                portfolio.addAsset(new Asset(new String("SYM" + id), new String("Instrument " + id),
+                    types[id % types.length], 1 + random.nextInt(1000), 10 + random.nextDouble() * 500,
+                    100.0, baseDate.plusDays(random.nextInt(1800)), new String(SECTORS[id % SECTORS.length])));
+            }
+            copied.add(portfolio);
+        }
+        long copiedBytes = usedMemory() - before;
+
+        // Same holdings through the registry
+        before = usedMemory();
+        InstrumentRegistry registry = new InstrumentRegistry();
+        for (int id = 0; id < instruments; id++) {
+            registry.register("SYM" + id, "Instrument " + id, types[id % types.length],
+                SECTORS[id % SECTORS.length], 100.0);
+        }
+        List<Portfolio> shared = new ArrayList<>(portfolioCount);
+        random = new Random(42);
+        for (int p = 0, n = 0; p < portfolioCount; p++) {
+            Portfolio portfolio = new Portfolio("P" + p, "Portfolio " + p, "bench");
+            for (int i = 0; i < perPortfolio && n < holdings; i++, n++) {
+                int id = (p * perPortfolio + i * 37) % instruments;
+                portfolio.addAsset(registry.newHolding("SYM" + id, 1 + random.nextInt(1000),
+                    10 + random.nextDouble() * 500, baseDate.plusDays(random.nextInt(1800))));
+            }
+            shared.add(portfolio);
+        }
+        long sharedBytes = usedMemory() - before;
+
+        System.out.println(String.format("Per-holding copies: %,d bytes (%.1f bytes/holding)",
+            copiedBytes, (double) copiedBytes / holdings));
+        System.out.println(String.format("Shared instruments: %,d bytes (%.1f bytes/holding)",
+            sharedBytes, (double) sharedBytes / holdings));
+
+        int rounds = 5;
+        double sink = 0.0;
+
+        // Copies: every holding of a symbol has to be found and written
+        long start = System.nanoTime();
+        for (int r = 1; r <= rounds; r++) {
+            double price = 100.0 + r;
+            for (Portfolio portfolio : copied) {
+                portfolio.forEachAsset(a -> a.setCurrentPrice(price));
+            }
+        }
+        double copiedMillis = (System.nanoTime() - start) / 1e6 / rounds;
+        start = System.nanoTime();
+        for (Portfolio portfolio : copied) {
+            sink += portfolio.getTotalValue();
+        }
+        double copiedValueMillis = (System.nanoTime() - start) / 1e6;
+
+        // Shared: one write per symbol, holders catch up on their next valuation
+        double updateMillis = 0.0;
+        double refreshMillis = 0.0;
+        for (int r = 1; r <= rounds; r++) {
+            start = System.nanoTime();
+            for (int id = 0; id < instruments; id++) {
+                registry.get(id).setCurrentPrice(100.0 + r);
+            }
+            updateMillis += (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            for (Portfolio portfolio : shared) {
+                sink += portfolio.getTotalValue();
+            }
+            refreshMillis += (System.nanoTime() - start) / 1e6;
+        }
+        updateMillis /= rounds;
+        refreshMillis /= rounds;
+        start = System.nanoTime();
+        for (Portfolio portfolio : shared) {
+            sink += portfolio.getTotalValue();
+        }
+        double sharedValueMillis = (System.nanoTime() - start) / 1e6;
+
+        System.out.println(String.format("Price update, all instruments: copies %.2f ms, shared %.3f ms (%.0fx)",
+            copiedMillis, updateMillis, copiedMillis / updateMillis));
+        System.out.println(String.format("Next full valuation: copies %.2f ms, shared %.2f ms (first after update), %.2f ms (unchanged)",
+            copiedValueMillis, refreshMillis, sharedValueMillis));
+        System.out.println("(checksum " + (long) sink + ")\n");
+    }
+
+    /**
+     * End-of-day price file applied through the symbol-to-holdings index.
+     */
+    private static void benchmarkPriceLoad(int positions, int symbols) {
+        System.out.println("== End-of-day prices (" + symbols + " symbols, " + positions + " positions) ==");
+        int perPortfolio = 100;
+        int portfoliosPerUser = 10;
+        LocalDate baseDate = LocalDate.now().minusYears(5);
+        Asset.AssetType[] types = Asset.AssetType.values();
+
+        List<User> users = new ArrayList<>();
+        Random random = new Random(42);
+        int created = 0;
+        for (int u = 0; created < positions; u++) {
+            User user = new User("U" + u, "user" + u, "user" + u + "@example.com", "User " + u);
+            for (int p = 0; p < portfoliosPerUser && created < positions; p++) {
+                Portfolio portfolio = new Portfolio("P" + p, "Portfolio " + p, user.getUserId());
+                for (int i = 0; i < perPortfolio && created < positions; i++, created++) {
+                    int id = (int) ((created * 7919L) % symbols);
+                    portfolio.addAsset(new Asset("SYM" + id, "Instrument " + id, types[id % types.length],
+                        1 + random.nextInt(1000), 10 + random.nextDouble() * 500, 100.0,
+                        baseDate.plusDays(random.nextInt(1800)), SECTORS[id % SECTORS.length]));
+                }
+                user.addPortfolio(portfolio);
+            }
+            users.add(user);
+        }
+
+        Path file = null;
+        try {
+            // Every 100th symbol is left unpriced
+            file = Files.createTempFile("swms-prices", ".csv");
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                writer.write("Symbol,Date,Close\n");
+                for (int id = 0; id < symbols; id++) {
+                    if (id % 100 == 99) continue;
+                    writer.write("SYM" + id + "," + LocalDate.of(2024, 6, 28) + ","
+                        + (10 + random.nextInt(500)) + "." + (10 + random.nextInt(90)) + "\n");
+                }
+            }
+
+            long start = System.nanoTime();
+            HoldingsIndex index = new HoldingsIndex(users);
+            double indexMillis = (System.nanoTime() - start) / 1e6;
+
+            // Portfolios revalue the repriced holdings when next read
+            PriceLoadReport report = null;
+            int rounds = 5;
+            double loadMillis = Double.MAX_VALUE;
+            double valueMillis = Double.MAX_VALUE;
+            double sink = 0.0;
+            for (int r = 0; r < rounds; r++) {
+                start = System.nanoTime();
+                report = PriceFileLoader.loadPrices(file.toString(), index);
+                loadMillis = Math.min(loadMillis, (System.nanoTime() - start) / 1e6);
+
+                start = System.nanoTime();
+                for (User user : users) {
+                    sink += user.getTotalNetWorth();
+                }
+                valueMillis = Math.min(valueMillis, (System.nanoTime() - start) / 1e6);
+            }
+
+            System.out.println(String.format("Index build: %.1f ms (%,d holdings, %,d symbols)",
+                indexMillis, index.getHoldingCount(), index.getSymbolCount()));
+            System.out.println(String.format("Price load: %.1f ms, next full valuation: %.1f ms (best of %d)",
+                loadMillis, valueMillis, rounds));
+            System.out.println(report);
+            System.out.println("(checksum " + (long) sink + ")");
+        } catch (IOException e) {
+            System.err.println("Price benchmark failed: " + e.getMessage());
+        } finally {
+            if (file != null) file.toFile().delete();
+        }
+        System.out.println();
+    }
+
+    /**
+     * Mixed read/write throughput on one shared portfolio: the concurrent
+     * portfolio against a plain one behind a single lock.
+     */
+    private static void benchmarkConcurrency(int maxThreads) {
+        System.out.println("== Mixed read/write throughput (1 to " + maxThreads + " threads, "
+            + Runtime.getRuntime().availableProcessors() + " cores) ==");
+        System.out.println("Mix: 50% valuation, 20% allocation, 20% price update, 10% transaction");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double locked = mixedThroughput(new Portfolio("locked", "Locked", "bench"), threads, true);
+            double concurrent = mixedThroughput(new ConcurrentPortfolio("concurrent", "Concurrent", "bench"), threads, false);
+            System.out.println(String.format("%2d threads: single lock %,12.0f ops/s, concurrent %,12.0f ops/s (%.1fx)",
+                threads, locked, concurrent, concurrent / locked));
+        }
+        System.out.println();
+    }
+
+    private static double mixedThroughput(Portfolio portfolio, int threadCount, boolean lock) {
+        int assets = 1_000;
+        Random random = new Random(42);
+        LocalDate baseDate = LocalDate.now().minusYears(5);
+        for (int i = 0; i < assets; i++) {
+            portfolio.addAsset(randomAsset(random, i, baseDate));
+        }
+
+        AtomicBoolean measuring = new AtomicBoolean();
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder operations = new LongAdder();
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                SplittableRandom rnd = new SplittableRandom(id);
+                long sequence = 0;
+                double sink = 0.0;
+                while (running.get()) {
+                    int op = rnd.nextInt(100);
+                    if (lock) {
+                        synchronized (portfolio) {
+                            sink += mixedOperation(portfolio, op, rnd, id, sequence++, assets);
+                        }
+                    } else {
+                        sink += mixedOperation(portfolio, op, rnd, id, sequence++, assets);
+                    }
+                    if (measuring.get()) operations.increment();
+                }
+                blackhole = sink;
+            });
+            threads[t].start();
+        }
+
+        try {
+            Thread.sleep(200);
+            measuring.set(true);
+            long start = System.nanoTime();
+            Thread.sleep(500);
+            measuring.set(false);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            running.set(false);
+            for (Thread thread : threads) thread.join();
+            return operations.sum() / seconds;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running.set(false);
+            return 0.0;
+        }
+    }
+
+    private static double mixedOperation(Portfolio portfolio, int op, SplittableRandom rnd,
+                                         int thread, long sequence, int assets) {
+        if (op < 50) {
+            return portfolio.getTotalValue();
+        } else if (op < 70) {
+            return portfolio.getAssetAllocation().size();
+        } else if (op < 90) {
+            portfolio.getAsset("SYM" + rnd.nextInt(assets)).setCurrentPrice(10 + rnd.nextDouble() * 500);
+            return 0.0;
+        } else {
+            portfolio.recordTransaction(new Transaction("T" + thread + "-" + sequence,
+                Transaction.TransactionType.DEPOSIT, "CASH", 1, 100.0, ""));
+            return 0.0;
+        }
+    }
+
+    /**
+     * Snapshot rate while a writer thread keeps repricing and trading,
+     * against copying the holdings and history for every report.
+     */
+    private static void benchmarkSnapshots(int assets) {
+        System.out.println("== Portfolio snapshots (" + String.format("%,d", assets) + " assets, writer running) ==");
+        for (boolean concurrent : new boolean[] { false, true }) {
+            Portfolio portfolio = concurrent
+                ? new ConcurrentPortfolio("snap", "Snapshots", "bench")
+                : new Portfolio("snap", "Snapshots", "bench");
+            Random random = new Random(42);
+            LocalDate baseDate = LocalDate.now().minusYears(5);
+            for (int i = 0; i < assets; i++) {
+                portfolio.addAsset(randomAsset(random, i, baseDate));
+            }
+            for (int i = 0; i < 100_000; i++) {
+                portfolio.recordTransaction(new Transaction("H" + i, Transaction.TransactionType.DEPOSIT,
+                    "CASH", 1, 100.0, ""));
+            }
+            // The plain Portfolio is shared under its monitor, as in the concurrency section
+            Object lock = concurrent ? new Object() : portfolio;
+            String label = concurrent ? "ConcurrentPortfolio" : "Portfolio (locked)";
+
+            double copies = snapshotRate(portfolio, lock, assets, () -> {
+                Map<String, Asset> holdings = portfolio.getAssets();
+                List<Transaction> history = portfolio.getTransactionHistory();
+                return holdings.size() + history.size() + portfolio.getTotalValue();
+            });
+            double snapshots = snapshotRate(portfolio, lock, assets, () -> {
+                PortfolioSnapshot snapshot = portfolio.snapshot();
+                return snapshot.getAssetCount() + snapshot.getTransactionCount() + snapshot.getTotalValue();
+            });
+            System.out.println(String.format("%-20s copy %,10.0f/s, snapshot %,10.0f/s (%.0fx)",
+                label, copies, snapshots, snapshots / copies));
+        }
+        System.out.println();
+    }
+
+    private static double snapshotRate(Portfolio portfolio, Object lock, int assets,
+                                       DoubleSupplier capture) {
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            SplittableRandom rnd = new SplittableRandom(7);
+            long sequence = 0;
+            while (running.get()) {
+                synchronized (lock) {
+                    if (rnd.nextInt(10) == 0) {
+                        portfolio.recordTransaction(new Transaction("W" + sequence++,
+                            Transaction.TransactionType.DEPOSIT, "CASH", 1, 100.0, ""));
+                    } else {
+                        portfolio.getAsset("SYM" + rnd.nextInt(assets)).setCurrentPrice(10 + rnd.nextDouble() * 500);
+                    }
+                }
+            }
+        });
+        writer.start();
+
+        double sink = 0.0;
+        long count = 0;
+        long start = System.nanoTime();
+        long end = start + 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            synchronized (lock) {
+                sink += capture.getAsDouble();
+            }
+            count++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        running.set(false);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        blackhole = sink;
+        return count / seconds;
+    }
+
+    /**
+     * Monte Carlo VaR for one portfolio at each parallelism level, then a
+     * batch of accounts priced against shared scenarios.
+     */
+    private static void benchmarkValueAtRisk(int paths) {
+        System.out.println("== Monte Carlo VaR (" + String.format("%,d", paths) + " paths) ==");
+        Portfolio portfolio = new Portfolio("var", "VaR", "bench");
+        Random random = new Random(42);
+        LocalDate baseDate = LocalDate.now().minusYears(5);
+        for (int i = 0; i < 200; i++) {
+            portfolio.addAsset(randomAsset(random, i, baseDate));
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        MonteCarloVaR.Result first = null;
+        for (int parallelism = 1; parallelism <= Math.max(4, cores); parallelism *= 2) {
+            long start = System.nanoTime();
+            MonteCarloVaR.Result result = RiskCalculator.calculateValueAtRisk(portfolio, 1, paths, 42L,
+                parallelism, 0.95, 0.99);
+            double millis = (System.nanoTime() - start) / 1e6;
+            if (first == null) first = result;
+            boolean same = result.getValueAtRisk(0) == first.getValueAtRisk(0)
+                && result.getExpectedShortfall(1) == first.getExpectedShortfall(1);
+            System.out.println(String.format("parallelism %2d: %,8.1f ms (%s as parallelism 1)",
+                parallelism, millis, same ? "same" : "DIFFERENT"));
+        }
+        System.out.println(first);
+
+        int accounts = 200;
+        double[][] exposures = new double[accounts][];
+        double[] base = RiskCalculator.getAssetTypeExposures(portfolio);
+        for (int a = 0; a < accounts; a++) {
+            exposures[a] = base.clone();
+            for (int i = 0; i < base.length; i++) {
+                exposures[a][i] *= 0.5 + random.nextDouble();
+            }
+        }
+        long start = System.nanoTime();
+        MonteCarloVaR.Scenarios scenarios = MonteCarloVaR.generate(RiskCalculator.getAssetTypeCovariance(1),
+            paths, 42L, cores);
+        double generateMillis = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        MonteCarloVaR.Result[] results = MonteCarloVaR.estimateAll(scenarios, exposures, new double[] { 0.95, 0.99 }, cores);
+        double perAccount = (System.nanoTime() - start) / 1e6 / accounts;
+        blackhole = results[accounts - 1].getValueAtRisk(0);
+        System.out.println(String.format("Batch (%d cores): scenarios %,.0f ms, %.1f ms per account, "
+            + "100k accounts in about %.0f min", cores, generateMillis, perAccount, perAccount * 100_000 / 60_000));
+        System.out.println();
+    }
+
+    /**
+     * Footprint and query latency of daily price history, in memory and
+     * mapped from a file.
+     */
+    private static void benchmarkPriceHistory(int symbols, int years) {
+        System.out.println("== Price history (" + String.format("%,d", symbols) + " symbols x " + years + " years) ==");
+        LocalDate start = LocalDate.now().minusYears(years);
+        int firstDay = (int) start.toEpochDay();
+        int lastDay = (int) LocalDate.now().toEpochDay();
+
+        long before = usedMemory();
+        long begin = System.nanoTime();
+        PriceHistory history = new PriceHistory();
+        Random random = new Random(42);
+        for (int s = 0; s < symbols; s++) {
+            String symbol = "SYM" + s;
+            double close = 10 + random.nextDouble() * 200;
+            for (int day = firstDay; day <= lastDay; day++) {
+                int weekday = (day + 3) % 7; // 0 = Monday
+                if (weekday >= 5) continue;
+                close *= Math.exp(random.nextGaussian() * 0.01);
+                history.append(symbol, day, close);
+            }
+        }
+        history.trimToSize();
+        double buildSeconds = (System.nanoTime() - begin) / 1e9;
+        long bytes = usedMemory() - before;
+        System.out.println(String.format("Build: %,d points in %.1f s, %,d MB on heap (%.1f bytes/point)",
+            history.getPointCount(), buildSeconds, bytes >> 20, (double) bytes / history.getPointCount()));
+        timeWindowQueries("In memory", history, symbols, firstDay, lastDay);
+
+        try {
+            Path file = Files.createTempFile("swms-prices", ".bin");
+            try {
+                begin = System.nanoTime();
+                PriceHistoryFile.write(history, file.toString());
+                double writeSeconds = (System.nanoTime() - begin) / 1e9;
+                begin = System.nanoTime();
+                PriceHistory mapped = PriceHistoryFile.map(file.toString());
+                double mapMillis = (System.nanoTime() - begin) / 1e6;
+                System.out.println(String.format("File: %,d MB written in %.1f s, mapped in %.0f ms",
+                    Files.size(file) >> 20, writeSeconds, mapMillis));
+                timeWindowQueries("Mapped", mapped, symbols, firstDay, lastDay);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            System.out.println("File benchmark failed: " + e.getMessage());
+        }
+        System.out.println();
+    }
+
+    // One-year window plus an as-of lookup for a random symbol and date
+    private static void timeWindowQueries(String label, PriceHistory history, int symbols, int firstDay, int lastDay) {
+        Random random = new Random(7);
+        int queries = 1_000_000;
+        double sink = 0.0;
+        for (int round = 0; round < 2; round++) {
+            long begin = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                String symbol = "SYM" + random.nextInt(symbols);
+                int end = firstDay + 365 + random.nextInt(lastDay - firstDay - 365);
+                PriceSeries window = history.getWindow(symbol, LocalDate.ofEpochDay(end - 365), LocalDate.ofEpochDay(end));
+                sink += window.size() + window.getClose(window.size() - 1)
+                    + window.closeAsOf(LocalDate.ofEpochDay(end - random.nextInt(365)));
+            }
+            if (round == 1) {
+                double micros = (System.nanoTime() - begin) / 1e3 / queries;
+                System.out.println(String.format("%-10s window + as-of query: %.2f us", label, micros));
+            }
+        }
+        blackhole = sink;
+    }
+
+    /**
+     * Full covariance computation over a window of daily returns, then
+     * rolling one day forward.
+     */
+    private static void benchmarkCovariance(int symbols, int window) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(String.format("== Covariance (%,d symbols x %,d days, %d cores) ==", symbols, window, cores));
+        PriceHistory history = new PriceHistory();
+        Random random = new Random(42);
+        int lastDay = (int) LocalDate.now().toEpochDay();
+        int firstDay = lastDay - (window + 10) * 7 / 5 - 7;
+        double[] market = new double[lastDay - firstDay + 1];
+        for (int d = 0; d < market.length; d++) {
+            market[d] = random.nextGaussian() * 0.01;
+        }
+        List<String> names = new ArrayList<>();
+        for (int s = 0; s < symbols; s++) {
+            String symbol = "SYM" + s;
+            names.add(symbol);
+            double beta = 0.5 + random.nextDouble();
+            double close = 10 + random.nextDouble() * 200;
+            for (int day = firstDay; day <= lastDay; day++) {
+                if ((day + 3) % 7 >= 5) continue;
+                close *= Math.exp(beta * market[day - firstDay] + random.nextGaussian() * 0.015);
+                history.append(symbol, day, close);
+            }
+        }
+
+        // The first run includes JIT warm-up of the kernel
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            CovarianceEngine engine = CovarianceEngine.fromHistory(history, names, LocalDate.ofEpochDay(lastDay),
+                window, cores);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (round == 0) continue;
+            double gflops = 2.0 * symbols * (symbols + 1) / 2 * window / seconds / 1e9;
+            System.out.println(String.format("Full computation: %.2f s (%.1f GFLOP/s)", seconds, gflops));
+
+            double[] day = new double[symbols];
+            for (int i = 0; i < symbols; i++) {
+                day[i] = random.nextGaussian() * 0.01;
+            }
+            start = System.nanoTime();
+            int updates = 10;
+            for (int u = 0; u < updates; u++) {
+                engine.addReturns(day);
+            }
+            System.out.println(String.format("Add one day: %.1f ms", (System.nanoTime() - start) / 1e6 / updates));
+            System.out.println(String.format("Beta SYM1 vs SYM0: %.2f, correlation: %.2f",
+                engine.getBeta("SYM1", "SYM0"), engine.getCorrelation(1, 0)));
+        }
+        System.out.println();
+    }
+
+    /**
+     * Time- and money-weighted returns of one account with many cash flows,
+     * then of a batch of accounts priced from a history.
+     */
+    private static void benchmarkReturns(int flows) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(String.format("== Returns (%,d cash flows, %d cores) ==", flows, cores));
+        Random random = new Random(42);
+        LocalDateTime base = LocalDate.now().minusYears(30).atStartOfDay();
+        long minutes = 30L * 365 * 24 * 60;
+        Portfolio account = new Portfolio("R0", "Flows", "U0");
+        double[] lastPrices = new double[50];
+        for (int i = 0; i < flows; i++) {
+            LocalDateTime time = base.plusMinutes(minutes * i / flows);
+            account.recordTransaction(new Transaction("R0-D" + i, i % 3 == 2
+                ? Transaction.TransactionType.WITHDRAWAL : Transaction.TransactionType.DEPOSIT,
+                null, 1, 100 + random.nextInt(1000), time, "Flow"));
+            lastPrices[i % 50] = 50 + random.nextInt(100);
+            account.recordTransaction(new Transaction("R0-B" + i, Transaction.TransactionType.BUY,
+                "SYM" + (i % 50), 1, lastPrices[i % 50], time.plusMinutes(1), "Trade"));
+        }
+        // Hold what was bought, so the history explains the live value
+        for (int s = 0; s < lastPrices.length; s++) {
+            double quantity = flows / 50 + (s < flows % 50 ? 1 : 0);
+            account.addAsset(new Asset("SYM" + s, "Symbol " + s, Asset.AssetType.STOCK, quantity,
+                lastPrices[s], lastPrices[s], base.toLocalDate(), SECTORS[s % SECTORS.length]));
+        }
+
+        ReturnEngine.Returns returns = null;
+        // Early rounds warm up the JIT
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            returns = ReturnEngine.calculate(account);
+            double ms = (System.nanoTime() - start) / 1e6;
+            if (round == 19) {
+                System.out.println(String.format("One pass over %,d transactions: %.1f ms (%d solver evaluations)",
+                    account.getTransactionCount(), ms, returns.getSolverIterations()));
+            }
+        }
+        System.out.println(String.format("TWR %.2f%% a year, MWR %.2f%% over %.1f years",
+            returns.getAnnualizedTimeWeightedReturn() * 100, returns.getMoneyWeightedReturn() * 100,
+            returns.getYears()));
+
+        // A batch of accounts over a price history, then the next day warm-started
+        int accounts = 1_000;
+        int symbols = 200;
+        PriceHistory history = new PriceHistory();
+        int lastDay = (int) LocalDate.now().toEpochDay();
+        int firstDay = lastDay - 10 * 365;
+        for (int s = 0; s < symbols; s++) {
+            double close = 20 + random.nextDouble() * 100;
+            for (int day = firstDay; day <= lastDay; day++) {
+                close *= Math.exp(0.0003 + random.nextGaussian() * 0.015);
+                history.append("SYM" + s, day, close);
+            }
+        }
+        List<PortfolioView> book = new ArrayList<>(accounts);
+        for (int a = 0; a < accounts; a++) {
+            Portfolio portfolio = new Portfolio("R" + (a + 1), "Batch", "U" + a);
+            LocalDateTime start = LocalDate.ofEpochDay(firstDay).atStartOfDay();
+            for (int i = 0; i < 500; i++) {
+                LocalDateTime time = start.plusDays(i * 7L);
+                // Each account trades its own 25 of the symbols
+                String symbol = "SYM" + (a * 7 + random.nextInt(25)) % symbols;
+                double close = history.getCloseAsOf(symbol, time.toLocalDate());
+                portfolio.recordTransaction(new Transaction(portfolio.getPortfolioId() + "-D" + i,
+                    Transaction.TransactionType.DEPOSIT, null, 1, 1000, time, "Flow"));
+                portfolio.recordTransaction(new Transaction(portfolio.getPortfolioId() + "-B" + i,
+                    Transaction.TransactionType.BUY, symbol, 900 / close, close, time, "Trade"));
+            }
+            book.add(portfolio.snapshot());
+        }
+        LocalDate asOf = LocalDate.ofEpochDay(lastDay - 1);
+        ReturnEngine.calculateAll(book, history, asOf, Collections.emptyMap(), cores);
+        Map<String, ReturnEngine.Returns> previous = Collections.emptyMap();
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            Map<String, ReturnEngine.Returns> batch = ReturnEngine.calculateAll(book, history, asOf, previous, cores);
+            double ms = (System.nanoTime() - start) / 1e6;
+            long evaluations = 0;
+            for (ReturnEngine.Returns r : batch.values()) evaluations += r.getSolverIterations();
+            System.out.println(String.format("%s %,d accounts as of %s: %.1f ms (%.1f solver evaluations each)",
+                round == 0 ? "Cold" : "Warm", accounts, asOf, ms, (double) evaluations / accounts));
+            previous = batch;
+            asOf = asOf.plusDays(1);
+        }
+        System.out.println();
+    }
+
+    /**
+     * Performance report over one account with many transactions: the
+     * metrics pass against the per-metric scans it replaces.
+     */
+    private static void benchmarkReports(int transactions) {
+        System.out.println(String.format("== Reports (%,d transactions) ==", transactions));
+        Random random = new Random(42);
+        Transaction.TransactionType[] types = Transaction.TransactionType.values();
+        LocalDateTime base = LocalDate.now().minusYears(20).atStartOfDay();
+        long minutes = 20L * 365 * 24 * 60;
+        Portfolio portfolio = new Portfolio("M0", "Report", "U0");
+        for (int i = 0; i < 500; i++) {
+            portfolio.addAsset(randomAsset(random, i, base.toLocalDate()));
+        }
+        for (int i = 0; i < transactions; i++) {
+            portfolio.recordTransaction(new Transaction("M0-T" + i, types[random.nextInt(types.length)],
+                "SYM" + random.nextInt(500), 1 + random.nextInt(10), 10 + random.nextInt(500),
+                base.plusMinutes(minutes * i / transactions), "Report"));
+        }
+        PortfolioSnapshot snapshot = portfolio.snapshot();
+
+        double separate = 0.0;
+        double single = 0.0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            // What the report used to do: one scan per figure
+            double sink = PerformanceAnalyzer.calculateAnnualizedReturn(snapshot)
+                + PerformanceAnalyzer.calculateTimeWeightedReturn(snapshot)
+                + PerformanceAnalyzer.calculateYield(snapshot)
+                + PerformanceAnalyzer.calculateTotalDividends(snapshot) * 2
+                + PerformanceAnalyzer.calculateTotalFees(snapshot) * 2
+                + PerformanceAnalyzer.calculateTurnoverRate(snapshot)
+                + PerformanceAnalyzer.getAssetPerformanceComparison(snapshot).length();
+            separate = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            PortfolioMetrics metrics = PortfolioMetrics.collect(snapshot);
+            sink += PerformanceAnalyzer.getPerformanceReport(metrics).length()
+                + PerformanceAnalyzer.getAssetPerformanceComparison(metrics).length();
+            single = (System.nanoTime() - start) / 1e6;
+            blackhole = sink;
+        }
+        System.out.println(String.format("Per-figure scans: %.1f ms", separate));
+        System.out.println(String.format("One metrics pass + reports: %.1f ms", single));
+        System.out.println();
+    }
+
+    /**
+     * Headless statement run over a snapshot file, one report file per
+     * account.
+     */
+    private static void benchmarkBatchReports(int userCount) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(String.format("== Batch reports (%,d accounts, %d cores) ==", userCount, cores));
+        Path dir = null;
+        Path output = null;
+        try {
+            dir = Files.createTempDirectory("swms-batch");
+            output = Files.createTempDirectory("swms-statements");
+            String snapshotFile = dir.resolve("users.snap").toString();
+            SnapshotWriter.write(snapshotFile, syntheticUsers(userCount, 20, 100));
+
+            long before = usedMemory();
+            BatchReportRunner.Summary summary;
+            try (SnapshotReader reader = new SnapshotReader(snapshotFile)) {
+                summary = new BatchReportRunner(output.toString(), cores, BatchReportRunner.DEFAULT_MAX_PENDING)
+                    .run(reader);
+            }
+            System.out.print(summary);
+            System.out.println(String.format("Heap after run: %+.1f MB", (usedMemory() - before) / 1e6));
+        } catch (IOException e) {
+            System.err.println("Batch report benchmark failed: " + e.getMessage());
+        } finally {
+            for (Path path : new Path[] { dir, output }) {
+                if (path != null) {
+                    for (File file : path.toFile().listFiles()) file.delete();
+                    path.toFile().delete();
+                }
+            }
+        }
+        System.out.println();
+    }
+
+    /**
+     * Dashboard-style polling of rebalancing reports: a cold pass, repeated
+     * passes over unchanged accounts, and a pass after 1% of them change.
+     */
+    private static void benchmarkRebalancePolling(int accounts) {
+        System.out.println(String.format("== Rebalance polling (%,d accounts) ==", accounts));
+        List<User> users = syntheticUsers(accounts, 50, 20);
+        List<Portfolio> portfolios = new ArrayList<>(accounts);
+        for (User user : users) {
+            user.forEachPortfolio(portfolios::add);
+        }
+
+        long start = System.nanoTime();
+        long sink = pollRebalancing(users);
+        double cold = (System.nanoTime() - start) / 1e3 / accounts;
+
+        double warm = 0.0;
+        for (int round = 0; round < 5; round++) {
+            start = System.nanoTime();
+            sink += pollRebalancing(users);
+            warm = (System.nanoTime() - start) / 1e3 / accounts;
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < accounts / 100; i++) {
+            Portfolio portfolio = portfolios.get(random.nextInt(portfolios.size()));
+            portfolio.setCashBalance(portfolio.getCashBalance() + 1000);
+        }
+        start = System.nanoTime();
+        sink += pollRebalancing(users);
+        double changed = (System.nanoTime() - start) / 1e3 / accounts;
+        blackhole = sink;
+
+        System.out.println(String.format("First poll: %.2f us/account", cold));
+        System.out.println(String.format("Unchanged accounts: %.3f us/account", warm));
+        System.out.println(String.format("After 1%% changed: %.3f us/account", changed));
+        System.out.println();
+    }
+
+    /**
+     * Nightly "who needs rebalancing" run: per-account recommendation lists
+     * against the bulk drift scan.
+     */
+    private static void benchmarkDriftScan(int accounts) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(String.format("== Drift scan (%,d accounts, %d cores) ==", accounts, cores));
+        List<User> users = syntheticUsers(accounts, 10, 0);
+        RiskProfile.RiskTolerance[] tolerances = RiskProfile.RiskTolerance.values();
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).setRiskProfile(new RiskProfile(tolerances[i % tolerances.length], 30 + i % 40, 10));
+        }
+
+        double lists = 0.0;
+        double scan = 0.0;
+        RebalanceEngine.DriftScan result = null;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long drifted = 0;
+            for (User user : users) {
+                for (Portfolio portfolio : user.getPortfoliosView().values()) {
+                    // A fresh profile each time, as a cold nightly run would see
+                    RiskProfile profile = user.getRiskProfile();
+                    if (!RebalanceEngine.getRebalanceRecommendations(portfolio,
+                            new RiskProfile(profile.getTolerance(), profile.getAge(),
+                                profile.getInvestmentHorizonYears())).isEmpty()) {
+                        drifted++;
+                    }
+                }
+            }
+            lists = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            result = RebalanceEngine.scanDrift(users, RebalanceEngine.DRIFT_BAND, 100, cores);
+            scan = (System.nanoTime() - start) / 1e6;
+            blackhole = drifted + result.getAccountsDrifted();
+        }
+        System.out.println(String.format("Recommendation lists: %.0f ms", lists));
+        System.out.println(String.format("Drift scan (top 100): %.0f ms, %,d of %,d accounts drifted",
+            scan, result.getAccountsDrifted(), result.getAccountsScanned()));
+        System.out.println("Most drifted: " + result.getTopAccounts().get(0));
+        System.out.println();
+    }
+
+    /**
+     * Holding-level rebalancing: cold solves against solves warm-started
+     * from the previous plan, after 1% of the holdings move in price.
+     */
+    private static void benchmarkOptimizer(int holdings) {
+        System.out.println(String.format("== Rebalance optimizer (%,d holdings) ==", holdings));
+        Random random = new Random(42);
+        Portfolio portfolio = new Portfolio("O0", "Optimizer", "U0");
+        portfolio.setCashBalance(1_000_000);
+        for (int i = 0; i < holdings; i++) {
+            portfolio.addAsset(randomAsset(random, i, LocalDate.of(2015, 1, 1)));
+        }
+        RiskProfile profile = new RiskProfile(RiskProfile.RiskTolerance.GROWTH, 40, 15);
+        RebalanceOptimizer.Constraints constraints = new RebalanceOptimizer.Constraints();
+        constraints.setDefaultLimits(0.0, 0.01);
+
+        RebalanceOptimizer.Plan plan = RebalanceOptimizer.optimize(portfolio, profile, constraints, null);
+        double cold = 0.0;
+        double warm = 0.0;
+        int coldPasses = 0;
+        int warmPasses = 0;
+        // The first rounds warm up the JIT and are not counted
+        int warmup = 50;
+        int rounds = 100;
+        for (int round = -warmup; round < rounds; round++) {
+            if (round == 0) {
+                cold = warm = 0.0;
+                coldPasses = warmPasses = 0;
+            }
+            for (int i = 0; i < holdings / 100; i++) {
+                Asset asset = portfolio.getAsset("SYM" + random.nextInt(holdings));
+                asset.setCurrentPrice(asset.getCurrentPrice() * (1 + 0.01 * random.nextGaussian()));
+            }
+            long start = System.nanoTime();
+            RebalanceOptimizer.Plan coldPlan = RebalanceOptimizer.optimize(portfolio, profile, constraints, null);
+            cold += System.nanoTime() - start;
+            coldPasses += coldPlan.getPasses();
+
+            start = System.nanoTime();
+            plan = RebalanceOptimizer.optimize(portfolio, profile, constraints, plan);
+            warm += System.nanoTime() - start;
+            warmPasses += plan.getPasses();
+            blackhole = coldPlan.getTurnover() - plan.getTurnover();
+        }
+        System.out.println(String.format("Cold solve: %.2f ms, %d passes", cold / 1e6 / rounds, coldPasses / rounds));
+        System.out.println(String.format("Warm re-solve: %.2f ms, %d passes", warm / 1e6 / rounds, warmPasses / rounds));
+        System.out.println(String.format("Last plan: %,d orders, turnover $%,.0f, cost $%,.2f, on target: %s",
+            plan.getOrders().size(), plan.getTurnover(), plan.getTransactionCost(), plan.isOnTarget()));
+        System.out.println();
+    }
+
+    /**
+     * DCA-style lot books: opening and relieving lots, and harvesting
+     * queries from the loss index against a scan of every lot.
+     */
+    private static void benchmarkTaxLots(int lotsPerSymbol) {
+        int symbols = 20;
+        System.out.println(String.format("== Tax lots (%d symbols x %,d lots) ==", symbols, lotsPerSymbol));
+        Random random = new Random(42);
+        Portfolio portfolio = new Portfolio("L0", "Lots", "U0");
+        double[] prices = new double[symbols];
+        for (int s = 0; s < symbols; s++) {
+            prices[s] = 100.0;
+            portfolio.addAsset(new Asset("SYM" + s, "Instrument " + s, Asset.AssetType.STOCK, 0, 100, 100,
+                LocalDate.now(), SECTORS[s % SECTORS.length]));
+        }
+        TaxLotLedger ledger = new TaxLotLedger(portfolio, TaxLotLedger.ReliefMethod.HIFO);
+
+        // Weekly buys over the years, on a rising random walk per symbol
+        LocalDateTime start = LocalDate.now().minusDays(7L * lotsPerSymbol).atStartOfDay();
+        long begin = System.nanoTime();
+        int id = 0;
+        for (int week = 0; week < lotsPerSymbol; week++) {
+            for (int s = 0; s < symbols; s++) {
+                prices[s] = Math.max(1.0, prices[s] * (1.002 + 0.02 * random.nextGaussian()));
+                portfolio.recordTransaction(new Transaction("B" + id++, Transaction.TransactionType.BUY,
+                    "SYM" + s, 1 + random.nextInt(10), prices[s], start.plusDays(7L * week), "DCA"));
+            }
+        }
+        double buys = (System.nanoTime() - begin) / 1e6;
+        for (int s = 0; s < symbols; s++) {
+            portfolio.getAsset("SYM" + s).setCurrentPrice(prices[s]);
+        }
+
+        begin = System.nanoTime();
+        int sales = symbols * lotsPerSymbol / 10;
+        for (int i = 0; i < sales; i++) {
+            portfolio.recordTransaction(new Transaction("S" + i, Transaction.TransactionType.SELL,
+                "SYM" + random.nextInt(symbols), 3, 100, "Trim"));
+        }
+        double sells = (System.nanoTime() - begin) / 1e6;
+
+        double indexed = 0.0;
+        double scanned = 0.0;
+        int found = 0;
+        for (int round = 0; round < 20; round++) {
+            // Prices move between queries; the index is not touched
+            for (int s = 0; s < symbols; s++) {
+                Asset asset = portfolio.getAsset("SYM" + s);
+                asset.setCurrentPrice(asset.getCurrentPrice() * (1 + 0.01 * random.nextGaussian()));
+            }
+            begin = System.nanoTime();
+            found = RebalanceEngine.getTaxLossHarvestingOpportunities(ledger).size();
+            indexed = (System.nanoTime() - begin) / 1e6;
+
+            begin = System.nanoTime();
+            int matches = 0;
+            LocalDate today = LocalDate.now();
+            for (int s = 0; s < symbols; s++) {
+                double price = portfolio.getAsset("SYM" + s).getCurrentPrice();
+                for (TaxLotLedger.TaxLot lot : ledger.getLots("SYM" + s)) {
+                    if (price < lot.getUnitCost() * 0.95 && lot.getHoldingPeriodDays(today) > 30) matches++;
+                }
+            }
+            scanned = (System.nanoTime() - begin) / 1e6;
+            blackhole = matches;
+        }
+        System.out.println(String.format("Open %,d lots: %.0f ms; relieve %,d sales (HIFO): %.0f ms",
+            symbols * lotsPerSymbol, buys, sales, sells));
+        System.out.println(String.format("Harvest query: %.2f ms for %,d of %,d lots (full scan %.2f ms)",
+            indexed, found, ledger.getLotCount(), scanned));
+        System.out.println();
+    }
+
+    /**
+     * Year-end wash-sale detection over many households, and one large
+     * household at two history lengths to show the join stays linear.
+     */
+    private static void benchmarkWashSales(int households) {
+        int portfolios = 3;
+        int trades = 60;
+        System.out.println(String.format("== Wash sales (%,d households x %d portfolios x %d trades) ==",
+            households, portfolios, trades));
+        Random random = new Random(42);
+        List<User> users = new ArrayList<>(households);
+        for (int u = 0; u < households; u++) {
+            users.add(tradingHousehold(random, "U" + u, portfolios, trades, 30));
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        Map<String, List<WashSaleDetector.WashSale>> found = null;
+        long begin = 0;
+        for (int round = 0; round < 3; round++) {
+            begin = System.nanoTime();
+            found = WashSaleDetector.detectAll(users, Collections.emptyList(), threads);
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e6;
+        long washSales = 0;
+        for (List<WashSaleDetector.WashSale> sales : found.values()) washSales += sales.size();
+        System.out.println(String.format("Year-end run: %.0f ms (%.1f us/household, %d threads), "
+            + "%,d wash sales in %,d households", elapsed, elapsed * 1000 / households, threads,
+            washSales, found.size()));
+
+        for (int size = 100_000; size <= 200_000; size *= 2) {
+            User user = tradingHousehold(random, "H" + size, portfolios, size / portfolios, 50);
+            double best = Double.MAX_VALUE;
+            int count = 0;
+            for (int round = 0; round < 5; round++) {
+                begin = System.nanoTime();
+                count = WashSaleDetector.detect(user).size();
+                best = Math.min(best, (System.nanoTime() - begin) / 1e6);
+            }
+            System.out.println(String.format("One household, %,d trades: %.0f ms (%.0f ns/trade), %,d wash sales",
+                size, best, best * 1e6 / size, count));
+        }
+        System.out.println();
+    }
+
+    // A year of trades per portfolio: two buys to a sell, on a random walk per symbol
+    private static User tradingHousehold(Random random, String userId, int portfolios, int trades, int symbols) {
+        User user = new User(userId, userId, userId + "@example.com", "Household " + userId);
+        LocalDateTime start = LocalDate.of(2024, 1, 1).atStartOfDay();
+        long minutesPerTrade = Math.max(1, 365L * 24 * 60 / trades);
+        double[] prices = new double[symbols];
+        Arrays.fill(prices, 100.0);
+        for (int p = 0; p < portfolios; p++) {
+            Portfolio portfolio = new Portfolio(userId + "-P" + p, "Account " + p, userId);
+            for (int i = 0; i < trades; i++) {
+                int symbol = random.nextInt(symbols);
+                prices[symbol] = Math.max(1.0, prices[symbol] * (1 + 0.03 * random.nextGaussian()));
+                portfolio.recordTransaction(new Transaction(portfolio.getPortfolioId() + "-T" + i,
+                    random.nextInt(3) == 0 ? Transaction.TransactionType.SELL : Transaction.TransactionType.BUY,
+                    "SYM" + symbol, 1 + random.nextInt(20), prices[symbol],
+                    start.plusMinutes(minutesPerTrade * i), "Trade"));
+            }
+            user.addPortfolio(portfolio);
+        }
+        return user;
+    }
+
+    private static long pollRebalancing(List<User> users) {
+        long length = 0;
+        for (User user : users) {
+            RiskProfile profile = user.getRiskProfile();
+            for (Portfolio portfolio : user.getPortfoliosView().values()) {
+                length += RebalanceEngine.getRebalancingReport(portfolio, profile).length()
+                    + RebalanceEngine.getRebalancingPriority(portfolio, profile).length();
+                if (RebalanceEngine.needsRebalancing(portfolio, profile)) length++;
+            }
+        }
+        return length;
+    }
+
+    private static void recordHistory(List<User> users, TransactionJournal journal, int first, int count) {
+        LocalDateTime base = LocalDate.of(2015, 1, 1).atStartOfDay();
+        for (User user : users) {
+            user.forEachPortfolio(portfolio -> {
+                journal.attach(portfolio);
+                for (int i = first; i < first + count; i++) {
+                    portfolio.recordTransaction(new Transaction(portfolio.getPortfolioId() + "-T" + i,
+                        i % 4 == 0 ? Transaction.TransactionType.DEPOSIT : Transaction.TransactionType.BUY,
+                        "SYM" + (i % 500), 1 + i % 10, 100.25, base.plusDays(i * 90L), "History"));
+                }
+                journal.detach(portfolio);
+            });
+        }
+    }
+
+    private static long directorySize(Path dir, String prefix) {
+        long total = 0;
+        for (File file : dir.toFile().listFiles()) {
+            if (file.getName().startsWith(prefix)) total += file.length();
+        }
+        return total;
+    }
+
+    private static List<User> syntheticUsers(int count, int assetsPerPortfolio, int transactionsPerPortfolio) {
+        Random random = new Random(42);
+        Asset.AssetType[] types = Asset.AssetType.values();
+        Transaction.TransactionType[] transactionTypes = Transaction.TransactionType.values();
+        LocalDate baseDate = LocalDate.of(2015, 1, 1);
+        List<User> users = new ArrayList<>(count);
+        for (int u = 0; u < count; u++) {
+            String userId = "U" + u;
+            User user = new User(userId, "user" + u, "user" + u + "@example.com", "User " + u);
+            Portfolio portfolio = new Portfolio(userId + "-P0", "Main", userId);
+            for (int i = 0; i < assetsPerPortfolio; i++) {
+                int instrument = random.nextInt(500);
+                portfolio.addAsset(new Asset("SYM" + instrument, "Instrument " + instrument,
+                    types[instrument % types.length], 1 + random.nextInt(1000),
+                    10 + random.nextInt(50000) / 100.0, 10 + random.nextInt(50000) / 100.0,
+                    baseDate.plusDays(random.nextInt(3000)), SECTORS[instrument % SECTORS.length]));
+            }
+            for (int i = 0; i < transactionsPerPortfolio; i++) {
+                int instrument = random.nextInt(500);
+                portfolio.recordTransaction(new Transaction(userId + "-T" + i,
+                    transactionTypes[random.nextInt(transactionTypes.length)], "SYM" + instrument,
+                    1 + random.nextInt(100), 10 + random.nextInt(50000) / 100.0,
+                    baseDate.atStartOfDay().plusMinutes(random.nextInt(4_000_000)), "Imported"));
+            }
+            user.addPortfolio(portfolio);
+            users.add(user);
+        }
+        return users;
+    }
+
+    private static void writeSyntheticPortfolio(Path file, int rows) throws IOException {
+        Random random = new Random(42);
+        Asset.AssetType[] types = Asset.AssetType.values();
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("Symbol,Name,Type,Quantity,Purchase Price,Current Price,Purchase Date,Sector\n");
+            StringBuilder row = new StringBuilder(128);
+            for (int i = 0; i < rows; i++) {
+                row.setLength(0);
+                row.append("SYM").append(i).append(",Instrument ").append(i).append(',')
+                   .append(types[random.nextInt(types.length)]).append(',')
+                   .append(1 + random.nextInt(1000)).append(".0000,")
+                   .append(10 + random.nextInt(500)).append('.').append(10 + random.nextInt(90)).append(',')
+                   .append(10 + random.nextInt(500)).append('.').append(10 + random.nextInt(90)).append(',')
+                   .append(LocalDate.of(2015, 1, 1).plusDays(random.nextInt(3000))).append(',')
+                   .append(SECTORS[random.nextInt(SECTORS.length)]).append('\n');
+                writer.append(row);
+            }
+        }
+    }
+
+    private static Asset randomAsset(Random random, int i, LocalDate baseDate) {
+        Asset.AssetType[] types = Asset.AssetType.values();
+        return new Asset("SYM" + i, "Instrument " + i, types[random.nextInt(types.length)],
+            1 + random.nextInt(1000), 10 + random.nextDouble() * 500, 10 + random.nextDouble() * 500,
+            baseDate.plusDays(random.nextInt(1800)), SECTORS[random.nextInt(SECTORS.length)]);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
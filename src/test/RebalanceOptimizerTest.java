@@ -0,0 +1,340 @@
+package test;
+
+import logic.RebalanceOptimizer;
+import model.*;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Correctness checks for RebalanceOptimizer: targeted types reach their
+ * targets, holdings stay within their limits, cash ends at the buffer,
+ * and no exchange of dollars between two holdings of a type lowers the
+ * cost, so the plan is optimal. Also covers warm starts, untargeted and
+ * unpriced holdings, targets the limits cannot reach, per-symbol cost
+ * rates, the risk profile's default targets and invalid constraints.
+ *
+ * Usage: java -cp out test.RebalanceOptimizerTest
+ */
+public class RebalanceOptimizerTest {
+
+    private static final LocalDate PURCHASED = LocalDate.of(2020, 1, 2);
+
+    private static boolean failed;
+
+    public static void main(String[] args) {
+        System.out.println("╔═══════════════════════════════════════════════════╗");
+        System.out.println("║  REBALANCE OPTIMIZER - CORRECTNESS TEST          ║");
+        System.out.println("╚═══════════════════════════════════════════════════╝\n");
+
+        checkTargetsAndLimits();
+        checkOptimality();
+        checkWarmStart();
+        checkHeldHoldings();
+        checkCostRates();
+        checkProfileTargets();
+        checkInvalidConstraints();
+
+        if (failed) {
+            System.out.println("\n✗ REBALANCE OPTIMIZER TEST FAILED");
+            System.exit(1);
+        }
+        System.out.println("\n✓ ALL CHECKS PASSED");
+    }
+
+    // Stock-heavy portfolio moved to 50/30/20 stocks, bonds and ETFs
+    private static void checkTargetsAndLimits() {
+        System.out.println("Targets, limits and cash");
+        Portfolio portfolio = samplePortfolio(new Random(1), 40);
+        RebalanceOptimizer.Constraints constraints = sampleConstraints();
+        constraints.setLimits("STK0", 0.0, 0.02);
+        constraints.setLimits("BND1", 0.03, 0.03);
+        RebalanceOptimizer.Plan plan = RebalanceOptimizer.optimize(portfolio, null, constraints, null);
+
+        double total = portfolio.getTotalValue();
+        check(plan.isOnTarget(), "every targeted type reaches its target");
+        double targets = 0.0;
+        for (Asset.AssetType type : Asset.AssetType.values()) targets += plan.getTargetValue(type);
+        check(within(targets, total * (1 - constraints.getCashBuffer()) - plan.getTransactionCost(), 1e-9),
+            "targets share out the value less the cash buffer and trading costs");
+        check(Math.abs(plan.getCashAfter() - total * constraints.getCashBuffer()) <= 0.02,
+            String.format("cash ends at the buffer: $%.2f of $%.2f", plan.getCashAfter(),
+                total * constraints.getCashBuffer()));
+
+        Map<String, Double> after = valuesAfter(portfolio, plan);
+        boolean limits = true;
+        for (Map.Entry<String, Double> entry : after.entrySet()) {
+            double max = entry.getKey().equals("STK0") ? 0.02 : entry.getKey().equals("BND1") ? 0.03 : 0.08;
+            double min = entry.getKey().equals("BND1") ? 0.03 : 0.0;
+            limits &= entry.getValue() >= min * total - 1e-6 && entry.getValue() <= max * total + 1e-6;
+        }
+        check(limits, "every holding stays within its limits");
+        check(Math.abs(after.get("BND1") - 0.03 * total) < 1e-6, "a holding with equal limits is set to them");
+
+        double turnover = 0.0;
+        double cost = 0.0;
+        for (RebalanceOptimizer.Order order : plan.getOrders()) {
+            turnover += order.getValue();
+            cost += order.getCost();
+        }
+        check(within(turnover, plan.getTurnover(), 1e-9) && within(cost, plan.getTransactionCost(), 1e-9),
+            "orders add up to the plan's turnover and cost");
+        List<RebalanceOptimizer.Order> orders = plan.getOrders();
+        boolean sorted = true;
+        for (int i = 1; i < orders.size(); i++) sorted &= orders.get(i - 1).getValue() >= orders.get(i).getValue();
+        check(sorted, "orders are largest first");
+        System.out.println();
+    }
+
+    // Moving dollars between two holdings of a type must never lower the cost
+    private static void checkOptimality() {
+        System.out.println("Optimality");
+        for (long seed = 10; seed < 14; seed++) {
+            Portfolio portfolio = samplePortfolio(new Random(seed), 25);
+            RebalanceOptimizer.Constraints constraints = sampleConstraints();
+            constraints.setCostRate("STK3", 0.02);
+            constraints.setLimits("ETF2", 0.01, 0.015);
+            RebalanceOptimizer.Plan plan = RebalanceOptimizer.optimize(portfolio, null, constraints, null);
+            check(!exchangeLowersCost(portfolio, constraints, plan),
+                "seed " + seed + ": no exchange between two holdings lowers the cost");
+        }
+        System.out.println();
+    }
+
+    // Small price moves, re-solved from the previous plan
+    private static void checkWarmStart() {
+        System.out.println("Warm start");
+        Random random = new Random(20);
+        Portfolio portfolio = samplePortfolio(random, 300);
+        RebalanceOptimizer.Constraints constraints = sampleConstraints();
+        RebalanceOptimizer.Plan plan = RebalanceOptimizer.optimize(portfolio, null, constraints, null);
+
+        boolean same = true;
+        boolean fewer = true;
+        int warmPasses = 0;
+        int coldPasses = 0;
+        for (int round = 0; round < 5; round++) {
+            portfolio.forEachAsset(asset -> asset.setCurrentPrice(asset.getCurrentPrice()
+                * (1 + 0.002 * random.nextGaussian())));
+            RebalanceOptimizer.Plan warm = RebalanceOptimizer.optimize(portfolio, null, constraints, plan);
+            RebalanceOptimizer.Plan cold = RebalanceOptimizer.optimize(portfolio, null, constraints, null);
+            same &= warm.isOnTarget() && sameValues(valuesAfter(portfolio, warm), valuesAfter(portfolio, cold));
+            fewer &= warm.getPasses() <= cold.getPasses();
+            warmPasses += warm.getPasses();
+            coldPasses += cold.getPasses();
+            plan = warm;
+        }
+        check(same, "a warm start reaches the same plan as a cold one");
+        check(fewer && warmPasses < coldPasses, String.format(
+            "and takes fewer passes (%d against %d)", warmPasses, coldPasses));
+        System.out.println();
+    }
+
+    // Untargeted types, holdings without a price, and targets out of reach
+    private static void checkHeldHoldings() {
+        System.out.println("Holdings that are not traded");
+        Portfolio portfolio = samplePortfolio(new Random(30), 20);
+        portfolio.addAsset(asset("GOLD", Asset.AssetType.COMMODITY, 100, 180));
+        portfolio.addAsset(asset("DARK", Asset.AssetType.STOCK, 50, 0));
+        RebalanceOptimizer.Constraints constraints = sampleConstraints();
+        RebalanceOptimizer.Plan plan = RebalanceOptimizer.optimize(portfolio, null, constraints, null);
+
+        boolean untouched = true;
+        for (RebalanceOptimizer.Order order : plan.getOrders()) {
+            untouched &= !order.getSymbol().equals("GOLD") && !order.getSymbol().equals("DARK");
+        }
+        check(untouched, "untargeted and unpriced holdings get no orders");
+        check(!plan.isTargeted(Asset.AssetType.COMMODITY) && plan.getTargetValue(Asset.AssetType.COMMODITY) == 0.0,
+            "an untargeted type has no target");
+        double total = portfolio.getTotalValue();
+        check(Math.abs(plan.getCashAfter() - total * constraints.getCashBuffer()) <= 0.02,
+            "held holdings come out of the investable value");
+
+        RebalanceOptimizer.Constraints tight = sampleConstraints();
+        tight.setDefaultLimits(0.0, 0.01);
+        RebalanceOptimizer.Plan capped = RebalanceOptimizer.optimize(portfolio, null, tight, null);
+        int bonds = 0;
+        for (Asset asset : portfolio.getAssetsView().values()) {
+            if (asset.getType() == Asset.AssetType.BOND) bonds++;
+        }
+        check(!capped.isOnTarget() && within(capped.getAllocatedValue(Asset.AssetType.BOND), bonds * 0.01 * total, 1e-9),
+            "a target the limits cannot reach stops at the limits");
+        System.out.println();
+    }
+
+    // An expensive holding trades only once its cheaper peers are at their limits
+    private static void checkCostRates() {
+        System.out.println("Per-symbol cost rates");
+        Portfolio portfolio = new Portfolio("C", "Costs", "U");
+        portfolio.addAsset(asset("S1", Asset.AssetType.STOCK, 50, 100));
+        portfolio.addAsset(asset("S2", Asset.AssetType.STOCK, 50, 100));
+        portfolio.addAsset(asset("B1", Asset.AssetType.BOND, 100, 100));
+        portfolio.setCashBalance(10_000);
+        RebalanceOptimizer.Constraints constraints = new RebalanceOptimizer.Constraints(0.001, 0.0);
+        constraints.setTarget(Asset.AssetType.STOCK, 0.5);
+        constraints.setTarget(Asset.AssetType.BOND, 0.5);
+        constraints.setCostRate("S2", 0.5);
+        RebalanceOptimizer.Plan plan = RebalanceOptimizer.optimize(portfolio, null, constraints, null);
+        Map<String, Double> after = valuesAfter(portfolio, plan);
+        check(plan.isOnTarget() && after.get("S2") == 5_000.0 && after.get("S1") > 5_000.0,
+            "the cheap holding takes the whole trade");
+
+        constraints.setLimits("S1", 0.0, 0.2);
+        plan = RebalanceOptimizer.optimize(portfolio, null, constraints, null);
+        after = valuesAfter(portfolio, plan);
+        check(plan.isOnTarget() && Math.abs(after.get("S1") - 0.2 * portfolio.getTotalValue()) < 1e-6
+            && after.get("S2") > 5_000.0, "the expensive one trades once the cheap one is capped");
+        System.out.println();
+    }
+
+    // Without targets of its own, the plan follows the risk profile
+    private static void checkProfileTargets() {
+        System.out.println("Risk profile targets");
+        Portfolio portfolio = samplePortfolio(new Random(40), 30);
+        portfolio.addAsset(asset("MF0", Asset.AssetType.MUTUAL_FUND, 100, 50));
+        RiskProfile profile = new RiskProfile(RiskProfile.RiskTolerance.BALANCED, 45, 15);
+        RebalanceOptimizer.Plan plan = RebalanceOptimizer.optimize(portfolio, profile);
+        double stocks = profile.getRecommendedStockAllocation();
+        double[] shares = { stocks * 0.6, stocks * 0.3, stocks * 0.1, profile.getRecommendedBondAllocation() };
+        Asset.AssetType[] types = { Asset.AssetType.STOCK, Asset.AssetType.ETF, Asset.AssetType.MUTUAL_FUND,
+            Asset.AssetType.BOND };
+        double investable = 0.0;
+        for (Asset.AssetType type : types) investable += plan.getTargetValue(type);
+        double shareTotal = 0.0;
+        for (double share : shares) shareTotal += share;
+        boolean split = true;
+        for (int t = 0; t < types.length; t++) {
+            split &= within(plan.getTargetValue(types[t]), investable * shares[t] / shareTotal, 1e-9);
+        }
+        check(split, "targets follow the profile's split of stocks, ETFs, funds and bonds");
+        check(plan.isOnTarget(), "and are reached");
+        System.out.println();
+    }
+
+    private static void checkInvalidConstraints() {
+        System.out.println("Invalid constraints");
+        RebalanceOptimizer.Constraints constraints = new RebalanceOptimizer.Constraints();
+        constraints.setTarget(Asset.AssetType.STOCK, 0.7);
+        check(rejects(() -> constraints.setTarget(Asset.AssetType.BOND, 0.4)), "targets over 100% are rejected");
+        check(!rejects(() -> constraints.setTarget(Asset.AssetType.ETF, 0.3)), "and the rejected target is not kept");
+        check(rejects(() -> constraints.setLimits("X", 0.5, 0.2)), "a minimum above the maximum is rejected");
+        check(rejects(() -> constraints.setDefaultLimits(0.0, 1.5)), "a maximum above 1 is rejected");
+        check(rejects(() -> constraints.setCostRate("X", -0.01)), "a negative cost rate is rejected");
+        check(rejects(() -> new RebalanceOptimizer.Constraints(0.001, 1.0)), "a cash buffer of 100% is rejected");
+        System.out.println();
+    }
+
+    // Try moving a few dollars from each holding to each other holding of its type
+    private static boolean exchangeLowersCost(Portfolio portfolio, RebalanceOptimizer.Constraints constraints,
+                                              RebalanceOptimizer.Plan plan) {
+        Map<String, Double> after = valuesAfter(portfolio, plan);
+        List<Asset> assets = new ArrayList<>(portfolio.getAssetsView().values());
+        double total = portfolio.getTotalValue();
+        double average = total / assets.size();
+        for (Asset from : assets) {
+            for (Asset to : assets) {
+                if (from == to || from.getType() != to.getType()) continue;
+                for (double amount : new double[] { 0.01, 1.0, 100.0 }) {
+                    double x = after.get(from.getSymbol()) - amount;
+                    double y = after.get(to.getSymbol()) + amount;
+                    if (x < minWeight(from) * total || y > maxWeight(to) * total) continue;
+                    double before = cost(from, after.get(from.getSymbol()), constraints, average)
+                        + cost(to, after.get(to.getSymbol()), constraints, average);
+                    double moved = cost(from, x, constraints, average) + cost(to, y, constraints, average);
+                    if (moved < before - 1e-7 * Math.max(1.0, before)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // The optimizer's cost of moving a holding to a value
+    private static double cost(Asset asset, double value, RebalanceOptimizer.Constraints constraints, double average) {
+        double trade = value - asset.getCurrentValue();
+        double scale = Math.max(asset.getCurrentValue() + average, 1.0);
+        double rate = asset.getSymbol().equals("STK3") ? 0.02 : constraints.getCostRate();
+        return rate * Math.abs(trade) + trade * trade / (2 * scale);
+    }
+
+    private static double minWeight(Asset asset) {
+        return asset.getSymbol().equals("ETF2") ? 0.01 : 0.0;
+    }
+
+    private static double maxWeight(Asset asset) {
+        return asset.getSymbol().equals("ETF2") ? 0.015 : 0.08;
+    }
+
+    // Value of each holding once the plan's orders are filled
+    private static Map<String, Double> valuesAfter(Portfolio portfolio, RebalanceOptimizer.Plan plan) {
+        Map<String, Double> values = new HashMap<>();
+        portfolio.forEachAsset(asset -> values.put(asset.getSymbol(), asset.getCurrentValue()));
+        for (RebalanceOptimizer.Order order : plan.getOrders()) {
+            double signed = order.getType() == Transaction.TransactionType.BUY ? order.getValue() : -order.getValue();
+            values.merge(order.getSymbol(), signed, Double::sum);
+        }
+        return values;
+    }
+
+    private static boolean sameValues(Map<String, Double> a, Map<String, Double> b) {
+        for (Map.Entry<String, Double> entry : a.entrySet()) {
+            if (Math.abs(entry.getValue() - b.get(entry.getKey())) > 1e-3) return false;
+        }
+        return a.size() == b.size();
+    }
+
+    // Mostly stocks, some bonds and ETFs, and a little cash
+    private static Portfolio samplePortfolio(Random random, int holdings) {
+        Portfolio portfolio = new Portfolio("R", "Rebalance", "U");
+        for (int i = 0; i < holdings; i++) {
+            String symbol;
+            Asset.AssetType type;
+            if (i % 5 < 3) {
+                symbol = "STK" + i;
+                type = Asset.AssetType.STOCK;
+            } else if (i % 5 == 3) {
+                symbol = "BND" + (i / 5);
+                type = Asset.AssetType.BOND;
+            } else {
+                symbol = "ETF" + (i / 5);
+                type = Asset.AssetType.ETF;
+            }
+            portfolio.addAsset(asset(symbol, type, 10 + random.nextInt(200), 20 + random.nextInt(300)));
+        }
+        portfolio.setCashBalance(portfolio.getTotalValue() * 0.02);
+        return portfolio;
+    }
+
+    private static RebalanceOptimizer.Constraints sampleConstraints() {
+        RebalanceOptimizer.Constraints constraints = new RebalanceOptimizer.Constraints(0.001, 0.05);
+        constraints.setDefaultLimits(0.0, 0.08);
+        constraints.setTarget(Asset.AssetType.STOCK, 0.5);
+        constraints.setTarget(Asset.AssetType.BOND, 0.3);
+        constraints.setTarget(Asset.AssetType.ETF, 0.2);
+        return constraints;
+    }
+
+    private static Asset asset(String symbol, Asset.AssetType type, double quantity, double price) {
+        return new Asset(symbol, symbol + " Holding", type, quantity, price, price, PURCHASED, "General");
+    }
+
+    private static boolean within(double actual, double expected, double tolerance) {
+        return Math.abs(actual - expected) <= tolerance * Math.max(1.0, Math.abs(expected));
+    }
+
+    private static boolean rejects(Runnable action) {
+        try {
+            action.run();
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    private static void check(boolean condition, String description) {
+        if (condition) {
+            System.out.println("  ✓ " + description);
+        } else {
+            System.out.println("  ✗ " + description);
+            failed = true;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package test;
+
+import logic.PerformanceAnalyzer;
+import logic.PortfolioMetrics;
+import logic.ReturnEngine;
+import model.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Regression checks for ReturnEngine on portfolios whose holdings and cash
+ * were not all built from transactions: holdings added directly and a cash
+ * balance that was set must count as an opening position, not as gains.
+ *
+ * Usage: java -cp out test.ReturnEngineTest
+ */
+public class ReturnEngineTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final LocalDate START = TODAY.minusYears(2);
+    private static final LocalDate MIDDLE = TODAY.minusYears(1);
+
+    private static boolean failed;
+
+    public static void main(String[] args) {
+        System.out.println("╔═══════════════════════════════════════════════════╗");
+        System.out.println("║  RETURN ENGINE - REGRESSION TEST                 ║");
+        System.out.println("╚═══════════════════════════════════════════════════╝\n");
+
+        checkExplainedHistory();
+        checkOpeningPosition();
+        checkPriceHistory();
+        checkUnexplained();
+
+        if (failed) {
+            System.out.println("\n✗ RETURN ENGINE TEST FAILED");
+            System.exit(1);
+        }
+        System.out.println("\n✓ ALL CHECKS PASSED");
+    }
+
+    // Deposit 10,000 and buy 100 at 100 two years ago; the price is now 121
+    private static void checkExplainedHistory() {
+        System.out.println("History that explains the portfolio");
+        Portfolio portfolio = new Portfolio("P", "Explained", "U", START);
+        portfolio.addAsset(new Asset("ABC", "ABC", Asset.AssetType.STOCK, 100, 100, 121, START, "General"));
+        portfolio.recordTransaction(transaction("D1", Transaction.TransactionType.DEPOSIT, 1, 10_000, START));
+        portfolio.recordTransaction(transaction("B1", Transaction.TransactionType.BUY, 100, 100, START));
+
+        ReturnEngine.Returns returns = ReturnEngine.calculate(portfolio);
+        double expected = Math.pow(1.21, 365.0 / days(START, TODAY)) - 1;
+        check(close(returns.getMoneyWeightedReturn(), expected), "XIRR is 21% over two years, compounded");
+        check(close(returns.getTimeWeightedReturn(), 0.21), "TWR is 21%");
+        check(returns.getFlowCount() == 1, "the one deposit is the only flow");
+        System.out.println();
+    }
+
+    // The same holding added directly, a cash balance set, and one later deposit
+    private static void checkOpeningPosition() {
+        System.out.println("Holdings and cash the history does not explain");
+        Portfolio withoutDeposit = seeded("Without");
+        Portfolio withDeposit = seeded("With");
+        withDeposit.recordTransaction(transaction("D1", Transaction.TransactionType.DEPOSIT, 1, 1_000, MIDDLE));
+
+        // Opening 15,000 two years ago, 1,000 a year ago, 18,100 today
+        ReturnEngine.Returns returns = ReturnEngine.calculate(withDeposit);
+        double rate = returns.getMoneyWeightedReturn();
+        double npv = -15_000 * Math.pow(1 + rate, days(START, TODAY) / 365.0)
+            - 1_000 * Math.pow(1 + rate, days(MIDDLE, TODAY) / 365.0) + 18_100;
+        check(Math.abs(npv) < 1e-6, String.format("XIRR %.2f%% prices the opening position as a deposit", rate * 100));
+        check(close(returns.getTimeWeightedReturn(), 18_100.0 / 16_000.0 - 1),
+            String.format("TWR %.2f%% starts from the opening value", returns.getTimeWeightedReturn() * 100));
+        check(close(returns.getEndingValue(), withDeposit.getTotalValue()), "it ends at the live value");
+
+        double without = PerformanceAnalyzer.calculateAnnualizedReturn(withoutDeposit);
+        double with = PerformanceAnalyzer.calculateAnnualizedReturn(withDeposit);
+        check(without > 0 && without < 10 && with > 0 && with < 10,
+            String.format("annualized return is %.2f%% without the deposit and %.2f%% with it", without, with));
+        check(PerformanceAnalyzer.calculateTimeWeightedReturn(withDeposit) < 10,
+            "annualized TWR stays below 10%");
+        check(close(PerformanceAnalyzer.calculateAnnualizedReturn(PortfolioMetrics.collect(withDeposit)), with),
+            "PortfolioMetrics gives the same annualized return");
+        System.out.println();
+    }
+
+    // Seeded holdings are valued from the price history too
+    private static void checkPriceHistory() {
+        System.out.println("Opening position valued from a price history");
+        Portfolio portfolio = seeded("History");
+        portfolio.recordTransaction(transaction("D1", Transaction.TransactionType.DEPOSIT, 1, 1_000, MIDDLE));
+        PriceHistory prices = new PriceHistory();
+        prices.append("ABC", START, 100);
+        prices.append("ABC", MIDDLE.minusDays(1), 110);
+        prices.append("ABC", TODAY.minusDays(1), 121);
+
+        ReturnEngine.Returns returns = ReturnEngine.calculate(portfolio, prices, TODAY, null);
+        check(close(returns.getEndingValue(), 18_100), "the ending value includes the seeded holding");
+        check(close(returns.getTimeWeightedReturn(), 16_000.0 / 15_000.0 * 18_100.0 / 17_000.0 - 1),
+            "TWR links the periods at history prices");
+
+        // Priced from the history, the replay is the book of record
+        Portfolio tradesOnly = new Portfolio("P", "Trades", "U", START);
+        tradesOnly.recordTransaction(transaction("D1", Transaction.TransactionType.DEPOSIT, 1, 10_000, START));
+        tradesOnly.recordTransaction(transaction("B1", Transaction.TransactionType.BUY, 100, 100, START));
+        ReturnEngine.Returns replayed = ReturnEngine.calculate(tradesOnly, prices, TODAY, null);
+        check(close(replayed.getEndingValue(), 12_100) && close(replayed.getTimeWeightedReturn(), 0.21),
+            "trades without holdings are valued as replayed");
+        System.out.println();
+    }
+
+    // Less held than the history says: no opening position explains it
+    private static void checkUnexplained() {
+        System.out.println("Holdings removed outside the history");
+        Portfolio removed = new Portfolio("P", "Removed", "U", START);
+        removed.recordTransaction(transaction("D1", Transaction.TransactionType.DEPOSIT, 1, 10_000, START));
+        removed.recordTransaction(transaction("B1", Transaction.TransactionType.BUY, 100, 100, START));
+        check(Double.isNaN(ReturnEngine.calculate(removed).getMoneyWeightedReturn()),
+            "a bought holding that is gone gives no XIRR");
+
+        Portfolio drained = seeded("Drained");
+        drained.recordTransaction(transaction("D1", Transaction.TransactionType.DEPOSIT, 1, 1_000, MIDDLE));
+        drained.setCashBalance(0);
+        check(Double.isNaN(ReturnEngine.calculate(drained).getMoneyWeightedReturn()),
+            "less cash than the deposits gives no XIRR");
+
+        double years = days(START, TODAY) / 365.25;
+        double compounded = (Math.pow(1 + drained.getTotalGainLossPercentage() / 100.0, 1.0 / years) - 1) * 100.0;
+        check(close(PerformanceAnalyzer.calculateAnnualizedReturn(drained), compounded),
+            "the annualized return falls back to compounding the total gain");
+        check(PerformanceAnalyzer.calculateTimeWeightedReturn(drained) == 0.0, "the TWR is reported as 0");
+        System.out.println();
+    }
+
+    // 100 ABC bought at 100 two years ago, now 121, and 5,000 cash, none of it from transactions
+    private static Portfolio seeded(String name) {
+        Portfolio portfolio = new Portfolio("P", name, "U", START);
+        portfolio.addAsset(new Asset("ABC", "ABC", Asset.AssetType.STOCK, 100, 100, 121, START, "General"));
+        portfolio.setCashBalance(5_000);
+        return portfolio;
+    }
+
+    private static Transaction transaction(String id, Transaction.TransactionType type, double quantity,
+                                           double price, LocalDate date) {
+        LocalDateTime timestamp = date.atTime(12, 0);
+        return new Transaction(id, type, type == Transaction.TransactionType.BUY ? "ABC" : "CASH",
+            quantity, price, timestamp, "Test");
+    }
+
+    private static long days(LocalDate from, LocalDate to) {
+        return to.toEpochDay() - from.toEpochDay();
+    }
+
+    private static boolean close(double actual, double expected) {
+        return Math.abs(actual - expected) <= 1e-9 * Math.max(1.0, Math.abs(expected));
+    }
+
+    private static void check(boolean condition, String description) {
+        if (condition) {
+            System.out.println("  ✓ " + description);
+        } else {
+            System.out.println("  ✗ " + description);
+            failed = true;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package test;
+
+import data.SnapshotReader;
+import data.SnapshotWriter;
+import model.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Round-trip checks for the binary snapshot: users, risk profiles,
+ * portfolios, holdings and transaction history read back exactly as
+ * written, whether the whole file is read or one user or portfolio is
+ * looked up. Covers amounts the fixed-point encoding cannot hold, dates
+ * before the portfolio was created, sub-second timestamps, non-ASCII text,
+ * records larger than the writer's buffer, snapshots without history, and
+ * files that are unfinished or damaged.
+ *
+ * Usage: java -cp out test.SnapshotTest
+ */
+public class SnapshotTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 2, 9, 30);
+
+    // Amounts that fit four decimal places, and ones that must be stored as raw doubles
+    private static final double[] AMOUNTS = {
+        0.0, -0.0, 1.0, 0.1, 12.3456, -250.75, 1e-9, 1.0 / 3.0, 123456789.0123,
+        4.5e15, -7e20, Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY
+    };
+
+    private static boolean failed;
+    private static final List<File> files = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("╔═══════════════════════════════════════════════════╗");
+        System.out.println("║  BINARY SNAPSHOT - ROUND TRIP TEST               ║");
+        System.out.println("╚═══════════════════════════════════════════════════╝\n");
+
+        try {
+            checkRoundTrip();
+            checkLookups();
+            checkWithoutHistory();
+            checkRejectedFiles();
+        } finally {
+            for (File file : files) file.delete();
+        }
+
+        if (failed) {
+            System.out.println("\n✗ SNAPSHOT TEST FAILED");
+            System.exit(1);
+        }
+        System.out.println("\n✓ ALL CHECKS PASSED");
+    }
+
+    // Every field of every user, read back in full
+    private static void checkRoundTrip() throws IOException {
+        System.out.println("Full round trip");
+        List<User> users = sampleUsers();
+        String file = newFile();
+        SnapshotWriter.write(file, users);
+
+        List<User> read = SnapshotReader.readAll(file);
+        check(read.size() == users.size(), users.size() + " users read back");
+        boolean same = read.size() == users.size();
+        for (int i = 0; same && i < users.size(); i++) {
+            same = sameUser(read.get(i), users.get(i));
+        }
+        check(same, "users are read back in the order written, field for field");
+
+        Portfolio large = users.get(2).getPortfolio("BIG");
+        Portfolio largeRead = read.get(2).getPortfolio("BIG");
+        check(largeRead != null && largeRead.getTransactionCount() == 60_000,
+            "a portfolio record larger than the write buffer is complete");
+        check(largeRead != null && sameDouble(largeRead.getTotalValue(), large.getTotalValue()),
+            "its totals are rebuilt from the holdings");
+        System.out.println();
+    }
+
+    // Random access by user and portfolio ID
+    private static void checkLookups() throws IOException {
+        System.out.println("Lookups");
+        List<User> users = sampleUsers();
+        String file = newFile();
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            writer.setCheckpointLsn(12345);
+            for (User user : users) writer.writeUser(user);
+            boolean rejected = false;
+            try {
+                writer.writeUser(users.get(0));
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            check(rejected, "writing the same user twice is refused");
+        }
+
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            check(reader.getCheckpointLsn() == 12345 && reader.hasHistory(), "the checkpoint LSN is kept");
+            List<String> sorted = new ArrayList<>();
+            for (User user : users) sorted.add(user.getUserId());
+            Collections.sort(sorted);
+            check(reader.getUserIds().equals(sorted), "user IDs are listed in sorted order");
+
+            check(sameUser(reader.readUser("U2"), users.get(1)), "one user is read on its own");
+            check(samePortfolio(reader.readPortfolio("U1", "P2"), users.get(0).getPortfolio("P2")),
+                "one portfolio is read without its owner");
+            check(samePortfolio(reader.readPortfolio("U1", "P1"), users.get(0).getPortfolio("P1")),
+                "lookups in any order read the same data");
+            check(reader.readUser("NOBODY") == null && reader.readPortfolio("U1", "NONE") == null
+                && reader.readPortfolio("NOBODY", "P1") == null, "missing users and portfolios are null");
+        }
+        System.out.println();
+    }
+
+    // Holdings, cash and net deposits kept; transactions dropped
+    private static void checkWithoutHistory() throws IOException {
+        System.out.println("Snapshots without history");
+        List<User> users = sampleUsers();
+        String file = newFile();
+        try (SnapshotWriter writer = new SnapshotWriter(file, false)) {
+            for (User user : users) writer.writeUser(user);
+        }
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            check(!reader.hasHistory() && reader.getCheckpointLsn() == 0, "the file says it has no history");
+            Portfolio expected = users.get(0).getPortfolio("P1");
+            Portfolio actual = reader.readPortfolio("U1", "P1");
+            check(actual.getTransactionCount() == 0, "no transactions are read");
+            check(sameHoldings(actual, expected), "holdings are read back");
+            check(sameDouble(actual.getCashBalance(), expected.getCashBalance())
+                && sameDouble(actual.getNetDeposits(), expected.getNetDeposits()),
+                "cash and net deposits are kept without the history they came from");
+        }
+        System.out.println();
+    }
+
+    // Unfinished, truncated and foreign files
+    private static void checkRejectedFiles() throws IOException {
+        System.out.println("Rejected files");
+        String file = newFile();
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            writer.writeUser(sampleUsers().get(0));
+            check(refused(file), "a snapshot that is still being written is refused");
+        }
+        check(!refused(file), "once closed it opens");
+
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(20);
+        }
+        check(refused(file), "a truncated snapshot is refused");
+
+        String text = newFile();
+        Files.write(new File(text).toPath(), "Symbol,Name,Type\nAAPL,Apple,STOCK\n".repeat(10).getBytes());
+        check(refused(text), "a file that is not a snapshot is refused");
+        System.out.println();
+    }
+
+    private static boolean refused(String file) {
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            reader.getUserIds();
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    // Three users: awkward values, no risk profile or portfolios, and a large history
+    private static List<User> sampleUsers() {
+        User first = new User("U1", "zoë", "zoe@example.com", "Zoë Ünal-Søndergård 北京",
+            START.minusYears(3).withNano(123_456_789), START);
+        first.setRiskProfile(new RiskProfile(RiskProfile.RiskTolerance.GROWTH, 41, 20, 185_000.5, 0.15));
+
+        Portfolio p1 = new Portfolio("P1", "Retirement – €", "U1", LocalDate.of(2020, 6, 1));
+        for (int i = 0; i < AMOUNTS.length; i++) {
+            double amount = AMOUNTS[i];
+            p1.addAsset(new Asset("S" + i, "Asset " + i + " ✓", Asset.AssetType.values()[i % Asset.AssetType.values().length],
+                amount, Math.abs(amount) + 1, amount, LocalDate.of(2020, 6, 1).plusDays(37 * i - 300),
+                i % 2 == 0 ? "Technology" : "Énergie"));
+            p1.recordTransaction(new Transaction("T" + i, Transaction.TransactionType.values()[i % 6], "S" + i,
+                amount, 1.5, START.minusYears(6).plusSeconds(977L * i * (i % 3 == 0 ? -1 : 1))
+                    .withNano(i % 2 == 0 ? 0 : i * 1000), i % 4 == 0 ? null : "Note, \"quoted\" " + i));
+        }
+        p1.setCashBalance(-1234.5678);
+        p1.setNetDeposits(0.1 + 0.2);
+        first.addPortfolio(p1);
+
+        Portfolio p2 = new Portfolio("P2", "", "U1", LocalDate.of(1999, 12, 31));
+        p2.recordTransaction(new Transaction("D1", Transaction.TransactionType.DEPOSIT, "CASH", 1, 5000,
+            LocalDateTime.of(1999, 12, 31, 23, 59, 59), ""));
+        first.addPortfolio(p2);
+
+        User second = new User("U2", "empty", "", "No Portfolios", START, START);
+
+        User third = new User("A3", "bulk", "bulk@example.com", "Bulk Trader", START, START.plusDays(1));
+        third.setRiskProfile(new RiskProfile(RiskProfile.RiskTolerance.CONSERVATIVE, 70, 2));
+        Portfolio big = new Portfolio("BIG", "Large", "A3", LocalDate.of(2015, 1, 1));
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            big.addAsset(new Asset("B" + i, "Bulk " + i, Asset.AssetType.STOCK, 1 + random.nextInt(1000),
+                random.nextInt(100_000) / 100.0, random.nextInt(100_000) / 100.0,
+                LocalDate.of(2015, 1, 1).plusDays(random.nextInt(3000)), "Sector " + i % 11));
+        }
+        for (int i = 0; i < 60_000; i++) {
+            big.recordTransaction(new Transaction("X" + i, Transaction.TransactionType.BUY, "B" + i % 500,
+                1 + random.nextInt(100), random.nextInt(1_000_000) / 100.0,
+                LocalDateTime.of(2015, 1, 1, 0, 0).plusMinutes(i * 7L), "Bulk"));
+        }
+        third.addPortfolio(big);
+
+        return Arrays.asList(first, second, third);
+    }
+
+    private static boolean sameUser(User actual, User expected) {
+        if (actual == null || !actual.getUserId().equals(expected.getUserId())
+                || !actual.getUsername().equals(expected.getUsername())
+                || !actual.getEmail().equals(expected.getEmail())
+                || !actual.getFullName().equals(expected.getFullName())
+                || !actual.getCreatedAt().equals(expected.getCreatedAt())
+                || !actual.getLastLoginAt().equals(expected.getLastLoginAt())
+                || !sameProfile(actual.getRiskProfile(), expected.getRiskProfile())
+                || actual.getPortfolioCount() != expected.getPortfolioCount()) {
+            return false;
+        }
+        for (Portfolio portfolio : expected.getPortfoliosView().values()) {
+            if (!samePortfolio(actual.getPortfolio(portfolio.getPortfolioId()), portfolio)) return false;
+        }
+        return true;
+    }
+
+    private static boolean sameProfile(RiskProfile actual, RiskProfile expected) {
+        if (actual == null || expected == null) return actual == expected;
+        return actual.getTolerance() == expected.getTolerance() && actual.getAge() == expected.getAge()
+            && actual.getInvestmentHorizonYears() == expected.getInvestmentHorizonYears()
+            && sameDouble(actual.getAnnualIncome(), expected.getAnnualIncome())
+            && sameDouble(actual.getLiquidityNeeds(), expected.getLiquidityNeeds());
+    }
+
+    private static boolean samePortfolio(Portfolio actual, Portfolio expected) {
+        if (actual == null || !actual.getPortfolioId().equals(expected.getPortfolioId())
+                || !actual.getPortfolioName().equals(expected.getPortfolioName())
+                || !actual.getOwnerId().equals(expected.getOwnerId())
+                || !actual.getCreationDate().equals(expected.getCreationDate())
+                || !sameDouble(actual.getCashBalance(), expected.getCashBalance())
+                || !sameDouble(actual.getNetDeposits(), expected.getNetDeposits())
+                || !sameHoldings(actual, expected)
+                || actual.getTransactionCount() != expected.getTransactionCount()) {
+            return false;
+        }
+        for (int i = 0; i < actual.getTransactionCount(); i++) {
+            Transaction a = actual.getTransactionsView().get(i);
+            Transaction e = expected.getTransactionsView().get(i);
+            if (!a.getId().equals(e.getId()) || a.getType() != e.getType()
+                    || !a.getAssetSymbol().equals(e.getAssetSymbol())
+                    || !sameDouble(a.getQuantity(), e.getQuantity())
+                    || !sameDouble(a.getPricePerUnit(), e.getPricePerUnit())
+                    || !a.getTimestamp().equals(e.getTimestamp())
+                    || !Objects.equals(a.getNotes(), e.getNotes())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameHoldings(Portfolio actual, Portfolio expected) {
+        if (actual.getAssetCount() != expected.getAssetCount()) return false;
+        for (Asset e : expected.getAssetsView().values()) {
+            Asset a = actual.getAsset(e.getSymbol());
+            if (a == null || !a.getName().equals(e.getName()) || a.getType() != e.getType()
+                    || !a.getSector().equals(e.getSector())
+                    || !sameDouble(a.getQuantity(), e.getQuantity())
+                    || !sameDouble(a.getPurchasePrice(), e.getPurchasePrice())
+                    || !sameDouble(a.getCurrentPrice(), e.getCurrentPrice())
+                    || !a.getPurchaseDate().equals(e.getPurchaseDate())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Bit-for-bit, so -0.0 and NaN count
+    private static boolean sameDouble(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    private static String newFile() throws IOException {
+        File file = Files.createTempFile("snapshot-test", ".snap").toFile();
+        files.add(file);
+        return file.getPath();
+    }
+
+    private static void check(boolean condition, String description) {
+        if (condition) {
+            System.out.println("  ✓ " + description);
+        } else {
+            System.out.println("  ✗ " + description);
+            failed = true;
+        }
+    }
+}
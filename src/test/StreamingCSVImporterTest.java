@@ -0,0 +1,218 @@
+package test;
+
+import data.ImportReport;
+import data.StreamingCSVImporter;
+import data.TransactionIdIndex;
+import model.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Correctness checks for StreamingCSVImporter: bad rows are rejected with
+ * their line numbers without stopping the load, a parallel import gives
+ * the same assets and report as a sequential one at every parallelism
+ * level, and transaction imports skip IDs already in the portfolio or
+ * earlier in the file.
+ *
+ * Usage: java -cp out test.StreamingCSVImporterTest
+ */
+public class StreamingCSVImporterTest {
+
+    private static final String ASSET_HEADER =
+        "Symbol,Name,Type,Quantity,Purchase Price,Current Price,Purchase Date,Sector";
+    private static final String TRANSACTION_HEADER =
+        "ID,Type,Asset Symbol,Quantity,Price Per Unit,Total Amount,Timestamp,Notes";
+    private static final String[] TYPES = { "STOCK", "BOND", "ETF", "MUTUAL_FUND", "COMMODITY" };
+    private static final String[] SECTORS = { "Technology", "Healthcare", "Energy", "Financials" };
+
+    private static boolean failed;
+    private static final List<File> files = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("╔═══════════════════════════════════════════════════╗");
+        System.out.println("║  STREAMING CSV IMPORTER - CORRECTNESS TEST       ║");
+        System.out.println("╚═══════════════════════════════════════════════════╝\n");
+
+        try {
+            checkRowErrors();
+            checkParallelImport();
+            checkTransactionImport();
+        } finally {
+            for (File file : files) file.delete();
+        }
+
+        if (failed) {
+            System.out.println("\n✗ STREAMING CSV IMPORTER TEST FAILED");
+            System.exit(1);
+        }
+        System.out.println("\n✓ ALL CHECKS PASSED");
+    }
+
+    // Each kind of bad row, reported at its line and skipped over
+    private static void checkRowErrors() throws IOException {
+        System.out.println("Rejected rows");
+        String file = write(ASSET_HEADER + "\r\n"
+            + "AAPL,Apple Inc.,STOCK,10,150.00,175.50,2023-01-15,Technology\r\n"
+            + "BAD1,Unknown Type,SHARE,10,1,1,2023-01-15,Technology\n"
+            + "BAD2,Too Few Fields,STOCK,10,1\n"
+            + "\n"
+            + "BAD3,Bad Number,STOCK,ten,1,1,2023-01-15,Technology\n"
+            + "BAD4,Bad Date,BOND,10,1,1,2023-02-30,Government\n"
+            + "VTI,Vanguard Total,ETF,5.5,200,210.25,2022-06-01\n"
+            + "GLD,Gold Trust,COMMODITY,0.25,30000,42000.125,2021-11-09,Precious Metals");
+
+        List<Asset> assets = new ArrayList<>();
+        ImportReport report = StreamingCSVImporter.importAssets(file, assets::add);
+        check(report.getRowsRead() == 7, "blank lines and the header are not rows (7 read)");
+        check(report.getRowsImported() == 3 && assets.size() == 3, "the 3 good rows are imported");
+        check(report.getErrorCount() == 4, "the 4 bad rows are rejected");
+
+        long[] lines = new long[report.getErrors().size()];
+        for (int i = 0; i < lines.length; i++) lines[i] = report.getErrors().get(i).getLineNumber();
+        check(Arrays.equals(lines, new long[] { 3, 4, 6, 7 }), "each rejection names its line: " + Arrays.toString(lines));
+        check(report.getErrors().get(0).getMessage().contains("SHARE"), "the message names the bad value");
+
+        Asset apple = assets.get(0);
+        check(apple.getSymbol().equals("AAPL") && apple.getQuantity() == 10 && apple.getPurchasePrice() == 150
+            && apple.getCurrentPrice() == 175.5 && apple.getPurchaseDate().toString().equals("2023-01-15")
+            && apple.getSector().equals("Technology"), "a CRLF row parses every field");
+        check(assets.get(1).getSector().equals("General") && assets.get(1).getQuantity() == 5.5,
+            "a missing sector defaults to General");
+        check(assets.get(2).getCurrentPrice() == 42000.125 && assets.get(2).getType() == Asset.AssetType.COMMODITY,
+            "the last row without a newline is read");
+        System.out.println();
+    }
+
+    // A file of several megabytes, so it splits into many chunks
+    private static void checkParallelImport() throws IOException {
+        System.out.println("Parallel import matches sequential");
+        StringBuilder csv = new StringBuilder(ASSET_HEADER).append('\n');
+        Random random = new Random(42);
+        int rows = 80_000;
+        int bad = 0;
+        for (int i = 0; i < rows; i++) {
+            if (i % 997 == 13) {
+                csv.append("BAD").append(i).append(",Broken,STOCK,1,x,1,2020-01-01,Energy\n");
+                bad++;
+                continue;
+            }
+            if (i % 1009 == 7) csv.append('\n');
+            csv.append("SYM").append(i).append(",Name ").append(i).append(',')
+               .append(TYPES[random.nextInt(TYPES.length)]).append(',')
+               .append(random.nextInt(10_000) / 4.0).append(',')
+               .append(1 + random.nextInt(100_000) / 100.0).append(',')
+               .append(1 + random.nextInt(100_000) / 100.0).append(',')
+               .append(2000 + random.nextInt(24)).append("-0").append(1 + random.nextInt(9))
+               .append('-').append(10 + random.nextInt(18)).append(',')
+               .append(SECTORS[random.nextInt(SECTORS.length)]).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        String file = write(csv.toString());
+        check(new File(file).length() > 4L * 1024 * 1024, "the file is larger than four chunks");
+
+        List<Asset> expected = new ArrayList<>();
+        ImportReport sequential = StreamingCSVImporter.importAssets(file, expected::add);
+        check(sequential.getErrorCount() == bad && sequential.getRowsImported() == rows - bad,
+            "the sequential import rejects the " + bad + " bad rows");
+
+        for (int parallelism : new int[] { 1, 2, 3, 8 }) {
+            List<Asset> actual = new ArrayList<>();
+            ImportReport report = StreamingCSVImporter.importAssetsParallel(file, parallelism, actual::add);
+            check(sameAssets(actual, expected), parallelism + " thread(s): same assets in file order");
+            check(sameReport(report, sequential), parallelism + " thread(s): same counts and error lines");
+        }
+        System.out.println();
+    }
+
+    // Duplicates in the portfolio, within one file and across files sharing an index
+    private static void checkTransactionImport() throws IOException {
+        System.out.println("Transaction import");
+        Portfolio portfolio = new Portfolio("P1", "Test", "U");
+        portfolio.recordTransaction(new Transaction("T1", Transaction.TransactionType.DEPOSIT, "CASH",
+            1, 1000, "Existing"));
+
+        String first = write(TRANSACTION_HEADER + "\n"
+            + "T1,DEPOSIT,CASH,1,1000,1000,2024-01-02 09:30:00,Already held\n"
+            + "T2,BUY,AAPL,10,150,1500,2024-01-03 10:00:00,Buy, with a comma\n"
+            + "T3,DIVIDEND,AAPL,1,25,25,2024-02-01 00:00:00\n"
+            + "T2,BUY,AAPL,10,150,1500,2024-01-03 10:00:00,Repeated in the file\n"
+            + "T4,TRANSFER,AAPL,1,1,1,2024-02-01 00:00:00,Bad type\n"
+            + ",FEE,CASH,1,5,5,2024-02-01 00:00:00,No ID\n"
+            + "T5,FEE,CASH,1,5,5,2024-02-02 12:00:00,\n");
+        ImportReport report = StreamingCSVImporter.importTransactions(first, portfolio);
+        check(report.getRowsImported() == 3 && report.getRowsSkipped() == 2 && report.getErrorCount() == 2,
+            "3 imported, 2 duplicates skipped, 2 rejected: " + report);
+        check(report.getErrors().get(0).getLineNumber() == 6 && report.getErrors().get(1).getLineNumber() == 7,
+            "rejections name lines 6 and 7");
+        check(portfolio.getTransactionCount() == 4, "the portfolio holds each ID once");
+        check(portfolio.getTransactionsView().get(1).getNotes().equals("Buy, with a comma"),
+            "the notes keep their commas");
+        check(portfolio.getCashBalance() == 1000 - 1500 + 25 - 5, "cash reflects only the imported rows");
+
+        ImportReport again = StreamingCSVImporter.importTransactions(first, portfolio);
+        check(again.getRowsImported() == 0 && again.getRowsSkipped() == 5, "re-importing the file adds nothing");
+
+        TransactionIdIndex index = new TransactionIdIndex(portfolio);
+        String second = write(TRANSACTION_HEADER + "\n"
+            + "T5,FEE,CASH,1,5,5,2024-02-02 12:00:00,Overlap\n"
+            + "T6,SELL,AAPL,5,160,800,2024-03-01 15:30:00,Sell\n");
+        String third = write(TRANSACTION_HEADER + "\n"
+            + "T6,SELL,AAPL,5,160,800,2024-03-01 15:30:00,Overlap\n"
+            + "T7,WITHDRAWAL,CASH,1,100,100,2024-03-02 09:00:00,Withdraw\n");
+        ImportReport secondReport = StreamingCSVImporter.importTransactions(second, portfolio, index);
+        ImportReport thirdReport = StreamingCSVImporter.importTransactions(third, portfolio, index);
+        check(secondReport.getRowsImported() == 1 && thirdReport.getRowsImported() == 1
+            && secondReport.getRowsSkipped() == 1 && thirdReport.getRowsSkipped() == 1,
+            "a shared index skips rows loaded by an earlier file");
+        check(index.size() == portfolio.getTransactionCount() && portfolio.getTransactionCount() == 6,
+            "the index tracks every recorded ID");
+        System.out.println();
+    }
+
+    private static boolean sameAssets(List<Asset> actual, List<Asset> expected) {
+        if (actual.size() != expected.size()) return false;
+        for (int i = 0; i < actual.size(); i++) {
+            Asset a = actual.get(i);
+            Asset e = expected.get(i);
+            if (!a.getSymbol().equals(e.getSymbol()) || !a.getName().equals(e.getName())
+                    || a.getType() != e.getType() || a.getQuantity() != e.getQuantity()
+                    || a.getPurchasePrice() != e.getPurchasePrice() || a.getCurrentPrice() != e.getCurrentPrice()
+                    || !a.getPurchaseDate().equals(e.getPurchaseDate()) || !a.getSector().equals(e.getSector())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameReport(ImportReport actual, ImportReport expected) {
+        if (actual.getRowsRead() != expected.getRowsRead() || actual.getRowsImported() != expected.getRowsImported()
+                || actual.getErrorCount() != expected.getErrorCount()
+                || actual.getErrors().size() != expected.getErrors().size()) {
+            return false;
+        }
+        for (int i = 0; i < actual.getErrors().size(); i++) {
+            ImportReport.RowError a = actual.getErrors().get(i);
+            ImportReport.RowError e = expected.getErrors().get(i);
+            if (a.getLineNumber() != e.getLineNumber() || !a.getMessage().equals(e.getMessage())) return false;
+        }
+        return true;
+    }
+
+    private static String write(String content) throws IOException {
+        Path path = Files.createTempFile("import-test", ".csv");
+        files.add(path.toFile());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path.toString();
+    }
+
+    private static void check(boolean condition, String description) {
+        if (condition) {
+            System.out.println("  ✓ " + description);
+        } else {
+            System.out.println("  ✗ " + description);
+            failed = true;
+        }
+    }
+}
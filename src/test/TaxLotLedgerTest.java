@@ -0,0 +1,286 @@
+package test;
+
+import model.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Correctness checks for TaxLotLedger: which lots each relief method
+ * relieves, partial relief, vetoed sales, and the harvest query against
+ * a brute-force filter over every open lot.
+ *
+ * Usage: java -cp out test.TaxLotLedgerTest
+ */
+public class TaxLotLedgerTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+    private static final double EPSILON = 1e-9;
+
+    private static boolean failed;
+    private static int sequence;
+
+    public static void main(String[] args) {
+        System.out.println("╔═══════════════════════════════════════════════════╗");
+        System.out.println("║  TAX LOT LEDGER - CORRECTNESS TEST               ║");
+        System.out.println("╚═══════════════════════════════════════════════════╝\n");
+
+        checkRelief();
+        checkSpecificRelief();
+        checkPartialRelief();
+        checkVetoes();
+        checkHarvestCandidates();
+
+        if (failed) {
+            System.out.println("\n✗ TAX LOT LEDGER TEST FAILED");
+            System.exit(1);
+        }
+        System.out.println("\n✓ ALL CHECKS PASSED");
+    }
+
+    // Lots of 10 at 100 (day 0), 120 (day 10) and 90 (day 20); sell 15
+    private static void checkRelief() {
+        System.out.println("Relief order (lots at 100, 120, 90; sell 15)");
+        Object[][] cases = {
+            { TaxLotLedger.ReliefMethod.FIFO, new double[] { 0, 5, 10 } },
+            { TaxLotLedger.ReliefMethod.LIFO, new double[] { 10, 5, 0 } },
+            { TaxLotLedger.ReliefMethod.HIFO, new double[] { 5, 0, 10 } },
+        };
+        for (Object[] c : cases) {
+            TaxLotLedger.ReliefMethod method = (TaxLotLedger.ReliefMethod) c[0];
+            double[] expected = (double[]) c[1];
+            Portfolio portfolio = new Portfolio("P", "Relief", "U");
+            TaxLotLedger ledger = new TaxLotLedger(portfolio, method);
+            long[] ids = buyThree(portfolio, ledger);
+            portfolio.recordTransaction(sell("ABC", 15, 110, 30));
+            check(Arrays.equals(remaining(ledger, ids), expected),
+                method + " leaves " + Arrays.toString(expected) + " in the lots");
+            check(close(ledger.getQuantity("ABC"), 15), method + " leaves 15 held");
+        }
+        System.out.println();
+    }
+
+    private static void checkSpecificRelief() {
+        System.out.println("Specific lots");
+        Portfolio portfolio = new Portfolio("P", "Specific", "U");
+        TaxLotLedger ledger = new TaxLotLedger(portfolio, TaxLotLedger.ReliefMethod.SPECIFIC);
+        long[] ids = buyThree(portfolio, ledger);
+
+        Transaction sale = sell("ABC", 12, 110, 30);
+        ledger.designate(sale.getId(), ids[2], ids[0]);
+        portfolio.recordTransaction(sale);
+        check(Arrays.equals(remaining(ledger, ids), new double[] { 8, 10, 0 }),
+            "designated lots are relieved in the order given");
+
+        // A designation wins over the relief method
+        ledger.setReliefMethod(TaxLotLedger.ReliefMethod.FIFO);
+        Transaction designated = sell("ABC", 5, 110, 31);
+        ledger.designate(designated.getId(), ids[1]);
+        portfolio.recordTransaction(designated);
+        check(Arrays.equals(remaining(ledger, ids), new double[] { 8, 5, 0 }),
+            "a designation overrides FIFO");
+
+        ledger.setReliefMethod(TaxLotLedger.ReliefMethod.SPECIFIC);
+        int transactions = portfolio.getTransactionCount();
+        check(vetoed(portfolio, sell("ABC", 1, 110, 32)), "SPECIFIC without a designation is vetoed");
+        check(portfolio.getTransactionCount() == transactions, "the vetoed sale is not recorded");
+        System.out.println();
+    }
+
+    private static void checkPartialRelief() {
+        System.out.println("Partial relief");
+        Portfolio portfolio = new Portfolio("P", "Partial", "U");
+        TaxLotLedger ledger = new TaxLotLedger(portfolio, TaxLotLedger.ReliefMethod.FIFO);
+        long[] ids = buyThree(portfolio, ledger);
+
+        Transaction sale = sell("ABC", 4, 130, 40);
+        portfolio.recordTransaction(sale);
+        TaxLotLedger.TaxLot lot = ledger.getLot(ids[0]);
+        check(lot != null && close(lot.getQuantity(), 6), "the first lot keeps 6 of 10");
+        check(close(lot.getCostBasis(), 600), "its cost basis shrinks to 6 x 100");
+        check(ledger.getLotCount() == 3, "no lot is closed");
+
+        List<TaxLotLedger.Disposal> disposals = ledger.getDisposals();
+        check(disposals.size() == 1, "one disposal is recorded");
+        TaxLotLedger.Disposal disposal = disposals.get(0);
+        check(disposal.getLotId() == ids[0] && close(disposal.getQuantity(), 4), "it relieves 4 from the first lot");
+        check(close(disposal.getCostBasis(), 400) && close(disposal.getProceeds(), 520), "cost 400, proceeds 520");
+        check(close(ledger.getRealizedGain(), 120), "realized gain is 120");
+        check(sale.getId().equals(disposal.getTransactionId()), "the disposal names its sale");
+        check(lot.getPurchaseTransactionId().equals(disposal.getPurchaseTransactionId()),
+            "the disposal names the purchase that opened the lot");
+
+        // Finish the first lot and take part of the second in one sale
+        portfolio.recordTransaction(sell("ABC", 9, 130, 41));
+        check(ledger.getLot(ids[0]) == null, "an emptied lot is closed");
+        check(Arrays.equals(remaining(ledger, ids), new double[] { 0, 7, 10 }), "the second lot keeps 7");
+        System.out.println();
+    }
+
+    private static void checkVetoes() {
+        System.out.println("Vetoed sales");
+        Portfolio portfolio = new Portfolio("P", "Veto", "U");
+        portfolio.addAsset(new Asset("OLD", "Opening", Asset.AssetType.STOCK, 5, 50, 60, START, "General"));
+        TaxLotLedger ledger = new TaxLotLedger(portfolio, TaxLotLedger.ReliefMethod.FIFO);
+        long[] ids = buyThree(portfolio, ledger);
+        check(ledger.getLotCount() == 4 && close(ledger.getQuantity("OLD"), 5), "holdings open a lot each");
+        check(ledger.getLots("OLD").get(0).getPurchaseTransactionId() == null, "an opening lot has no purchase");
+
+        double cash = portfolio.getCashBalance();
+        int transactions = portfolio.getTransactionCount();
+        long version = portfolio.getVersion();
+        double[] before = remaining(ledger, ids);
+
+        check(vetoed(portfolio, sell("ABC", 31, 110, 30)), "a sale larger than the lots is vetoed");
+        check(vetoed(portfolio, sell("XYZ", 1, 110, 30)), "a sale of a symbol without lots is vetoed");
+        Transaction wrongSymbol = sell("ABC", 1, 110, 30);
+        ledger.designate(wrongSymbol.getId(), ledger.getLots("OLD").get(0).getId());
+        check(vetoed(portfolio, wrongSymbol), "a designated lot of another symbol is vetoed");
+        Transaction twice = sell("ABC", 15, 110, 30);
+        ledger.designate(twice.getId(), ids[0], ids[0]);
+        check(vetoed(portfolio, twice), "a lot designated twice is vetoed");
+        Transaction short_ = sell("ABC", 15, 110, 30);
+        ledger.designate(short_.getId(), ids[0]);
+        check(vetoed(portfolio, short_), "designated lots smaller than the sale are vetoed");
+
+        check(Arrays.equals(remaining(ledger, ids), before), "vetoed sales leave the lots unchanged");
+        check(ledger.getDisposals().isEmpty(), "vetoed sales record no disposal");
+        check(portfolio.getCashBalance() == cash, "vetoed sales leave the cash unchanged");
+        check(portfolio.getTransactionCount() == transactions, "vetoed sales are not recorded");
+        check(portfolio.getVersion() == version, "vetoed sales leave the version unchanged");
+        System.out.println();
+    }
+
+    // Random lots and prices, checked after buys and after sales
+    private static void checkHarvestCandidates() {
+        System.out.println("Harvest candidates against a brute-force filter");
+        Random random = new Random(42);
+        String[] symbols = { "AAA", "BBB", "CCC", "DDD", "EEE" };
+        Portfolio portfolio = new Portfolio("P", "Harvest", "U");
+        TaxLotLedger ledger = new TaxLotLedger(portfolio, TaxLotLedger.ReliefMethod.HIFO);
+        for (int i = 0; i < 2_000; i++) {
+            portfolio.recordTransaction(buy(symbols[random.nextInt(symbols.length)], 1 + random.nextInt(20),
+                50 + random.nextInt(10_000) / 100.0, random.nextInt(700)));
+        }
+        // Prices are set on holdings added after the ledger, so they open no lots
+        for (String symbol : symbols) {
+            portfolio.addAsset(new Asset(symbol, symbol, Asset.AssetType.STOCK, 1, 100, 100, START, "General"));
+        }
+
+        LocalDate asOf = START.plusDays(730);
+        int queries = 0;
+        int mismatches = 0;
+        int found = 0;
+        for (int round = 0; round < 4; round++) {
+            for (String symbol : symbols) {
+                portfolio.getAsset(symbol).setCurrentPrice(60 + random.nextInt(8_000) / 100.0);
+            }
+            for (double loss : new double[] { 0.0, 5.0, 20.0 }) {
+                for (int days : new int[] { 0, 30, 365 }) {
+                    List<TaxLotLedger.HarvestCandidate> candidates = ledger.getHarvestCandidates(loss, days, asOf);
+                    if (!sortedByLoss(candidates) || !ids(candidates).equals(bruteForce(portfolio, ledger, symbols,
+                            loss, days, asOf))) {
+                        mismatches++;
+                    }
+                    found += candidates.size();
+                    queries++;
+                }
+            }
+            // Relieve lots between rounds so removals are exercised too
+            ledger.setReliefMethod(round % 2 == 0 ? TaxLotLedger.ReliefMethod.HIFO : TaxLotLedger.ReliefMethod.FIFO);
+            for (int i = 0; i < 150; i++) {
+                String symbol = symbols[random.nextInt(symbols.length)];
+                double held = ledger.getQuantity(symbol);
+                if (held > 1) {
+                    portfolio.recordTransaction(sell(symbol, Math.min(held, 1 + random.nextInt(30)), 100, 700));
+                }
+            }
+        }
+        check(found > 0, found + " candidates found across the queries");
+        check(mismatches == 0, queries + " queries match the brute-force filter, largest loss first");
+        System.out.println();
+    }
+
+    private static Set<Long> bruteForce(Portfolio portfolio, TaxLotLedger ledger, String[] symbols,
+                                        double minLossPercent, int minHoldingDays, LocalDate asOf) {
+        Set<Long> ids = new TreeSet<>();
+        for (String symbol : symbols) {
+            double price = portfolio.getAsset(symbol).getCurrentPrice();
+            for (TaxLotLedger.TaxLot lot : ledger.getLots(symbol)) {
+                double lossPercent = (lot.getUnitCost() - price) / lot.getUnitCost() * 100.0;
+                if (lossPercent > minLossPercent && lot.getHoldingPeriodDays(asOf) > minHoldingDays) {
+                    ids.add(lot.getId());
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static Set<Long> ids(List<TaxLotLedger.HarvestCandidate> candidates) {
+        Set<Long> ids = new TreeSet<>();
+        for (TaxLotLedger.HarvestCandidate candidate : candidates) ids.add(candidate.getLot().getId());
+        return ids;
+    }
+
+    private static boolean sortedByLoss(List<TaxLotLedger.HarvestCandidate> candidates) {
+        for (int i = 1; i < candidates.size(); i++) {
+            if (candidates.get(i).getUnrealizedLoss() > candidates.get(i - 1).getUnrealizedLoss()) return false;
+        }
+        return true;
+    }
+
+    // Three lots of 10 ABC, returning their ids in purchase order
+    private static long[] buyThree(Portfolio portfolio, TaxLotLedger ledger) {
+        portfolio.recordTransaction(buy("ABC", 10, 100, 0));
+        portfolio.recordTransaction(buy("ABC", 10, 120, 10));
+        portfolio.recordTransaction(buy("ABC", 10, 90, 20));
+        List<TaxLotLedger.TaxLot> lots = ledger.getLots("ABC");
+        return new long[] { lots.get(0).getId(), lots.get(1).getId(), lots.get(2).getId() };
+    }
+
+    // Quantity left in each lot; 0 once closed
+    private static double[] remaining(TaxLotLedger ledger, long[] ids) {
+        double[] quantities = new double[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            TaxLotLedger.TaxLot lot = ledger.getLot(ids[i]);
+            quantities[i] = lot == null ? 0.0 : lot.getQuantity();
+        }
+        return quantities;
+    }
+
+    private static boolean vetoed(Portfolio portfolio, Transaction sale) {
+        try {
+            portfolio.recordTransaction(sale);
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    private static Transaction buy(String symbol, double quantity, double price, int day) {
+        return trade(Transaction.TransactionType.BUY, symbol, quantity, price, day);
+    }
+
+    private static Transaction sell(String symbol, double quantity, double price, int day) {
+        return trade(Transaction.TransactionType.SELL, symbol, quantity, price, day);
+    }
+
+    private static Transaction trade(Transaction.TransactionType type, String symbol, double quantity,
+                                     double price, int day) {
+        LocalDateTime timestamp = START.plusDays(day).atTime(10, 0);
+        return new Transaction("T" + ++sequence, type, symbol, quantity, price, timestamp, "Test");
+    }
+
+    private static boolean close(double actual, double expected) {
+        return Math.abs(actual - expected) <= EPSILON;
+    }
+
+    private static void check(boolean condition, String description) {
+        if (condition) {
+            System.out.println("  ✓ " + description);
+        } else {
+            System.out.println("  ✗ " + description);
+            failed = true;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package test;
+
+import data.CheckpointManager;
+import data.TransactionJournal;
+import model.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Correctness checks for TransactionJournal and CheckpointManager: replay
+ * after a clean close and after a crash, torn and corrupt records at the
+ * end of the journal, LSN continuity across restarts, vetoed transactions,
+ * and restoring from a checkpoint after compaction.
+ *
+ * Crashes are simulated by copying the journal directory after a sync,
+ * then tearing or corrupting the copy.
+ *
+ * Usage: java -cp out test.TransactionJournalTest
+ */
+public class TransactionJournalTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 2, 9, 30);
+    private static final int RECORD_HEADER = 16;
+
+    private static boolean failed;
+    private static final List<Path> directories = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("╔═══════════════════════════════════════════════════╗");
+        System.out.println("║  TRANSACTION JOURNAL - CORRECTNESS TEST          ║");
+        System.out.println("╚═══════════════════════════════════════════════════╝\n");
+
+        try {
+            checkReplay();
+            checkCrash();
+            checkTornTail();
+            checkCorruptRecords();
+            checkVetoes();
+            checkCheckpoints();
+        } finally {
+            for (Path directory : directories) delete(directory);
+        }
+
+        if (failed) {
+            System.out.println("\n✗ TRANSACTION JOURNAL TEST FAILED");
+            System.exit(1);
+        }
+        System.out.println("\n✓ ALL CHECKS PASSED");
+    }
+
+    // 500 transactions across two portfolios, closed cleanly and replayed
+    private static void checkReplay() throws IOException {
+        System.out.println("Replay after a clean close");
+        Path directory = newDirectory();
+        Portfolio first = new Portfolio("P1", "First", "U");
+        Portfolio second = new Portfolio("P2", "Second", "U");
+        try (TransactionJournal journal = new TransactionJournal(directory.toString(),
+                TransactionJournal.Durability.RELAXED, 64, 1)) {
+            journal.attach(first);
+            journal.attach(second);
+            record(first, second, 0, 500);
+            check(journal.getLastLsn() == 500, "500 records numbered 1 to 500");
+        }
+
+        Portfolio[] replayed = replay(directory);
+        check(replayed[0].getTransactionCount() == first.getTransactionCount()
+            && replayed[1].getTransactionCount() == second.getTransactionCount(), "every record is replayed");
+        check(sameState(replayed[0], first) && sameState(replayed[1], second),
+            "replayed cash and history match the originals");
+
+        try (TransactionJournal journal = new TransactionJournal(directory.toString())) {
+            check(journal.getLastLsn() == 500 && journal.getDurableLsn() == 500, "reopening finds LSN 500");
+            long lsn = journal.append(first, deposit("N1", 1));
+            check(lsn == 501, "the next record after reopening is LSN 501");
+        }
+        System.out.println();
+    }
+
+    // Synced records survive without a close; the copy stands in for the crashed disk
+    private static void checkCrash() throws IOException {
+        System.out.println("Replay after a crash");
+        Path directory = newDirectory();
+        Path crashed = newDirectory();
+        Portfolio first = new Portfolio("P1", "First", "U");
+        Portfolio second = new Portfolio("P2", "Second", "U");
+        try (TransactionJournal journal = new TransactionJournal(directory.toString(),
+                TransactionJournal.Durability.RELAXED, 256, 1000)) {
+            journal.attach(first);
+            journal.attach(second);
+            record(first, second, 0, 300);
+            journal.sync();
+            copy(directory, crashed);
+        }
+
+        Portfolio[] replayed = replay(crashed);
+        check(sameState(replayed[0], first) && sameState(replayed[1], second),
+            "every synced record is replayed");
+        try (TransactionJournal journal = new TransactionJournal(crashed.toString())) {
+            check(journal.getLastLsn() == 300, "the journal resumes after LSN 300");
+        }
+        System.out.println();
+    }
+
+    // Half a record at the end of the last segment, as a write cut short leaves it
+    private static void checkTornTail() throws IOException {
+        System.out.println("Torn record at the end");
+        Path directory = newDirectory();
+        Portfolio first = new Portfolio("P1", "First", "U");
+        Portfolio second = new Portfolio("P2", "Second", "U");
+        try (TransactionJournal journal = new TransactionJournal(directory.toString())) {
+            journal.attach(first);
+            journal.attach(second);
+            record(first, second, 0, 100);
+        }
+        Path segment = onlySegment(directory);
+        long size = Files.size(segment);
+        check(recordOffsets(segment).size() == 100, "the segment holds 100 records before the tear");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER + 5);
+            header.putInt(200).putInt(12345).putLong(101).put(new byte[5]).flip();
+            channel.write(header, size);
+        }
+
+        try (TransactionJournal journal = new TransactionJournal(directory.toString())) {
+            check(Files.size(segment) == size, "opening truncates the torn record");
+            check(journal.getLastLsn() == 100, "the last whole record is LSN 100");
+            check(journal.append(first, deposit("N1", 1)) == 101, "the next record reuses no LSN");
+        }
+        Portfolio[] replayed = replay(directory);
+        check(replayed[0].getTransactionCount() + replayed[1].getTransactionCount() == 101,
+            "all 101 records replay");
+        System.out.println();
+    }
+
+    // A bad CRC at the end of the last segment is a torn write; anywhere else it is corruption
+    private static void checkCorruptRecords() throws IOException {
+        System.out.println("Corrupt records");
+        Path directory = newDirectory();
+        Portfolio first = new Portfolio("P1", "First", "U");
+        Portfolio second = new Portfolio("P2", "Second", "U");
+        try (TransactionJournal journal = new TransactionJournal(directory.toString())) {
+            journal.attach(first);
+            journal.attach(second);
+            record(first, second, 0, 50);
+        }
+        Path segment = onlySegment(directory);
+        List<Long> offsets = recordOffsets(segment);
+        flipPayloadByte(segment, offsets.get(49));
+        try (TransactionJournal journal = new TransactionJournal(directory.toString())) {
+            check(journal.getLastLsn() == 49, "a bad CRC on the last record drops only that record");
+        }
+        Portfolio[] replayed = replay(directory);
+        check(replayed[0].getTransactionCount() + replayed[1].getTransactionCount() == 49,
+            "the 49 records before it replay");
+
+        // A sealed segment: the checkpoint is ahead of the journal, so new records start a new segment
+        Path sealed = newDirectory();
+        try (TransactionJournal journal = new TransactionJournal(sealed.toString())) {
+            Portfolio portfolio = new Portfolio("P1", "First", "U");
+            for (int i = 0; i < 10; i++) journal.append(portfolio, deposit("A" + i, 1));
+            journal.startAfter(20);
+            for (int i = 0; i < 10; i++) journal.append(portfolio, deposit("B" + i, 1));
+            check(journal.getLastLsn() == 30, "records after the checkpoint start at LSN 21");
+        }
+        Path firstSegment = segments(sealed).get(0);
+        flipPayloadByte(firstSegment, recordOffsets(firstSegment).get(4));
+        try (TransactionJournal journal = new TransactionJournal(sealed.toString())) {
+            boolean refused = false;
+            long applied = 0;
+            try {
+                Portfolio portfolio = new Portfolio("P1", "First", "U");
+                applied = journal.replay(20, (owner, id) -> portfolio);
+                journal.replay((owner, id) -> portfolio);
+            } catch (IOException e) {
+                refused = true;
+            }
+            check(applied == 10, "replaying after the checkpoint skips the sealed segment");
+            check(refused, "replaying through a corrupt sealed segment fails");
+        }
+        System.out.println();
+    }
+
+    // A sale the tax lot ledger refuses must not reach the journal
+    private static void checkVetoes() throws IOException {
+        System.out.println("Vetoed transactions");
+        Path directory = newDirectory();
+        Portfolio portfolio = new Portfolio("P1", "First", "U");
+        try (TransactionJournal journal = new TransactionJournal(directory.toString())) {
+            journal.attach(portfolio);
+            new TaxLotLedger(portfolio, TaxLotLedger.ReliefMethod.FIFO);
+            portfolio.recordTransaction(new Transaction("B1", Transaction.TransactionType.BUY, "ABC",
+                10, 100, START, "Buy"));
+            boolean vetoed = false;
+            try {
+                portfolio.recordTransaction(new Transaction("S1", Transaction.TransactionType.SELL, "ABC",
+                    50, 100, START.plusDays(1), "Oversold"));
+            } catch (IllegalArgumentException e) {
+                vetoed = true;
+            }
+            check(vetoed, "the ledger vetoes selling more than is held");
+            check(journal.getLastLsn() == 1, "only the buy is journaled");
+        }
+        Portfolio[] replayed = replay(directory);
+        check(replayed[0].getTransactionCount() == 1 && replayed[0].getCashBalance() == -1000,
+            "replay applies the buy alone");
+        System.out.println();
+    }
+
+    // Checkpoint, journal more, crash; then checkpoint again and compact
+    private static void checkCheckpoints() throws IOException {
+        System.out.println("Checkpoints and compaction");
+        Path directory = newDirectory();
+        Map<String, User> users = newUsers();
+        Portfolio first = users.get("U").getPortfolio("P1");
+        Portfolio second = users.get("U").getPortfolio("P2");
+        try (TransactionJournal journal = new TransactionJournal(directory.toString());
+             CheckpointManager checkpoints = new CheckpointManager(directory.toString(), journal, true,
+                 CheckpointManager.DEFAULT_INTERVAL_MILLIS, CheckpointManager.DEFAULT_INTERVAL_RECORDS)) {
+            journal.attach(first);
+            journal.attach(second);
+            record(first, second, 0, 200);
+            check(checkpoints.checkpoint(users.values()) == 200, "the checkpoint covers LSN 200");
+            first.addAsset(new Asset("XYZ", "XYZ Corp", Asset.AssetType.STOCK, 10, 50, 55,
+                START.toLocalDate(), "Tech"));
+            checkpoints.checkpoint(users.values());
+            record(first, second, 200, 300);
+        }
+
+        Map<String, User> restored = newUsers();
+        long replayed;
+        try (TransactionJournal journal = new TransactionJournal(directory.toString());
+             CheckpointManager checkpoints = new CheckpointManager(directory.toString(), journal, true,
+                 CheckpointManager.DEFAULT_INTERVAL_MILLIS, CheckpointManager.DEFAULT_INTERVAL_RECORDS)) {
+            replayed = checkpoints.restore(restored);
+            check(checkpoints.getLastCheckpointLsn() == 200, "the latest checkpoint is loaded");
+        }
+        check(replayed == 100, "only the 100 records after it replay");
+        Portfolio restoredFirst = restored.get("U").getPortfolio("P1");
+        check(sameState(restoredFirst, first) && sameState(restored.get("U").getPortfolio("P2"), second),
+            "restored cash and history match");
+        check(restoredFirst.hasAsset("XYZ") && restoredFirst.getTotalValue() == first.getTotalValue(),
+            "the holding added before the last checkpoint is restored");
+        check(checkpointFiles(directory) == 1, "compaction leaves one checkpoint");
+
+        // Lose the journal tail behind a checkpoint, then compact the segment it covers
+        Path crashed = newDirectory();
+        copy(directory, crashed);
+        Path oldSegment = onlySegment(crashed);
+        try (FileChannel channel = FileChannel.open(oldSegment, StandardOpenOption.WRITE)) {
+            channel.truncate(recordOffsets(oldSegment).get(150));
+        }
+        Map<String, User> resumed = newUsers();
+        try (TransactionJournal journal = new TransactionJournal(crashed.toString());
+             CheckpointManager checkpoints = new CheckpointManager(crashed.toString(), journal, true,
+                 CheckpointManager.DEFAULT_INTERVAL_MILLIS, CheckpointManager.DEFAULT_INTERVAL_RECORDS)) {
+            checkpoints.restore(resumed);
+            Portfolio p1 = resumed.get("U").getPortfolio("P1");
+            journal.attach(p1);
+            p1.recordTransaction(deposit("N1", 1));
+            check(journal.getLastLsn() == 201,
+                "records after a checkpoint ahead of the journal start at its LSN + 1");
+            p1.recordTransaction(deposit("N2", 2));
+            checkpoints.checkpoint(resumed.values());
+            journal.append(p1, deposit("N3", 3));
+            journal.sync();
+        }
+        check(!Files.exists(oldSegment) && segments(crashed).size() == 1,
+            "compaction deletes the segment the checkpoint covers");
+        check(checkpointFiles(crashed) == 1, "and the checkpoint it replaces");
+        Map<String, User> compacted = newUsers();
+        long afterCompaction;
+        try (TransactionJournal journal = new TransactionJournal(crashed.toString());
+             CheckpointManager checkpoints = new CheckpointManager(crashed.toString(), journal, true,
+                 CheckpointManager.DEFAULT_INTERVAL_MILLIS, CheckpointManager.DEFAULT_INTERVAL_RECORDS)) {
+            afterCompaction = checkpoints.restore(compacted);
+            check(checkpoints.getLastCheckpointLsn() == 202, "the new checkpoint is at LSN 202");
+        }
+        check(afterCompaction == 1, "restoring after compaction replays the one later record");
+        check(compacted.get("U").getPortfolio("P1").getTransactionCount() == 103,
+            "the checkpoint history plus the replayed record is restored");
+        System.out.println();
+    }
+
+    // Deposits and withdrawals alternating between the portfolios
+    private static void record(Portfolio first, Portfolio second, int from, int to) {
+        for (int i = from; i < to; i++) {
+            Portfolio portfolio = i % 2 == 0 ? first : second;
+            Transaction.TransactionType type = i % 5 == 4
+                ? Transaction.TransactionType.WITHDRAWAL : Transaction.TransactionType.DEPOSIT;
+            portfolio.recordTransaction(new Transaction("T" + i, type, "CASH", 1, 10 + i % 7 * 0.25,
+                START.plusMinutes(i), "Note " + i));
+        }
+    }
+
+    private static Transaction deposit(String id, double amount) {
+        return new Transaction(id, Transaction.TransactionType.DEPOSIT, "CASH", 1, amount, START, "Deposit");
+    }
+
+    private static Portfolio[] replay(Path directory) throws IOException {
+        Portfolio[] portfolios = { new Portfolio("P1", "First", "U"), new Portfolio("P2", "Second", "U") };
+        try (TransactionJournal journal = new TransactionJournal(directory.toString())) {
+            journal.replay((owner, id) -> id.equals("P1") ? portfolios[0] : portfolios[1]);
+        }
+        return portfolios;
+    }
+
+    private static Map<String, User> newUsers() {
+        User user = new User("U", "user", "user@example.com", "User");
+        user.addPortfolio(new Portfolio("P1", "First", "U"));
+        user.addPortfolio(new Portfolio("P2", "Second", "U"));
+        Map<String, User> users = new HashMap<>();
+        users.put("U", user);
+        return users;
+    }
+
+    private static boolean sameState(Portfolio actual, Portfolio expected) {
+        if (actual.getCashBalance() != expected.getCashBalance()
+                || actual.getNetDeposits() != expected.getNetDeposits()
+                || actual.getTransactionCount() != expected.getTransactionCount()) {
+            return false;
+        }
+        for (int i = 0; i < actual.getTransactionCount(); i++) {
+            Transaction a = actual.getTransactionsView().get(i);
+            Transaction e = expected.getTransactionsView().get(i);
+            if (!a.getId().equals(e.getId()) || a.getType() != e.getType()
+                    || a.getTotalAmount() != e.getTotalAmount() || !a.getTimestamp().equals(e.getTimestamp())
+                    || !a.getNotes().equals(e.getNotes())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Segment files and the offset of each record in one
+    private static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (var files = Files.list(directory)) {
+            files.filter(f -> f.getFileName().toString().startsWith("journal-")).sorted().forEach(segments::add);
+        }
+        return segments;
+    }
+
+    private static Path onlySegment(Path directory) throws IOException {
+        List<Path> segments = segments(directory);
+        check(segments.size() == 1, "the journal is one segment");
+        return segments.get(0);
+    }
+
+    private static List<Long> recordOffsets(Path segment) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment));
+        List<Long> offsets = new ArrayList<>();
+        int position = 0;
+        while (position + RECORD_HEADER <= data.limit()) {
+            offsets.add((long) position);
+            position += RECORD_HEADER + data.getInt(position);
+        }
+        return offsets;
+    }
+
+    private static void flipPayloadByte(Path segment, long recordOffset) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            long position = recordOffset + RECORD_HEADER + 2;
+            channel.read(b, position);
+            b.put(0, (byte) (b.get(0) ^ 0x5A)).rewind();
+            channel.write(b, position);
+        }
+    }
+
+    private static int checkpointFiles(Path directory) {
+        File[] files = directory.toFile().listFiles((dir, name) -> name.startsWith("checkpoint-"));
+        return files == null ? 0 : files.length;
+    }
+
+    // Scratch directories
+    private static Path newDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("journal-test");
+        directories.add(directory);
+        return directory;
+    }
+
+    private static void copy(Path from, Path to) throws IOException {
+        try (var files = Files.list(from)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, to.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static void delete(Path directory) {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        directory.toFile().delete();
+    }
+
+    private static void check(boolean condition, String description) {
+        if (condition) {
+            System.out.println("  ✓ " + description);
+        } else {
+            System.out.println("  ✗ " + description);
+            failed = true;
+        }
+    }
+}
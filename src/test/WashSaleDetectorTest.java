@@ -0,0 +1,288 @@
+package test;
+
+import logic.WashSaleDetector;
+import model.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Behavior checks for WashSaleDetector: replacements across portfolios on
+ * both sides of a sale, the window edges, partial replacement, purchases
+ * used up by earlier sales, and losses from a ledger versus replayed FIFO
+ * lots.
+ *
+ * Usage: java -cp out test.WashSaleDetectorTest
+ */
+public class WashSaleDetectorTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+    private static final double EPSILON = 1e-9;
+
+    private static boolean failed;
+    private static int sequence;
+
+    public static void main(String[] args) {
+        System.out.println("╔═══════════════════════════════════════════════════╗");
+        System.out.println("║  WASH SALE DETECTOR - BEHAVIOR TEST              ║");
+        System.out.println("╚═══════════════════════════════════════════════════╝\n");
+
+        checkAcrossPortfolios();
+        checkWindowEdges();
+        checkOwnLot();
+        checkConsumedPurchases();
+        checkLedgerLosses();
+        checkDetectAll();
+
+        if (failed) {
+            System.out.println("\n✗ WASH SALE DETECTOR TEST FAILED");
+            System.exit(1);
+        }
+        System.out.println("\n✓ ALL CHECKS PASSED");
+    }
+
+    // Sell 10 at a 200 loss in one portfolio; buy 4 before and 3 after in another
+    private static void checkAcrossPortfolios() {
+        System.out.println("Replacements in another portfolio");
+        User user = new User("U", "u", "u@example.com", "User");
+        Portfolio taxable = portfolio(user, "P1");
+        Portfolio ira = portfolio(user, "P2");
+        taxable.recordTransaction(buy("ABC", 10, 100, 0));
+        Transaction before = buy("ABC", 4, 95, 20);
+        ira.recordTransaction(before);
+        Transaction sale = sell("ABC", 10, 80, 40);
+        taxable.recordTransaction(sale);
+        Transaction after = buy("ABC", 3, 85, 60);
+        ira.recordTransaction(after);
+
+        List<WashSaleDetector.WashSale> washSales = WashSaleDetector.detect(user);
+        check(washSales.size() == 1, "one wash sale is found");
+        WashSaleDetector.WashSale washSale = washSales.get(0);
+        check(washSale.getTransactionId().equals(sale.getId()) && washSale.getPortfolioId().equals("P1"),
+            "it is the sale in P1");
+        check(close(washSale.getLoss(), 200), "the loss is 200");
+        check(close(washSale.getReplacedQuantity(), 7), "7 of 10 shares are replaced");
+        check(close(washSale.getDisallowedLoss(), 140), "140 of the loss is disallowed");
+        check(replacedBy(washSale).equals(Arrays.asList(before.getId() + "=4.0", after.getId() + "=3.0")),
+            "the buys before and after the sale replace it, earliest first");
+        check(washSale.getReplacements().get(0).getPortfolioId().equals("P2"), "replacements name their portfolio");
+
+        Transaction gain = sell("XYZ", 5, 120, 41);
+        taxable.recordTransaction(buy("XYZ", 5, 100, 1));
+        taxable.recordTransaction(gain);
+        ira.recordTransaction(buy("XYZ", 5, 110, 42));
+        check(WashSaleDetector.detect(user).size() == 1, "a sale at a gain is never a wash sale");
+        System.out.println();
+    }
+
+    // Buys 30 and 31 days either side of a losing sale on day 40
+    private static void checkWindowEdges() {
+        System.out.println("Window edges (" + WashSaleDetector.WINDOW_DAYS + " days)");
+        User user = new User("U", "u", "u@example.com", "User");
+        Portfolio seller = portfolio(user, "P1");
+        Portfolio buyer = portfolio(user, "P2");
+        seller.recordTransaction(buy("ABC", 10, 100, 0));
+        Transaction outsideBefore = buy("ABC", 1, 90, 9);
+        Transaction edgeBefore = buy("ABC", 1, 90, 10);
+        buyer.recordTransaction(outsideBefore);
+        buyer.recordTransaction(edgeBefore);
+        seller.recordTransaction(sell("ABC", 10, 80, 40));
+        Transaction edgeAfter = buy("ABC", 1, 90, 70);
+        Transaction outsideAfter = buy("ABC", 1, 90, 71);
+        buyer.recordTransaction(edgeAfter);
+        buyer.recordTransaction(outsideAfter);
+
+        List<WashSaleDetector.WashSale> washSales = WashSaleDetector.detect(user);
+        check(washSales.size() == 1, "one wash sale is found");
+        check(replacedBy(washSales.get(0)).equals(Arrays.asList(edgeBefore.getId() + "=1.0",
+            edgeAfter.getId() + "=1.0")), "buys exactly 30 days away replace it, 31 days away do not");
+        check(close(washSales.get(0).getDisallowedLoss(), 40), "2 of 10 shares disallow 40 of 200");
+
+        User restricted = new User("V", "v", "v@example.com", "User");
+        portfolio(restricted, "P1").recordTransaction(buy("ABC", 1, 90, 10));
+        check(WashSaleDetector.getRestrictedSymbols(restricted, day(40)).contains("ABC"),
+            "a buy 30 days back restricts the symbol");
+        check(WashSaleDetector.getRestrictedSymbols(restricted, day(41)).isEmpty(),
+            "a buy 31 days back does not");
+        check(WashSaleDetector.getRestrictedSymbols(restricted, day(9)).isEmpty(),
+            "a buy after the date does not");
+        System.out.println();
+    }
+
+    // Shares a sale relieved do not replace it; the rest of that purchase does
+    private static void checkOwnLot() {
+        System.out.println("The sale's own lot");
+        User user = new User("U", "u", "u@example.com", "User");
+        Portfolio portfolio = portfolio(user, "P1");
+        portfolio.recordTransaction(buy("ABC", 10, 100, 30));
+        portfolio.recordTransaction(sell("ABC", 10, 80, 40));
+        check(WashSaleDetector.detect(user).isEmpty(), "selling a whole recent lot is not a wash sale");
+
+        User partial = new User("V", "v", "v@example.com", "User");
+        Portfolio other = portfolio(partial, "P1");
+        other.recordTransaction(buy("ABC", 10, 100, 30));
+        other.recordTransaction(sell("ABC", 6, 80, 40));
+        List<WashSaleDetector.WashSale> washSales = WashSaleDetector.detect(partial);
+        check(washSales.size() == 1 && close(washSales.get(0).getReplacedQuantity(), 4),
+            "the 4 shares left of the lot replace the 6 sold");
+        check(close(washSales.get(0).getDisallowedLoss(), 80), "80 of the 120 loss is disallowed");
+        System.out.println();
+    }
+
+    // Two losing sales inside the window of one purchase
+    private static void checkConsumedPurchases() {
+        System.out.println("Purchases used up by earlier sales");
+        for (double bought : new double[] { 10, 15 }) {
+            User user = new User("U", "u", "u@example.com", "User");
+            Portfolio seller = portfolio(user, "P1");
+            Portfolio buyer = portfolio(user, "P2");
+            seller.recordTransaction(buy("ABC", 20, 100, 0));
+            Transaction first = sell("ABC", 10, 80, 40);
+            seller.recordTransaction(first);
+            buyer.recordTransaction(buy("ABC", bought, 85, 45));
+            Transaction second = sell("ABC", 10, 80, 50);
+            seller.recordTransaction(second);
+
+            List<WashSaleDetector.WashSale> washSales = WashSaleDetector.detect(user);
+            check(!washSales.isEmpty() && washSales.get(0).getTransactionId().equals(first.getId())
+                    && close(washSales.get(0).getReplacedQuantity(), 10),
+                "buying " + (int) bought + ": the earlier sale is fully replaced");
+            double left = bought - 10;
+            if (left == 0) {
+                check(washSales.size() == 1, "buying 10: nothing is left for the later sale");
+            } else {
+                check(washSales.size() == 2 && washSales.get(1).getTransactionId().equals(second.getId())
+                        && close(washSales.get(1).getReplacedQuantity(), left),
+                    "buying " + (int) bought + ": the later sale gets the " + (int) left + " left");
+                check(close(washSales.get(1).getDisallowedLoss(), 100), "half of its 200 loss is disallowed");
+            }
+        }
+        System.out.println();
+    }
+
+    // Lots at 60 (day 0) and 100 (day 20), sell 10 at 80 on day 40, buy 5 on day 50
+    private static void checkLedgerLosses() {
+        System.out.println("Ledger losses against replayed FIFO");
+        User user = new User("U", "u", "u@example.com", "User");
+        Portfolio portfolio = portfolio(user, "P1");
+        Portfolio other = portfolio(user, "P2");
+        TaxLotLedger ledger = new TaxLotLedger(portfolio, TaxLotLedger.ReliefMethod.LIFO);
+        portfolio.recordTransaction(buy("ABC", 10, 60, 0));
+        portfolio.recordTransaction(buy("ABC", 10, 100, 20));
+        Transaction sale = sell("ABC", 10, 80, 40);
+        portfolio.recordTransaction(sale);
+        Transaction replacement = buy("ABC", 5, 85, 50);
+        other.recordTransaction(replacement);
+
+        check(WashSaleDetector.detect(user).isEmpty(), "FIFO sells the lot at 60, a gain");
+        List<WashSaleDetector.WashSale> washSales = WashSaleDetector.detect(user, Collections.singletonList(ledger));
+        check(washSales.size() == 1 && close(washSales.get(0).getLoss(), 200), "LIFO sells the lot at 100, a 200 loss");
+        check(replacedBy(washSales.get(0)).equals(Collections.singletonList(replacement.getId() + "=5.0")),
+            "only the later buy replaces it; the lot sold is not a replacement");
+        check(close(washSales.get(0).getDisallowedLoss(), 100), "100 of the loss is disallowed");
+
+        // With FIFO relief in the ledger too, the other lot on day 20 replaces the sale
+        User fifo = new User("V", "v", "v@example.com", "User");
+        Portfolio fifoPortfolio = portfolio(fifo, "P1");
+        TaxLotLedger fifoLedger = new TaxLotLedger(fifoPortfolio, TaxLotLedger.ReliefMethod.FIFO);
+        fifoPortfolio.recordTransaction(buy("ABC", 10, 100, 0));
+        fifoPortfolio.recordTransaction(buy("ABC", 10, 60, 20));
+        fifoPortfolio.recordTransaction(sell("ABC", 10, 80, 40));
+        String replayed = WashSaleDetector.detect(fifo).toString();
+        check(replayed.equals(WashSaleDetector.detect(fifo, Collections.singletonList(fifoLedger)).toString()),
+            "a FIFO ledger agrees with the replay");
+        check(replayed.equals(WashSaleDetector.detect(fifo, Collections.singletonList(ledger)).toString()),
+            "another user's ledger is ignored");
+        System.out.println();
+    }
+
+    // Random histories: detectAll matches detect for each user
+    private static void checkDetectAll() {
+        System.out.println("detectAll");
+        Random random = new Random(7);
+        String[] symbols = { "AAA", "BBB", "CCC" };
+        List<User> users = new ArrayList<>();
+        List<TaxLotLedger> ledgers = new ArrayList<>();
+        for (int u = 0; u < 40; u++) {
+            User user = new User("U" + u, "u" + u, "u" + u + "@example.com", "User " + u);
+            users.add(user);
+            for (int p = 0; p < 3; p++) {
+                Portfolio portfolio = portfolio(user, "P" + p);
+                TaxLotLedger ledger = new TaxLotLedger(portfolio, TaxLotLedger.ReliefMethod.values()[p]);
+                if (p < 2) ledgers.add(ledger);
+                Map<String, Double> held = new HashMap<>();
+                for (int d = 0; d < 365; d += 1 + random.nextInt(10)) {
+                    String symbol = symbols[random.nextInt(symbols.length)];
+                    double price = 50 + random.nextInt(100);
+                    double quantity = held.getOrDefault(symbol, 0.0);
+                    if (quantity > 0 && random.nextBoolean()) {
+                        double sold = Math.min(quantity, 1 + random.nextInt(10));
+                        portfolio.recordTransaction(sell(symbol, sold, price, d));
+                        held.put(symbol, quantity - sold);
+                    } else {
+                        double bought = 1 + random.nextInt(10);
+                        portfolio.recordTransaction(buy(symbol, bought, price, d));
+                        held.put(symbol, quantity + bought);
+                    }
+                }
+            }
+        }
+        Map<String, List<WashSaleDetector.WashSale>> all = WashSaleDetector.detectAll(users, ledgers, 4);
+        boolean same = true;
+        int found = 0;
+        for (User user : users) {
+            List<WashSaleDetector.WashSale> expected = WashSaleDetector.detect(user, ledgers);
+            List<WashSaleDetector.WashSale> actual = all.getOrDefault(user.getUserId(), Collections.emptyList());
+            same &= expected.toString().equals(actual.toString());
+            found += expected.size();
+        }
+        check(found > 0, found + " wash sales found in random histories");
+        check(same, "detectAll matches detect for each of " + users.size() + " users");
+        System.out.println();
+    }
+
+    private static List<String> replacedBy(WashSaleDetector.WashSale washSale) {
+        List<String> replacements = new ArrayList<>();
+        for (WashSaleDetector.Replacement replacement : washSale.getReplacements()) {
+            replacements.add(replacement.getTransactionId() + "=" + replacement.getQuantity());
+        }
+        return replacements;
+    }
+
+    private static Portfolio portfolio(User user, String id) {
+        Portfolio portfolio = new Portfolio(id, "Portfolio " + id, user.getUserId());
+        user.addPortfolio(portfolio);
+        return portfolio;
+    }
+
+    private static LocalDate day(int day) {
+        return START.plusDays(day);
+    }
+
+    private static Transaction buy(String symbol, double quantity, double price, int day) {
+        return trade(Transaction.TransactionType.BUY, symbol, quantity, price, day);
+    }
+
+    private static Transaction sell(String symbol, double quantity, double price, int day) {
+        return trade(Transaction.TransactionType.SELL, symbol, quantity, price, day);
+    }
+
+    private static Transaction trade(Transaction.TransactionType type, String symbol, double quantity,
+                                     double price, int day) {
+        LocalDateTime timestamp = day(day).atTime(10, 0);
+        return new Transaction("T" + ++sequence, type, symbol, quantity, price, timestamp, "Test");
+    }
+
+    private static boolean close(double actual, double expected) {
+        return Math.abs(actual - expected) <= EPSILON;
+    }
+
+    private static void check(boolean condition, String description) {
+        if (condition) {
+            System.out.println("  ✓ " + description);
+        } else {
+            System.out.println("  ✗ " + description);
+            failed = true;
+        }
+    }
+}